@@ -0,0 +1,110 @@
+package com.deque.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+
+import com.deque.axe_core.commons.AxeWatcherOptions;
+import com.deque.axe_core.selenium.AxeWatcher;
+import com.deque.util.ChromeDriverBootstrap;
+import com.deque.util.ChromeProfileTemplate;
+import com.deque.util.ExecutionProfile;
+import com.deque.util.FixtureServer;
+import com.deque.util.MockWatcherServer;
+
+/**
+ * Measures the cold start of a Watcher session: launching Chrome with the options from
+ * {@code AxeWatcher.configure}, wrapping it and loading the first page from the {@link FixtureServer}, then
+ * quitting. {@code fresh} lets chromedriver create an empty profile as the pool does by default,
+ * {@code template} starts every session from a clone of a {@link ChromeProfileTemplate}. The template is
+ * built in the untimed trial setup, so the difference is the saving per session once it exists.
+ *
+ * <p>Sessions report to the in-process {@link MockWatcherServer} and use the {@link ExecutionProfile} of the
+ * run, {@code -DEXECUTION_PROFILE=headless} for headless runs.</p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ChromeStartupBenchmark {
+
+    private static final String HOME = "https://abcdcomputech.dequecloud.com/";
+
+    /**
+     * The Watcher configuration and, in template mode, the profile templates of one trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Startup {
+
+        @Param({"fresh", "template"})
+        public String profile;
+
+        AxeWatcher watcher;
+        ChromeProfileTemplate templates;
+        String home;
+        private Path directory;
+
+        /**
+         * Configures Watcher and, in template mode, builds the template with one untimed launch.
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            home = FixtureServer.shared().urlFor(HOME);
+            ChromeDriverBootstrap.ensureResolved();
+            watcher = new AxeWatcher(new AxeWatcherOptions()
+                    .setApiKey("benchmark")
+                    .setServerUrl(MockWatcherServer.shared().baseUrl())
+                    .setBuildId("chrome-startup-benchmark"));
+            if ("template".equals(profile)) {
+                directory = Files.createTempDirectory("chrome-profiles");
+                templates = new ChromeProfileTemplate(directory);
+                templates.release(templates.apply(ExecutionProfile.current().configure(watcher)));
+            }
+        }
+
+        /**
+         * Deletes the template.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (templates != null) {
+                templates.clear();
+            }
+        }
+    }
+
+    @Benchmark
+    public void startSession(Startup startup) {
+        ChromeOptions options = ExecutionProfile.current().configure(startup.watcher);
+        Path clone = startup.templates == null ? null : startup.templates.apply(options);
+        ChromeDriver raw = new ChromeDriver(options);
+        try {
+            WebDriver driver = startup.watcher.wrapDriver(raw);
+            driver.get(startup.home);
+        } finally {
+            raw.quit();
+            if (startup.templates != null) {
+                startup.templates.release(clone);
+            }
+        }
+    }
+}
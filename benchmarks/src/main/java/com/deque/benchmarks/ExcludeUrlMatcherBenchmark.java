@@ -0,0 +1,118 @@
+package com.deque.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.deque.util.ExcludeUrlMatcher;
+
+/**
+ * Measures how long deciding whether a URL is excluded takes as the exclude-URL list grows.
+ * The {@code linear} benchmarks try every pattern's regex in turn, as a list of globs is naively checked;
+ * the {@code compiled} ones ask an {@link ExcludeUrlMatcher} built from the same list once in setup.
+ * Half of the patterns are literal URLs and half are globs under their own directory, like the per-page
+ * and per-section exclusions of a large site, and both an excluded and a kept URL are checked.
+ *
+ * <p>No browser is started. Run with
+ * {@code java -jar target/benchmarks.jar ExcludeUrlMatcherBenchmark -rf json -rff target/jmh-result.json}.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExcludeUrlMatcherBenchmark {
+
+    private static final String HOME = "https://abcdcomputech.dequecloud.com/";
+
+    /**
+     * One pattern list per trial, as regexes and as a compiled matcher.
+     */
+    @State(Scope.Benchmark)
+    public static class Patterns {
+
+        @Param({"100", "1000", "10000"})
+        public int patternCount;
+
+        List<Pattern> regexes;
+        ExcludeUrlMatcher matcher;
+        String excluded;
+        String kept;
+
+        /**
+         * Builds the patterns; the last one excludes {@link #excluded}, so the linear scan tries them all.
+         */
+        @Setup(Level.Trial)
+        public void build() {
+            List<String> patterns = new ArrayList<>(patternCount);
+            for (int i = 0; i < patternCount; i++) {
+                patterns.add(i % 2 == 0 ? HOME + "product-" + i + ".php" : HOME + "category-" + i + "/*.php");
+            }
+            regexes = new ArrayList<>(patternCount);
+            for (String pattern : patterns) {
+                regexes.add(Pattern.compile(ExcludeUrlMatcher.toRegex(pattern)));
+            }
+            matcher = ExcludeUrlMatcher.compile(patterns);
+            excluded = HOME + "category-" + (patternCount - 1) + "/laptops.php";
+            kept = HOME + "desktops.php";
+            if (!matcher.excludes(excluded) || matcher.excludes(kept)) {
+                throw new IllegalStateException("Unexpected matcher result for " + matcher);
+            }
+        }
+    }
+
+    /**
+     * Checks an excluded URL against every regex in turn.
+     */
+    @Benchmark
+    public boolean linearExcluded(Patterns patterns) {
+        return linear(patterns.regexes, patterns.excluded);
+    }
+
+    /**
+     * Checks a kept URL against every regex in turn.
+     */
+    @Benchmark
+    public boolean linearKept(Patterns patterns) {
+        return linear(patterns.regexes, patterns.kept);
+    }
+
+    /**
+     * Checks an excluded URL with the compiled matcher.
+     */
+    @Benchmark
+    public boolean compiledExcluded(Patterns patterns) {
+        return patterns.matcher.excludes(patterns.excluded);
+    }
+
+    /**
+     * Checks a kept URL with the compiled matcher.
+     */
+    @Benchmark
+    public boolean compiledKept(Patterns patterns) {
+        return patterns.matcher.excludes(patterns.kept);
+    }
+
+    private static boolean linear(List<Pattern> regexes, String url) {
+        for (Pattern regex : regexes) {
+            if (regex.matcher(url).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
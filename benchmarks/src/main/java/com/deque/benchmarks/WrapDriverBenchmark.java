@@ -0,0 +1,246 @@
+package com.deque.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+
+import com.deque.axe_core.commons.AxeWatcherOptions;
+import com.deque.axe_core.selenium.AxeWatcher;
+import com.deque.axe_core.selenium.AxeWatcherDriver;
+import com.deque.util.ChromeDriverBootstrap;
+import com.deque.util.ExecutionProfile;
+import com.deque.util.FixtureServer;
+import com.deque.util.MockWatcherServer;
+
+/**
+ * Measures what Axe Watcher adds to every WebDriver call that produces a page state.
+ * Each operation runs once against a plain ChromeDriver ({@code raw}) and once against the same kind of
+ * session wrapped by Watcher ({@code wrapped}), on pages served by the {@link FixtureServer} so that
+ * network jitter does not hide the difference. The page each operation starts from is prepared in an
+ * untimed per-invocation setup through the unwrapped driver, so only the operation itself is measured.
+ *
+ * <p>Uploads go to the in-process {@link MockWatcherServer} unless {@code -Dwatcher.serverUrl} points
+ * at a real backend; {@code -Dwatcher.apiKey} sets the key. The mock answers every request with {@code {}},
+ * so against it the {@code wrapped} numbers only show Watcher's overhead if Watcher really works with it:
+ * before measuring, the trial analyzes and flushes one page and fails unless the mock recorded the upload,
+ * the same check as {@code MockBackendTest}. Numbers meant to match production come from a run against a
+ * real backend. Both modes launch Chrome with the same
+ * {@link ExecutionProfile}, {@code -DEXECUTION_PROFILE=headless} for headless runs. Run with
+ * {@code java -jar target/benchmarks.jar -rf json -rff target/jmh-result.json}.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class WrapDriverBenchmark {
+
+    private static final String HOME = "https://abcdcomputech.dequecloud.com/";
+    private static final String DESKTOPS = "https://abcdcomputech.dequecloud.com/desktops.php";
+    private static final String LOGIN = "https://the-internet.herokuapp.com/login";
+    private static final By DESKTOPS_LINK = By.cssSelector("#topnav li:nth-child(3) > a");
+    private static final By USERNAME = By.id("username");
+    private static final By LOGIN_BUTTON = By.cssSelector("button[type='submit']");
+
+    /**
+     * One Chrome session per trial, either plain or wrapped by Watcher.
+     */
+    @State(Scope.Benchmark)
+    public static class Session {
+
+        @Param({"raw", "wrapped"})
+        public String mode;
+
+        /** The driver under measurement. */
+        public WebDriver driver;
+
+        /** The unwrapped driver, used to prepare pages outside the measurement. */
+        public ChromeDriver raw;
+
+        String home;
+        String desktops;
+        String login;
+
+        /**
+         * Starts Chrome and, in wrapped mode, configures and wraps it with Axe Watcher.
+         */
+        @Setup(Level.Trial)
+        public void start() {
+            FixtureServer fixtures = FixtureServer.shared();
+            home = fixtures.urlFor(HOME);
+            desktops = fixtures.urlFor(DESKTOPS);
+            login = fixtures.urlFor(LOGIN);
+
+            ChromeDriverBootstrap.ensureResolved();
+            if ("wrapped".equals(mode)) {
+                AxeWatcherOptions options = new AxeWatcherOptions()
+                        .setApiKey(System.getProperty("watcher.apiKey", "benchmark"))
+                        .setServerUrl(System.getProperty("watcher.serverUrl", MockWatcherServer.shared().baseUrl()))
+                        .setBuildId("wrap-driver-benchmark");
+                AxeWatcher watcher = new AxeWatcher(options);
+                raw = new ChromeDriver(ExecutionProfile.current().configure(watcher));
+                driver = watcher.wrapDriver(raw);
+                if (System.getProperty("watcher.serverUrl") == null) {
+                    requireMockUploads();
+                }
+            } else {
+                raw = new ChromeDriver(ExecutionProfile.current().apply(new ChromeOptions()));
+                driver = raw;
+            }
+        }
+
+        private void requireMockUploads() {
+            MockWatcherServer mock = MockWatcherServer.shared();
+            mock.reset();
+            driver.get(home);
+            AxeWatcher watcher = ((AxeWatcherDriver) driver).axeWatcher();
+            watcher.analyze();
+            watcher.flush();
+            boolean rejected = mock.requests().stream().anyMatch(request -> request.getStatus() >= 400);
+            if (mock.uploads().isEmpty() || rejected) {
+                driver.quit();
+                throw new IllegalStateException("Watcher did not flush to the mock backend, so wrapped numbers would"
+                        + " not include its uploads; run with -Dwatcher.serverUrl pointing at a real backend");
+            }
+            mock.reset();
+        }
+
+        /**
+         * Uploads the page states collected during the iteration, so they do not pile up in the browser.
+         */
+        @TearDown(Level.Iteration)
+        public void flush() {
+            if (driver instanceof AxeWatcherDriver) {
+                ((AxeWatcherDriver) driver).axeWatcher().flush();
+            }
+        }
+
+        /**
+         * Closes the browser.
+         */
+        @TearDown(Level.Trial)
+        public void stop() {
+            driver.quit();
+        }
+    }
+
+    /**
+     * Starts every invocation on the abcdcomputech home page.
+     */
+    @State(Scope.Thread)
+    public static class OnHome {
+        @Setup(Level.Invocation)
+        public void load(Session session) {
+            session.raw.get(session.home);
+        }
+    }
+
+    /**
+     * Starts every invocation on the desktops page with the home page behind it in history.
+     */
+    @State(Scope.Thread)
+    public static class WithBackHistory {
+        @Setup(Level.Invocation)
+        public void load(Session session) {
+            session.raw.get(session.home);
+            session.raw.get(session.desktops);
+        }
+    }
+
+    /**
+     * Starts every invocation on the home page with the desktops page ahead of it in history.
+     */
+    @State(Scope.Thread)
+    public static class WithForwardHistory {
+        @Setup(Level.Invocation)
+        public void load(Session session) {
+            session.raw.get(session.home);
+            session.raw.get(session.desktops);
+            session.raw.navigate().back();
+        }
+    }
+
+    /**
+     * Starts every invocation on an empty login form.
+     */
+    @State(Scope.Thread)
+    public static class OnLogin {
+        @Setup(Level.Invocation)
+        public void load(Session session) {
+            session.raw.get(session.login);
+        }
+    }
+
+    /**
+     * Starts every invocation on a login form whose username field is filled in.
+     */
+    @State(Scope.Thread)
+    public static class OnFilledLogin {
+        @Setup(Level.Invocation)
+        public void load(Session session) {
+            session.raw.get(session.login);
+            session.raw.findElement(USERNAME).sendKeys("tomsmith");
+        }
+    }
+
+    @Benchmark
+    public void get(Session session) {
+        session.driver.get(session.home);
+    }
+
+    @Benchmark
+    public void navigateTo(Session session, OnHome page) {
+        session.driver.navigate().to(session.desktops);
+    }
+
+    @Benchmark
+    public void navigateBack(Session session, WithBackHistory page) {
+        session.driver.navigate().back();
+    }
+
+    @Benchmark
+    public void navigateForward(Session session, WithForwardHistory page) {
+        session.driver.navigate().forward();
+    }
+
+    @Benchmark
+    public void navigateRefresh(Session session, OnHome page) {
+        session.driver.navigate().refresh();
+    }
+
+    @Benchmark
+    public void click(Session session, OnHome page) {
+        session.driver.findElement(DESKTOPS_LINK).click();
+    }
+
+    @Benchmark
+    public void sendKeys(Session session, OnLogin page) {
+        session.driver.findElement(USERNAME).sendKeys("tomsmith");
+    }
+
+    @Benchmark
+    public void clear(Session session, OnFilledLogin page) {
+        session.driver.findElement(USERNAME).clear();
+    }
+
+    @Benchmark
+    public void submit(Session session, OnLogin page) {
+        session.driver.findElement(LOGIN_BUTTON).submit();
+    }
+}
@@ -0,0 +1,85 @@
+package com.deque;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.deque.util.AnalyzeCache;
+
+/**
+ * This class verifies the page state cache without a browser.
+ */
+public class AnalyzeCacheTest {
+
+    private static final String HOME = "https://abcdcomputech.dequecloud.com/";
+
+    /**
+     * The key ignores whitespace differences but not the options, URL, viewport or content.
+     */
+    @Test
+    public void keyNormalizesWhitespaceOnly() {
+        String key = AnalyzeCache.key("preset:auto", HOME, "1920x1080", "<html><body>\n  <h1>Home</h1>\n</body></html>");
+
+        assert key.equals(AnalyzeCache.key("preset:auto", HOME, "1920x1080", "<html><body> <h1>Home</h1> </body></html>"));
+        assert !key.equals(AnalyzeCache.key("preset:manual", HOME, "1920x1080", "<html><body> <h1>Home</h1> </body></html>"));
+        assert !key.equals(AnalyzeCache.key("preset:auto", HOME + "cart.php", "1920x1080", "<html><body> <h1>Home</h1> </body></html>"));
+        assert !key.equals(AnalyzeCache.key("preset:auto", HOME, "1280x800", "<html><body> <h1>Home</h1> </body></html>"));
+        assert !key.equals(AnalyzeCache.key("preset:auto", HOME, "1920x1080", "<html><body> <h1>Cart</h1> </body></html>"));
+    }
+
+    /**
+     * Only the least recently used keys are evicted once the cache is full.
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        AnalyzeCache cache = new AnalyzeCache(2, null);
+
+        assert cache.markScanned("a");
+        assert cache.markScanned("b");
+        assert !cache.markScanned("a") : "Expected a to be cached";
+        assert cache.markScanned("c");
+        assert !cache.markScanned("a") : "Expected the recently used a to survive";
+        assert cache.markScanned("b") : "Expected b to be evicted";
+        assert cache.hits() == 2 && cache.misses() == 4 : "Unexpected counts: " + cache.hits() + "/" + cache.misses();
+    }
+
+    /**
+     * Only persisted keys are known to a new cache reading the store; keys analyzed but never uploaded are not.
+     */
+    @Test
+    public void persistsOnlyUploadedKeys() throws IOException {
+        Path store = Files.createTempDirectory("analyze-cache").resolve("analyzed.txt");
+
+        AnalyzeCache first = new AnalyzeCache(10, store);
+        assert first.markScanned("a");
+        assert first.markScanned("b");
+        first.persist("a");
+
+        AnalyzeCache second = new AnalyzeCache(10, store);
+        assert !second.markScanned("a") : "Expected a to be read from the store";
+        assert second.markScanned("b") : "Expected b, which was never uploaded, to be analyzed again";
+        assert Files.readAllLines(store).size() == 1;
+    }
+
+    /**
+     * A caller that meets a state being analyzed waits, and analyzes it itself if the first analyze failed.
+     */
+    @Test
+    public void waitsForConcurrentAnalyze() throws Exception {
+        AnalyzeCache cache = new AnalyzeCache(10, null);
+        assert cache.claim("a");
+
+        CompletableFuture<Boolean> second = CompletableFuture.supplyAsync(() -> cache.claim("a"));
+        Thread.sleep(200);
+        assert !second.isDone() : "Expected the second caller to wait for the first analyze";
+
+        cache.finish("a", false);
+        assert second.get(10, TimeUnit.SECONDS) : "Expected the second caller to retry the failed state";
+        cache.finish("a", true);
+        assert !cache.claim("a") : "Expected the analyzed state to be skipped";
+    }
+}
@@ -0,0 +1,119 @@
+package com.deque;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.ITestResult;
+import org.testng.annotations.Test;
+
+import com.deque.util.AsyncFlusher;
+
+/**
+ * This class verifies the background flush executor without a browser.
+ * The hand-off is replaced by a callback so that blocking uploads and failures can be simulated.
+ */
+public class AsyncFlusherTest {
+
+    /**
+     * Submitting returns before the hand-off has finished.
+     */
+    @Test
+    public void handsOffInBackground() throws InterruptedException {
+        CountDownLatch upload = new CountDownLatch(1);
+        ConcurrentLinkedQueue<String> done = new ConcurrentLinkedQueue<>();
+        AsyncFlusher flusher = new AsyncFlusher(1, 1, driver -> {
+            await(upload);
+            done.add("flushed");
+        });
+
+        flusher.submit(null, null);
+        assert done.isEmpty() : "Expected submit to return before the flush completed";
+
+        upload.countDown();
+        flusher.awaitIdle();
+        assert done.size() == 1 : "Expected 1 completed flush, but got: " + done.size();
+        flusher.shutdown();
+    }
+
+    /**
+     * Once the threads are busy and the queue is full, the submitting thread runs the hand-off itself.
+     */
+    @Test
+    public void appliesBackpressure() throws InterruptedException {
+        CountDownLatch upload = new CountDownLatch(1);
+        ConcurrentLinkedQueue<String> threads = new ConcurrentLinkedQueue<>();
+        AsyncFlusher flusher = new AsyncFlusher(1, 1, driver -> {
+            String name = Thread.currentThread().getName();
+            if (name.startsWith("watcher-flush")) {
+                await(upload);
+            }
+            threads.add(name);
+        });
+
+        flusher.submit(null, null);
+        flusher.submit(null, null);
+        flusher.submit(null, null);
+        assert threads.contains(Thread.currentThread().getName())
+                : "Expected the third session to be flushed on the caller thread, but got: " + threads;
+
+        upload.countDown();
+        flusher.awaitIdle();
+        assert threads.size() == 3 : "Expected 3 flushes, but got: " + threads.size();
+        flusher.shutdown();
+    }
+
+    /**
+     * A failing hand-off is recorded instead of being lost on the background thread.
+     */
+    @Test
+    public void recordsFailures() {
+        AsyncFlusher flusher = new AsyncFlusher(1, 1, driver -> {
+            throw new IllegalStateException("upload rejected");
+        });
+
+        flusher.submit(null, null);
+        flusher.awaitIdle();
+        List<AsyncFlusher.Failure> failures = flusher.drainFailures();
+
+        assert failures.size() == 1 : "Expected 1 failure, but got: " + failures.size();
+        assert failures.get(0).getError().getMessage().equals("upload rejected");
+        assert flusher.drainFailures().isEmpty() : "Expected failures to be drained";
+        flusher.shutdown();
+    }
+
+    /**
+     * Flush and release run as one background task; a failed flush is kept with the result of its test and
+     * the session is still released.
+     */
+    @Test
+    public void keepsFlushFailureWithItsTest() {
+        ConcurrentLinkedQueue<String> steps = new ConcurrentLinkedQueue<>();
+        AsyncFlusher flusher = new AsyncFlusher(1, 1, driver -> {
+            steps.add("flush on " + Thread.currentThread().getName());
+            throw new IllegalStateException("upload rejected");
+        }, driver -> steps.add("release"));
+        ITestResult result = (ITestResult) Proxy.newProxyInstance(ITestResult.class.getClassLoader(),
+                new Class<?>[] { ITestResult.class }, (proxy, method, args) -> "getName".equals(method.getName()) ? "passingTest" : null);
+
+        flusher.submit(null, result);
+        flusher.awaitIdle();
+
+        assert steps.size() == 2 && steps.peek().startsWith("flush on watcher-flush") && steps.contains("release")
+                : "Expected one background flush followed by the release, but got: " + steps;
+        List<AsyncFlusher.Failure> failures = flusher.drainFailures();
+        assert failures.size() == 1 && failures.get(0).isFlush() : "Expected 1 flush failure, but got: " + failures.size();
+        assert failures.get(0).getResult() == result : "Expected the failure to name its test";
+        flusher.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,18 +2,20 @@ package com.deque;
 
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
+import org.testng.ITestResult;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import com.deque.axe_core.commons.AxeWatcherOptions;
-import com.deque.axe_core.selenium.AxeWatcher;
-import com.deque.axe_core.selenium.AxeWatcherDriver;
-import com.deque.util.EnvLoader;
-
-import io.github.bonigarcia.wdm.WebDriverManager;
+import com.deque.util.AsyncFlusher;
+import com.deque.util.DomQuietWait;
+import com.deque.util.DriverHolder;
+import com.deque.util.TargetPages;
+import com.deque.util.TargetUrls;
+import com.deque.util.WatcherDriverPool;
+import com.deque.util.WatcherOptionsFactory;
+import com.deque.util.WatcherTimings;
+import com.deque.util.WatcherTimings.Phase;
 
 /**
  * This class demonstrates tests using Axe Watcher in Auto Analyze mode.
@@ -22,51 +24,27 @@ import io.github.bonigarcia.wdm.WebDriverManager;
  */
 public class AutoAnalyzeModeTest {
 
-    private WebDriver driver;
-
     /**
      * Sets up the WebDriver and Axe Watcher before each test.
-     * Configures Axe Watcher with API key and server URL.
+     * Configures Axe Watcher with the shared auto analyze preset.
      */
     @BeforeMethod
     public void setUp() {
-        // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
-        String apiKey = EnvLoader.get("API_KEY");
-        String serverUrl = EnvLoader.get("SERVER_URL");
-
-        // Configure Axe Watcher options
-        AxeWatcherOptions options = new AxeWatcherOptions()
-                .setApiKey(apiKey)
-                .setServerUrl(serverUrl)
-                .setBuildId(githubRunId);
-        
-        // Initialize Axe Watcher
-        AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-        
-        // Set up WebDriver using WebDriverManager
-        WebDriverManager.chromedriver().setup();
-        ChromeOptions chromeOptions = new ChromeOptions();
-        chromeOptions = watcher.configure(chromeOptions);
-        
-        // Wrap the WebDriver with Axe Watcher
-        driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
+        // Borrow a WebDriver configured with the auto analyze preset from the shared pool for this thread
+        DriverHolder.set(WatcherDriverPool.shared().acquire(WatcherOptionsFactory.AUTO));
     }
 
     /**
-     * Cleans up after each test by flushing Axe Watcher results and quitting the WebDriver.
+     * Cleans up after each test by handing the WebDriver to the {@link AsyncFlusher}.
+     *
+     * @param result The result of the test that used the WebDriver.
      */
     @AfterMethod
-    public void tearDown() {
-        // Flush Axe Watcher results
-        ((AxeWatcherDriver) driver).axeWatcher().flush();
-        
-        // Quit the WebDriver
+    public void tearDown(ITestResult result) {
+        // Flush Axe Watcher results and reset the browser for the next test in the background
+        WebDriver driver = DriverHolder.remove();
         if (driver != null) {
-            driver.quit();
+            AsyncFlusher.shared().submit(driver, result);
         }
     }
 
@@ -79,11 +57,13 @@ public class AutoAnalyzeModeTest {
      *   label, and link-in-text-block issues. Page state: 1
      */
     @Test
+    @TargetPages("https://qateam.dequecloud.com/attest/api/test.html")
     public void testWithIframesPage() {
+        WebDriver driver = DriverHolder.get();
         // Navigate to the website
-        driver.get("https://qateam.dequecloud.com/attest/api/test.html");
+        WatcherTimings.navigate(driver, TargetUrls.of("https://qateam.dequecloud.com/attest/api/test.html"));
          // Refresh the page
-        driver.navigate().refresh();
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().refresh());
     }
 
     /**
@@ -95,9 +75,12 @@ public class AutoAnalyzeModeTest {
      *  Page state: 4 https://abcdcomputech.dequecloud.com, https://abcdcomputech.dequecloud.com/support.php,  https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php and https://abcdcomputech.dequecloud.com/desktops.php
      */
     @Test
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/support.php",
+            "https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php", "https://abcdcomputech.dequecloud.com/desktops.php" })
     public void testSinglePageWithLinks() {
+        WebDriver driver = DriverHolder.get();
         // Navigate to the website
-        driver.get("https://abcdcomputech.dequecloud.com");
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
         
         // Perform click actions on navigation links
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(5) > a")).click();
@@ -114,10 +97,12 @@ public class AutoAnalyzeModeTest {
      *   Page state: 1 -https://qateam.dequecloud.com/testfiles/cleanpage.html
      */
 
-     @Test
+    @Test
+    @TargetPages("https://qateam.dequecloud.com/testfiles/cleanpage.html")
     public void testForCleanPage() {
+        WebDriver driver = DriverHolder.get();
         // Navigate to the website
-        driver.get("https://qateam.dequecloud.com/testfiles/cleanpage.html");
+        WatcherTimings.navigate(driver, TargetUrls.of("https://qateam.dequecloud.com/testfiles/cleanpage.html"));
         // Assert the title of the page
         String expectedTitle = "Test File - Clean Page";
         String actualTitle = driver.getTitle();
@@ -133,10 +118,11 @@ public class AutoAnalyzeModeTest {
      *   Page state: 1 -https://dequeuniversity.com/demo/mars
      */
 
-     @Test
+    @Test
     public void testForDynamicPage() {
+        WebDriver driver = DriverHolder.get();
         // Navigate to the website
-        driver.get("https://dequeuniversity.com/demo/mars/");
+        WatcherTimings.navigate(driver, TargetUrls.of("https://dequeuniversity.com/demo/mars/"));
         // Assert the title of the page
         String expectedTitle = "Mars Commuter: Travel to Mars for Work or Pleasure!";
         String actualTitle = driver.getTitle();
@@ -155,9 +141,11 @@ public class AutoAnalyzeModeTest {
      */
     
     @Test
+    @TargetPages("https://broken-workshop.dequelabs.com/")
     public void testForStaticPage() {
+        WebDriver driver = DriverHolder.get();
         // Navigate to the website
-        driver.get("https://broken-workshop.dequelabs.com/");
+        WatcherTimings.navigate(driver, TargetUrls.of("https://broken-workshop.dequelabs.com/"));
         // Assert the title of the page
         String expectedTitle = "[INSERT TITLE HERE]";
         String actualTitle = driver.getTitle();
@@ -173,27 +161,28 @@ public class AutoAnalyzeModeTest {
      *   Page state: 7 -https://dequeuniversity.com/demo/mars
      */
     @Test
-    public void marsDOMChangeTest() throws InterruptedException {
-        driver.get("https://dequeuniversity.com/demo/mars/");
-        Thread.sleep(1000);
+    public void marsDOMChangeTest() {
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://dequeuniversity.com/demo/mars/"));
+        DomQuietWait.untilQuiet(driver);
          // Assert the title of the page
          String expectedTitle = "Mars Commuter: Travel to Mars for Work or Pleasure!";
          String actualTitle = driver.getTitle();
          assert actualTitle.equals(expectedTitle) : "Expected title: " + expectedTitle + ", but got: " + actualTitle;
        
         driver.findElement(By.id("widget-controls-activities-label")).click();
-        Thread.sleep(1000);
+        DomQuietWait.untilQuiet(driver);
 
         driver.findElement(By.id("widget-controls-passes-label")).click();
-        Thread.sleep(1000);
+        DomQuietWait.untilQuiet(driver);
 
         driver.findElement(By.id("widget-controls-hotels-label")).click();
-        Thread.sleep(1000);
+        DomQuietWait.untilQuiet(driver);
 
         driver.findElement(By.id("widget-controls-reservations-label")).click();
-        Thread.sleep(1000);
+        DomQuietWait.untilQuiet(driver);
 
         driver.findElement(By.cssSelector("#route-type-radio-group > span:nth-child(2) > label")).click();
-        Thread.sleep(1000);
+        DomQuietWait.untilQuiet(driver);
     }
 }
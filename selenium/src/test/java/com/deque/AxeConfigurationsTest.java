@@ -1,25 +1,19 @@
 package com.deque;
 
-import java.util.Arrays;
-import java.util.HashMap;
-
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
+import org.testng.ITestResult;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
-import com.deque.axe_core.commons.AxeRuleOptions;
-import com.deque.axe_core.commons.AxeRunContext;
-import com.deque.axe_core.commons.AxeRunOnly;
-import com.deque.axe_core.commons.AxeRunOptions;
-import com.deque.axe_core.commons.AxeWatcherOptions;
-import com.deque.axe_core.selenium.AxeWatcher;
-import com.deque.axe_core.selenium.AxeWatcherDriver;
-import com.deque.util.EnvLoader;
-
-import io.github.bonigarcia.wdm.WebDriverManager;
+import com.deque.util.AsyncFlusher;
+import com.deque.util.DriverHolder;
+import com.deque.util.TargetPages;
+import com.deque.util.TargetUrls;
+import com.deque.util.WatcherDriverPool;
+import com.deque.util.WatcherOptionsFactory;
+import com.deque.util.WatcherPreset;
+import com.deque.util.WatcherTimings;
 
 /**
  * This class demonstrates the use of Axe Watcher configurations for accessibility testing.
@@ -28,36 +22,48 @@ import io.github.bonigarcia.wdm.WebDriverManager;
  */
 public class AxeConfigurationsTest {
 
-    private WebDriver driver;
+    // Presets for the data provider rows, built once per run
+    private static final WatcherPreset LABEL_AND_COLOR_CONTRAST_DISABLED = WatcherOptionsFactory.AUTO
+            .as("label-and-color-contrast-disabled").disableRules("label", "color-contrast");
+    private static final WatcherPreset INCLUDE_WCAG2AA_FAIL = WatcherOptionsFactory.AUTO
+            .as("include-wcag2aa-fail").include("#wcag2aa-fail");
+    private static final WatcherPreset INCLUDE_WCAG2AA_AND_WCAG21AA_FAIL = WatcherOptionsFactory.AUTO
+            .as("include-wcag2aa-and-wcag21aa-fail").include("#wcag2aa-fail", "#wcag21aa-fail");
+    private static final WatcherPreset EXCLUDE_WCAG2AA = WatcherOptionsFactory.AUTO
+            .as("exclude-wcag2aa").exclude("#wcag2aa");
+    private static final WatcherPreset EXCLUDE_WCAG2AA_AND_WCAG21AA_FAIL = WatcherOptionsFactory.AUTO
+            .as("exclude-wcag2aa-and-wcag21aa-fail").exclude("#wcag2aa-fail", "#wcag21aa-fail");
+    private static final WatcherPreset RUN_ONLY_COLOR_CONTRAST = WatcherOptionsFactory.AUTO
+            .as("run-only-color-contrast").runOnlyRules("color-contrast");
+    private static final WatcherPreset RUN_ONLY_COLOR_CONTRAST_AND_LABEL = WatcherOptionsFactory.AUTO
+            .as("run-only-color-contrast-and-label").runOnlyRules("color-contrast", "label");
+    private static final WatcherPreset RUN_ONLY_WCAG21AA = WatcherOptionsFactory.AUTO
+            .as("run-only-wcag21aa").runOnlyTags("wcag21aa");
+    private static final WatcherPreset RUN_ONLY_WCAG21AA_AND_WCAG2AA = WatcherOptionsFactory.AUTO
+            .as("run-only-wcag21aa-and-wcag2aa").runOnlyTags("wcag21aa", "wcag2aa");
 
     /**
-     * Cleans up after each test by quitting the WebDriver.
-     * Ensures that the browser is closed and the WebDriver instance is set to null.
+     * Cleans up after each test by handing the WebDriver to the {@link AsyncFlusher}.
+     *
+     * @param result The result of the test that used the WebDriver.
      */
     @AfterMethod
-    public void tearDown() {
+    public void tearDown(ITestResult result) {
+        WebDriver driver = DriverHolder.remove();
         if (driver != null) {
-            driver.quit();
-            driver = null; 
+            AsyncFlusher.shared().submit(driver, result);
         }
     }
 
     /**
      * Provides different configurations for Axe Watcher using a data provider.
-     * Each configuration includes API key, server URL, and specific run options or contexts.
+     * Each configuration is a {@link WatcherPreset} with specific run options or contexts;
+     * the API key, server URL and build id are added by {@link WatcherOptionsFactory}.
      *
-     * @return A 2D array of {@link AxeWatcherOptions} objects with different configurations.
+     * @return A 2D array of {@link WatcherPreset} objects with different configurations.
      */
     @DataProvider(name = "axeConfigurations")
     public Object[][] provideConfigurations() {
-        // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
-        String apiKey = EnvLoader.get("API_KEY");
-        String serverUrl = EnvLoader.get("SERVER_URL");
-
         // Create different configurations for Axe Watcher
         return new Object[][] {
             /**
@@ -67,65 +73,28 @@ public class AxeConfigurationsTest {
              * - Issue page: Identifies failure rules such as auto-complete-valid, aria-allowed-attribute,   
              *   label, and link-in-text-block issues. Page state: 1
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setRunOptions(
-                        new AxeRunOptions().setRules(new HashMap<String, AxeRuleOptions>() {{
-                            put("color-contrast", new AxeRuleOptions().setEnabled(false));
-                        }})
-                    )
-            },
+            { WatcherOptionsFactory.COLOR_CONTRAST_DISABLED },
              /**
              * Test method to demonstrate the use of the disable multiple rules from the scan results 
              * Expected Results:
              * - Branches and Commits page: Displays a new branch card, A11y threshold of 4, 1 page state, and the latest Axe Core/Watcher versions.
              * - Issue page: Identifies failure rules such as auto-complete-valid, aria-allowed-attribute and link-in-text-block issues. Page state: 1
              */
-            {
-                 new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setRunOptions(
-                        new AxeRunOptions().setRules(new HashMap<String, AxeRuleOptions>() {{
-                            put("label", new AxeRuleOptions().setEnabled(false));
-                            put("color-contrast", new AxeRuleOptions().setEnabled(false));
-                        }})
-                    )
-            },
+            { LABEL_AND_COLOR_CONTRAST_DISABLED },
             /**
              * Test method to demonstrate the use of the scope of particular element that only can be included  from the scan results 
              * Expected Results:
              * - Branches and Commits page: Displays a new branch card, A11y threshold of 1, 1 page state, and the latest Axe Core/Watcher versions.
              * - Issue page: Identifies failure rules such as color-contrast. Page state: 1
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setRunContext(
-                        new AxeRunContext().setInclude(Arrays.<String>asList("#wcag2aa-fail"))
-                    )
-            },
+            { INCLUDE_WCAG2AA_FAIL },
              /**
              * Test method to demonstrate the use of the scope of particular elements that only can be included  from the scan results 
              * Expected Results:
              * - Branches and Commits page: Displays a new branch card, A11y threshold of 2, 1 page state, and the latest Axe Core/Watcher versions.
              * - Issue page: Identifies failure rules such as color-contrast and autocomplete-valid Page state: 1
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setRunContext(
-                        new AxeRunContext().setInclude(Arrays.<String>asList("#wcag2aa-fail", "#wcag21aa-fail"))
-                    )
-            },
+            { INCLUDE_WCAG2AA_AND_WCAG21AA_FAIL },
              /**
              * Test method to demonstrate the use of the scope of particular element that only can be excluded  from the scan results 
              * Expected Results: (except color-contrast issue all the other issues can be foound)
@@ -133,142 +102,61 @@ public class AxeConfigurationsTest {
              * - Issue page: Identifies failure rules such as auto-complete-valid, aria-allowed-attribute,   
              *   label, and link-in-text-block issues. Page state: 1
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setRunContext(
-                        new AxeRunContext().setExclude(Arrays.<String>asList("#wcag2aa"))
-                    )
-            },
+            { EXCLUDE_WCAG2AA },
              /**
              * Test method to demonstrate the use of the scope of particular elements that only can be excluded  from the scan results 
              * Expected Results: (except color-contrast and autocomplete-valid issues all the other issues can be foound)
              * - Branches and Commits page: Displays a new branch card,  A11y threshold of 4, 1 page state, and the latest Axe Core/Watcher versions.
              * - Issue page: Identifies failure rules such as  aria-allowed-attribute, label, and link-in-text-block issues. Page state: 1
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setRunContext(
-                        new AxeRunContext().setExclude(Arrays.<String>asList("#wcag2aa-fail", "#wcag21aa-fail"))
-                    )
-            },
+            { EXCLUDE_WCAG2AA_AND_WCAG21AA_FAIL },
              /**
              * Test method to demonstrate the use of the runoption runonly rule  from the scan results 
              * Expected Results: (only color-contrast  issues appeared all the other issues cannot be foound)
              * - Branches and Commits page: Displays a new branch card,  A11y threshold of 1, 1 page state, and the latest Axe Core/Watcher versions.
              * - Issue page: Identifies failure rules such as color-contrast issues. Page state: 1
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                   .setRunOptions(
-                           new AxeRunOptions()
-                                   .setRules(new HashMap<String, AxeRuleOptions>() 
-                                   {{
-                                    put("color-contrast", new AxeRuleOptions().setEnabled(true));
-                                }})
-                                   .setRunOnly(new AxeRunOnly()
-                                           .setType("rule")
-                                           .setValues(Arrays.asList("color-contrast"))))
-                            
-            },
+            { RUN_ONLY_COLOR_CONTRAST },
             /**
              * Test method to demonstrate the use of the runoption runonly rules  from the scan results 
              * Expected Results: (only color-contrast and label rule  issues only appeared all the other issues cannot be foound)
              * - Branches and Commits page: Displays a new branch card,  A11y threshold of 2, 1 page state, and the latest Axe Core/Watcher versions.
              * - Issue page: Identifies failure rules such as color-contrast and label issues. Page state: 1
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                   .setRunOptions(
-                           new AxeRunOptions()
-                                   .setRules(new HashMap<String, AxeRuleOptions>() 
-                                   {{
-                                    put("color-contrast", new AxeRuleOptions().setEnabled(true));
-                                    put("label", new AxeRuleOptions().setEnabled(true));
-                                }})
-                                   .setRunOnly(new AxeRunOnly()
-                                           .setType("rule")
-                                           .setValues(Arrays.asList("color-contrast","label"))))
-                            
-            },
+            { RUN_ONLY_COLOR_CONTRAST_AND_LABEL },
             /**
              * Test method to demonstrate the use of the runoption runonly standargs(tags)  from the scan results 
              * Expected Results: (only wcag21aa standard  rules  issues  appeared all the other issues cannot be foound)
              * - Branches and Commits page: Displays a new branch card,  A11y threshold of 1, 1 page state, and the latest Axe Core/Watcher versions.
              * - Issue page: Identifies failure rules such as autocomplete-valid issues. Page state: 1
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                   .setRunOptions(
-                           new AxeRunOptions()
-                                   .setRules(new HashMap<String, AxeRuleOptions>() 
-                                   {{
-                                    
-                                }})
-                                   .setRunOnly(new AxeRunOnly()
-                                           .setType("tag")
-                                           .setValues(Arrays.asList("wcag21aa"))))
-                            
-            },
+            { RUN_ONLY_WCAG21AA },
              /**
              * Test method to demonstrate the use of the runoption runonly multiple standargs(tags)  from the scan results 
              * Expected Results: (only wcag21aa & wcag2aa standard  rules  issues  appeared all the other issues cannot be foound)
              * - Branches and Commits page: Displays a new branch card,  A11y threshold of 2, 1 page state, and the latest Axe Core/Watcher versions.
              * - Issue page: Identifies failure rules such as autocomplete-valid and color-contrast issues. Page state: 1
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                   .setRunOptions(
-                           new AxeRunOptions()
-                                   .setRules(new HashMap<String, AxeRuleOptions>() 
-                                   {{
-                                    
-                                }})
-                                   .setRunOnly(new AxeRunOnly()
-                                           .setType("tag")
-                                           .setValues(Arrays.asList("wcag21aa","wcag2aa"))))
-                            
-            },
+            { RUN_ONLY_WCAG21AA_AND_WCAG2AA },
             
         };
     }
 
     /**
      * Executes accessibility tests using different Axe Watcher configurations.
-     * The test navigates to a sample page and flushes the Axe Watcher results.
+     * The test navigates to a sample page; its Axe Watcher results are flushed by the tearDown.
      *
-     * @param options The {@link AxeWatcherOptions} object containing the configuration for the test.
+     * @param preset The {@link WatcherPreset} containing the configuration for the test.
      * @throws InterruptedException If the thread is interrupted during execution.
      */
     @Test(dataProvider = "axeConfigurations")
-    public void testAxeConfigurations(AxeWatcherOptions options) throws InterruptedException {
-        // Initialize Axe Watcher with the provided options
-        AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-
-        // Set up WebDriver using WebDriverManager and Axe Watcher
-        WebDriverManager.chromedriver().setup();
-        ChromeOptions chromeOptions = watcher.configure(new ChromeOptions());
-        driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
+    @TargetPages("https://qateam.dequecloud.com/attest/api/test.html")
+    public void testAxeConfigurations(WatcherPreset preset) throws InterruptedException {
+        // Borrow a WebDriver configured with the provided preset from the shared pool for this thread
+        WebDriver driver = WatcherDriverPool.shared().acquire(preset);
+        DriverHolder.set(driver);
 
-        // Navigate to the test page and flush Axe Watcher results
-        driver.get("https://qateam.dequecloud.com/attest/api/test.html");
-        ((AxeWatcherDriver) driver).axeWatcher().flush();
+        // Navigate to the test page, the results are flushed once the driver is handed back
+        WatcherTimings.navigate(driver, TargetUrls.of("https://qateam.dequecloud.com/attest/api/test.html"));
     }
 }
\ No newline at end of file
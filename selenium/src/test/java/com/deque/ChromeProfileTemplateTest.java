@@ -0,0 +1,71 @@
+package com.deque;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.Test;
+
+import com.deque.util.ChromeProfileTemplate;
+
+/**
+ * This class verifies how Chrome profile templates are cloned and cleaned up, without a browser.
+ */
+public class ChromeProfileTemplateTest {
+
+    /**
+     * A clone hard links LevelDB tables, copies files Chrome changes in place and leaves out locks and caches.
+     */
+    @Test
+    public void clonesWithoutLocksAndCaches() throws IOException {
+        Path template = Files.createTempDirectory("chrome-template");
+        write(template.resolve("Local State"), "{}");
+        write(template.resolve("Default/Preferences"), "{\"extensions\":{}}");
+        write(template.resolve("Default/Cookies"), "sqlite");
+        write(template.resolve("Default/Local Extension Settings/abc/000005.ldb"), "table");
+        write(template.resolve("Default/Local Extension Settings/abc/LOCK"), "");
+        write(template.resolve("Default/Cache/Cache_Data/data_0"), "cache");
+        write(template.resolve("SingletonLock"), "host-1234");
+
+        Path clone = ChromeProfileTemplate.cloneOf(template, template.getParent().resolve(template.getFileName() + "-clone"));
+
+        assert Files.exists(clone.resolve("Local State"));
+        assert Files.exists(clone.resolve("Default/Preferences"));
+        Path table = clone.resolve("Default/Local Extension Settings/abc/000005.ldb");
+        assert Files.isSameFile(table, template.resolve("Default/Local Extension Settings/abc/000005.ldb"))
+                : "Expected the LevelDB table to be hard linked";
+        assert !Files.exists(clone.resolve("Default/Local Extension Settings/abc/LOCK"));
+        assert !Files.exists(clone.resolve("Default/Cache")) : "Expected caches to be left out";
+        assert !Files.exists(clone.resolve("SingletonLock")) : "Expected the profile lock to be left out";
+
+        write(clone.resolve("Default/Cookies"), "changed");
+        assert new String(Files.readAllBytes(template.resolve("Default/Cookies")), StandardCharsets.UTF_8).equals("sqlite")
+                : "Expected writes to a clone to leave the template unchanged";
+    }
+
+    /**
+     * Profiles of JVMs that are gone are deleted, those of running JVMs and other directories are kept.
+     */
+    @Test
+    public void removesProfilesOfExitedJvms() throws IOException {
+        Path root = Files.createTempDirectory("chrome-profiles");
+        long running = ProcessHandle.current().pid();
+        long exited = Long.MAX_VALUE;
+        write(root.resolve(running + "/session-1/Local State"), "{}");
+        write(root.resolve(exited + "/session-1/Local State"), "{}");
+        write(root.resolve("notes/readme.txt"), "kept");
+
+        int removed = ChromeProfileTemplate.removeStale(root);
+
+        assert removed == 1 : "Expected 1 removed directory, but got: " + removed;
+        assert !Files.exists(root.resolve(Long.toString(exited)));
+        assert Files.exists(root.resolve(running + "/session-1/Local State"));
+        assert Files.exists(root.resolve("notes/readme.txt"));
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
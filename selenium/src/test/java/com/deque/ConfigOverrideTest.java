@@ -1,19 +1,20 @@
 package com.deque;
 
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.testng.annotations.AfterClass;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
-import com.deque.axe_core.commons.AxeWatcherOptions;
 import com.deque.axe_core.commons.ConfigurationOverrides;
-import com.deque.axe_core.selenium.AxeWatcher;
-import com.deque.axe_core.selenium.AxeWatcherDriver;
-import com.deque.util.EnvLoader;
-
-import io.github.bonigarcia.wdm.WebDriverManager;
+import com.deque.util.AsyncFlusher;
+import com.deque.util.DriverHolder;
+import com.deque.util.TargetPages;
+import com.deque.util.TargetUrls;
+import com.deque.util.WatcherDriverPool;
+import com.deque.util.WatcherOptionsFactory;
+import com.deque.util.WatcherPreset;
+import com.deque.util.WatcherTimings;
 
 /**
  * This class demonstrates the use of Axe Watcher configurations for accessibility testing.
@@ -22,38 +23,38 @@ import io.github.bonigarcia.wdm.WebDriverManager;
  */
 public class ConfigOverrideTest {
 
-    private WebDriver driver;
+    // Presets for the data provider rows, built once per run
+    private static final WatcherPreset AXE_CORE_4_8 = WatcherOptionsFactory.AUTO
+            .as("axe-core-4.8.0").axeCoreVersion("4.8.0");
+    private static final WatcherPreset WCAG22AAA = WatcherOptionsFactory.AUTO
+            .as("wcag22aaa").accessibilityStandard(ConfigurationOverrides.AccessibilityStandard.WCAG22AAA);
+    private static final WatcherPreset EXPERIMENTAL_RULES = WatcherOptionsFactory.AUTO
+            .as("experimental-rules").experimentalRules(true);
+    private static final WatcherPreset BEST_PRACTICES = WatcherOptionsFactory.AUTO
+            .as("best-practices").bestPractices(true);
 
     /**
-     * Cleans up after each test by quitting the WebDriver.
-     * Ensures that the browser is closed and the WebDriver instance is set to null.
+     * Cleans up after each test by handing the WebDriver to the {@link AsyncFlusher}.
+     *
+     * @param result The result of the test that used the WebDriver.
      */
-    @AfterClass
-    public void tearDown() {
+    @AfterMethod
+    public void tearDown(ITestResult result) {
+        WebDriver driver = DriverHolder.remove();
         if (driver != null) {
-            driver.quit();
-            driver = null; 
+            AsyncFlusher.shared().submit(driver, result);
         }
     }
 
     /**
      * Provides different configurations for Axe Watcher using a data provider.
-     * Each configuration includes API key, server URL, and specific run options or contexts.
+     * Each configuration is a {@link WatcherPreset} with specific configuration overrides;
+     * the API key, server URL and build id are added by {@link WatcherOptionsFactory}.
      *
-     * @return A 2D array of {@link AxeWatcherOptions} objects with different configurations.
+     * @return A 2D array of {@link WatcherPreset} objects with different configurations.
      */
     @DataProvider(name = "configureOverrides")
     public Object[][] provideConfigurations() {
-        // Load environment variables
-        // Generate a unique run ID if not provided
-        // This is useful for identifying the test run in the Axe Watcher dashboard.
-        // The run ID is generated randomly if not set in the environment variables used to group results for a specific test run.
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
-        String apiKey = EnvLoader.get("API_KEY");
-        String serverUrl = EnvLoader.get("SERVER_URL");
         return new Object[][] {
              /**
              * This configuration overrides the axe-core version already holding with the specified override version
@@ -63,14 +64,7 @@ public class ConfigOverrideTest {
              * - Issue page: Identifies failure rules such as  color-contrast, image-alt, label, link-in-text-block, link-name.
              *  Page state: 1 https://abcdcomputech.dequecloud.com
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setConfigurationOverrides(
-                           new ConfigurationOverrides().setAxeCoreVersion("4.8.0"))
-              },
+            { AXE_CORE_4_8 },
              /**
              * This configuration overrides the accessibility stantdard already holding with the specified override standard
              * in this case it is WCAG22AAA. so that we can see the results related to wcag 2.2 AAA. if any on the test page, target-size issues
@@ -79,15 +73,7 @@ public class ConfigOverrideTest {
              * - Issue page: Identifies failure rules such as  color-contrast, image-alt, label, link-in-text-block, link-name, target-size.
              *  Page state: 1 https://abcdcomputech.dequecloud.com
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setConfigurationOverrides(
-                     new ConfigurationOverrides()
-                             .setAccessibilityStandard(ConfigurationOverrides.AccessibilityStandard.WCAG22AAA))
-            },
+            { WCAG22AAA },
              /**
              * This configuration overrides the experimental rules enabled/disabled already holding with the specified override enabled/diabled status
              * in this case it is we are enabling to show the experimental issues on the page if any. If there is no experimental issues on the page results cannot be shown as swtiched status
@@ -96,14 +82,7 @@ public class ConfigOverrideTest {
              * - Issue page: Identifies failure rules such as  color-contrast, image-alt, label, link-in-text-block, link-name.
              *  Page state: 1 https://abcdcomputech.dequecloud.com
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setConfigurationOverrides(
-                     new ConfigurationOverrides().setEnableExperimental(true))
-            },
+            { EXPERIMENTAL_RULES },
               /**
              * This configuration overrides the best-practice rules enabled/disabled already holding with the specified override enabled/diabled status
              * in this case it is we are enabling to show the best-practice issues on the page if any. If there is no experimental issues on the page results cannot be shown as swtiched status
@@ -112,36 +91,25 @@ public class ConfigOverrideTest {
              * - Issue page: Identifies failure rules such as  color-contrast, heading-order, image-alt, label, landmark-one-main,link-in-text-block, link-name and region.
              *  Page state: 1 https://abcdcomputech.dequecloud.com
              */
-            {
-                new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setConfigurationOverrides(
-                     new ConfigurationOverrides().setEnableBestPractices(true))
-            },
+            { BEST_PRACTICES },
         };
     }
 
     /**
      * Executes accessibility tests using different Axe Watcher configurations.
-     * The test navigates to a sample page and flushes the Axe Watcher results.
+     * The test navigates to a sample page; its Axe Watcher results are flushed by the tearDown.
      *
-     * @param options The {@link AxeWatcherOptions} object containing the configuration for the test.
+     * @param preset The {@link WatcherPreset} containing the configuration for the test.
      * @throws InterruptedException If the thread is interrupted during execution.
      */
     @Test(dataProvider = "configureOverrides")
-    public void testWithDifferentConfigurations(AxeWatcherOptions options) throws InterruptedException {
-        // Initialize Axe Watcher with the provided options
-        AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-
-        // Set up WebDriver using WebDriverManager and Axe Watcher
-        WebDriverManager.chromedriver().setup();
-        ChromeOptions chromeOptions = watcher.configure(new ChromeOptions());
-        driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
+    @TargetPages("https://abcdcomputech.dequecloud.com")
+    public void testWithDifferentConfigurations(WatcherPreset preset) throws InterruptedException {
+        // Borrow a WebDriver configured with the provided preset from the shared pool for this thread
+        WebDriver driver = WatcherDriverPool.shared().acquire(preset);
+        DriverHolder.set(driver);
 
-        // Navigate to the test page and flush Axe Watcher results
-        driver.get("https://abcdcomputech.dequecloud.com");
-        ((AxeWatcherDriver) driver).axeWatcher().flush();
+        // Navigate to the test page, the results are flushed once the driver is handed back
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.deque;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.TreeSet;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.deque.util.CrawlCheckpoint;
+
+/**
+ * This class verifies the crawl checkpoint without a browser.
+ * It checks that the low-water mark only moves over contiguous completed or failed lines and survives a restart.
+ */
+public class CrawlCheckpointTest {
+
+    private Path file;
+
+    /**
+     * Uses a fresh checkpoint file for each test.
+     */
+    @BeforeMethod
+    public void setUp() throws IOException {
+        file = Files.createTempDirectory("crawl-checkpoint").resolve("urls.txt.checkpoint");
+    }
+
+    /**
+     * Lines completed out of order only advance the mark once the gap before them is closed.
+     */
+    @Test
+    public void advancesOverContiguousLines() {
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(file, "urls.txt");
+
+        checkpoint.complete(1);
+        checkpoint.complete(2);
+        assert checkpoint.nextLine() == 0 : "Expected mark 0 while line 0 is pending, but got: " + checkpoint.nextLine();
+
+        checkpoint.complete(0);
+        assert checkpoint.nextLine() == 3 : "Expected mark 3, but got: " + checkpoint.nextLine();
+    }
+
+    /**
+     * A reloaded checkpoint resumes at the persisted mark.
+     */
+    @Test
+    public void resumesAfterRestart() {
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(file, "urls.txt");
+        checkpoint.complete(0);
+        checkpoint.complete(1);
+        checkpoint.complete(3);
+
+        CrawlCheckpoint reloaded = CrawlCheckpoint.load(file, "urls.txt");
+        assert reloaded.nextLine() == 2 : "Expected to resume at line 2, but got: " + reloaded.nextLine();
+    }
+
+    /**
+     * The lines of a worker that dies mid-batch are failed: the mark moves past them, so later lines are not
+     * held in memory, and they stay in the checkpoint until a later run completes them.
+     */
+    @Test
+    public void failsLinesOfWorkerThatDiedMidBatch() {
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(file, "urls.txt");
+        checkpoint.complete(0);
+        // Another worker got further while the dying one held lines 1 and 2
+        checkpoint.complete(3);
+        checkpoint.complete(4);
+        assert checkpoint.nextLine() == 1;
+
+        checkpoint.fail(1);
+        checkpoint.fail(2);
+        assert checkpoint.nextLine() == 5 : "Expected the mark to move past the failed lines, but got: " + checkpoint.nextLine();
+
+        CrawlCheckpoint reloaded = CrawlCheckpoint.load(file, "urls.txt");
+        assert reloaded.nextLine() == 5 : "Expected to resume at line 5, but got: " + reloaded.nextLine();
+        assert reloaded.isFailed(1) && reloaded.isFailed(2) && !reloaded.isFailed(3);
+
+        reloaded.complete(1);
+        CrawlCheckpoint retried = CrawlCheckpoint.load(file, "urls.txt");
+        assert retried.failedLines().equals(new TreeSet<>(Collections.singleton(2L)))
+                : "Expected only line 2 to be left, but got: " + retried.failedLines();
+        assert retried.nextLine() == 5;
+    }
+
+    /**
+     * A checkpoint written for another URL list is ignored.
+     */
+    @Test
+    public void ignoresCheckpointOfOtherList() {
+        CrawlCheckpoint.load(file, "urls.txt").complete(0);
+
+        assert CrawlCheckpoint.load(file, "other.txt").nextLine() == 0;
+    }
+}
@@ -0,0 +1,133 @@
+package com.deque;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.openqa.selenium.WebDriver;
+import org.testng.annotations.Test;
+
+import com.deque.axe_core.commons.AxeWatcherOptions;
+import com.deque.util.CrawlCheckpoint;
+import com.deque.util.CrawlRunner;
+import com.deque.util.MemoryWatchdog;
+import com.deque.util.WatcherDriverPool;
+
+/**
+ * This class verifies the crawl loop without a browser.
+ * The pool hands out stand-in drivers that record the pages they load, and {@code analyze()} and
+ * {@code flush()} are replaced by callbacks.
+ */
+public class CrawlRunnerTest {
+
+    /**
+     * Without an analyze cache every loaded page is analyzed once and counted as scanned.
+     */
+    @Test
+    public void analyzesEveryPageWithoutCache() throws IOException {
+        Path urls = urlList("https://example.test/1", "# comment", "https://example.test/2", "",
+                "https://example.test/3", "https://example.test/4", "https://example.test/5");
+        ConcurrentLinkedQueue<String> loaded = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<String> analyzed = new ConcurrentLinkedQueue<>();
+        int[] flushes = { 0 };
+
+        CrawlRunner.Summary summary = new CrawlRunner(urls, null, new StandInPool(loaded),
+                driver -> analyzed.add(driver.getCurrentUrl()), driver -> flushes[0]++)
+                .setConcurrency(1)
+                .setBatchSize(2)
+                .run();
+
+        assert summary.getScanned() == 5 : "Expected 5 scanned pages, but got: " + summary;
+        assert analyzed.size() == 5 : "Expected one analyze() per page, but got: " + analyzed;
+        assert analyzed.containsAll(loaded) : "Expected every loaded page to be analyzed: " + analyzed;
+        assert flushes[0] == 3 : "Expected 3 batches to be flushed, but got: " + flushes[0];
+    }
+
+    /**
+     * A batch that cannot be flushed does not stop the crawl; its pages are failed in the checkpoint and are
+     * the only ones crawled by the next run.
+     */
+    @Test
+    public void failsBatchThatCannotBeFlushed() throws IOException {
+        Path urls = urlList("https://example.test/1", "https://example.test/2", "https://example.test/3",
+                "https://example.test/4");
+        Path checkpointFile = urls.resolveSibling("urls.txt.checkpoint");
+        int[] flushes = { 0 };
+
+        CrawlRunner.Summary first = new CrawlRunner(urls, null, new StandInPool(new ConcurrentLinkedQueue<>()),
+                driver -> { }, driver -> {
+                    if (flushes[0]++ == 0) {
+                        throw new IllegalStateException("Watcher server unavailable");
+                    }
+                })
+                .setConcurrency(1)
+                .setBatchSize(2)
+                .setCheckpoint(checkpointFile)
+                .run();
+
+        assert first.getFailed() == 2 : "Expected the 2 pages of the first batch to fail, but got: " + first;
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(checkpointFile, urls.toAbsolutePath().toString());
+        assert checkpoint.nextLine() == 4 : "Expected the whole list to be passed, but got: " + checkpoint.nextLine();
+        assert checkpoint.isFailed(0) && checkpoint.isFailed(1) : "Expected lines 0 and 1 to be failed";
+
+        ConcurrentLinkedQueue<String> loaded = new ConcurrentLinkedQueue<>();
+        CrawlRunner.Summary second = new CrawlRunner(urls, null, new StandInPool(loaded), driver -> { }, driver -> { })
+                .setConcurrency(1)
+                .setCheckpoint(checkpointFile)
+                .run();
+
+        assert loaded.size() == 2 && loaded.contains("https://example.test/1") && loaded.contains("https://example.test/2")
+                : "Expected only the failed pages to be crawled again, but got: " + loaded;
+        assert second.getFailed() == 0 : "Unexpected failures: " + second;
+        assert CrawlCheckpoint.load(checkpointFile, urls.toAbsolutePath().toString()).failedLines().isEmpty();
+    }
+
+    private static Path urlList(String... lines) throws IOException {
+        Path file = Files.createTempDirectory("crawl-runner").resolve("urls.txt");
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * A pool of stand-in drivers that remember the last URL they loaded.
+     */
+    static final class StandInPool extends WatcherDriverPool {
+        private final ConcurrentLinkedQueue<String> loaded;
+
+        StandInPool(ConcurrentLinkedQueue<String> loaded) {
+            super(0, new MemoryWatchdog(0, 0, 0, null));
+            this.loaded = loaded;
+        }
+
+        @Override
+        public WebDriver acquire(AxeWatcherOptions options) {
+            String[] current = { "about:blank" };
+            return (WebDriver) Proxy.newProxyInstance(WebDriver.class.getClassLoader(), new Class<?>[] { WebDriver.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "get":
+                                current[0] = (String) args[0];
+                                loaded.add(current[0]);
+                                return null;
+                            case "getCurrentUrl":
+                                return current[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        @Override
+        public void release(WebDriver driver) {
+            // Stand-in drivers hold no browser
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.deque;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.deque.util.ExcludeUrlMatcher;
+
+/**
+ * This class verifies the local exclude-URL matcher without a browser.
+ */
+public class ExcludeUrlMatcherTest {
+
+    private static final String HOME = "https://abcdcomputech.dequecloud.com/";
+    private static final String CART = "https://abcdcomputech.dequecloud.com/cart.php";
+
+    /**
+     * Literal patterns match the same URL, with or without a trailing slash.
+     */
+    @Test
+    public void matchesLiterals() {
+        ExcludeUrlMatcher matcher = ExcludeUrlMatcher.compile("https://abcdcomputech.dequecloud.com");
+
+        assert matcher.excludes(HOME) : "Expected the home page to be excluded";
+        assert matcher.excludes("https://abcdcomputech.dequecloud.com");
+        assert !matcher.excludes(CART) : "Expected the cart page not to be excluded";
+    }
+
+    /**
+     * The globs used by ExcludeUrlTest exclude the same pages Watcher does.
+     */
+    @Test
+    public void matchesGlobs() {
+        ExcludeUrlMatcher someUrls = ExcludeUrlMatcher.compile("https://abcdcomputech.dequecloud.com/*.*");
+        assert someUrls.excludes(CART) : "Expected the cart page to be excluded";
+        assert !someUrls.excludes(HOME) : "Expected the home page not to be excluded";
+        assert !someUrls.excludes(HOME + "category/laptops.php") : "Expected * not to cross a slash";
+
+        ExcludeUrlMatcher allUrls = ExcludeUrlMatcher.compile("**/*.*");
+        assert allUrls.excludes(HOME);
+        assert allUrls.excludes(CART);
+        assert allUrls.excludes(HOME + "category/laptops.php");
+
+        ExcludeUrlMatcher nothing = ExcludeUrlMatcher.compile(" ", "Google Page", "");
+        assert !nothing.excludes(HOME) && !nothing.excludes(CART) : "Expected blank and unrelated patterns to match nothing";
+        assert !ExcludeUrlMatcher.none().excludes(CART);
+
+        ExcludeUrlMatcher single = ExcludeUrlMatcher.compile(HOME + "cart.ph?", HOME + "**/laptops.php");
+        assert single.excludes(CART);
+        assert single.excludes(HOME + "laptops.php") : "Expected **/ to also match no directory";
+        assert single.excludes(HOME + "category/new/laptops.php");
+        assert !single.excludes(HOME + "cart.phpx");
+    }
+
+    /**
+     * Syntax that Watcher's globs do not support is rejected when compiling.
+     */
+    @Test
+    public void rejectsUnsupportedSyntax() {
+        for (String pattern : new String[] { HOME + "[ab].php", HOME + "{cart,home}.php", HOME + "***" }) {
+            try {
+                ExcludeUrlMatcher.compile(HOME, pattern);
+                assert false : "Expected " + pattern + " to be rejected";
+            } catch (IllegalStateException e) {
+                assert e.getMessage().contains(pattern) : "Unexpected message: " + e.getMessage();
+            }
+        }
+    }
+
+    /**
+     * A large pattern list gives the same answers as checking the patterns one by one.
+     */
+    @Test
+    public void matchesManyPatterns() {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            patterns.add(i % 2 == 0 ? HOME + "product-" + i + ".php" : HOME + "category-" + i + "/*.php");
+        }
+        ExcludeUrlMatcher matcher = ExcludeUrlMatcher.compile(patterns);
+
+        assert matcher.excludes(HOME + "product-42.php");
+        assert !matcher.excludes(HOME + "product-43.php");
+        assert matcher.excludes(HOME + "category-9999/laptops.php");
+        assert !matcher.excludes(HOME + "category-9998/laptops.php");
+        assert !matcher.excludes(HOME + "category-9999/new/laptops.php");
+        assert matcher.patterns().length == 10_000;
+    }
+}
@@ -2,18 +2,19 @@ package com.deque;
 
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
+import org.testng.ITestResult;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
-import com.deque.axe_core.commons.AxeWatcherOptions;
-import com.deque.axe_core.selenium.AxeWatcher;
-import com.deque.axe_core.selenium.AxeWatcherDriver;
-import com.deque.util.EnvLoader;
-
-import io.github.bonigarcia.wdm.WebDriverManager;
+import com.deque.util.AsyncFlusher;
+import com.deque.util.DriverHolder;
+import com.deque.util.TargetPages;
+import com.deque.util.TargetUrls;
+import com.deque.util.WatcherDriverPool;
+import com.deque.util.WatcherOptionsFactory;
+import com.deque.util.WatcherPreset;
+import com.deque.util.WatcherTimings;
 
 /**
  * This class demonstrates the use of Axe Watcher configurations for accessibility testing.
@@ -22,39 +23,28 @@ import io.github.bonigarcia.wdm.WebDriverManager;
  */
 public class ExcludeUrlTest {
 
-    private WebDriver driver;
-
     /**
-     * Cleans up after each test by quitting the WebDriver.
-     * Ensures that the browser is closed and the WebDriver instance is set to null.
+     * Cleans up after each test by handing the WebDriver to the {@link AsyncFlusher}.
+     *
+     * @param result The result of the test that used the WebDriver.
      */
     @AfterMethod
-    public void tearDown() {
+    public void tearDown(ITestResult result) {
+        WebDriver driver = DriverHolder.remove();
         if (driver != null) {
-            ((AxeWatcherDriver) driver).axeWatcher().flush();
-            driver.quit();
-            driver = null; 
+            AsyncFlusher.shared().submit(driver, result);
         }
     }
 
     /**
      * Provides different configurations for Axe Watcher using a data provider.
-     * Each configuration includes API key, server URL, and different patterns for excluding the scanned urls.
+     * Each configuration is a {@link WatcherPreset} with different patterns for excluding the scanned urls;
+     * the API key, server URL and build id are added by {@link WatcherOptionsFactory}.
      *
-     * @return A 2D array of {@link AxeWatcherOptions} objects with different configurations.
+     * @return A 2D array of configuration names and {@link WatcherPreset} objects.
      */
     @DataProvider(name = "excludeUrlConfigurations")
     public Object[][] provideConfigurations() {
-        // Load environment variables
-        // Generate a unique run ID if not provided
-        // This is useful for identifying the test run in the Axe Watcher dashboard.
-        // The run ID is generated randomly if not set in the environment variables used to group results for a specific test run.
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
-        String apiKey = EnvLoader.get("API_KEY");
-        String serverUrl = EnvLoader.get("SERVER_URL");
         return new Object[][] {
             /**
              * This configuration excludes URLs that match the pattern "https://abcdcomputech.dequecloud.com".
@@ -64,12 +54,8 @@ public class ExcludeUrlTest {
              * - Issue page: Identifies failure rules such as  color-contrast, image-alt, label, link-in-text-block, link-name, input-image-alt and marque issues.
              Page state: 4 https://abcdcomputech.dequecloud.com/cart.php, https://abcdcomputech.dequecloud.com/support.php,  https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php and https://abcdcomputech.dequecloud.com/desktops.php
              */
-            { "ExclueSingleUrl", new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setExcludeUrlPatterns(new String[]{"https://abcdcomputech.dequecloud.com"})
-              },
+            { "ExclueSingleUrl", WatcherOptionsFactory.AUTO.as("ExclueSingleUrl")
+                    .excludeUrls(TargetUrls.of("https://abcdcomputech.dequecloud.com")) },
              /**
              * This configuration excludes more than one URLs that match the pattern.
              * Actual scans done on 5 pages but as we excluded "https://abcdcomputech.dequecloud.com/desktops.php" , "https://abcdcomputech.dequecloud.com/support.php" , 
@@ -79,12 +65,8 @@ public class ExcludeUrlTest {
              * - Issue page: Identifies failure rules such as  color-contrast, image-alt, label, link-in-text-block, link-name issues.
              Page state: 3 https://abcdcomputech.dequecloud.com  https://abcdcomputech.dequecloud.com/cart.php and https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php 
              */
-            {"ExcludeMultiUrl", new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setExcludeUrlPatterns(new String[]{"https://abcdcomputech.dequecloud.com/desktops.php" , "https://abcdcomputech.dequecloud.com/support.php"})
-            },
+            { "ExcludeMultiUrl", WatcherOptionsFactory.AUTO.as("ExcludeMultiUrl")
+                    .excludeUrls(TargetUrls.of("https://abcdcomputech.dequecloud.com/desktops.php"), TargetUrls.of("https://abcdcomputech.dequecloud.com/support.php")) },
               /**
              * This configuration excludes  URLs that match the pattern.
              * Actual scans done on 5 pages but as we excluded  all the other urls with pattern match - "https://abcdcomputech.dequecloud.com/*.* *"" , 
@@ -94,12 +76,8 @@ public class ExcludeUrlTest {
              * - Issue page: Identifies failure rules such as  color-contrast, image-alt, label, link-in-text-block, link-name issues.
              Page state: 1 https://abcdcomputech.dequecloud.com  
              */
-            {"ExcludeUrlwithPatter", new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setExcludeUrlPatterns(new String[]{"https://abcdcomputech.dequecloud.com/*.*"})
-            },
+            { "ExcludeUrlwithPatter", WatcherOptionsFactory.AUTO.as("ExcludeUrlwithPatter")
+                    .excludeUrls(TargetUrls.of("https://abcdcomputech.dequecloud.com/*.*")) },
                 /**
              * This configuration excludes  URLs that match the pattern.
              * Actual scans done on 5 pages but as we excluded  all the urls with pattern match **.* *"" , 
@@ -109,12 +87,7 @@ public class ExcludeUrlTest {
              * - Issue page: 0 issues
              Page state: 0 
              */
-            {"ExcludeAll", new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setExcludeUrlPatterns(new String[]{"**/*.*"})
-            },
+            { "ExcludeAll", WatcherOptionsFactory.EXCLUDE_ALL_URLS },
              /**
              * This configuration excludes more than one URLs that match the pattern.
              * Actual scans done on 5 pages but as we specified that to exclude url but didnt pass url specifically that can be excluded from the scanned urls 
@@ -125,12 +98,8 @@ public class ExcludeUrlTest {
              Page state: 5 https://abcdcomputech.dequecloud.com  https://abcdcomputech.dequecloud.com/cart.php and https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php 
              "https://abcdcomputech.dequecloud.com/desktops.php" , "https://abcdcomputech.dequecloud.com/support.php
              */
-            {"Excludenull", new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setExcludeUrlPatterns(new String[]{" "})
-            },
+            { "Excludenull", WatcherOptionsFactory.AUTO.as("Excludenull")
+                    .excludeUrls(" ") },
              /**
              * This configuration excludes more than one URLs that match the pattern.
              * Actual scans done on 5 pages but as we specified that to exclude url but didnt pass url specifically that can be excluded from the scanned urls 
@@ -141,12 +110,8 @@ public class ExcludeUrlTest {
              Page state: 5 https://abcdcomputech.dequecloud.com  https://abcdcomputech.dequecloud.com/cart.php and https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php 
              "https://abcdcomputech.dequecloud.com/desktops.php" , "https://abcdcomputech.dequecloud.com/support.php
              */
-            {"ExcludenonUrlpattern", new AxeWatcherOptions()
-                    .setApiKey(apiKey)
-                    .setServerUrl(serverUrl)
-                    .setBuildId(githubRunId)
-                    .setExcludeUrlPatterns(new String[]{"Google Page"})
-            },
+            { "ExcludenonUrlpattern", WatcherOptionsFactory.AUTO.as("ExcludenonUrlpattern")
+                    .excludeUrls("Google Page") },
         };
     }
 
@@ -156,22 +121,23 @@ public class ExcludeUrlTest {
      * Expected Results:
      * - Branches and Commits page: 
      * - Issue page:
-     * @param options The {@link AxeWatcherOptions} object containing the configuration for the test.
+     * @param ConfigName The name of the configuration, for the log.
+     * @param preset The {@link WatcherPreset} containing the configuration for the test.
      * @throws InterruptedException If the thread is interrupted during execution.
      */
     @Test(dataProvider = "excludeUrlConfigurations")
-    public void testExcludeUrlConfigurations(String ConfigName, AxeWatcherOptions options) throws InterruptedException {
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/cart.php",
+            "https://abcdcomputech.dequecloud.com/support.php",
+            "https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php",
+            "https://abcdcomputech.dequecloud.com/desktops.php" })
+    public void testExcludeUrlConfigurations(String ConfigName, WatcherPreset preset) throws InterruptedException {
         System.out.println("Running test for configuration: " + ConfigName);
-        // Initialize Axe Watcher with the provided options
-        AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-
-        // Set up WebDriver using WebDriverManager and Axe Watcher
-        WebDriverManager.chromedriver().setup();
-        ChromeOptions chromeOptions = watcher.configure(new ChromeOptions());
-        driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
+        // Borrow a WebDriver configured with the provided preset from the shared pool for this thread
+        WebDriver driver = WatcherDriverPool.shared().acquire(preset);
+        DriverHolder.set(driver);
 
         // Navigate to the test page and flush Axe Watcher results
-        driver.navigate().to("https://abcdcomputech.dequecloud.com");
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(4) > a")).click();
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(5) > a")).click();
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(2) > a")).click();
@@ -0,0 +1,47 @@
+package com.deque;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.deque.util.ExecutionProfile;
+import com.deque.util.TestConfig;
+
+/**
+ * This class verifies the Chrome arguments of the execution profiles without starting a browser.
+ */
+public class ExecutionProfileTest {
+
+    /**
+     * The headless profile uses the new headless mode Watcher accepts and keeps extensions enabled.
+     */
+    @Test
+    public void headlessUsesNewModeAndKeepsExtensions() {
+        List<String> arguments = ExecutionProfile.HEADLESS.arguments(TestConfig.of(Collections.<String, String>emptyMap()));
+
+        assert arguments.contains("--headless=new") : "Expected --headless=new, but got: " + arguments;
+        assert !arguments.contains("--headless") : "Watcher rejects the classic headless mode, but got: " + arguments;
+        assert !arguments.contains("--disable-extensions") : "Watcher runs as an extension, but got: " + arguments;
+        assert arguments.contains("--window-size=1920,1080");
+        assert !arguments.contains("--blink-settings=imagesEnabled=false");
+    }
+
+    /**
+     * The viewport and image loading follow the settings.
+     */
+    @Test
+    public void headlessFollowsSettings() {
+        Map<String, String> values = new HashMap<>();
+        values.put("EXECUTION_WINDOW_SIZE", "1280,800");
+        values.put("EXECUTION_IMAGES", "false");
+
+        List<String> arguments = ExecutionProfile.HEADLESS.arguments(TestConfig.of(values));
+
+        assert arguments.contains("--window-size=1280,800") : "Expected the configured viewport, but got: " + arguments;
+        assert arguments.contains("--blink-settings=imagesEnabled=false");
+        assert ExecutionProfile.HEADED.arguments(TestConfig.of(values)).contains("--start-maximized");
+    }
+}
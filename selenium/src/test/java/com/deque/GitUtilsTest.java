@@ -0,0 +1,120 @@
+package com.deque;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.deque.util.GitUtils;
+
+/**
+ * This class verifies the in-process branch management against a throwaway repository layout.
+ */
+public class GitUtilsTest {
+
+    private static final String COMMIT = "36f38a0c8e0e6a3b2f4d1c5b7a9e8d6c4b2a1f0e";
+
+    /**
+     * Generated names are distinct, even across threads, and valid ref names.
+     */
+    @Test
+    public void generatesDistinctNames() throws InterruptedException {
+        Set<String> names = Collections.synchronizedSet(new HashSet<>());
+        Thread[] workers = new Thread[4];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < 2500; i++) {
+                    names.add(GitUtils.generateBranchName("testGitBranch"));
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assert names.size() == 10_000 : "Expected 10000 distinct names, but got: " + names.size();
+        String name = GitUtils.generateBranchName("test Git/Branch..[1]");
+        assert name.matches("test-branch-[0-9a-f]{12}-\\d+-test-Git-Branch-1-") : "Unexpected name: " + name;
+    }
+
+    /**
+     * A new branch points at the checked out commit and becomes current; the same name cannot be created twice.
+     */
+    @Test
+    public void checksOutNewBranch() throws IOException {
+        Path gitDir = repository();
+
+        GitUtils.checkoutNewBranch(gitDir, "test-branch-1");
+
+        assert "test-branch-1".equals(GitUtils.currentBranch(gitDir)) : "Unexpected branch: " + GitUtils.currentBranch(gitDir);
+        assert COMMIT.equals(GitUtils.headCommit(gitDir));
+        assert !Files.exists(gitDir.resolve("HEAD.lock")) && !Files.exists(gitDir.resolve("refs/heads/test-branch-1.lock"));
+        try {
+            GitUtils.createBranch(gitDir, "main");
+            assert false : "Expected the packed main branch to exist";
+        } catch (IllegalStateException e) {
+            assert e.getMessage().contains("already exists") : "Unexpected message: " + e.getMessage();
+        }
+        try {
+            GitUtils.checkoutNewBranch(gitDir, "bad..name");
+            assert false : "Expected an invalid name to be rejected";
+        } catch (IllegalStateException e) {
+            assert e.getMessage().contains("Invalid branch name");
+        }
+        assert "test-branch-1".equals(GitUtils.currentBranch(gitDir));
+    }
+
+    /**
+     * A new branch is current only while its action runs; afterwards HEAD points where it did before.
+     */
+    @Test
+    public void runsOnNewBranchAndRestoresHead() throws IOException {
+        Path gitDir = repository();
+
+        String seen = GitUtils.onNewBranch(gitDir, "test-branch-3", () -> GitUtils.currentBranch(gitDir));
+
+        assert "test-branch-3".equals(seen) : "Expected the action to run on the new branch, but got: " + seen;
+        assert "main".equals(GitUtils.currentBranch(gitDir)) : "Expected HEAD to be restored, but got: " + GitUtils.currentBranch(gitDir);
+        assert Files.exists(gitDir.resolve("refs/heads/test-branch-3")) : "Expected the branch to be kept";
+        assert GitUtils.onCurrentBranch(() -> GitUtils.currentBranch(gitDir)).equals("main");
+    }
+
+    /**
+     * The metadata of a linked worktree is found through its {@code .git} file, and branches go to the shared refs.
+     */
+    @Test
+    public void supportsLinkedWorktrees() throws IOException {
+        Path gitDir = repository();
+        Path worktreeMeta = gitDir.resolve("worktrees/shard-1");
+        write(worktreeMeta.resolve("HEAD"), "ref: refs/heads/main");
+        write(worktreeMeta.resolve("commondir"), "../..");
+        Path worktree = Files.createTempDirectory("worktree");
+        write(worktree.resolve(".git"), "gitdir: " + worktreeMeta.toAbsolutePath());
+        Files.createDirectories(worktree.resolve("selenium"));
+
+        Path found = GitUtils.findGitDir(worktree.resolve("selenium"));
+        assert found.equals(worktreeMeta.toAbsolutePath().normalize()) : "Unexpected git dir: " + found;
+        GitUtils.createBranch(found, "test-branch-2");
+
+        assert "main".equals(GitUtils.currentBranch(found));
+        assert Files.exists(gitDir.resolve("refs/heads/test-branch-2")) : "Expected the branch in the shared refs";
+    }
+
+    private static Path repository() throws IOException {
+        Path gitDir = Files.createTempDirectory("repository").resolve(".git");
+        write(gitDir.resolve("HEAD"), "ref: refs/heads/main");
+        write(gitDir.resolve("packed-refs"), "# pack-refs with: peeled fully-peeled sorted\n" + COMMIT + " refs/heads/main");
+        Files.createDirectories(gitDir.resolve("refs/heads"));
+        return gitDir;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, (content + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,58 +2,46 @@ package com.deque;
 
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.testng.annotations.AfterClass;
-import org.testng.annotations.BeforeClass;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import com.deque.axe_core.commons.AxeWatcherOptions;
 import com.deque.axe_core.selenium.AxeWatcher;
 import com.deque.axe_core.selenium.AxeWatcherDriver;
-import com.deque.util.EnvLoader;
-
-import io.github.bonigarcia.wdm.WebDriverManager;
+import com.deque.util.AsyncFlusher;
+import com.deque.util.CoalescingAnalyzer;
+import com.deque.util.CoalescingAnalyzer.Mode;
+import com.deque.util.DriverHolder;
+import com.deque.util.TargetPages;
+import com.deque.util.TargetUrls;
+import com.deque.util.WatcherDriverPool;
+import com.deque.util.WatcherOptionsFactory;
+import com.deque.util.WatcherTimings;
+import com.deque.util.WatcherTimings.Phase;
 
 public class ManualModeTest {
 
-    private static WebDriver driver;
-
     /**
-     * Sets up the WebDriver and Axe Watcher before all tests.
-     * Configures Axe Watcher with API key and server URL.
+     * Sets up the WebDriver and Axe Watcher before each test.
+     * Configures Axe Watcher with the shared manual mode preset.
      */
-    @BeforeClass
+    @BeforeMethod
     public void setUp() {
-        // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
-        String apiKey = EnvLoader.get("API_KEY");
-        String serverUrl = EnvLoader.get("SERVER_URL");
-
-        // Configure Axe Watcher options
-        AxeWatcherOptions options = new AxeWatcherOptions()
-                .setApiKey(apiKey)
-                .setServerUrl(serverUrl)
-                .setAutoAnalyze(false)
-                .setBuildId(githubRunId);
-        AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-        WebDriverManager.chromedriver().setup();
-        ChromeOptions chromeOptions = new ChromeOptions();
-        chromeOptions = watcher.configure(chromeOptions);
-        driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
+        // Borrow a WebDriver configured with the manual preset from the shared pool for this thread
+        DriverHolder.set(WatcherDriverPool.shared().acquire(WatcherOptionsFactory.MANUAL));
     }
 
     /**
-     * Cleans up after all tests by quitting the WebDriver.
+     * Cleans up after each test by handing the WebDriver to the {@link AsyncFlusher}.
+     *
+     * @param result The result of the test that used the WebDriver.
      */
-    @AfterClass
-    public void tearDown() {
+    @AfterMethod
+    public void tearDown(ITestResult result) {
+        WebDriver driver = DriverHolder.remove();
         if (driver != null) {
-            ((AxeWatcherDriver) driver).axeWatcher().flush();
-            driver.quit(); // Close the browser
+            AsyncFlusher.shared().submit(driver, result);
         }
     }
 
@@ -64,8 +52,10 @@ public class ManualModeTest {
      * - Issue page: Zero issues Zero Page state
      */
     @Test
+    @TargetPages("https://abcdcomputech.dequecloud.com")
     public void testWithNoAnalyseCall() {
-        driver.get("https://abcdcomputech.dequecloud.com");  
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));  
     }
 
     /**
@@ -76,9 +66,11 @@ public class ManualModeTest {
      *  Page state: 1 https://abcdcomputech.dequecloud.com
      */
     @Test
+    @TargetPages("https://abcdcomputech.dequecloud.com")
     public void testWithAnalyseCall() {
-        driver.get("https://abcdcomputech.dequecloud.com");
-        ((AxeWatcherDriver) driver).axeWatcher().analyze();   
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
+        WatcherTimings.analyze(driver);   
     }
 
     /**
@@ -89,12 +81,34 @@ public class ManualModeTest {
      *  Page state: 1-4 https://abcdcomputech.dequecloud.com
      */
     @Test
+    @TargetPages("https://abcdcomputech.dequecloud.com")
     public void testWithAnalyseCallMultiTimes() {
-        driver.get("https://abcdcomputech.dequecloud.com");
-        ((AxeWatcherDriver) driver).axeWatcher().analyze();
-        ((AxeWatcherDriver) driver).axeWatcher().analyze();
-        ((AxeWatcherDriver) driver).axeWatcher().analyze();
-        ((AxeWatcherDriver) driver).axeWatcher().analyze();  
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
+        // One page state per call is what this test demonstrates, so nothing is coalesced
+        CoalescingAnalyzer analyzer = new CoalescingAnalyzer(driver, Mode.PER_CALL);
+        analyzer.analyze();
+        analyzer.analyze();
+        analyzer.analyze();
+        analyzer.analyze();
+    }
+
+    /**
+     * Test method to demonstrate coalesced analyze calls. Consecutive analyze() calls on a page whose DOM did not change
+     * record a single page state.
+     * Expected Results:
+     * - Branches and Commits page: Displays a new branch card, A11y threshold of 29, 1 page state, and the latest Axe Core/Watcher versions.
+     * - Issue page: Identifies failure rules such as  color-contrast, image-alt, label, link-in-text-block, link-name.
+     *  Page state: 1 https://abcdcomputech.dequecloud.com
+     */
+    @Test
+    @TargetPages("https://abcdcomputech.dequecloud.com")
+    public void testWithCoalescedAnalyseCalls() {
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
+        CoalescingAnalyzer analyzer = CoalescingAnalyzer.of(driver).analyze().analyze().analyze().analyze();
+        assert analyzer.analyzed() == 1 : "Expected 1 analyzed page state, but got: " + analyzer.analyzed();
+        assert analyzer.coalesced() == 3 : "Expected 3 coalesced calls, but got: " + analyzer.coalesced();
     }
 
     /**
@@ -105,9 +119,16 @@ public class ManualModeTest {
      *  Page state: 1-4 https://abcdcomputech.dequecloud.com
      */
     @Test
+    @TargetPages("https://abcdcomputech.dequecloud.com")
     public void testWithChainingAnalyseCall() {
-        driver.get("https://abcdcomputech.dequecloud.com");
-        ((AxeWatcherDriver) driver).axeWatcher().analyze().analyze().analyze().analyze();  
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
+        // Each call of the chain is timed as its own sample
+        AxeWatcher watcher = ((AxeWatcherDriver) driver).axeWatcher();
+        for (int call = 0; call < 4; call++) {
+            AxeWatcher chained = watcher;
+            watcher = WatcherTimings.measure(Phase.ANALYZE, chained::analyze);
+        }
     }
 
     /**
@@ -120,10 +141,12 @@ public class ManualModeTest {
      *  Page state: 1 https://abcdcomputech.dequecloud.com
      */
     @Test
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/support.php" })
     public void testWithStartStop() {
-        ((AxeWatcherDriver) driver).axeWatcher().start();
-        driver.get("https://abcdcomputech.dequecloud.com/");
-        ((AxeWatcherDriver) driver).axeWatcher().stop();
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.start(driver);
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com/"));
+        WatcherTimings.stop(driver);
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(5) > a")).click(); 
     }
 
@@ -138,15 +161,17 @@ public class ManualModeTest {
      *  Page state: 1 https://abcdcomputech.dequecloud.com
      */
     @Test
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/support.php" })
     public void testWithStartStopMultiTimes() {
-        ((AxeWatcherDriver) driver).axeWatcher().start();
-        driver.get("https://abcdcomputech.dequecloud.com/");
-        ((AxeWatcherDriver) driver).axeWatcher().stop();
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.start(driver);
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com/"));
+        WatcherTimings.stop(driver);
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(5) > a")).click();
-        ((AxeWatcherDriver) driver).axeWatcher().start();
-        ((AxeWatcherDriver) driver).axeWatcher().stop();
-        ((AxeWatcherDriver) driver).axeWatcher().start();
-        ((AxeWatcherDriver) driver).axeWatcher().stop();
+        WatcherTimings.start(driver);
+        WatcherTimings.stop(driver);
+        WatcherTimings.start(driver);
+        WatcherTimings.stop(driver);
     }
       /**
      * Test method to demonstrate Analyse cal in between multiple start and stop calls.
@@ -159,24 +184,27 @@ public class ManualModeTest {
      *  Page state: 5 - 1 https://abcdcomputech.dequecloud.com, 2-3 child(4) page https://abcdcomputech.dequecloud.com/cart.php, 4-5 child(3) page https://abcdcomputech.dequecloud.com/desktops.php
      */
     @Test
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/support.php",
+            "https://abcdcomputech.dequecloud.com/cart.php", "https://abcdcomputech.dequecloud.com/desktops.php" })
     public void testAnalyseBetweenStartNStop() {
-        ((AxeWatcherDriver) driver).axeWatcher().start();
-        driver.get("https://abcdcomputech.dequecloud.com/"); //1 page state
-        ((AxeWatcherDriver) driver).axeWatcher().stop(); //here stops and no start before page is rendered, so this page state not scanned
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.start(driver);
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com/")); //1 page state
+        WatcherTimings.stop(driver); //here stops and no start before page is rendered, so this page state not scanned
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(5) > a")).click();
-        ((AxeWatcherDriver) driver).axeWatcher().start(); //2 page state with child(4) page
+        WatcherTimings.start(driver); //2 page state with child(4) page
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(4) > a")).click();
-        ((AxeWatcherDriver) driver).axeWatcher().analyze(); //3 page state with child(4) page again with analyse() call
+        WatcherTimings.analyze(driver); //3 page state with child(4) page again with analyse() call
       
-        ((AxeWatcherDriver) driver).axeWatcher().stop(); //here stops and no start before page is rendered, so this page state not scanned
+        WatcherTimings.stop(driver); //here stops and no start before page is rendered, so this page state not scanned
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(3) > a")).click();
-        ((AxeWatcherDriver) driver).axeWatcher().start(); // start but no page rendered here so no page state here 
-        ((AxeWatcherDriver) driver).axeWatcher().analyze(); // 4 page state onchild(3) page because it opened and analyse called
-        ((AxeWatcherDriver) driver).axeWatcher().stop();//here stops and no start before page is rendered, so this page state not scanned
-        ((AxeWatcherDriver) driver).axeWatcher().start(); // start but no page rendered here so no page state here 
-        ((AxeWatcherDriver) driver).axeWatcher().analyze();// 5 page state onchild(3) page because it opened and analyse called
-        ((AxeWatcherDriver) driver).axeWatcher().stop();//here stops and no start before page is rendered, so this page state not scanned
-        ((AxeWatcherDriver) driver).axeWatcher().start();// start but no page rendered here so no page state here 
-        ((AxeWatcherDriver) driver).axeWatcher().stop(); //here stops and no start before page is rendered, so this page state not scanned
+        WatcherTimings.start(driver); // start but no page rendered here so no page state here 
+        WatcherTimings.analyze(driver); // 4 page state onchild(3) page because it opened and analyse called
+        WatcherTimings.stop(driver);//here stops and no start before page is rendered, so this page state not scanned
+        WatcherTimings.start(driver); // start but no page rendered here so no page state here 
+        WatcherTimings.analyze(driver);// 5 page state onchild(3) page because it opened and analyse called
+        WatcherTimings.stop(driver);//here stops and no start before page is rendered, so this page state not scanned
+        WatcherTimings.start(driver);// start but no page rendered here so no page state here 
+        WatcherTimings.stop(driver); //here stops and no start before page is rendered, so this page state not scanned
     }
 }
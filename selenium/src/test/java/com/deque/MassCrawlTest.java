@@ -0,0 +1,66 @@
+package com.deque;
+
+import java.nio.file.Paths;
+
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import com.deque.axe_core.commons.AxeWatcherOptions;
+import com.deque.util.AnalyzeCache;
+import com.deque.util.CrawlRunner;
+import com.deque.util.ExcludeUrlMatcher;
+import com.deque.util.ShardCoordinator;
+import com.deque.util.TestConfig;
+import com.deque.util.WatcherDriverPool;
+import com.deque.util.WatcherOptionsFactory;
+
+/**
+ * This class runs a mass crawl over a URL list with Axe Watcher in manual mode.
+ * It only runs when {@code CRAWL_URLS} points at a file with one URL per line; the list is streamed,
+ * analyzed by {@code CRAWL_CONCURRENCY} drivers and flushed every {@code CRAWL_BATCH_SIZE} pages.
+ * An interrupted crawl resumes from the checkpoint next to the list, or from {@code CRAWL_CHECKPOINT}.
+ * With {@code ANALYZE_CACHE=true} duplicate page states are only analyzed once.
+ * In a sharded run it runs on every shard, and each shard crawls its own part of the list.
+ * All settings are read through {@link TestConfig}.
+ */
+public class MassCrawlTest {
+
+    /**
+     * Crawls every URL of the configured list.
+     * Expected Results:
+     * - Branches and Commits page: One page state per scanned URL.
+     * - No page fails to load.
+     */
+    @Test(groups = ShardCoordinator.ALL_SHARDS)
+    public void crawlUrlList() {
+        TestConfig config = TestConfig.get();
+        String urls = config.get("CRAWL_URLS");
+        if (urls == null || urls.isEmpty()) {
+            throw new SkipException("CRAWL_URLS is not set");
+        }
+        // Manual mode options, pages are analyzed explicitly by the runner
+        AxeWatcherOptions options = WatcherOptionsFactory.shared().create(WatcherOptionsFactory.MANUAL);
+
+        CrawlRunner runner = new CrawlRunner(Paths.get(urls), options, WatcherDriverPool.shared())
+                .setConcurrency(config.getInt("CRAWL_CONCURRENCY", 4))
+                .setBatchSize(config.getInt("CRAWL_BATCH_SIZE", 25))
+                .setShard(new ShardCoordinator());
+        String checkpoint = config.get("CRAWL_CHECKPOINT");
+        if (checkpoint != null && !checkpoint.isEmpty()) {
+            runner.setCheckpoint(Paths.get(checkpoint));
+        }
+        String excludeUrls = config.get("CRAWL_EXCLUDE_URLS");
+        if (excludeUrls != null && !excludeUrls.trim().isEmpty()) {
+            // Comma separated globs, excluded URLs are not even loaded
+            runner.setExcludeUrls(ExcludeUrlMatcher.compile(excludeUrls.split(",")));
+        }
+        if (config.getBoolean("ANALYZE_CACHE", false)) {
+            // Pages whose DOM was already analyzed in this build are not analyzed again
+            runner.setAnalyzeCache(AnalyzeCache.shared());
+        }
+
+        CrawlRunner.Summary summary = runner.run();
+        System.out.println("Crawl of " + urls + " finished: " + summary);
+        assert summary.getFailed() == 0 : "Expected every page to load, but " + summary.getFailed() + " failed";
+    }
+}
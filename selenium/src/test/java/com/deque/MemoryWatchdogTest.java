@@ -0,0 +1,75 @@
+package com.deque;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.deque.util.MemoryWatchdog;
+
+/**
+ * This class verifies how the memory watchdog measures browsers and decides to recycle them, without a browser.
+ */
+public class MemoryWatchdogTest {
+
+    /**
+     * The browser process is found by its user data directory and the RSS of its whole process tree is summed.
+     */
+    @Test
+    public void sumsProcessTreeRss() throws IOException {
+        Path proc = Files.createTempDirectory("proc");
+        process(proc, 1, 0, "init", 4096);
+        process(proc, 100, 1, "chrome\0--user-data-dir=/tmp/session-a\0--no-first-run", 200_000);
+        process(proc, 101, 100, "chrome\0--type=zygote\0--user-data-dir=/tmp/session-a", 10_000);
+        process(proc, 102, 101, "chrome\0--type=renderer\0--user-data-dir=/tmp/session-a", 300_000);
+        process(proc, 200, 1, "chrome\0--user-data-dir=/tmp/session-b", 999_999);
+
+        long pid = MemoryWatchdog.browserPid(proc, "/tmp/session-a");
+
+        assert pid == 100 : "Expected the browser process, but got: " + pid;
+        long rss = MemoryWatchdog.treeRss(proc, pid);
+        assert rss == 510_000L * 1024 : "Expected the RSS of 3 processes, but got: " + rss;
+        assert MemoryWatchdog.browserPid(proc, "/tmp/missing") == -1;
+        assert MemoryWatchdog.treeRss(proc, 404) == -1;
+    }
+
+    /**
+     * Crossing any limit recycles the session, a limit of 0 is never crossed, and every sample is recorded.
+     */
+    @Test
+    public void recyclesOnAnyLimit() throws IOException {
+        Path directory = Files.createTempDirectory("watcher-memory");
+        long mb = 1024L * 1024;
+        MemoryWatchdog watchdog = new MemoryWatchdog(1024 * mb, 256 * mb, 100, directory);
+
+        MemoryWatchdog.Sample healthy = new MemoryWatchdog.Sample("session-1", "preset:auto", 1000, 10, 500 * mb, 20 * mb, 40 * mb);
+        MemoryWatchdog.Sample pages = new MemoryWatchdog.Sample("session-1", "preset:auto", 2000, 100, 500 * mb, 20 * mb, 40 * mb);
+        MemoryWatchdog.Sample rss = new MemoryWatchdog.Sample("session-2", "preset:auto", 1000, 10, 2048 * mb, 20 * mb, 40 * mb);
+        MemoryWatchdog.Sample heap = new MemoryWatchdog.Sample("session-3", "preset:auto", 1000, 10, -1, 300 * mb, 400 * mb);
+
+        assert watchdog.limitExceeded(healthy) == null;
+        assert "100 page states".equals(watchdog.limitExceeded(pages)) : "Unexpected reason: " + watchdog.limitExceeded(pages);
+        assert "RSS of 2048 MB".equals(watchdog.limitExceeded(rss)) : "Unexpected reason: " + watchdog.limitExceeded(rss);
+        assert "JS heap of 300 MB".equals(watchdog.limitExceeded(heap)) : "Unexpected reason: " + watchdog.limitExceeded(heap);
+        assert new MemoryWatchdog(0, 0, 0, null).limitExceeded(rss) == null : "Expected disabled limits to pass";
+
+        watchdog.record(healthy, null);
+        watchdog.record(pages, watchdog.limitExceeded(pages));
+
+        List<String> lines = Files.readAllLines(directory.resolve(MemoryWatchdog.CSV_FILE), StandardCharsets.UTF_8);
+        assert lines.size() == 3 : "Expected a header and 2 samples, but got: " + lines;
+        assert lines.get(0).startsWith("session,key,elapsedMs,pageStates,rssBytes");
+        assert lines.get(2).equals("session-1,preset:auto,2000,100," + 500 * mb + "," + 20 * mb + "," + 40 * mb + ",100 page states")
+                : "Unexpected sample: " + lines.get(2);
+    }
+
+    private static void process(Path proc, long pid, long parent, String cmdline, long rssKb) throws IOException {
+        Path directory = Files.createDirectories(proc.resolve(Long.toString(pid)));
+        Files.write(directory.resolve("cmdline"), (cmdline + "\0").getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("stat"), (pid + " (chrome (main)) S " + parent + " " + pid + " 0 0").getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("status"), ("Name:\tchrome\nVmRSS:\t  " + rssKb + " kB\nThreads:\t1\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,171 @@
+package com.deque;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.deque.axe_core.selenium.AxeWatcher;
+import com.deque.util.ChromeDriverBootstrap;
+import com.deque.util.ExecutionProfile;
+import com.deque.util.MockWatcherServer;
+import com.deque.util.SpoolingRelay;
+import com.deque.util.TargetUrls;
+import com.deque.util.TestConfig;
+import com.deque.util.WatcherOptionsFactory;
+import com.deque.util.WatcherResults;
+import com.deque.util.WatcherTimings;
+
+/**
+ * This class runs a real browser with Axe Watcher against a dedicated {@link MockWatcherServer}, so the
+ * payloads {@link WatcherResults} parses are the ones Watcher actually uploads rather than hand-written ones.
+ * It starts Chrome, so it is not part of the default suite; run it with
+ * {@code -DsuiteXmlFile=src/test/resources/testng-mock.xml}, and add {@code -DTARGETS=fixture} to check the
+ * documented issues of every fixture page.
+ */
+public class MockBackendTest {
+
+    private static final String HOME = "https://abcdcomputech.dequecloud.com";
+    private static final String EXPECTED_ISSUES = "fixtures/expected-issues.properties";
+
+    private MockWatcherServer server;
+    private WatcherResults results;
+    private ChromeDriver browser;
+    private WebDriver driver;
+
+    /**
+     * Starts a stand-in server and one browser in manual mode reporting to it.
+     */
+    @BeforeClass
+    public void setUp() throws IOException {
+        server = new MockWatcherServer();
+        results = WatcherResults.capture(server);
+        ChromeDriverBootstrap.ensureResolved();
+        AxeWatcher watcher = new AxeWatcher(new WatcherOptionsFactory("mock-backend-key", server.baseUrl(), "mock-backend-test")
+                .create(WatcherOptionsFactory.MANUAL));
+        browser = new ChromeDriver(ExecutionProfile.current().configure(watcher));
+        driver = watcher.wrapDriver(browser);
+    }
+
+    /**
+     * Forgets what earlier tests uploaded.
+     */
+    @BeforeMethod
+    public void clear() {
+        server.reset();
+        results.reset();
+    }
+
+    /**
+     * Quits the browser and stops the stand-in server.
+     */
+    @AfterClass(alwaysRun = true)
+    public void tearDown() {
+        if (browser != null) {
+            browser.quit();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    /**
+     * Smoke test of the mock backend: a Watcher session started against it flushes its page state there,
+     * with its API key and without an error answer. The upload paths are captured to {@code SPOOL_DIR} for the
+     * {@link SpoolingRelay}.
+     */
+    @Test
+    public void recordsUploadsOfFlush() {
+        WatcherTimings.navigate(driver, TargetUrls.of(HOME));
+        WatcherTimings.analyze(driver);
+        WatcherTimings.flush(driver);
+
+        List<MockWatcherServer.RecordedRequest> uploads = server.uploads();
+        assert !uploads.isEmpty() : "Expected the flush to upload to the mock server, but it received: " + server.requests().size();
+        for (MockWatcherServer.RecordedRequest request : server.requests()) {
+            assert request.getStatus() < 400 : "Unexpected " + request.getStatus() + " for " + request.getUri();
+            assert "mock-backend-key".equals(request.getApiKey()) : "Expected the API key on " + request.getUri();
+        }
+        List<String> uris = new ArrayList<>();
+        for (MockWatcherServer.RecordedRequest upload : uploads) {
+            uris.add(upload.getUri());
+        }
+        SpoolingRelay.capture(Paths.get(TestConfig.get().get("SPOOL_DIR", "target/watcher-spool")), uris);
+    }
+
+    /**
+     * The uploads of one analyzed page are read by {@link WatcherResults} as page states of that page.
+     * Issue counts depend on the target host and are not asserted here.
+     */
+    @Test
+    public void indexesUploadsOfSingleAnalyzeCall() {
+        String home = TargetUrls.of(HOME);
+        WatcherTimings.navigate(driver, home);
+        WatcherTimings.analyze(driver);
+        WatcherTimings.flush(driver);
+
+        assert results.unreadable() == 0 : "Expected every upload to be read, but got " + results.unreadable() + " unreadable";
+        assert results.pageStates() > 0 : "Expected the analyzed page in the uploads, but got: " + results;
+        assert results.urls().stream().anyMatch(url -> url.startsWith(home)) : "Expected page states of " + home + ", but got: " + results.urls();
+    }
+
+    /**
+     * Returns the fixture pages with their documented issues, or none unless {@code TARGETS=fixture}.
+     *
+     * @return The page path below the fixture root and its issues as {@code rule:count} pairs.
+     */
+    @DataProvider(name = "fixturePages")
+    public Object[][] fixturePages() throws IOException {
+        if (!TargetUrls.isFixtureMode()) {
+            return new Object[0][];
+        }
+        Properties expected = new Properties();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(EXPECTED_ISSUES)) {
+            if (in == null) {
+                throw new IOException("No " + EXPECTED_ISSUES + " on the test classpath");
+            }
+            expected.load(in);
+        }
+        List<Object[]> pages = new ArrayList<>();
+        for (String page : new TreeSet<>(expected.stringPropertyNames())) {
+            pages.add(new Object[] {page, expected.getProperty(page)});
+        }
+        return pages.toArray(new Object[0][]);
+    }
+
+    /**
+     * Each fixture page uploads exactly the issues documented for it in {@code fixtures/expected-issues.properties}.
+     *
+     * @param page   The page path below the fixture root.
+     * @param issues The documented issues, as {@code rule:count} pairs.
+     */
+    @Test(dataProvider = "fixturePages")
+    public void matchesDocumentedFixtureIssues(String page, String issues) {
+        WatcherTimings.navigate(driver, TargetUrls.of("https://" + page));
+        WatcherTimings.analyze(driver);
+        WatcherTimings.flush(driver);
+
+        assert results.pageStates() > 0 : "Expected a page state of " + page + ", but got: " + results;
+        if (issues.trim().isEmpty()) {
+            assert results.issues() == 0 : "Expected no issues on " + page + ", but got: " + results;
+            return;
+        }
+        for (String issue : issues.split(",")) {
+            String[] rule = issue.trim().split(":");
+            int expected = Integer.parseInt(rule[1].trim());
+            assert results.issuesForRule(rule[0]) == expected : "Expected " + expected + " " + rule[0] + " issues on " + page
+                    + ", but got: " + results.issuesForRule(rule[0]);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.deque;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.deque.util.MockWatcherServer;
+
+/**
+ * This class verifies the in-process Watcher results server stand-in without a browser.
+ * It checks that uploads are recorded and that latency, failures, API key checks and
+ * throughput limits are injected as configured.
+ */
+public class MockWatcherServerTest {
+
+    private MockWatcherServer server;
+
+    /**
+     * Starts a dedicated stand-in server for this class.
+     */
+    @BeforeClass
+    public void startServer() throws IOException {
+        server = new MockWatcherServer();
+    }
+
+    /**
+     * Clears recorded requests and injected faults before each test.
+     */
+    @BeforeMethod
+    public void resetServer() {
+        server.reset();
+    }
+
+    /**
+     * Stops the stand-in server after all tests.
+     */
+    @AfterClass
+    public void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * Uploaded payloads are accepted and recorded in arrival order.
+     */
+    @Test
+    public void recordsUploads() throws IOException {
+        assert post("/api/page-states", "{\"url\":\"a\"}", null) == 200;
+        assert post("/api/page-states", "{\"url\":\"b\"}", null) == 200;
+
+        assert server.uploads().size() == 2 : "Expected 2 uploads, but got: " + server.uploads().size();
+        assert server.uploads().get(1).getBody().contains("\"b\"");
+    }
+
+    /**
+     * Configured latency delays every response.
+     */
+    @Test
+    public void injectsLatency() throws IOException {
+        server.setLatency(Duration.ofMillis(200));
+        long start = System.nanoTime();
+        post("/api/page-states", "{}", null);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assert elapsedMillis >= 200 : "Expected at least 200 ms latency, but got: " + elapsedMillis;
+    }
+
+    /**
+     * The next N requests fail with the configured status and are not counted as uploads.
+     */
+    @Test
+    public void injectsFailures() throws IOException {
+        server.setErrorStatus(502).failNext(2);
+
+        assert post("/api/page-states", "{}", null) == 502;
+        assert post("/api/page-states", "{}", null) == 502;
+        assert post("/api/page-states", "{}", null) == 200;
+        assert server.uploads().size() == 1 : "Expected 1 upload, but got: " + server.uploads().size();
+    }
+
+    /**
+     * Unknown API keys are rejected once accepted keys are registered.
+     */
+    @Test
+    public void rejectsInvalidApiKey() throws IOException {
+        server.setAcceptedApiKeys("valid-key");
+
+        assert post("/api/page-states", "{}", "valid-key") == 200;
+        assert post("/api/page-states", "{}", "other-key") == 401;
+        assert server.requests().get(1).getApiKey().equals("other-key");
+    }
+
+    /**
+     * Request bodies are read no faster than the throughput limit.
+     */
+    @Test
+    public void limitsThroughput() throws IOException {
+        server.setThroughputLimit(20_000);
+        StringBuilder payload = new StringBuilder();
+        while (payload.length() < 10_000) {
+            payload.append("0123456789");
+        }
+        long start = System.nanoTime();
+        post("/api/page-states", payload.toString(), null);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assert elapsedMillis >= 400 : "Expected 10 KB at 20 KB/s to take ~500 ms, but took: " + elapsedMillis;
+    }
+
+    private int post(String path, String body, String apiKey) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.baseUrl() + path.substring(1)).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        if (apiKey != null) {
+            connection.setRequestProperty("X-API-Key", apiKey);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = connection.getResponseCode();
+        InputStream response = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (response != null) {
+            response.close();
+        }
+        return status;
+    }
+}
@@ -8,223 +8,85 @@ import org.testng.annotations.Test;
 import com.deque.axe_core.commons.AxeWatcherOptions;
 import com.deque.axe_core.selenium.AxeWatcher;
 import com.deque.axe_core.selenium.AxeWatcherDriver;
-import com.deque.util.EnvLoader;
-
-import io.github.bonigarcia.wdm.WebDriverManager;
+import com.deque.util.ChromeDriverBootstrap;
+import com.deque.util.TargetUrls;
+import com.deque.util.TestConfig;
+import com.deque.util.WatcherBackend;
+import com.deque.util.WatcherPreflight;
+import com.deque.util.WatcherTimings;
 
 /**
- * This class demonstrates various Selenium WebDriver methods and actions
- * integrated with Axe Watcher for accessibility testing using TestNG.
- * It includes setup and teardown methods for initializing and closing the WebDriver,
- * as well as multiple test methods to demonstrate navigation and element interactions.
+ * This class verifies that Axe Watcher rejects bad configurations. Missing or invalid keys and server URLs
+ * are checked with {@link WatcherPreflight} without a browser; unsupported Chrome options need one.
  */
 public class NegativeTest {
 
-
-
         /**
          * Negative test that simulates passing an invalid API key to Axe Watcher.
-         * Test passes if Axe Watcher fails with the expected error message.
+         * Test passes if the preflight rejects the key with the error Axe Watcher would report.
          */
         @Test
         public void invalidAPIKEYTest() {
-            WebDriver driver = null;
-    
-            try {
-                 // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
-                // Simulate invalid API key
-                String invalidApiKey = EnvLoader.get("INVALID_API_KEY");
-                String serverUrl = EnvLoader.get("SERVER_URL");
-               
-                AxeWatcherOptions options = new AxeWatcherOptions()
-                        .setApiKey(invalidApiKey)
-                        .setServerUrl(serverUrl)
-                        .setBuildId(githubRunId);
-    
-                AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-    
-                WebDriverManager.chromedriver().setup();
-                ChromeOptions chromeOptions = watcher.configure(new ChromeOptions());
-    
-                // This should throw a RuntimeException due to invalid API key
-                driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
-                driver.get("https://abcdcomputech.dequecloud.com");
-                ((AxeWatcherDriver) driver).axeWatcher().flush();
-    
-                // If initialization unexpectedly succeeds, fail the test
-                assert false : "Axe Watcher session initialized successfully with an invalid API key — this is not expected.";
-    
-            } catch (RuntimeException e) {
-                // Expecting specific error from Axe Watcher
-                String expectedError = "Invalid API key";
-                assert e.getMessage().contains(expectedError) :
-                        "Unexpected error message. Expected to contain: \"" + expectedError + "\", but got: " + e.getMessage();
-    
-                System.out.println("Caught expected exception: " + e.getMessage());
-            } finally {
-                // Clean up driver if it was somehow initialized
-                if (driver != null) {
-                    driver.quit();
-                }
-            }
-           
+            String invalidApiKey = TestConfig.get().get("INVALID_API_KEY");
+            String serverUrl = WatcherBackend.serverUrl();
+
+            WatcherPreflight.Verdict verdict = WatcherPreflight.check(invalidApiKey, serverUrl, preflightPath());
+
+            assertRejected(verdict, "Invalid API key");
         }
 
-         /**
+        /**
          * Negative test that simulates passing no API key to Axe Watcher.
-         * Test passes if Axe Watcher fails with the expected error message.
+         * Test passes if the preflight fails without contacting the server.
          */
         @Test
         public void noAPIKEYTest() {
-            WebDriver driver = null;
-    
-            try {
-                 // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
-                // Simulate invalid API key
-                String invalidApiKey = EnvLoader.get("NO_API_KEY");
-                String serverUrl = EnvLoader.get("SERVER_URL");
-               
-                AxeWatcherOptions options = new AxeWatcherOptions()
-                        .setApiKey(invalidApiKey)
-                        .setServerUrl(serverUrl)
-                        .setBuildId(githubRunId);
-    
-                AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-    
-                WebDriverManager.chromedriver().setup();
-                ChromeOptions chromeOptions = watcher.configure(new ChromeOptions());
-    
-                // This should throw a RuntimeException due to invalid API key
-                driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
-                driver.get("https://abcdcomputech.dequecloud.com");
-                ((AxeWatcherDriver) driver).axeWatcher().flush();
-    
-                // If initialization unexpectedly succeeds, fail the test
-                assert false : "Axe Watcher session initialized successfully with an invalid API key — this is not expected.";
-    
-            } catch (RuntimeException e) {
-                // Expecting specific error from Axe Watcher
-                String expectedError = "Invalid API key";
-                assert e.getMessage().contains(expectedError) :
-                        "Unexpected error message. Expected to contain: \"" + expectedError + "\", but got: " + e.getMessage();
-    
-                System.out.println("Caught expected exception: " + e.getMessage());
-            } finally {
-                // Clean up driver if it was somehow initialized
-                if (driver != null) {
-                    driver.quit();
-                }
-            }
-           
+            String noApiKey = TestConfig.get().get("NO_API_KEY");
+            String serverUrl = WatcherBackend.serverUrl();
+
+            WatcherPreflight.Verdict verdict = WatcherPreflight.check(noApiKey, serverUrl, preflightPath());
+
+            assertRejected(verdict, "No API key");
         }
 
         /**
          * Negative test that simulates passing an invalid server url to Axe Watcher.
-         * Test passes if Axe Watcher fails with the expected error message.
+         * Test passes if the preflight cannot reach the server.
          */
         @Test
         public void invalidServerURLTest() {
-            WebDriver driver = null;
-    
-            try {
-                 // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
-                // Simulate invalid API key
-                String invalidApiKey = EnvLoader.get("API_KEY");
-                String serverUrl = EnvLoader.get("INVALID_SERVER_URL");
-               
-                AxeWatcherOptions options = new AxeWatcherOptions()
-                        .setApiKey(invalidApiKey)
-                        .setServerUrl(serverUrl)
-                        .setBuildId(githubRunId);
-    
-                AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-    
-                WebDriverManager.chromedriver().setup();
-                ChromeOptions chromeOptions = watcher.configure(new ChromeOptions());
-    
-                // This should throw a RuntimeException due to invalid API key
-                driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
-                driver.get("https://abcdcomputech.dequecloud.com");
-                ((AxeWatcherDriver) driver).axeWatcher().flush();
-    
-               // Fail the test if no exception occurs
-            assert false : "Axe Watcher initialized with invalid server URL — this is unexpected.";
+            String apiKey = TestConfig.get().get("API_KEY");
+            String serverUrl = TestConfig.get().get("INVALID_SERVER_URL");
 
-        } catch (RuntimeException e) {
-            // Expected exception due to invalid server URL
-            String expectedError = "Could not write to variables.json file";
-            assert e.getMessage().contains(expectedError) :
-                    "Unexpected error. Expected message containing: \"" + expectedError + "\", but got: " + e.getMessage();
+            WatcherPreflight.Verdict verdict = WatcherPreflight.check(apiKey, serverUrl, preflightPath());
 
-            System.out.println("Caught expected exception: " + e.getMessage());
-        } finally {
-            if (driver != null) {
-                driver.quit();
-            }
-        }
-           
+            assert !verdict.isValid() && (verdict.getMessage().contains("Unknown host") || verdict.getMessage().contains("unreachable")) :
+                    "Expected the invalid server URL to be unreachable, but got: " + verdict.getMessage();
+            System.out.println("Preflight rejected the server URL: " + verdict.getMessage());
         }
+
         /**
          * Negative test that simulates passing no server url to Axe Watcher.
-         * Test passes if Axe Watcher fails with the expected error message.
+         * Test passes if the preflight fails without contacting the server.
          */
         @Test
         public void noServerURLTest() {
-            WebDriver driver = null;
-    
-            try {
-                 // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
-                // Simulate invalid API key
-                String invalidApiKey = EnvLoader.get("API_KEY");
-                String serverUrl = EnvLoader.get("NO_SERVER_URL");
-               
-                AxeWatcherOptions options = new AxeWatcherOptions()
-                        .setApiKey(invalidApiKey)
-                        .setServerUrl(serverUrl)
-                        .setBuildId(githubRunId);
-    
-                AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-    
-                WebDriverManager.chromedriver().setup();
-                ChromeOptions chromeOptions = watcher.configure(new ChromeOptions());
-    
-                // This should throw a RuntimeException due to invalid API key
-                driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
-                driver.get("https://abcdcomputech.dequecloud.com");
-                ((AxeWatcherDriver) driver).axeWatcher().flush();
-    
-               // Fail the test if no exception occurs
-            assert false : "Axe Watcher initialized with no server URL — this is unexpected.";
+            String apiKey = TestConfig.get().get("API_KEY");
+            String serverUrl = TestConfig.get().get("NO_SERVER_URL");
 
-        } catch (RuntimeException e) {
-            // Expected exception due to invalid server URL
-            String expectedError = "URI is not absolute";
-            assert e.getMessage().contains(expectedError) :
-                    "Unexpected error. Expected message containing: \"" + expectedError + "\", but got: " + e.getMessage();
+            WatcherPreflight.Verdict verdict = WatcherPreflight.check(apiKey, serverUrl, preflightPath());
 
-            System.out.println("Caught expected exception: " + e.getMessage());
-        } finally {
-            if (driver != null) {
-                driver.quit();
-            }
+            assertRejected(verdict, "URI is not absolute");
         }
-           
+
+        private static String preflightPath() {
+            return TestConfig.get().get("PREFLIGHT_PATH", WatcherPreflight.DEFAULT_PATH);
+        }
+
+        private static void assertRejected(WatcherPreflight.Verdict verdict, String expectedError) {
+            assert !verdict.isValid() && verdict.getMessage().contains(expectedError) :
+                    "Unexpected verdict. Expected a rejection containing: \"" + expectedError + "\", but got: " + verdict.getMessage();
+            System.out.println("Preflight rejected the configuration: " + verdict.getMessage());
         }
 
       /**
@@ -237,13 +99,10 @@ public class NegativeTest {
     
             try {
                  // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
+        String githubRunId = TestConfig.get().buildId();
                 // Simulate healdless mode
-                String apiKey = EnvLoader.get("API_KEY");
-                String serverUrl = EnvLoader.get("SERVER_URL");
+                String apiKey = TestConfig.get().get("API_KEY");
+                String serverUrl = WatcherBackend.serverUrl();
                
                 AxeWatcherOptions options = new AxeWatcherOptions()
                         .setApiKey(apiKey)
@@ -252,12 +111,12 @@ public class NegativeTest {
     
                 AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
     
-                WebDriverManager.chromedriver().setup();
+                ChromeDriverBootstrap.ensureResolved();
                 ChromeOptions chromeOptions = watcher.configure(new ChromeOptions().addArguments("--headless"));
                
                 // This should throw a RuntimeException due to healdless mode
                 driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
-                driver.get("https://abcdcomputech.dequecloud.com");
+                WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
                 ((AxeWatcherDriver) driver).axeWatcher().flush();
     
                // If no exception, force fail
@@ -287,13 +146,10 @@ public class NegativeTest {
     
             try {
                  // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
+        String githubRunId = TestConfig.get().buildId();
                 // Simulate incognito mode
-                String apiKey = EnvLoader.get("API_KEY");
-                String serverUrl = EnvLoader.get("SERVER_URL");
+                String apiKey = TestConfig.get().get("API_KEY");
+                String serverUrl = WatcherBackend.serverUrl();
                
                 AxeWatcherOptions options = new AxeWatcherOptions()
                         .setApiKey(apiKey)
@@ -302,12 +158,12 @@ public class NegativeTest {
     
                 AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
     
-                WebDriverManager.chromedriver().setup();
+                ChromeDriverBootstrap.ensureResolved();
                 ChromeOptions chromeOptions = watcher.configure(new ChromeOptions().addArguments("--incognito"));
                
                 // This should throw a RuntimeException due to incognito mode argument
                 driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
-                driver.get("https://abcdcomputech.dequecloud.com");
+                WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
                 ((AxeWatcherDriver) driver).axeWatcher().flush();
     
                // If no exception, force fail
@@ -336,13 +192,10 @@ public class NegativeTest {
     
             try {
                  // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
+        String githubRunId = TestConfig.get().buildId();
                 // Simulate incognito mode
-                String apiKey = EnvLoader.get("API_KEY");
-                String serverUrl = EnvLoader.get("SERVER_URL");
+                String apiKey = TestConfig.get().get("API_KEY");
+                String serverUrl = WatcherBackend.serverUrl();
                
                 AxeWatcherOptions options = new AxeWatcherOptions()
                         .setApiKey(apiKey)
@@ -352,7 +205,7 @@ public class NegativeTest {
                 AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
     
                 // Set up WebDriver without passing options through watcher
-            WebDriverManager.chromedriver().setup();
+            ChromeDriverBootstrap.ensureResolved();
             ChromeOptions chromeOptions = new ChromeOptions();
             // Skipping: chromeOptions = watcher.configure(chromeOptions); ← this line is intentionally missing
 
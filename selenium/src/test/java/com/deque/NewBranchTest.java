@@ -1,20 +1,27 @@
 package com.deque;
 
+import java.lang.reflect.Method;
+
 import org.openqa.selenium.WebDriver;
 
 import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.testng.annotations.AfterClass;
-import org.testng.annotations.BeforeClass;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import com.deque.axe_core.commons.AxeWatcherOptions;
 import com.deque.axe_core.selenium.AxeWatcher;
-import com.deque.axe_core.selenium.AxeWatcherDriver;
-import com.deque.util.EnvLoader;
+import com.deque.util.AsyncFlusher;
+import com.deque.util.ChromeDriverBootstrap;
+import com.deque.util.DriverHolder;
+import com.deque.util.ExecutionProfile;
 import com.deque.util.GitUtils;
+import com.deque.util.TargetPages;
+import com.deque.util.TargetUrls;
+import com.deque.util.WatcherOptionsFactory;
+import com.deque.util.WatcherPreflight;
+import com.deque.util.WatcherTimings;
 
-import io.github.bonigarcia.wdm.WebDriverManager;
 import io.qameta.allure.Description;
 
 /**
@@ -25,54 +32,39 @@ import io.qameta.allure.Description;
  */
 public class NewBranchTest {
 
-    private WebDriver driver;
-
     /**
-     * Sets up the WebDriver and Axe Watcher before each test.
-     * Configures Axe Watcher with API key and server URL.
+     * Sets up the WebDriver and Axe Watcher on a new Git branch before each test.
+     * Configures Axe Watcher with the shared auto analyze preset.
+     *
+     * @param method The test method, which names the branch.
      */
-    @BeforeClass
-    public void setUp() {
-        // Generate a random branch name and switch to it
-        String branchName = GitUtils.generateBranchName(Thread.currentThread().getStackTrace()[2].getMethodName());
-        GitUtils.checkoutNewBranch(branchName);
-
-        System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", "4");
-
-        // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
+    @BeforeMethod
+    public void setUp(Method method) {
+        // Pooled sessions report the branch they started on, so this test starts a session of its own while
+        // HEAD points at a new branch; other workers keep theirs
+        String branchName = GitUtils.generateBranchName(method.getName());
+        WatcherPreflight.requireConfigured();
+        AxeWatcher watcher = new AxeWatcher(WatcherOptionsFactory.shared().create(WatcherOptionsFactory.AUTO)).enableDebugLogger();
+        ChromeDriverBootstrap.ensureResolved();
+        ChromeDriver browser = new ChromeDriver(ExecutionProfile.current().configure(watcher));
+        try {
+            DriverHolder.set(GitUtils.onNewBranch(branchName, () -> watcher.wrapDriver(browser)));
+        } catch (RuntimeException e) {
+            browser.quit();
+            throw e;
         }
-        String apiKey = EnvLoader.get("API_KEY");
-        String serverUrl = EnvLoader.get("SERVER_URL");
-
-        // Configure Axe Watcher options
-        AxeWatcherOptions options = new AxeWatcherOptions()
-                .setApiKey(apiKey)
-                .setServerUrl(serverUrl)
-                .setBuildId(githubRunId);
-                
-        // Initialize Axe Watcher
-        AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-
-        // Set up WebDriver using WebDriverManager
-        WebDriverManager.chromedriver().setup();
-        ChromeOptions chromeOptions = new ChromeOptions();
-        chromeOptions = watcher.configure(chromeOptions);
-
-        // Wrap the WebDriver with Axe Watcher
-        driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
     }
 
     /**
-     * Cleans up after each test by quitting the WebDriver.
+     * Cleans up after each test by handing the WebDriver to the {@link AsyncFlusher}.
+     *
+     * @param result The result of the test that used the WebDriver.
      */
-    @AfterClass
-    public void tearDown() {
+    @AfterMethod
+    public void tearDown(ITestResult result) {
+        WebDriver driver = DriverHolder.remove();
         if (driver != null) {
-            ((AxeWatcherDriver) driver).axeWatcher().flush();
-            driver.quit(); // Close the browser
+            AsyncFlusher.shared().submit(driver, result);
         }
     }
 
@@ -85,7 +77,9 @@ public class NewBranchTest {
     */
     @Test
     @Description("Verify the Scan result pushes to new branch")
+    @TargetPages("https://qateam.dequecloud.com/attest/api/test.html")
     public void testGitBranch() {
-        driver.get("https://qateam.dequecloud.com/attest/api/test.html");   
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://qateam.dequecloud.com/attest/api/test.html"));   
     }
 }
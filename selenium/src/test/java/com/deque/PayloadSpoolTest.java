@@ -0,0 +1,260 @@
+package com.deque;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.testng.annotations.Test;
+
+import com.deque.util.MockWatcherServer;
+import com.deque.util.PayloadSpool;
+import com.deque.util.SpoolReplayer;
+import com.deque.util.SpoolingRelay;
+
+/**
+ * This class verifies the on-disk spool for undelivered uploads, and its relay and replay, without a browser.
+ */
+public class PayloadSpoolTest {
+
+    /**
+     * Records survive reopening, are replayed in batches and a rejected batch is offered again.
+     */
+    @Test
+    public void replaysInBatchesAcrossSegments() throws IOException {
+        Path directory = Files.createTempDirectory("watcher-spool");
+        try (PayloadSpool spool = new PayloadSpool(directory, 256)) {
+            for (int i = 0; i < 10; i++) {
+                spool.append(entry("{\"page\":" + i + ",\"padding\":\"" + String.join("", Collections.nCopies(40, "x")) + "\"}"));
+            }
+        }
+        assert segments(directory).size() > 1 : "Expected the records to span several segments";
+
+        List<String> bodies = new ArrayList<>();
+        try (PayloadSpool spool = new PayloadSpool(directory, 256)) {
+            assert spool.size() == 10 : "Expected 10 spooled records, but got: " + spool.size();
+            int[] batches = { 0 };
+            int delivered = spool.replay(3, batch -> batches[0]++ == 0);
+            assert delivered <= 3 && delivered > 0 : "Expected only the first batch to be delivered, but got: " + delivered;
+            assert spool.size() == 10 - delivered;
+
+            spool.replay(3, batch -> {
+                for (PayloadSpool.Entry entry : batch) {
+                    bodies.add(new String(entry.getBody(), StandardCharsets.UTF_8));
+                }
+                return true;
+            });
+            assert spool.size() == 0 : "Expected an empty spool, but got: " + spool.size();
+            assert bodies.size() == 10 - delivered;
+            assert bodies.get(bodies.size() - 1).startsWith("{\"page\":9,");
+        }
+        assert segments(directory).isEmpty() : "Expected replayed segments to be deleted";
+    }
+
+    /**
+     * A record whose bytes changed on disk is skipped, and appends after reopening are kept.
+     */
+    @Test
+    public void skipsCorruptRecords() throws IOException {
+        Path directory = Files.createTempDirectory("watcher-spool");
+        try (PayloadSpool spool = new PayloadSpool(directory, 4096)) {
+            spool.append(entry("{\"page\":1}"));
+            spool.append(entry("{\"page\":2}"));
+        }
+        Path segment = segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Flip the last byte of the first record's body
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            int length = header.getInt(4);
+            ByteBuffer flipped = ByteBuffer.allocate(1);
+            channel.read(flipped, 12 + length - 1);
+            flipped.put(0, (byte) (flipped.get(0) ^ 0xff));
+            flipped.rewind();
+            channel.write(flipped, 12 + length - 1);
+        }
+
+        List<String> bodies = new ArrayList<>();
+        try (PayloadSpool spool = new PayloadSpool(directory, 4096)) {
+            spool.append(entry("{\"page\":3}"));
+            spool.replay(10, batch -> {
+                for (PayloadSpool.Entry entry : batch) {
+                    bodies.add(new String(entry.getBody(), StandardCharsets.UTF_8));
+                }
+                return true;
+            });
+            assert spool.corrupt() == 1 : "Expected 1 corrupt record, but got: " + spool.corrupt();
+        }
+        assert bodies.equals(Arrays.asList("{\"page\":2}", "{\"page\":3}")) : "Unexpected records: " + bodies;
+    }
+
+    /**
+     * A second spool on a directory that is open is refused, so a replay cannot delete a segment being written.
+     */
+    @Test
+    public void locksTheSpoolDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("watcher-spool");
+        try (PayloadSpool spool = new PayloadSpool(directory, 4096)) {
+            spool.append(entry("{\"page\":1}"));
+            try {
+                new PayloadSpool(directory, 4096);
+                assert false : "Expected the second spool to be refused";
+            } catch (IllegalStateException e) {
+                assert e.getMessage().contains("in use") : "Unexpected message: " + e.getMessage();
+            }
+        }
+        try (PayloadSpool spool = new PayloadSpool(directory, 4096)) {
+            assert spool.size() == 1 : "Expected the spool to open once released, but got: " + spool.size();
+        }
+    }
+
+    /**
+     * Uploads the server fails are spooled without their API key and acknowledged to Watcher, replaying delivers
+     * them with the key it is given, and other requests are not spooled.
+     */
+    @Test
+    public void relaySpoolsAndReplays() throws IOException {
+        MockWatcherServer upstream = new MockWatcherServer();
+        Path directory = Files.createTempDirectory("watcher-spool");
+        System.setProperty("watcher.spool.retryAfterSeconds", "0");
+        SpoolingRelay relay = new SpoolingRelay(upstream.baseUrl(), new PayloadSpool(directory, 4096),
+                Collections.singletonList("/api/page-states"));
+        System.clearProperty("watcher.spool.retryAfterSeconds");
+        try {
+            upstream.failNext(3);
+            assert post(relay.baseUrl(), "api/page-states", "{\"page\":1}") == 202;
+            assert post(relay.baseUrl(), "api/page-states", "{\"page\":2}") == 202;
+            assert post(relay.baseUrl(), "api/sessions", "{}") == 503 : "Expected other calls to fail through";
+            assert post(relay.baseUrl(), "api/page-states", "{\"page\":3}") == 200;
+            assert relay.spooled() == 2 && relay.forwarded() == 2 : "Unexpected counts: " + relay.spooled() + "/" + relay.forwarded();
+            relay.getSpool().replay(10, batch -> {
+                for (PayloadSpool.Entry entry : batch) {
+                    assert entry.getHeaders().keySet().stream().noneMatch(name -> name.equalsIgnoreCase("X-API-Key"))
+                            : "Expected no API key on disk, but got: " + entry.getHeaders();
+                }
+                return false;
+            });
+
+            int replayed = SpoolReplayer.replay(relay.getSpool(), upstream.baseUrl(), "replay-key", 10);
+
+            assert replayed == 2 : "Expected 2 replayed uploads, but got: " + replayed;
+            assert relay.getSpool().size() == 0;
+            List<MockWatcherServer.RecordedRequest> uploads = upstream.uploads();
+            assert uploads.size() == 3 : "Expected every page delivered once, but got: " + uploads.size();
+            assert upstream.requests().size() == 6 : "Expected the 3 failed attempts to be recorded too";
+            MockWatcherServer.RecordedRequest last = uploads.get(uploads.size() - 1);
+            assert last.getStatus() == 200 && "replay-key".equals(last.getApiKey()) && last.getUri().equals("/api/page-states")
+                    : "Unexpected replayed request: " + last.getUri() + " " + last.getApiKey();
+        } finally {
+            relay.stop();
+            upstream.stop();
+        }
+    }
+
+    /**
+     * Upload paths are captured from the uploads the server accepted, ids included, and uploads to a path not
+     * captured yet are not spooled.
+     */
+    @Test
+    public void relaySpoolsCapturedUploadPaths() throws IOException {
+        MockWatcherServer upstream = new MockWatcherServer();
+        Path directory = Files.createTempDirectory("watcher-spool");
+        System.setProperty("watcher.spool.retryAfterSeconds", "0");
+        SpoolingRelay relay = new SpoolingRelay(upstream.baseUrl(), new PayloadSpool(directory, 4096), Collections.emptyList());
+        System.clearProperty("watcher.spool.retryAfterSeconds");
+        try {
+            upstream.failNext(1);
+            assert post(relay.baseUrl(), "api/sessions/5f0c2a91-1111/page-states", "{\"page\":1}") == 503
+                    : "Expected an upload to a path not captured yet to fail through";
+            assert post(relay.baseUrl(), "api/sessions/5f0c2a91-1111/page-states", "{\"page\":2}") == 200;
+            upstream.failNext(1);
+            assert post(relay.baseUrl(), "api/sessions/77ab0c33-2222/page-states?final=true", "{\"page\":3}") == 202
+                    : "Expected an upload of another session to the captured path to be spooled";
+
+            List<String> captured = Files.readAllLines(directory.resolve(SpoolingRelay.CAPTURED_PATHS_FILE));
+            assert captured.equals(Collections.singletonList("/api/sessions/*/page-states")) : "Unexpected paths: " + captured;
+            assert relay.spooled() == 1 : "Unexpected spooled count: " + relay.spooled();
+        } finally {
+            relay.stop();
+            upstream.stop();
+        }
+    }
+
+    /**
+     * Replay sends the records in spool order and keeps the ones the server rejects instead of dropping them.
+     */
+    @Test
+    public void replaysInOrderAndKeepsRejected() throws IOException {
+        MockWatcherServer upstream = new MockWatcherServer().setAcceptedApiKeys("replay-key");
+        Path directory = Files.createTempDirectory("watcher-spool");
+        try (PayloadSpool spool = new PayloadSpool(directory, 4096)) {
+            for (int page = 1; page <= 5; page++) {
+                spool.append(entry("{\"page\":" + page + "}"));
+            }
+
+            int replayed = SpoolReplayer.replay(spool, upstream.baseUrl(), "replay-key", 2);
+
+            assert replayed == 5 && spool.size() == 0 : "Expected every record replayed, but got: " + replayed;
+            List<MockWatcherServer.RecordedRequest> uploads = upstream.uploads();
+            for (int i = 0; i < uploads.size(); i++) {
+                assert uploads.get(i).getBody().equals("{\"page\":" + (i + 1) + "}")
+                        : "Expected the uploads in spool order, but got: " + uploads.get(i).getBody();
+            }
+        } finally {
+            upstream.stop();
+        }
+
+        MockWatcherServer revoked = new MockWatcherServer().setAcceptedApiKeys("new-key");
+        Path rejectedDirectory = Files.createTempDirectory("watcher-spool");
+        try (PayloadSpool spool = new PayloadSpool(rejectedDirectory, 4096)) {
+            spool.append(entry("{\"page\":1}"));
+
+            int answered = SpoolReplayer.replay(spool, revoked.baseUrl(), "revoked-key", 10);
+
+            assert answered == 1 && spool.size() == 0 : "Expected the rejected record to leave the spool";
+            try (PayloadSpool kept = new PayloadSpool(rejectedDirectory.resolve(SpoolReplayer.REJECTED_DIR), 4096)) {
+                assert kept.size() == 1 : "Expected the rejected record to be kept, but got: " + kept.size();
+                assert SpoolReplayer.replay(kept, revoked.baseUrl(), "new-key", 10) == 1 && revoked.uploads().size() == 1
+                        : "Expected the kept record to replay with a valid key";
+            }
+        } finally {
+            revoked.stop();
+        }
+    }
+
+    private static PayloadSpool.Entry entry(String json) {
+        return new PayloadSpool.Entry("POST", "/api/page-states", Collections.singletonMap("Content-Type", "application/json"),
+                json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static int post(String baseUrl, String path, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("X-API-Key", "spool-key");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+}
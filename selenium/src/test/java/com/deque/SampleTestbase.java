@@ -9,7 +9,13 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import io.github.bonigarcia.wdm.WebDriverManager;
+import com.deque.util.ChromeDriverBootstrap;
+import com.deque.util.DriverHolder;
+import com.deque.util.ExecutionProfile;
+import com.deque.util.TargetPages;
+import com.deque.util.TargetUrls;
+import com.deque.util.WatcherTimings;
+import com.deque.util.WatcherTimings.Phase;
 
 /**
  * This class demonstrates tests using Axe Watcher in Auto Analyze mode.
@@ -18,8 +24,6 @@ import io.github.bonigarcia.wdm.WebDriverManager;
  */
 public class SampleTestbase {
 
-    private WebDriver driver;
-
     /**
      * Sets up the WebDriver and Axe Watcher before each test.
      * Configures Axe Watcher with API key and server URL.
@@ -27,16 +31,13 @@ public class SampleTestbase {
     
      @BeforeMethod
      public void setUp() {
-         // Set up WebDriver using WebDriverManager
-         WebDriverManager.chromedriver().setup();
-         ChromeOptions chromeOptions = new ChromeOptions();
- 
-         // Add optional Chrome options
-         chromeOptions.addArguments("--start-maximized"); // Start browser maximized
-         chromeOptions.addArguments("--disable-notifications"); // Disable notifications
+         // Resolve chromedriver once per JVM
+         ChromeDriverBootstrap.ensureResolved();
+         // Launch Chrome headed and maximized, or headless=new with EXECUTION_PROFILE=headless
+         ChromeOptions chromeOptions = ExecutionProfile.current().apply(new ChromeOptions());
  
-         // Initialize the WebDriver
-         driver = new ChromeDriver(chromeOptions);
+         // Initialize the WebDriver for this thread
+         DriverHolder.set(new ChromeDriver(chromeOptions));
      }
 
     /**
@@ -48,6 +49,7 @@ public class SampleTestbase {
        // ((AxeWatcherDriver) driver).axeWatcher().flush();
         
         // Quit the WebDriver
+        WebDriver driver = DriverHolder.remove();
         if (driver != null) {
             driver.quit();
         }
@@ -58,16 +60,19 @@ public class SampleTestbase {
      * Navigates to a URL, performs some clicks, and refreshes the page.
      */
     @Test
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/support.php",
+            "https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php" })
     public void testWithRefreshMethod() {
+        WebDriver driver = DriverHolder.get();
         // Navigate to the website
-        driver.get("https://abcdcomputech.dequecloud.com");
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
         
         // Perform click actions on navigation links
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(5) > a")).click();
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(2) > a")).click();
         
         // Refresh the page
-        driver.navigate().refresh();
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().refresh());
     }
 
     /**
@@ -75,9 +80,13 @@ public class SampleTestbase {
      * Navigates to a URL and performs multiple click actions on navigation links.
      */
     @Test
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/support.php",
+            "https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php",
+            "https://abcdcomputech.dequecloud.com/desktops.php" })
     public void testWithClickAction() {
+        WebDriver driver = DriverHolder.get();
         // Navigate to the website
-        driver.get("https://abcdcomputech.dequecloud.com");
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
         
         // Perform click actions on navigation links
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(5) > a")).click();
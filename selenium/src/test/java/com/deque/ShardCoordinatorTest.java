@@ -0,0 +1,86 @@
+package com.deque;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.deque.util.ShardCoordinator;
+import com.deque.util.ShardResultsMerger;
+
+/**
+ * This class verifies how tests and URLs are split into shards and how shard results are merged.
+ */
+public class ShardCoordinatorTest {
+
+    /**
+     * Every id belongs to exactly one shard, and the shards share the work.
+     */
+    @Test
+    public void everyIdHasExactlyOneShard() {
+        int count = 4;
+        ShardCoordinator[] shards = new ShardCoordinator[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new ShardCoordinator(i, count, false);
+        }
+        int[] owned = new int[count];
+        for (int id = 0; id < 1000; id++) {
+            String url = "https://abcdcomputech.dequecloud.com/page-" + id + ".php";
+            int owners = 0;
+            for (int i = 0; i < count; i++) {
+                if (shards[i].owns(url)) {
+                    owners++;
+                    owned[i]++;
+                }
+            }
+            assert owners == 1 : "Expected one owner for " + url + ", but got: " + owners;
+            assert ShardCoordinator.shardOf(url, count) == ShardCoordinator.shardOf(url, count);
+        }
+        for (int i = 0; i < count; i++) {
+            assert owned[i] > 150 : "Expected shard " + i + " to get a fair share, but it got: " + owned[i];
+        }
+        assert new ShardCoordinator(0, 1, false).owns("anything");
+    }
+
+    /**
+     * A shard index outside the shard count is rejected.
+     */
+    @Test
+    public void rejectsInvalidShard() {
+        try {
+            new ShardCoordinator(4, 4, false);
+            assert false : "Expected shard 4 of 4 to be rejected";
+        } catch (IllegalStateException e) {
+            assert e.getMessage().contains("4 of 4");
+        }
+    }
+
+    /**
+     * The merger concatenates the results of every shard and counts the failures.
+     */
+    @Test
+    public void mergesShardResults() throws IOException {
+        Path root = Files.createTempDirectory("watcher-shards");
+        write(root.resolve("shard-0"), "test,status,durationMs", "com.deque.WatcherTest.testOne,SUCCESS,120");
+        write(root.resolve("shard-1"), "test,status,durationMs", "com.deque.ExcludeUrlTest.test[ExcludeAll],FAILURE,80",
+                "com.deque.ExcludeUrlTest.test[Excludenull],SKIP,0");
+
+        ShardResultsMerger.Summary summary = ShardResultsMerger.merge(root);
+
+        assert summary.getShards() == 2 : "Expected 2 shards, but got: " + summary.getShards();
+        assert summary.getTests() == 3 : "Expected 3 tests, but got: " + summary.getTests();
+        assert summary.getFailed() == 1 : "Expected 1 failure, but got: " + summary.getFailed();
+        List<String> merged = Files.readAllLines(root.resolve("merged").resolve(ShardResultsMerger.RESULTS_FILE));
+        assert merged.get(1).equals("shard-0,com.deque.WatcherTest.testOne,SUCCESS,120") : "Unexpected row: " + merged.get(1);
+        assert merged.size() == 4;
+    }
+
+    private static void write(Path shard, String... lines) throws IOException {
+        Files.createDirectories(shard);
+        Files.write(shard.resolve(ShardCoordinator.RESULTS_FILE), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,99 @@
+package com.deque;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.deque.util.FixtureServer;
+import com.deque.util.TargetChangeDetector;
+
+/**
+ * This class verifies change detection of target pages against a dedicated fixture server.
+ */
+public class TargetChangeDetectorTest {
+
+    private static final String CLEAN = "https://qateam.dequecloud.com/testfiles/cleanpage.html";
+    private static final String WORKSHOP = "https://broken-workshop.dequelabs.com/";
+    private static final String MISSING = "https://qateam.dequecloud.com/testfiles/missing.html";
+
+    private Path root;
+    private FixtureServer server;
+
+    /**
+     * Starts a fixture server over a temporary copy of two pages.
+     */
+    @BeforeClass
+    public void startServer() throws IOException {
+        root = Files.createTempDirectory("target-fixtures");
+        write(root.resolve("qateam.dequecloud.com/testfiles/cleanpage.html"), "<h1>Clean</h1>");
+        write(root.resolve("broken-workshop.dequelabs.com/index.html"), "<h1>Workshop</h1>");
+        server = new FixtureServer(root);
+    }
+
+    /**
+     * Stops the fixture server after all tests.
+     */
+    @AfterClass
+    public void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * Only pages edited since the saved manifest are reported, and pages that cannot be fetched always are.
+     */
+    @Test
+    public void reportsEditedPagesOnly() throws IOException {
+        Path manifest = Files.createTempDirectory("target-manifest").resolve("target-manifest.tsv");
+
+        TargetChangeDetector first = new TargetChangeDetector(manifest, server::urlFor);
+        assert first.changed(Arrays.asList(CLEAN, WORKSHOP)).size() == 2 : "Expected every page to be new";
+        first.markVerified(CLEAN);
+        first.markVerified(WORKSHOP);
+        first.markVerified(MISSING);
+        first.save();
+
+        TargetChangeDetector unchanged = new TargetChangeDetector(manifest, server::urlFor);
+        Set<String> changed = unchanged.changed(Arrays.asList(CLEAN, WORKSHOP, MISSING));
+        assert changed.equals(Collections.singleton(MISSING)) : "Expected only the missing page, but got: " + changed;
+
+        Path page = root.resolve("broken-workshop.dequelabs.com/index.html");
+        write(page, "<h1>Workshop, edited</h1>");
+        Files.setLastModifiedTime(page, FileTime.fromMillis(Files.getLastModifiedTime(page).toMillis() + 60_000));
+        TargetChangeDetector edited = new TargetChangeDetector(manifest, server::urlFor);
+        changed = edited.changed(Arrays.asList(CLEAN, WORKSHOP));
+        assert changed.equals(Collections.singleton(WORKSHOP)) : "Expected only the edited page, but got: " + changed;
+    }
+
+    /**
+     * A page whose test failed is dropped from the manifest, so it is selected again next time.
+     */
+    @Test
+    public void failedPagesStaySelected() throws IOException {
+        Path manifest = Files.createTempDirectory("target-manifest").resolve("target-manifest.tsv");
+
+        TargetChangeDetector first = new TargetChangeDetector(manifest, server::urlFor);
+        first.markVerified(CLEAN);
+        first.markVerified(WORKSHOP);
+        first.markFailed(WORKSHOP);
+        first.save();
+
+        TargetChangeDetector next = new TargetChangeDetector(manifest, server::urlFor);
+        assert !next.changed(CLEAN) : "Expected the passing page to be skipped";
+        assert next.changed(WORKSHOP) : "Expected the failing page to run again";
+        assert Files.readAllLines(manifest).size() == 1;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,72 @@
+package com.deque;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.deque.util.TestConfig;
+
+/**
+ * This class verifies the layering and typed accessors of the configuration snapshot.
+ */
+public class TestConfigTest {
+
+    /**
+     * Later layers override earlier ones key by key.
+     */
+    @Test
+    public void laterLayersWin() {
+        Map<String, String> file = new HashMap<>();
+        file.put("TARGETS", "live");
+        file.put("API_KEY", "from-file");
+        Map<String, String> system = Collections.singletonMap("TARGETS", "fixture");
+
+        TestConfig config = TestConfig.of(file, system);
+
+        assert config.get("TARGETS").equals("fixture") : "Expected the system property to win, but got: " + config.get("TARGETS");
+        assert config.get("API_KEY").equals("from-file");
+        assert config.get("MISSING") == null;
+        assert config.get("MISSING", "fallback").equals("fallback");
+    }
+
+    /**
+     * The build id prefers WATCHER_BUILD_ID, then GITHUB_RUN_ID, and is stable for a snapshot.
+     */
+    @Test
+    public void buildIdIsStable() {
+        Map<String, String> github = Collections.singletonMap("GITHUB_RUN_ID", "12345");
+        Map<String, String> explicit = Collections.singletonMap("WATCHER_BUILD_ID", "shared-run");
+
+        assert TestConfig.of(github).buildId().equals("12345");
+        assert TestConfig.of(github, explicit).buildId().equals("shared-run");
+
+        TestConfig generated = TestConfig.of(Collections.<String, String>emptyMap());
+        assert generated.buildId().startsWith("RUN-") : "Expected a generated RUN- id, but got: " + generated.buildId();
+        assert generated.buildId().equals(generated.buildId());
+        assert TestConfig.get().buildId().equals(TestConfig.get().buildId());
+    }
+
+    /**
+     * Typed accessors parse values and reject malformed ones.
+     */
+    @Test
+    public void parsesTypedValues() {
+        Map<String, String> values = new HashMap<>();
+        values.put("CRAWL_CONCURRENCY", " 8 ");
+        values.put("DRIVER_OFFLINE", "TRUE");
+        values.put("CRAWL_BATCH_SIZE", "many");
+        TestConfig config = TestConfig.of(values);
+
+        assert config.getInt("CRAWL_CONCURRENCY", 4) == 8;
+        assert config.getInt("MISSING", 4) == 4;
+        assert config.getBoolean("DRIVER_OFFLINE", false);
+        try {
+            config.getInt("CRAWL_BATCH_SIZE", 25);
+            assert false : "Expected a malformed integer to be rejected";
+        } catch (IllegalStateException e) {
+            assert e.getMessage().contains("CRAWL_BATCH_SIZE");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.deque;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.deque.util.MockWatcherServer;
+import com.deque.util.WatcherPreflight;
+
+/**
+ * This class verifies the credential and endpoint preflight against a stand-in server, without a browser.
+ */
+public class WatcherPreflightTest {
+
+    private MockWatcherServer server;
+
+    /**
+     * Starts a dedicated stand-in server accepting a single key.
+     */
+    @BeforeClass
+    public void startServer() throws IOException {
+        server = new MockWatcherServer().setAcceptedApiKeys("preflight-key");
+    }
+
+    /**
+     * Stops the stand-in server after all tests.
+     */
+    @AfterClass
+    public void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * A valid key passes once the server was seen to reject a key it never issued, and the verdict is cached
+     * for later checks.
+     */
+    @Test
+    public void acceptsValidKeyOnce() {
+        int before = server.requests().size();
+
+        WatcherPreflight.Verdict verdict = WatcherPreflight.require("preflight-key", server.baseUrl(), "api/preflight");
+        WatcherPreflight.Verdict cached = WatcherPreflight.check("preflight-key", server.baseUrl(), "api/preflight");
+
+        assert verdict.isValid() && verdict.getStatus() == 200 : "Unexpected verdict: " + verdict.getMessage();
+        assert verdict.isKeyChecked() : "Expected the key to be checked: " + verdict.getMessage();
+        assert cached == verdict : "Expected the cached verdict";
+        assert server.requests().size() == before + 2 : "Expected two requests, but got: " + (server.requests().size() - before);
+        MockWatcherServer.RecordedRequest request = server.requests().get(before);
+        assert request.getUri().equals("/api/preflight") && "preflight-key".equals(request.getApiKey());
+    }
+
+    /**
+     * A key the server rejects fails the preflight with the error Watcher would report.
+     */
+    @Test
+    public void rejectsInvalidKey() {
+        try {
+            WatcherPreflight.require("revoked-key", server.baseUrl(), WatcherPreflight.DEFAULT_PATH);
+            assert false : "Expected the invalid API key to fail the preflight";
+        } catch (IllegalStateException e) {
+            assert e.getMessage().contains("Invalid API key") : "Unexpected message: " + e.getMessage();
+        }
+    }
+
+    /**
+     * An endpoint that answers any key passes, but the verdict says the key was not validated.
+     */
+    @Test
+    public void reportsEndpointThatAcceptsAnyKey() throws IOException {
+        MockWatcherServer open = new MockWatcherServer();
+        try {
+            WatcherPreflight.Verdict verdict = WatcherPreflight.check("revoked-key", open.baseUrl());
+
+            assert verdict.isValid() && !verdict.isKeyChecked() : "Unexpected verdict: " + verdict.getMessage();
+            assert verdict.getMessage().contains("PREFLIGHT_PATH") : "Unexpected message: " + verdict.getMessage();
+        } finally {
+            open.stop();
+        }
+    }
+
+    /**
+     * Missing keys and URLs, and URLs that are not absolute, fail without contacting the server.
+     */
+    @Test
+    public void rejectsMissingSettingsWithoutRequests() {
+        int before = server.requests().size();
+
+        WatcherPreflight.Verdict noKey = WatcherPreflight.check("null", server.baseUrl());
+        WatcherPreflight.Verdict noUrl = WatcherPreflight.check("preflight-key", "null");
+        WatcherPreflight.Verdict relative = WatcherPreflight.check("preflight-key", "axe-qa.dequelabs.com/");
+
+        assert !noKey.isValid() && noKey.getMessage().contains("No API key") : "Unexpected verdict: " + noKey.getMessage();
+        assert !noUrl.isValid() && noUrl.getMessage().contains("URI is not absolute") : "Unexpected verdict: " + noUrl.getMessage();
+        assert !relative.isValid() && relative.getMessage().contains("URI is not absolute") : "Unexpected verdict: " + relative.getMessage();
+        assert server.requests().size() == before : "Expected no requests";
+    }
+
+    /**
+     * A server that cannot be reached fails the preflight, while a failing one is left to the retries.
+     */
+    @Test
+    public void distinguishesUnreachableFromUnhealthyServers() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        WatcherPreflight.Verdict unreachable = WatcherPreflight.check("preflight-key", "http://127.0.0.1:" + port + "/");
+        assert !unreachable.isValid() && unreachable.getMessage().contains("unreachable") : "Unexpected verdict: " + unreachable.getMessage();
+
+        server.failNext(1);
+        WatcherPreflight.Verdict unhealthy = WatcherPreflight.check("preflight-key", server.baseUrl(), "api/unhealthy");
+        assert unhealthy.isValid() && unhealthy.getStatus() == 503 : "Unexpected verdict: " + unhealthy.getMessage();
+    }
+}
@@ -0,0 +1,52 @@
+package com.deque;
+
+import org.testng.annotations.Test;
+
+import com.deque.util.WatcherOptionsFactory;
+import com.deque.util.WatcherPreset;
+
+/**
+ * This class verifies that Watcher presets are immutable and keyed by the options they produce.
+ */
+public class WatcherPresetTest {
+
+    /**
+     * Presets with the same settings share a key regardless of their name or the order of rule ids.
+     */
+    @Test
+    public void keyIgnoresNameAndRuleOrder() {
+        WatcherPreset first = WatcherOptionsFactory.AUTO.as("first").disableRules("label", "color-contrast");
+        WatcherPreset second = WatcherOptionsFactory.AUTO.as("second").disableRules("color-contrast", "label");
+
+        assert first.key().equals(second.key()) : "Expected equal keys, but got: " + first.key() + " and " + second.key();
+        assert first.equals(second);
+        assert !first.equals(WatcherOptionsFactory.COLOR_CONTRAST_DISABLED);
+        assert first.toString().equals("first");
+    }
+
+    /**
+     * Modifiers return new presets and leave the original untouched.
+     */
+    @Test
+    public void modifiersDoNotChangeTheOriginal() {
+        String autoKey = WatcherOptionsFactory.AUTO.key();
+
+        WatcherPreset manual = WatcherOptionsFactory.AUTO.manual().excludeUrls("**/*.*");
+
+        assert WatcherOptionsFactory.AUTO.key().equals(autoKey) : "Expected AUTO to be unchanged, but got: " + WatcherOptionsFactory.AUTO.key();
+        assert !manual.equals(WatcherOptionsFactory.AUTO);
+        assert !WatcherOptionsFactory.MANUAL.equals(WatcherOptionsFactory.AUTO);
+    }
+
+    /**
+     * The factory key separates credentials, so pooled drivers are never shared between builds.
+     */
+    @Test
+    public void factoryKeyIncludesCredentials() {
+        WatcherOptionsFactory one = new WatcherOptionsFactory("key", "https://watcher.example", "build-1");
+        WatcherOptionsFactory other = new WatcherOptionsFactory("key", "https://watcher.example", "build-2");
+
+        assert one.key(WatcherOptionsFactory.AUTO).equals(one.key(WatcherOptionsFactory.AUTO.as("renamed")));
+        assert !one.key(WatcherOptionsFactory.AUTO).equals(other.key(WatcherOptionsFactory.AUTO));
+    }
+}
@@ -0,0 +1,155 @@
+package com.deque;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.deque.util.MockWatcherServer;
+import com.deque.util.WatcherResilience;
+
+/**
+ * This class verifies retries, the retry budget and circuit breaking against a stand-in server injecting faults.
+ */
+public class WatcherResilienceTest {
+
+    private MockWatcherServer server;
+
+    /**
+     * Starts a dedicated stand-in server for this class.
+     */
+    @BeforeClass
+    public void startServer() throws IOException {
+        server = new MockWatcherServer();
+    }
+
+    /**
+     * Clears injected faults and recorded requests before each test.
+     */
+    @BeforeMethod
+    public void resetServer() {
+        server.reset();
+    }
+
+    /**
+     * Stops the stand-in server after all tests.
+     */
+    @AfterClass
+    public void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * Transient failures are retried until the call succeeds, each retry taken from the budget.
+     */
+    @Test
+    public void retriesTransientFailures() {
+        WatcherResilience resilience = new WatcherResilience(4, 1, 5, 10, 5, 1000);
+        server.failNext(2);
+
+        int status = resilience.call("flush", () -> upload("accepted-key"));
+
+        assert status == 200 : "Expected the third attempt to succeed, but got: " + status;
+        assert server.requests().size() == 3 : "Expected 3 attempts, but got: " + server.requests().size();
+        assert resilience.remainingBudget() == 8 : "Expected 8 retries left, but got: " + resilience.remainingBudget();
+    }
+
+    /**
+     * An invalid API key fails on the first attempt and does not count against the circuit.
+     */
+    @Test
+    public void doesNotRetryPermanentErrors() {
+        WatcherResilience resilience = new WatcherResilience(4, 1, 5, 10, 1, 1000);
+        server.setAcceptedApiKeys("accepted-key");
+        try {
+            resilience.call("flush", () -> upload("revoked-key"));
+            assert false : "Expected the invalid API key to fail";
+        } catch (IllegalStateException e) {
+            assert e.getMessage().contains("Invalid API key") : "Unexpected message: " + e.getMessage();
+        }
+        assert server.requests().size() == 1 : "Expected a single attempt, but got: " + server.requests().size();
+        assert !resilience.isOpen("flush") : "Expected permanent errors to leave the circuit closed";
+        assert WatcherResilience.isPermanent(new RuntimeException("wrap", new IllegalArgumentException("URI is not absolute")));
+        assert !WatcherResilience.isPermanent(new RuntimeException("Injected failure"));
+        assert !WatcherResilience.isPermanent(new IllegalArgumentException("Unexpected character in response"))
+                : "Expected only the Watcher messages to be permanent";
+    }
+
+    /**
+     * Consecutive failures open the circuit, which rejects calls without contacting the server until a trial succeeds.
+     */
+    @Test
+    public void opensAndClosesCircuit() throws InterruptedException {
+        WatcherResilience resilience = new WatcherResilience(1, 1, 5, 10, 2, 100);
+        server.setErrorRate(1.0);
+        for (int i = 0; i < 2; i++) {
+            try {
+                resilience.call("flush", () -> upload("accepted-key"));
+                assert false : "Expected the injected failure";
+            } catch (IllegalStateException e) {
+                assert e.getMessage().contains("503") : "Unexpected message: " + e.getMessage();
+            }
+        }
+        assert resilience.isOpen("flush");
+        try {
+            resilience.call("flush", () -> upload("accepted-key"));
+            assert false : "Expected the open circuit to reject the call";
+        } catch (IllegalStateException e) {
+            assert e.getMessage().contains("Circuit for flush is open") : "Unexpected message: " + e.getMessage();
+        }
+        assert server.requests().size() == 2 : "Expected no request while open, but got: " + server.requests().size();
+        assert !resilience.isOpen("session") : "Expected other endpoints to stay closed";
+
+        server.setErrorRate(0);
+        Thread.sleep(150);
+        assert resilience.call("flush", () -> upload("accepted-key")) == 200;
+        assert !resilience.isOpen("flush");
+    }
+
+    /**
+     * Once the run's retry budget is spent, calls fail on their first error.
+     */
+    @Test
+    public void stopsRetryingWhenBudgetIsSpent() {
+        WatcherResilience resilience = new WatcherResilience(5, 1, 5, 1, 10, 1000);
+        server.failNext(10);
+        try {
+            resilience.call("flush", () -> upload("accepted-key"));
+            assert false : "Expected the call to fail";
+        } catch (IllegalStateException e) {
+            assert server.requests().size() == 2 : "Expected one retry, but got: " + (server.requests().size() - 1);
+        }
+        assert resilience.remainingBudget() == 0;
+    }
+
+    private int upload(String apiKey) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(server.baseUrl() + "api/page-states").openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("X-API-Key", apiKey);
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write("{\"page\":1}".getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            if (status >= 400) {
+                try (InputStream error = connection.getErrorStream(); Scanner body = new Scanner(error, "UTF-8")) {
+                    throw new IllegalStateException("HTTP " + status + ": " + body.useDelimiter("\\A").next());
+                }
+            }
+            connection.disconnect();
+            return status;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
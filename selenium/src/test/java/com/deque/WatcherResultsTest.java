@@ -0,0 +1,128 @@
+package com.deque;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.deque.util.MockWatcherServer;
+import com.deque.util.WatcherResults;
+
+/**
+ * This class verifies the local index of uploaded page states without a browser.
+ */
+public class WatcherResultsTest {
+
+    private static final String HOME = "https://abcdcomputech.dequecloud.com/";
+    private static final String CART = "https://abcdcomputech.dequecloud.com/cart.php";
+
+    private MockWatcherServer server;
+
+    /**
+     * Starts a dedicated stand-in server for this class.
+     */
+    @BeforeClass
+    public void startServer() throws IOException {
+        server = new MockWatcherServer();
+    }
+
+    /**
+     * Stops the stand-in server after all tests.
+     */
+    @AfterClass
+    public void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * Page states are counted per URL and issues per URL and rule.
+     */
+    @Test
+    public void indexesPageStatesAndIssues() {
+        WatcherResults results = new WatcherResults();
+
+        results.record(bytes(pageState(HOME, "color-contrast", 3, "image-alt", 2)));
+        results.record(bytes("{\"pageStates\":[" + pageState(CART, "color-contrast", 1, "label", 4) + ","
+                + pageState(HOME, "link-name", 1) + "]}"));
+        results.record(bytes("{\"session\":\"metadata\"}"));
+        results.record(bytes("not json"));
+
+        results.assertPageStates(3);
+        results.assertIssues(11);
+        results.assertIssues(CART, 5);
+        results.assertRule("color-contrast", 4);
+        results.assertRule("target-size", 0);
+        assert results.pageStates(HOME) == 2 : "Expected 2 page states of the home page, but got: " + results.pageStates(HOME);
+        assert results.rules(HOME).get("image-alt") == 2;
+        assert results.unreadable() == 1 : "Expected 1 unreadable payload, but got: " + results.unreadable();
+        try {
+            results.assertIssues(10);
+            assert false : "Expected a wrong issue count to fail";
+        } catch (AssertionError e) {
+            assert e.getMessage().contains("Expected 10 issues") : "Unexpected message: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Uploads accepted by the server are indexed as they arrive, compressed or not; rejected ones are not.
+     */
+    @Test
+    public void capturesServerUploads() throws IOException {
+        WatcherResults results = WatcherResults.capture(server);
+        try {
+            post(bytes(pageState(HOME, "color-contrast", 2)));
+            post(gzip(pageState(CART, "label", 1)));
+            server.failNext(1);
+            post(bytes(pageState(CART, "label", 7)));
+
+            results.assertPageStates(2);
+            results.assertIssues(CART, 1);
+            assert results.urls().size() == 2 : "Expected 2 URLs, but got: " + results.urls();
+        } finally {
+            results.detach(server);
+        }
+    }
+
+    private static String pageState(String url, Object... ruleCounts) {
+        StringBuilder violations = new StringBuilder();
+        for (int i = 0; i < ruleCounts.length; i += 2) {
+            StringBuilder nodes = new StringBuilder();
+            for (int n = 0; n < (Integer) ruleCounts[i + 1]; n++) {
+                nodes.append(n == 0 ? "" : ",").append("{\"target\":[\"#node").append(n).append("\"]}");
+            }
+            violations.append(i == 0 ? "" : ",")
+                    .append("{\"id\":\"").append(ruleCounts[i]).append("\",\"nodes\":[").append(nodes).append("]}");
+        }
+        return "{\"url\":\"" + url + "\",\"results\":{\"violations\":[" + violations + "],\"passes\":[]}}";
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(String json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes(json));
+        }
+        return out.toByteArray();
+    }
+
+    private void post(byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.baseUrl() + "api/page-states").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        connection.getResponseCode();
+        connection.disconnect();
+    }
+}
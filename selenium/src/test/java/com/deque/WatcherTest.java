@@ -1,17 +1,20 @@
 package com.deque;
 
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.testng.annotations.AfterClass;
-import org.testng.annotations.BeforeClass;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.deque.axe_core.commons.AxeWatcherOptions;
-import com.deque.axe_core.selenium.AxeWatcher;
-import com.deque.axe_core.selenium.AxeWatcherDriver;
+import com.deque.util.AsyncFlusher;
+import com.deque.util.DriverHolder;
+import com.deque.util.TargetPages;
+import com.deque.util.TargetUrls;
+import com.deque.util.WatcherDriverPool;
+import com.deque.util.WatcherTimings;
+import com.deque.util.WatcherTimings.Phase;
 
-import io.github.bonigarcia.wdm.WebDriverManager;
 import io.qameta.allure.Description;
 
 /**
@@ -22,13 +25,11 @@ import io.qameta.allure.Description;
  */
 public class WatcherTest {
 
-    private WebDriver driver;
-
     /**
      * Sets up the WebDriver and Axe Watcher before each test.
      * Configures Axe Watcher with API key and server URL.
      */
-    @BeforeClass
+    @BeforeMethod
     public void setUp() {
        
 
@@ -38,26 +39,20 @@ public class WatcherTest {
                 .setServerUrl("serverUrl");
                
                 
-        // Initialize Axe Watcher
-        AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-
-        // Set up WebDriver using WebDriverManager
-        WebDriverManager.chromedriver().setup();
-        ChromeOptions chromeOptions = new ChromeOptions();
-        chromeOptions = watcher.configure(chromeOptions);
-
-        // Wrap the WebDriver with Axe Watcher
-        driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
+        // Borrow a configured and wrapped WebDriver from the shared pool for this thread
+        DriverHolder.set(WatcherDriverPool.shared().acquire(options));
     }
 
     /**
-     * Cleans up after each test by quitting the WebDriver.
+     * Cleans up after each test by handing the WebDriver to the {@link AsyncFlusher}.
+     *
+     * @param result The result of the test that used the WebDriver.
      */
-    @AfterClass
-    public void tearDown() {
+    @AfterMethod
+    public void tearDown(ITestResult result) {
+        WebDriver driver = DriverHolder.remove();
         if (driver != null) {
-            ((AxeWatcherDriver) driver).axeWatcher().flush();
-            driver.quit(); // Close the browser
+            AsyncFlusher.shared().submit(driver, result);
         }
     }
 
@@ -70,8 +65,10 @@ public class WatcherTest {
     */
     @Test
     @Description("Verify the Scan page state using get wrap method")
+    @TargetPages("https://qateam.dequecloud.com/attest/api/test.html")
     public void testGet() {
-        driver.get("https://qateam.dequecloud.com/attest/api/test.html");   
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://qateam.dequecloud.com/attest/api/test.html"));   
     }
 
     /**
@@ -84,8 +81,10 @@ public class WatcherTest {
      */
     @Test
     @Description("Verify the Scan page state using navigate wrap method")
+    @TargetPages("https://qateam.dequecloud.com/attest/api/test.html")
     public void testNavigateTO() {
-        driver.navigate().to("https://qateam.dequecloud.com/attest/api/test.html"); 
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().to(TargetUrls.of("https://qateam.dequecloud.com/attest/api/test.html"))); 
     }
 
     
@@ -0,0 +1,121 @@
+package com.deque;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.deque.util.WatcherTimingReport;
+import com.deque.util.WatcherTimings;
+import com.deque.util.WatcherTimings.Phase;
+
+/**
+ * This class verifies the phase timing facade and its report without a browser.
+ */
+public class WatcherTimingsTest {
+
+    /**
+     * Starts every test with empty histograms.
+     */
+    @BeforeMethod
+    public void setUp() {
+        WatcherTimings.reset();
+    }
+
+    /**
+     * Unbinds the timing owner after each test.
+     */
+    @AfterMethod
+    public void tearDown() {
+        WatcherTimings.bind(null);
+    }
+
+    /**
+     * Measurements go to the test class bound to the current thread.
+     */
+    @Test
+    public void attributesToBoundOwner() {
+        WatcherTimings.bind("com.example.FirstTest");
+        WatcherTimings.record(Phase.ANALYZE, TimeUnit.MILLISECONDS.toNanos(2));
+        WatcherTimings.bind("com.example.SecondTest");
+        WatcherTimings.time(Phase.FLUSH, () -> { });
+
+        Map<String, Map<Phase, Histogram>> snapshot = WatcherTimings.snapshot();
+        assert snapshot.get("com.example.FirstTest").get(Phase.ANALYZE).getTotalCount() == 1;
+        assert snapshot.get("com.example.SecondTest").get(Phase.FLUSH).getTotalCount() == 1;
+        assert !snapshot.get("com.example.FirstTest").containsKey(Phase.FLUSH);
+    }
+
+    /**
+     * The per-test totals are handed out once and then cleared.
+     */
+    @Test
+    public void drainsCurrentTestTotals() {
+        WatcherTimings.record(Phase.NAVIGATION, TimeUnit.MILLISECONDS.toNanos(3));
+        WatcherTimings.record(Phase.NAVIGATION, TimeUnit.MILLISECONDS.toNanos(4));
+
+        Map<Phase, long[]> totals = WatcherTimings.drainCurrentTest();
+        assert totals.get(Phase.NAVIGATION)[0] == 2 : "Expected 2 navigations, but got: " + totals.get(Phase.NAVIGATION)[0];
+        assert totals.get(Phase.NAVIGATION)[1] == 7000 : "Expected 7000 us, but got: " + totals.get(Phase.NAVIGATION)[1];
+        assert WatcherTimings.drainCurrentTest().isEmpty() : "Expected totals to be cleared";
+    }
+
+    /**
+     * Unbinding a pooled thread drops both its owner and the totals of the test it worked for.
+     */
+    @Test
+    public void unbindClearsTestContext() {
+        WatcherTimings.bind("com.example.FirstTest");
+        WatcherTimings.record(Phase.FLUSH, TimeUnit.MILLISECONDS.toNanos(1));
+
+        WatcherTimings.unbind();
+
+        assert WatcherTimings.UNATTRIBUTED.equals(WatcherTimings.currentOwner()) : "Unexpected owner: " + WatcherTimings.currentOwner();
+        assert WatcherTimings.drainCurrentTest().isEmpty() : "Expected the totals to be cleared";
+    }
+
+    /**
+     * The CSV report holds the percentiles of each test class and phase.
+     */
+    @Test
+    public void writesPercentileReport() throws IOException {
+        WatcherTimings.bind("com.example.ReportTest");
+        for (int millis = 1; millis <= 100; millis++) {
+            WatcherTimings.record(Phase.DRIVER_STARTUP, TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        Path directory = Files.createTempDirectory("watcher-timings");
+
+        WatcherTimingReport.write(directory, WatcherTimings.snapshot());
+
+        List<String> lines = Files.readAllLines(directory.resolve(WatcherTimingReport.CSV_FILE), StandardCharsets.UTF_8);
+        assert lines.size() == 2 : "Expected a header and one row, but got: " + lines;
+        String[] row = lines.get(1).split(",");
+        assert row[0].equals("com.example.ReportTest") && row[1].equals("DRIVER_STARTUP");
+        assert row[2].equals("100") : "Expected 100 samples, but got: " + row[2];
+        assert Math.abs(Double.parseDouble(row[3]) - 50.0) < 0.1 : "Expected p50 of ~50 ms, but got: " + row[3];
+        assert Math.abs(Double.parseDouble(row[5]) - 99.0) < 0.1 : "Expected p99 of ~99 ms, but got: " + row[5];
+        assert Files.exists(directory.resolve(WatcherTimingReport.JSON_FILE));
+    }
+
+    /**
+     * The pool report holds the started and reused browser counts.
+     */
+    @Test
+    public void writesPoolReport() throws IOException {
+        Path directory = Files.createTempDirectory("watcher-timings");
+
+        WatcherTimingReport.writePool(directory, 3, 7);
+
+        List<String> lines = Files.readAllLines(directory.resolve(WatcherTimingReport.POOL_FILE), StandardCharsets.UTF_8);
+        assert lines.equals(Arrays.asList("started,reused", "3,7")) : "Unexpected pool report: " + lines;
+    }
+}
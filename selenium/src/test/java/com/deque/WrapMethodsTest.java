@@ -5,19 +5,21 @@ import java.util.List;
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.testng.annotations.AfterClass;
-import org.testng.annotations.BeforeClass;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import com.deque.axe_core.commons.AxeWatcherOptions;
-import com.deque.axe_core.selenium.AxeWatcher;
-import com.deque.axe_core.selenium.AxeWatcherDriver;
-import com.deque.util.EnvLoader;
+import com.deque.util.AsyncFlusher;
+import com.deque.util.DriverHolder;
 import com.deque.util.GitUtils;
+import com.deque.util.TargetPages;
+import com.deque.util.TargetUrls;
+import com.deque.util.WatcherDriverPool;
+import com.deque.util.WatcherOptionsFactory;
+import com.deque.util.WatcherTimings;
+import com.deque.util.WatcherTimings.Phase;
 
-import io.github.bonigarcia.wdm.WebDriverManager;
 import io.qameta.allure.Description;
 
 /**
@@ -28,49 +30,26 @@ import io.qameta.allure.Description;
  */
 public class WrapMethodsTest {
 
-    private WebDriver driver;
-
     /**
      * Sets up the WebDriver and Axe Watcher before each test.
-     * Configures Axe Watcher with API key and server URL.
+     * Configures Axe Watcher with the shared auto analyze preset.
      */
-    @BeforeClass
+    @BeforeMethod
     public void setUp() {
-       
-        // Load environment variables
-        String githubRunId = EnvLoader.get("GITHUB_RUN_ID");
-        if (githubRunId == null) {
-            githubRunId = "RUN-" + (int) (Math.random() * 100000);
-        }
-        String apiKey = EnvLoader.get("API_KEY");
-        String serverUrl = EnvLoader.get("SERVER_URL");
-
-        // Configure Axe Watcher options
-        AxeWatcherOptions options = new AxeWatcherOptions()
-                .setApiKey(apiKey)
-                .setServerUrl(serverUrl)
-                .setBuildId(githubRunId);
-                
-        // Initialize Axe Watcher
-        AxeWatcher watcher = new AxeWatcher(options).enableDebugLogger();
-
-        // Set up WebDriver using WebDriverManager
-        WebDriverManager.chromedriver().setup();
-        ChromeOptions chromeOptions = new ChromeOptions();
-        chromeOptions = watcher.configure(chromeOptions);
-
-        // Wrap the WebDriver with Axe Watcher
-        driver = watcher.wrapDriver(new ChromeDriver(chromeOptions));
+        // Borrow a WebDriver configured with the auto analyze preset from the shared pool for this thread
+        DriverHolder.set(WatcherDriverPool.shared().acquire(WatcherOptionsFactory.AUTO));
     }
 
     /**
-     * Cleans up after each test by quitting the WebDriver.
+     * Cleans up after each test by handing the WebDriver to the {@link AsyncFlusher}.
+     *
+     * @param result The result of the test that used the WebDriver.
      */
-    @AfterClass
-    public void tearDown() {
+    @AfterMethod
+    public void tearDown(ITestResult result) {
+        WebDriver driver = DriverHolder.remove();
         if (driver != null) {
-            ((AxeWatcherDriver) driver).axeWatcher().flush();
-            driver.quit(); // Close the browser
+            AsyncFlusher.shared().submit(driver, result);
         }
     }
 
@@ -83,8 +62,10 @@ public class WrapMethodsTest {
     */
     @Test
     @Description("Verify the Scan page state using get wrap method")
+    @TargetPages("https://qateam.dequecloud.com/attest/api/test.html")
     public void testGet() {
-        driver.get("https://qateam.dequecloud.com/attest/api/test.html");   
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://qateam.dequecloud.com/attest/api/test.html"));   
     }
 
     /**
@@ -97,8 +78,10 @@ public class WrapMethodsTest {
      */
     @Test
     @Description("Verify the Scan page state using navigate wrap method")
+    @TargetPages("https://qateam.dequecloud.com/attest/api/test.html")
     public void testNavigateTO() {
-        driver.navigate().to("https://qateam.dequecloud.com/attest/api/test.html"); 
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().to(TargetUrls.of("https://qateam.dequecloud.com/attest/api/test.html"))); 
     }
 
     /**
@@ -111,10 +94,12 @@ public class WrapMethodsTest {
      */
     @Test
     @Description("Verify the Scan page state using navigate back wrap method")
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/desktops.php" })
     public void testNavigateBack() {
-        driver.get("https://abcdcomputech.dequecloud.com/");
-        driver.navigate().to("https://abcdcomputech.dequecloud.com/desktops.php");
-        driver.navigate().back(); 
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com/"));
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().to(TargetUrls.of("https://abcdcomputech.dequecloud.com/desktops.php")));
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().back()); 
        
     }
 
@@ -129,11 +114,13 @@ public class WrapMethodsTest {
      */
     @Test
     @Description("Verify the Scan page state using navigate forward wrap method")
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/desktops.php" })
     public void testNavigateForward() {
-        driver.get("https://abcdcomputech.dequecloud.com/");
-        driver.navigate().to("https://abcdcomputech.dequecloud.com/desktops.php");
-        driver.navigate().back();
-        driver.navigate().forward();  
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com/"));
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().to(TargetUrls.of("https://abcdcomputech.dequecloud.com/desktops.php")));
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().back());
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().forward());  
     }
 
     /**
@@ -146,11 +133,14 @@ public class WrapMethodsTest {
      */
     @Test
     @Description("Verify the Scan page state using navigate refresh wrap method")
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/support.php",
+            "https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php" })
     public void testNavigateRefresh() {
-        driver.get("https://abcdcomputech.dequecloud.com");
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(5) > a")).click();
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(2) > a")).click();
-        driver.navigate().refresh();  
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().refresh());  
     }
 
     /**
@@ -163,8 +153,12 @@ public class WrapMethodsTest {
      */
     @Test
     @Description("Verify the Scan page state using click wrap method")
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/support.php",
+            "https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php",
+            "https://abcdcomputech.dequecloud.com/desktops.php" })
     public void testFindElementClickAction() {
-        driver.get("https://abcdcomputech.dequecloud.com");
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(5) > a")).click();
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(2) > a")).click();
         driver.findElement(By.cssSelector("#topnav > ul > li:nth-child(3) > a")).click();   
@@ -180,8 +174,10 @@ public class WrapMethodsTest {
      */
     @Test
     @Description("Verify the Scan page state using sendkeys wrap method")
+    @TargetPages({ "https://the-internet.herokuapp.com/login", "https://the-internet.herokuapp.com/secure" })
     public void testFindElementSendKeysAction() {
-        driver.get("https://the-internet.herokuapp.com/login");
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://the-internet.herokuapp.com/login"));
         WebElement username = driver.findElement(By.id("username"));
         username.sendKeys("tomsmith");
         WebElement password = driver.findElement(By.id("password"));
@@ -206,8 +202,10 @@ public class WrapMethodsTest {
      */
     @Test
     @Description("Verify the Scan page state using clear and submit wrap method")
+    @TargetPages({ "https://the-internet.herokuapp.com/login", "https://the-internet.herokuapp.com/secure" })
     public void testFindElementClearAndSubmit() {
-        driver.get("https://the-internet.herokuapp.com/login");
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://the-internet.herokuapp.com/login"));
         WebElement username = driver.findElement(By.id("username"));
         username.sendKeys("tomsmith");
         WebElement password = driver.findElement(By.id("password"));
@@ -234,8 +232,11 @@ public class WrapMethodsTest {
      */
     @Test
     @Description("Verify the Scan page state using findElements(), click() wrap method ")
+    @TargetPages({ "https://abcdcomputech.dequecloud.com", "https://abcdcomputech.dequecloud.com/support.php",
+            "https://abcdcomputech.dequecloud.com/laptopsandnotebooks.php" })
     public void testFindElements() {
-        driver.get("https://abcdcomputech.dequecloud.com");
+        WebDriver driver = DriverHolder.get();
+        WatcherTimings.navigate(driver, TargetUrls.of("https://abcdcomputech.dequecloud.com"));
 
         List<WebElement> scanNavLinks = driver.findElements(By.cssSelector("#topnav > ul > li:nth-child(5) > a"));
         if (!scanNavLinks.isEmpty()) {
@@ -251,6 +252,6 @@ public class WrapMethodsTest {
         System.out.println("Dashboard navigation link not found.");
         }
 
-        driver.navigate().refresh();
+        WatcherTimings.time(Phase.NAVIGATION, () -> driver.navigate().refresh());
     }
 }
@@ -0,0 +1,315 @@
+package com.deque.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Skips {@code analyze()} for page states that were already analyzed in the same build.
+ * A page state is identified by a SHA-256 over the pool key of the driver (the Watcher configuration,
+ * credentials and build id), the URL, the viewport and the normalized DOM: {@code outerHTML} of the
+ * document without {@code script} and {@code noscript} elements, with runs of whitespace collapsed.
+ * Identical states reached by different tests, threads or shards are then analyzed once.
+ *
+ * <p>Keys are kept in an LRU map of {@code -Dwatcher.analyzeCache.size} entries (10000 by default). A caller
+ * that meets a state another thread is still analyzing waits for that analyze and only skips if it
+ * succeeded. With {@code -Dwatcher.analyzeCache.dir} keys are also appended to {@code analyzed.txt} in that
+ * directory and read back on start, so later JVMs of the same build skip them too; a key is written there
+ * only once the results of its driver were uploaded and reported with {@link #flushed(WebDriver)}. Only
+ * manual {@code analyze()} calls go through the cache; page states recorded by auto analyze mode are not
+ * affected.</p>
+ */
+public class AnalyzeCache {
+
+    private static final String STORE_FILE = "analyzed.txt";
+    private static final int DEFAULT_SIZE = 10_000;
+
+    private static final String NORMALIZED_DOM_SCRIPT =
+            "var root = document.documentElement.cloneNode(true);"
+            + "root.querySelectorAll('script, noscript').forEach(function (e) { e.remove(); });"
+            + "return [window.innerWidth + 'x' + window.innerHeight, root.outerHTML];";
+
+    private final Map<String, Boolean> scanned;
+    private final Map<String, CompletableFuture<Boolean>> analyzing = new HashMap<>();
+    private final Map<WebDriver, List<String>> unflushed = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Path store;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries The number of keys kept in memory.
+     * @param store      The file keys are persisted to, or null to keep them in memory only.
+     * @throws IllegalStateException If the store exists but cannot be read.
+     */
+    public AnalyzeCache(int maxEntries, Path store) {
+        this.scanned = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.store = store;
+        if (store != null && Files.exists(store)) {
+            try {
+                List<String> keys = Files.readAllLines(store, StandardCharsets.UTF_8);
+                for (String key : keys.subList(Math.max(0, keys.size() - maxEntries), keys.size())) {
+                    if (!key.isEmpty()) {
+                        scanned.put(key, Boolean.TRUE);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read analyze cache " + store, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the JVM wide cache, configured from {@code -Dwatcher.analyzeCache.size} and
+     * {@code -Dwatcher.analyzeCache.dir}.
+     *
+     * @return The shared cache.
+     */
+    public static AnalyzeCache shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Analyzes the current page state of a pooled driver unless an identical state was already analyzed
+     * with the same configuration.
+     *
+     * @param driver A driver obtained from the {@link WatcherDriverPool#shared() shared pool}, in manual mode.
+     * @return {@code true} if {@code analyze()} was called, {@code false} if it was skipped.
+     */
+    public boolean analyze(WebDriver driver) {
+        return analyze(driver, WatcherDriverPool.shared().keyOf(driver));
+    }
+
+    /**
+     * Analyzes the current page state unless an identical state was already analyzed with the same configuration.
+     *
+     * @param driver     A driver wrapped by Axe Watcher, in manual mode.
+     * @param optionsKey The {@link WatcherDriverPool#keyOf(WebDriver) pool key} of the driver, or null if unknown.
+     * @return {@code true} if {@code analyze()} was called, {@code false} if it was skipped.
+     */
+    public boolean analyze(WebDriver driver, String optionsKey) {
+        if (optionsKey == null) {
+            // Without the pool key the configuration is unknown, so the state cannot be matched safely
+            WatcherTimings.analyze(driver);
+            return true;
+        }
+        List<?> state = (List<?>) ((JavascriptExecutor) driver).executeScript(NORMALIZED_DOM_SCRIPT);
+        String key = key(optionsKey, driver.getCurrentUrl(), String.valueOf(state.get(0)), String.valueOf(state.get(1)));
+        if (!claim(key)) {
+            System.out.println("Skipping analyze of already analyzed page state " + driver.getCurrentUrl());
+            return false;
+        }
+        boolean analyzed = false;
+        try {
+            WatcherTimings.analyze(driver);
+            analyzed = true;
+        } finally {
+            // A failed analyze lets the next caller retry the state instead of silently skipping it
+            finish(key, analyzed);
+        }
+        unflushed.computeIfAbsent(driver, d -> new ArrayList<>()).add(key);
+        return true;
+    }
+
+    /**
+     * Reports that the results of a driver were uploaded, which persists the page states it analyzed
+     * through this cache since its last flush.
+     *
+     * @param driver The driver that was flushed.
+     */
+    public void flushed(WebDriver driver) {
+        List<String> keys = unflushed.remove(driver);
+        if (store != null && keys != null) {
+            for (String key : keys) {
+                persist(key);
+            }
+        }
+    }
+
+    /**
+     * Reports that the results of a driver could not be uploaded, so the page states it analyzed since its
+     * last flush are forgotten and analyzed again when they are met next.
+     *
+     * @param driver The driver whose flush failed.
+     */
+    public void discard(WebDriver driver) {
+        List<String> keys = unflushed.remove(driver);
+        if (keys != null) {
+            synchronized (scanned) {
+                for (String key : keys) {
+                    scanned.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Claims a page state for analysis. If another caller is analyzing the same state, this waits for its
+     * outcome: a state it analyzed is skipped, a state whose analyze failed is claimed again.
+     *
+     * @param key The key from {@link #key(String, String, String, String)}.
+     * @return {@code true} if the caller must analyze the state and then {@link #finish(String, boolean) finish}
+     *         it, {@code false} if it was analyzed before.
+     */
+    public boolean claim(String key) {
+        while (true) {
+            CompletableFuture<Boolean> running;
+            synchronized (scanned) {
+                if (scanned.get(key) != null) {
+                    hits.incrementAndGet();
+                    return false;
+                }
+                running = analyzing.get(key);
+                if (running == null) {
+                    analyzing.put(key, new CompletableFuture<>());
+                    misses.incrementAndGet();
+                    return true;
+                }
+            }
+            running.join();
+        }
+    }
+
+    /**
+     * Records the outcome of a {@link #claim(String) claimed} page state and wakes the callers waiting for it.
+     *
+     * @param key      The claimed key.
+     * @param analyzed Whether the state was analyzed.
+     */
+    public void finish(String key, boolean analyzed) {
+        CompletableFuture<Boolean> running;
+        synchronized (scanned) {
+            running = analyzing.remove(key);
+            if (analyzed) {
+                scanned.put(key, Boolean.TRUE);
+            }
+        }
+        if (running != null) {
+            running.complete(analyzed);
+        }
+    }
+
+    /**
+     * Records a page state as analyzed in memory.
+     *
+     * @param key The key from {@link #key(String, String, String, String)}.
+     * @return {@code true} if the state is new, {@code false} if it was analyzed before.
+     */
+    public boolean markScanned(String key) {
+        if (!claim(key)) {
+            return false;
+        }
+        finish(key, true);
+        return true;
+    }
+
+    /**
+     * Appends a key to the store, so later JVMs of the build skip its page state.
+     *
+     * @param key The key of a page state whose results were uploaded.
+     */
+    public void persist(String key) {
+        if (store == null) {
+            return;
+        }
+        synchronized (scanned) {
+            append(key);
+        }
+    }
+
+    /**
+     * Computes the key of a page state.
+     *
+     * @param optionsKey The pool key of the driver.
+     * @param url        The page URL.
+     * @param viewport   The viewport as {@code <width>x<height>}.
+     * @param dom        The {@code outerHTML} of the document.
+     * @return A hex encoded SHA-256 digest.
+     */
+    public static String key(String optionsKey, String url, String viewport, String dom) {
+        String normalized = dom.replaceAll("\\s+", " ").trim();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[] { optionsKey, url, viewport, normalized }) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns how many analyze calls were skipped.
+     *
+     * @return The number of cache hits.
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns how many page states were new.
+     *
+     * @return The number of cache misses.
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    private void append(String key) {
+        try {
+            Files.createDirectories(store.toAbsolutePath().getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(store, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(key);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            // The store only saves work, a failure to write it must not fail the test
+            System.out.println("Could not persist analyze cache key to " + store + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the shared cache on first use.
+     */
+    private static final class Holder {
+        private static final AnalyzeCache INSTANCE = create();
+
+        private static AnalyzeCache create() {
+            String dir = System.getProperty("watcher.analyzeCache.dir");
+            return new AnalyzeCache(Integer.getInteger("watcher.analyzeCache.size", DEFAULT_SIZE),
+                    dir == null || dir.isEmpty() ? null : Paths.get(dir).resolve(STORE_FILE));
+        }
+    }
+}
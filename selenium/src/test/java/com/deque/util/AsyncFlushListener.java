@@ -0,0 +1,49 @@
+package com.deque.util;
+
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+/**
+ * Waits for {@link AsyncFlusher#shared()} when a TestNG test finishes and reports what went wrong in the
+ * background. A failed flush fails the test whose session it was: its result is moved to the failed tests of
+ * the context with the flush error as its cause, before the suite reporters run. A failed release happens
+ * after the results were uploaded, such as a browser that could not be reset or quit, and is logged without
+ * changing a result. Waiting here also makes sure every browser of a TestNG test is back in the pool, or
+ * quit, before the next one starts.
+ * Register it in the suite XML or with {@code @Listeners}.
+ */
+public class AsyncFlushListener implements ITestListener {
+
+    /**
+     * Waits for outstanding sessions, fails the tests whose flush failed and logs failed releases.
+     *
+     * @param context The TestNG test that finished.
+     */
+    @Override
+    public void onFinish(ITestContext context) {
+        AsyncFlusher.shared().awaitIdle();
+        for (AsyncFlusher.Failure failure : AsyncFlusher.shared().drainFailures()) {
+            ITestResult result = failure.getResult();
+            if (failure.isFlush() && result != null) {
+                fail(context, result, failure.getError());
+            } else {
+                System.out.println("Background " + (failure.isFlush() ? "flush" : "release") + " failed "
+                        + (result == null ? "outside a test" : "after " + result.getName())
+                        + " in " + context.getName() + ": " + failure.getError());
+            }
+        }
+    }
+
+    private static void fail(ITestContext context, ITestResult result, Throwable error) {
+        if (result.getStatus() == ITestResult.FAILURE) {
+            return;
+        }
+        System.out.println("Failing " + result.getName() + " in " + context.getName() + ", its flush failed: " + error);
+        context.getPassedTests().removeResult(result);
+        context.getSkippedTests().removeResult(result);
+        result.setStatus(ITestResult.FAILURE);
+        result.setThrowable(error);
+        context.getFailedTests().addResult(result);
+    }
+}
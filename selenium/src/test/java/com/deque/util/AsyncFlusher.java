@@ -0,0 +1,230 @@
+package com.deque.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.openqa.selenium.WebDriver;
+import org.testng.ITestResult;
+
+/**
+ * Flushes and releases finished driver sessions on a bounded background pool, so a test's tearDown hands its
+ * driver over instead of waiting for the upload. Each session is flushed once and then handed off, for
+ * example back to its pool, as one task. At most {@code threads} sessions are handled concurrently and at
+ * most {@code queueCapacity} wait for a free thread; once the queue is full the calling test thread runs the
+ * task itself.
+ *
+ * <p>The shared flusher tells {@link WatcherDriverPool} that a driver is on its way back, so the next test
+ * with the same configuration waits for that browser rather than starting another Chrome.</p>
+ *
+ * <p>Failures are kept with the result of the test whose session it was. {@link AsyncFlushListener} applies
+ * flush failures to those results when the TestNG test finishes, before the suite is reported, and logs
+ * failed hand-offs. {@code -Dwatcher.flush.threads=0} flushes and releases on the test thread instead.</p>
+ */
+public class AsyncFlusher {
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 8;
+
+    private static final AsyncFlusher SHARED = new AsyncFlusher(
+            Integer.getInteger("watcher.flush.threads", DEFAULT_THREADS),
+            Integer.getInteger("watcher.flush.queueCapacity", DEFAULT_QUEUE_CAPACITY),
+            WatcherTimings::flush, WatcherDriverPool.shared());
+
+    private final ThreadPoolExecutor executor;
+    private final Consumer<WebDriver> flush;
+    private final Consumer<WebDriver> handOff;
+    private final WatcherDriverPool pool;
+    private final ConcurrentLinkedQueue<Future<?>> inFlight = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a flusher with its own bounded pool that hands sessions off without flushing them first.
+     *
+     * @param threads       The number of sessions handed off concurrently.
+     * @param queueCapacity The number of sessions that may wait for a free thread.
+     * @param handOff       Disposes of a session, for example {@link WatcherDriverPool#release(WebDriver)}.
+     */
+    public AsyncFlusher(int threads, int queueCapacity, Consumer<WebDriver> handOff) {
+        this(threads, queueCapacity, driver -> { }, handOff);
+    }
+
+    /**
+     * Creates a flusher with its own bounded pool.
+     *
+     * @param threads       The number of sessions handled concurrently, 0 to handle them on the calling thread.
+     * @param queueCapacity The number of sessions that may wait for a free thread.
+     * @param flush         Uploads the results of a session, for example {@link WatcherTimings#flush(WebDriver)}.
+     * @param handOff       Disposes of a session once it was flushed, whether or not the flush succeeded.
+     */
+    public AsyncFlusher(int threads, int queueCapacity, Consumer<WebDriver> flush, Consumer<WebDriver> handOff) {
+        this(threads, queueCapacity, flush, handOff, null);
+    }
+
+    /**
+     * Creates a flusher with its own bounded pool that returns flushed sessions to a driver pool.
+     *
+     * @param threads       The number of sessions handled concurrently, 0 to handle them on the calling thread.
+     * @param queueCapacity The number of sessions that may wait for a free thread.
+     * @param flush         Uploads the results of a session, for example {@link WatcherTimings#flush(WebDriver)}.
+     * @param pool          The pool the sessions were acquired from.
+     */
+    public AsyncFlusher(int threads, int queueCapacity, Consumer<WebDriver> flush, WatcherDriverPool pool) {
+        this(threads, queueCapacity, flush, pool::release, pool);
+    }
+
+    private AsyncFlusher(int threads, int queueCapacity, Consumer<WebDriver> flush, Consumer<WebDriver> handOff,
+            WatcherDriverPool pool) {
+        AtomicInteger counter = new AtomicInteger();
+        this.flush = flush;
+        this.handOff = handOff;
+        this.pool = pool;
+        if (threads <= 0) {
+            this.executor = null;
+            return;
+        }
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "watcher-flush-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the JVM wide flusher, which returns sessions to {@link WatcherDriverPool#shared()}.
+     * Its size can be tuned with {@code -Dwatcher.flush.threads} and {@code -Dwatcher.flush.queueCapacity}.
+     *
+     * @return The shared flusher.
+     */
+    public static AsyncFlusher shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes over a finished session to flush and release it. The caller must not use the driver afterwards.
+     *
+     * @param driver The driver to flush and release.
+     * @param result The result of the test that used the driver, or null if there is none.
+     */
+    public void submit(WebDriver driver, ITestResult result) {
+        if (pool != null) {
+            pool.returning(driver);
+        }
+        if (executor == null) {
+            flushAndRelease(driver, result);
+            return;
+        }
+        // Keep the timings attributed to the test class that used the driver, and nothing of it on the
+        // flusher thread once the task is done
+        String owner = WatcherTimings.currentOwner();
+        inFlight.add(executor.submit(() -> {
+            WatcherTimings.unbind();
+            WatcherTimings.bind(owner);
+            try {
+                flushAndRelease(driver, result);
+            } finally {
+                WatcherTimings.unbind();
+            }
+        }));
+    }
+
+    private void flushAndRelease(WebDriver driver, ITestResult result) {
+        try {
+            flush.accept(driver);
+        } catch (RuntimeException e) {
+            System.out.println("Flush failed for " + (result == null ? "a session" : result.getName()) + ": " + e.getMessage());
+            failures.add(new Failure(result, e, true));
+        }
+        try {
+            handOff.accept(driver);
+        } catch (RuntimeException e) {
+            System.out.println("Background release failed for "
+                    + (result == null ? "a session" : result.getName()) + ": " + e.getMessage());
+            failures.add(new Failure(result, e, false));
+        }
+    }
+
+    /**
+     * Blocks until every session submitted so far has been flushed and handed off.
+     */
+    public void awaitIdle() {
+        Future<?> future;
+        while ((future = inFlight.poll()) != null) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                failures.add(new Failure(null, e.getCause(), false));
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the failures recorded so far.
+     *
+     * @return The failures in the order they happened.
+     */
+    public List<Failure> drainFailures() {
+        List<Failure> drained = new ArrayList<>();
+        Failure failure;
+        while ((failure = failures.poll()) != null) {
+            drained.add(failure);
+        }
+        return drained;
+    }
+
+    /**
+     * Waits for pending sessions and stops the background threads.
+     */
+    public void shutdown() {
+        awaitIdle();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A flush or hand-off that threw, with the result of the test whose session it was.
+     */
+    public static final class Failure {
+        private final ITestResult result;
+        private final Throwable error;
+        private final boolean flush;
+
+        Failure(ITestResult result, Throwable error, boolean flush) {
+            this.result = result;
+            this.error = error;
+            this.flush = flush;
+        }
+
+        public ITestResult getResult() {
+            return result;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * Returns whether the upload failed, as opposed to the hand-off after it.
+         *
+         * @return {@code true} for a failed flush.
+         */
+        public boolean isFlush() {
+            return flush;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.deque.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+
+/**
+ * Runs only the scenarios whose {@link TargetPages target pages} changed since their last passing run.
+ * Before a test runs, the pages of all its methods are checked by a {@link TargetChangeDetector}; methods
+ * with no changed page are dropped, methods without {@code @TargetPages} always run. As tests finish, their
+ * pages are marked verified or failed, and the manifest is written when the suite finishes.
+ *
+ * <p>Selection is off unless {@code IMPACT_SELECTION=true}, because a skipped scenario also leaves its
+ * pages out of the Watcher build. With {@code TARGETS=fixture} the pages are fetched from the fixture
+ * server, whose {@code ETag} follows the snapshot files.</p>
+ */
+public class ChangedTargetsInterceptor implements IMethodInterceptor, ITestListener, ISuiteListener {
+
+    private final boolean enabled;
+    private TargetChangeDetector detector;
+
+    /**
+     * Creates the interceptor from {@code IMPACT_SELECTION} and {@code TARGET_MANIFEST}.
+     */
+    public ChangedTargetsInterceptor() {
+        this.enabled = TestConfig.get().getBoolean("IMPACT_SELECTION", false);
+    }
+
+    /**
+     * Creates an enabled interceptor using the given detector.
+     *
+     * @param detector The detector holding the manifest of the previous run.
+     */
+    public ChangedTargetsInterceptor(TargetChangeDetector detector) {
+        this.enabled = true;
+        this.detector = detector;
+    }
+
+    /**
+     * Keeps the methods that have a changed target page or none declared.
+     *
+     * @param methods The methods of a TestNG test.
+     * @param context The TestNG test.
+     * @return The methods to run.
+     */
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        if (!enabled) {
+            return methods;
+        }
+        Set<String> pages = new LinkedHashSet<>();
+        for (IMethodInstance method : methods) {
+            pages.addAll(pagesOf(method.getMethod()));
+        }
+        if (pages.isEmpty()) {
+            return methods;
+        }
+        Set<String> changed = detector().changed(pages);
+        List<IMethodInstance> selected = new ArrayList<>();
+        for (IMethodInstance method : methods) {
+            List<String> own = pagesOf(method.getMethod());
+            if (own.isEmpty() || !Collections.disjoint(own, changed)) {
+                selected.add(method);
+            }
+        }
+        System.out.println("Impact selection runs " + selected.size() + " of " + methods.size() + " methods of "
+                + context.getName() + ", " + changed.size() + " of " + pages.size() + " target pages changed");
+        return selected;
+    }
+
+    @Override
+    public void onTestSuccess(ITestResult result) {
+        if (enabled) {
+            for (String page : pagesOf(result.getMethod())) {
+                detector().markVerified(page);
+            }
+        }
+    }
+
+    @Override
+    public void onTestFailure(ITestResult result) {
+        if (enabled) {
+            for (String page : pagesOf(result.getMethod())) {
+                detector().markFailed(page);
+            }
+        }
+    }
+
+    /**
+     * Writes the manifest for the next run.
+     *
+     * @param suite The suite that finished.
+     */
+    @Override
+    public void onFinish(ISuite suite) {
+        if (enabled) {
+            detector().save();
+        }
+    }
+
+    /**
+     * Returns the target pages declared for a test method, on the method or else on its class.
+     *
+     * @param method The test method.
+     * @return The live URLs, empty if none are declared.
+     */
+    public static List<String> pagesOf(ITestNGMethod method) {
+        Method javaMethod = method.getConstructorOrMethod().getMethod();
+        TargetPages pages = javaMethod == null ? null : javaMethod.getAnnotation(TargetPages.class);
+        if (pages == null) {
+            pages = method.getRealClass().getAnnotation(TargetPages.class);
+        }
+        return pages == null ? Collections.<String>emptyList() : Arrays.asList(pages.value());
+    }
+
+    private synchronized TargetChangeDetector detector() {
+        if (detector == null) {
+            detector = TargetChangeDetector.fromConfig();
+        }
+        return detector;
+    }
+}
@@ -0,0 +1,216 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.github.bonigarcia.wdm.WebDriverManager;
+
+/**
+ * Resolves the chromedriver binary once per JVM.
+ * The first resolution is persisted to a manifest in the driver cache directory, so later runs
+ * skip WebDriverManager's version detection and network lookups entirely. In offline mode the
+ * manifest, or failing that a chromedriver binary found in a pre-seeded cache directory, is used
+ * without ever contacting the network.
+ *
+ * <p>The manifest records the major version of the Chrome installed when it was written, read from
+ * {@code chrome --version} (or the registry on Windows). When the installed Chrome has another major
+ * version now, for example after an automatic update, the manifest is ignored and the driver is resolved
+ * again; offline, a seeded driver for that version is preferred. If the version cannot be detected the
+ * manifest is trusted as before.</p>
+ *
+ * <p>Settings are read from system properties first and environment variables second:
+ * {@code driver.cache.dir} / {@code DRIVER_CACHE_DIR} for the cache directory,
+ * {@code driver.offline} / {@code DRIVER_OFFLINE} to forbid network resolution and
+ * {@code driver.refresh} / {@code DRIVER_REFRESH} to ignore an existing manifest and
+ * {@code chrome.binary} / {@code CHROME_BINARY} for a Chrome that is not on the {@code PATH}.</p>
+ */
+public class ChromeDriverBootstrap {
+
+    private static final String MANIFEST_FILE = "chromedriver-manifest.properties";
+    private static final String CHROME_DRIVER_PROPERTY = "webdriver.chrome.driver";
+    private static final String UNKNOWN = "unknown";
+    private static final Pattern VERSION = Pattern.compile("(\\d+)\\.\\d+\\.\\d+\\.\\d+");
+    private static final List<String> CHROME_BINARIES = Arrays.asList(
+            "google-chrome", "google-chrome-stable", "chromium", "chromium-browser",
+            "/Applications/Google Chrome.app/Contents/MacOS/Google Chrome");
+
+    private static volatile String resolvedPath;
+
+    /**
+     * Makes sure chromedriver is resolved and registered with Selenium. Only the first call does any work.
+     *
+     * @return The absolute path of the chromedriver binary in use.
+     */
+    public static String ensureResolved() {
+        String path = resolvedPath;
+        if (path == null) {
+            synchronized (ChromeDriverBootstrap.class) {
+                path = resolvedPath;
+                if (path == null) {
+                    path = resolve();
+                    System.setProperty(CHROME_DRIVER_PROPERTY, path);
+                    resolvedPath = path;
+                }
+            }
+        }
+        return path;
+    }
+
+    private static String resolve() {
+        Path cacheDir = Paths.get(setting("driver.cache.dir", "DRIVER_CACHE_DIR",
+                Paths.get(System.getProperty("user.home"), ".cache", "watcher-masstesting", "drivers").toString()));
+        boolean offline = Boolean.parseBoolean(setting("driver.offline", "DRIVER_OFFLINE", "false"));
+        boolean refresh = Boolean.parseBoolean(setting("driver.refresh", "DRIVER_REFRESH", "false"));
+        Path manifest = cacheDir.resolve(MANIFEST_FILE);
+        String browserMajor = installedBrowserMajorVersion();
+
+        if (!refresh || offline) {
+            Optional<String> fromManifest = readManifest(manifest, browserMajor);
+            if (fromManifest.isPresent()) {
+                return fromManifest.get();
+            }
+        }
+
+        if (offline) {
+            Path seeded = findSeededDriver(cacheDir, browserMajor).orElseThrow(() -> new IllegalStateException(
+                    "Offline mode is enabled but no chromedriver was found in " + cacheDir.toAbsolutePath()));
+            writeManifest(manifest, seeded.toAbsolutePath().toString(), UNKNOWN, browserMajor);
+            return seeded.toAbsolutePath().toString();
+        }
+
+        WebDriverManager wdm = WebDriverManager.chromedriver().cachePath(cacheDir.toString());
+        wdm.setup();
+        String driverPath = wdm.getDownloadedDriverPath();
+        writeManifest(manifest, driverPath, wdm.getDownloadedDriverVersion(), browserMajor);
+        return driverPath;
+    }
+
+    private static Optional<String> readManifest(Path manifest, String browserMajor) {
+        if (!Files.isRegularFile(manifest)) {
+            return Optional.empty();
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifest)) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable chromedriver manifest " + manifest + ": " + e.getMessage());
+            return Optional.empty();
+        }
+        String driverPath = properties.getProperty("driverPath");
+        if (driverPath == null || !Files.isExecutable(Paths.get(driverPath))) {
+            return Optional.empty();
+        }
+        String recordedMajor = properties.getProperty("browserMajorVersion", UNKNOWN);
+        if (!UNKNOWN.equals(browserMajor) && !browserMajor.equals(recordedMajor)) {
+            System.out.println("Chrome " + browserMajor + " is installed but the chromedriver manifest was written for Chrome "
+                    + recordedMajor + ", resolving the driver again");
+            return Optional.empty();
+        }
+        return Optional.of(driverPath);
+    }
+
+    private static void writeManifest(Path manifest, String driverPath, String driverVersion, String browserMajor) {
+        Properties properties = new Properties();
+        properties.setProperty("driverPath", driverPath);
+        properties.setProperty("driverVersion", driverVersion == null ? UNKNOWN : driverVersion);
+        properties.setProperty("browserMajorVersion", browserMajor);
+        properties.setProperty("resolvedAt", Instant.now().toString());
+        try {
+            Files.createDirectories(manifest.getParent());
+            Path temp = Files.createTempFile(manifest.getParent(), MANIFEST_FILE, ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "Resolved chromedriver, written by ChromeDriverBootstrap");
+            }
+            Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The manifest is only an optimisation for the next run, the resolved driver is still usable
+            System.out.println("Could not write chromedriver manifest " + manifest + ": " + e.getMessage());
+        }
+    }
+
+    private static Optional<Path> findSeededDriver(Path cacheDir, String browserMajor) {
+        if (!Files.isDirectory(cacheDir)) {
+            return Optional.empty();
+        }
+        List<Path> drivers;
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            drivers = files
+                    .filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.equals("chromedriver") || name.equals("chromedriver.exe");
+                    })
+                    .filter(Files::isExecutable)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to scan driver cache " + cacheDir, e);
+        }
+        // WebDriverManager caches drivers below a directory named after their version, such as 120.0.6099.109
+        Optional<Path> matching = drivers.stream()
+                .filter(p -> p.getParent() != null && p.getParent().getFileName().toString().startsWith(browserMajor + "."))
+                .max(Comparator.comparing(Path::toString));
+        return matching.isPresent() ? matching : drivers.stream().max(Comparator.comparing(Path::toString));
+    }
+
+    private static String installedBrowserMajorVersion() {
+        List<List<String>> commands = new ArrayList<>();
+        String binary = setting("chrome.binary", "CHROME_BINARY", null);
+        if (binary != null) {
+            commands.add(Arrays.asList(binary, "--version"));
+        } else if (System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows")) {
+            commands.add(Arrays.asList("reg", "query", "HKCU\\Software\\Google\\Chrome\\BLBeacon", "/v", "version"));
+            commands.add(Arrays.asList("reg", "query", "HKLM\\Software\\Google\\Chrome\\BLBeacon", "/v", "version"));
+        } else {
+            for (String candidate : CHROME_BINARIES) {
+                commands.add(Arrays.asList(candidate, "--version"));
+            }
+        }
+        for (List<String> command : commands) {
+            try {
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                String output;
+                try (InputStream in = process.getInputStream()) {
+                    output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+                if (process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0) {
+                    Matcher version = VERSION.matcher(output);
+                    if (version.find()) {
+                        return version.group(1);
+                    }
+                }
+            } catch (IOException e) {
+                // Not installed under this name, try the next one
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static String setting(String property, String env, String defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null) {
+            value = System.getenv(env);
+        }
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,306 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+
+/**
+ * Starts browsers from a prebuilt Chrome profile instead of an empty one. Without a {@code --user-data-dir}
+ * chromedriver creates a fresh temporary profile for every session, and Chrome spends its startup creating
+ * the profile databases, running first-run tasks and registering the Watcher extension. Here, the first
+ * session of a configuration launches Chrome once with the final arguments on a template directory and quits
+ * it; every session then gets a clone of that template.
+ *
+ * <p>Clones share the template's immutable LevelDB tables ({@code *.ldb}) through hard links and copy every
+ * other file, since Chrome updates its SQLite databases and logs in place. Lock files and caches are left
+ * out. Templates are keyed by the Chrome arguments, which include the extension path Watcher configured,
+ * so sessions only share a template with sessions launched the same way.</p>
+ *
+ * <p>Profiles live in {@code -Dwatcher.profiles.dir}, {@code target/chrome-profiles} by default, in one
+ * directory per JVM. A clone is deleted when its browser quits and the JVM directory on exit; directories
+ * left behind by JVMs that no longer run are deleted when the next run starts.</p>
+ */
+public class ChromeProfileTemplate {
+
+    private static final String USER_DATA_DIR = "--user-data-dir=";
+    private static final String CHROME_OPTIONS = "goog:chromeOptions";
+    private static final Set<String> SKIPPED = new HashSet<>(Arrays.asList(
+            "SingletonLock", "SingletonSocket", "SingletonCookie", "lockfile", "LOCK",
+            "Cache", "Code Cache", "GPUCache", "ShaderCache", "GrShaderCache", "GraphiteDawnCache", "Crashpad"));
+
+    private final Path directory;
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+    private final AtomicInteger clones = new AtomicInteger();
+
+    /**
+     * Creates a template cache below a root directory, removing what earlier JVMs left there.
+     *
+     * @param root The directory holding the profiles of all JVMs.
+     */
+    public ChromeProfileTemplate(Path root) {
+        this.directory = root.toAbsolutePath().resolve(Long.toString(ProcessHandle.current().pid()));
+        removeStale(root);
+    }
+
+    /**
+     * Returns the JVM wide cache, which removes its profiles when the JVM exits.
+     *
+     * @return The shared cache.
+     */
+    public static ChromeProfileTemplate shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Points Chrome options at a fresh clone of the template for their arguments, building the template first
+     * if this is the first session launched with them. Options that already name a user data directory are
+     * left alone.
+     *
+     * @param options The final options, after {@code AxeWatcher.configure}.
+     * @return The clone to {@link #release(Path) release} once the browser quit, or null if none is used.
+     */
+    public Path apply(ChromeOptions options) {
+        List<String> arguments = arguments(options);
+        if (arguments.stream().anyMatch(argument -> argument.startsWith(USER_DATA_DIR))) {
+            return null;
+        }
+        Template template = templates.computeIfAbsent(key(arguments), Template::new);
+        Path source = template.build(arguments);
+        if (source == null) {
+            return null;
+        }
+        try {
+            Path clone = cloneOf(source, directory.resolve("session-" + clones.incrementAndGet()));
+            options.addArguments(USER_DATA_DIR + clone);
+            return clone;
+        } catch (IOException e) {
+            System.out.println("Could not clone Chrome profile template, using a fresh profile: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Deletes a clone whose browser has quit.
+     *
+     * @param clone The clone returned by {@link #apply(ChromeOptions)}, or null.
+     */
+    public void release(Path clone) {
+        if (clone != null) {
+            delete(clone);
+        }
+    }
+
+    /**
+     * Copies a profile, hard linking its immutable files.
+     *
+     * @param template The profile to clone.
+     * @param clone    The directory to create, which must not exist.
+     * @return The clone.
+     * @throws IOException If the clone cannot be written.
+     */
+    public static Path cloneOf(Path template, Path clone) throws IOException {
+        Files.createDirectories(clone.getParent());
+        Files.walkFileTree(template, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (!dir.equals(template) && SKIPPED.contains(dir.getFileName().toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectory(clone.resolve(template.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                String name = file.getFileName().toString();
+                if (!attributes.isRegularFile() || SKIPPED.contains(name)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                Path target = clone.resolve(template.relativize(file).toString());
+                if (name.endsWith(".ldb")) {
+                    try {
+                        Files.createLink(target, file);
+                        return FileVisitResult.CONTINUE;
+                    } catch (FileAlreadyExistsException e) {
+                        throw e;
+                    } catch (IOException | UnsupportedOperationException e) {
+                        // Another file system or no hard link support, fall back to a copy
+                    }
+                }
+                Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return clone;
+    }
+
+    /**
+     * Deletes the profile directories of JVMs that are no longer running.
+     *
+     * @param root The directory holding the profiles of all JVMs.
+     * @return The number of directories deleted.
+     */
+    public static int removeStale(Path root) {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        int removed = 0;
+        try (DirectoryStream<Path> jvms = Files.newDirectoryStream(root)) {
+            for (Path jvm : jvms) {
+                long pid;
+                try {
+                    pid = Long.parseLong(jvm.getFileName().toString());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (!ProcessHandle.of(pid).isPresent()) {
+                    delete(jvm);
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not clean up Chrome profiles in " + root + ": " + e.getMessage());
+        }
+        return removed;
+    }
+
+    /**
+     * Deletes the profiles of this JVM.
+     */
+    public void clear() {
+        templates.clear();
+        delete(directory);
+    }
+
+    private Path build(String key, List<String> arguments) {
+        Path template = directory.resolve("template-" + key);
+        delete(template);
+        ChromeOptions options = new ChromeOptions();
+        options.addArguments(arguments);
+        options.addArguments(USER_DATA_DIR + template);
+        long start = System.nanoTime();
+        ChromeDriver chrome = new ChromeDriver(options);
+        try {
+            // Loading a page lets the extension finish installing, quitting writes the profile to disk
+            chrome.get("about:blank");
+        } finally {
+            chrome.quit();
+        }
+        System.out.println("Built Chrome profile template " + template + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return template;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> arguments(ChromeOptions options) {
+        Object chromeOptions = options.asMap().get(CHROME_OPTIONS);
+        if (chromeOptions instanceof Map && ((Map<String, Object>) chromeOptions).get("args") instanceof List) {
+            List<String> arguments = new ArrayList<>();
+            for (Object argument : (List<Object>) ((Map<String, Object>) chromeOptions).get("args")) {
+                arguments.add(String.valueOf(argument));
+            }
+            return arguments;
+        }
+        return Collections.emptyList();
+    }
+
+    private static String key(List<String> arguments) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(String.join("\n", arguments).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 6; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void delete(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("Could not delete Chrome profile " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The template of one set of Chrome arguments, built by the first session that needs it.
+     */
+    private final class Template {
+        private final String key;
+        private Path path;
+        private boolean failed;
+
+        Template(String key) {
+            this.key = key;
+        }
+
+        synchronized Path build(List<String> arguments) {
+            if (path == null && !failed) {
+                try {
+                    path = ChromeProfileTemplate.this.build(key, arguments);
+                } catch (WebDriverException e) {
+                    // Sessions still start, just without the head start
+                    failed = true;
+                    System.out.println("Could not build Chrome profile template, using fresh profiles: " + e.getMessage());
+                }
+            }
+            return path;
+        }
+    }
+
+    /**
+     * Builds the shared cache on first use.
+     */
+    private static final class Holder {
+        private static final ChromeProfileTemplate INSTANCE = create();
+
+        private static ChromeProfileTemplate create() {
+            ChromeProfileTemplate cache = new ChromeProfileTemplate(
+                    Paths.get(System.getProperty("watcher.profiles.dir", "target/chrome-profiles")));
+            Runtime.getRuntime().addShutdownHook(new Thread(cache::clear, "chrome-profile-cleanup"));
+            return cache;
+        }
+    }
+}
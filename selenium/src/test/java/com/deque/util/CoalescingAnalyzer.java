@@ -0,0 +1,128 @@
+package com.deque.util;
+
+import java.util.List;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Calls {@code analyze()} in manual mode, dropping consecutive calls on a DOM that has not mutated since
+ * the previous one. Without it every call records another identical page state and another upload, so a
+ * test that analyzes defensively after each step pays for states DevHub shows as duplicates.
+ *
+ * <p>A MutationObserver injected into the page counts DOM mutations, ignoring inline style changes as
+ * {@link DomQuietWait} does. A call is coalesced when the document and its mutation count are the same as
+ * after the previous analyzed call; a navigation replaces the document and so always gets analyzed. The
+ * states that are analyzed are still uploaded together by the test's single {@code flush()}.</p>
+ *
+ * <p>Use {@link Mode#PER_CALL} where a test asserts one page state per {@code analyze()} call.</p>
+ */
+public class CoalescingAnalyzer {
+
+    /**
+     * How consecutive {@code analyze()} calls are handled.
+     */
+    public enum Mode {
+        /** Skips a call when the DOM has not mutated since the previous analyzed call. */
+        COALESCE,
+        /** Analyzes on every call, one page state each, as {@code axeWatcher().analyze()} does. */
+        PER_CALL
+    }
+
+    private static final String MUTATIONS_SCRIPT =
+            "var state = window.__watcherMutations;"
+            + "if (!state) {"
+            + "  state = window.__watcherMutations = { document: Date.now() + '-' + Math.random(), count: 0 };"
+            + "  new MutationObserver(function (records) {"
+            + "    for (var i = 0; i < records.length; i++) {"
+            + "      if (records[i].type !== 'attributes' || records[i].attributeName !== 'style') { state.count++; }"
+            + "    }"
+            + "  }).observe(document, { childList: true, subtree: true, attributes: true, characterData: true });"
+            + "}"
+            + "return [state.document, state.count];";
+
+    private final WebDriver driver;
+    private final Mode mode;
+    private String lastDocument;
+    private long lastCount = -1;
+    private int analyzed;
+    private int coalesced;
+
+    /**
+     * Creates an analyzer for one driver.
+     *
+     * @param driver A driver wrapped by Axe Watcher, in manual mode.
+     * @param mode   Whether unchanged states are coalesced.
+     */
+    public CoalescingAnalyzer(WebDriver driver, Mode mode) {
+        this.driver = driver;
+        this.mode = mode;
+    }
+
+    /**
+     * Creates an analyzer that coalesces calls on an unchanged DOM.
+     *
+     * @param driver A driver wrapped by Axe Watcher, in manual mode.
+     * @return The analyzer.
+     */
+    public static CoalescingAnalyzer of(WebDriver driver) {
+        return new CoalescingAnalyzer(driver, Mode.COALESCE);
+    }
+
+    /**
+     * Analyzes the current page state unless the mode is {@link Mode#COALESCE} and the DOM has not mutated
+     * since the previous analyzed call.
+     *
+     * @return This analyzer, for chaining like {@code axeWatcher().analyze()}.
+     */
+    public CoalescingAnalyzer analyze() {
+        if (mode == Mode.PER_CALL) {
+            WatcherTimings.analyze(driver);
+            analyzed++;
+            return this;
+        }
+        List<?> before = mutations();
+        if (before.get(0).equals(lastDocument) && ((Number) before.get(1)).longValue() == lastCount) {
+            coalesced++;
+            return this;
+        }
+        WatcherTimings.analyze(driver);
+        analyzed++;
+        // Read the count after analyze so that anything the scan itself touched is not seen as a change
+        List<?> after = mutations();
+        lastDocument = String.valueOf(after.get(0));
+        lastCount = ((Number) after.get(1)).longValue();
+        return this;
+    }
+
+    /**
+     * Returns how many calls recorded a page state.
+     *
+     * @return The number of analyzed calls.
+     */
+    public int analyzed() {
+        return analyzed;
+    }
+
+    /**
+     * Returns how many calls were dropped because the DOM had not changed.
+     *
+     * @return The number of coalesced calls.
+     */
+    public int coalesced() {
+        return coalesced;
+    }
+
+    /**
+     * Returns the mode of this analyzer.
+     *
+     * @return The mode.
+     */
+    public Mode mode() {
+        return mode;
+    }
+
+    private List<?> mutations() {
+        return (List<?>) ((JavascriptExecutor) driver).executeScript(MUTATIONS_SCRIPT);
+    }
+}
@@ -0,0 +1,158 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Durable progress marker for a crawl over a URL list.
+ * Lines complete out of order when several drivers work in parallel, so the checkpoint stores a
+ * low-water mark: every line before {@link #nextLine()} is done. Lines completed beyond the mark are
+ * kept in memory until the gap before them closes. After a crash the crawl restarts at the mark, which
+ * may scan a few pages a second time but never skips one.
+ *
+ * <p>Lines whose work was lost, for example because their batch could not be uploaded, are
+ * {@link #fail(long) failed}: the mark moves over them like over completed lines, so one bad batch does
+ * not hold back the rest of the crawl, but they are kept in the checkpoint until a later run completes them.</p>
+ *
+ * <p>The checkpoint file is a properties file replaced atomically on every change.</p>
+ */
+public class CrawlCheckpoint {
+
+    private final Path file;
+    private final String source;
+    private final TreeSet<Long> completedAhead = new TreeSet<>();
+    private final TreeSet<Long> failed = new TreeSet<>();
+    private long nextLine;
+
+    private CrawlCheckpoint(Path file, String source, long nextLine) {
+        this.file = file;
+        this.source = source;
+        this.nextLine = nextLine;
+    }
+
+    /**
+     * Loads the checkpoint for a URL list, or starts a new one if there is none for that list.
+     *
+     * @param file   The checkpoint file.
+     * @param source The URL list the checkpoint belongs to, used to detect a stale checkpoint.
+     * @return The checkpoint.
+     */
+    public static CrawlCheckpoint load(Path file, String source) {
+        if (!Files.isRegularFile(file)) {
+            return new CrawlCheckpoint(file, source, 0);
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read crawl checkpoint " + file, e);
+        }
+        if (!source.equals(properties.getProperty("source"))) {
+            System.out.println("Ignoring crawl checkpoint " + file + " written for " + properties.getProperty("source"));
+            return new CrawlCheckpoint(file, source, 0);
+        }
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, source, Long.parseLong(properties.getProperty("nextLine", "0")));
+        for (String line : properties.getProperty("failed", "").split(",")) {
+            if (!line.trim().isEmpty()) {
+                checkpoint.failed.add(Long.parseLong(line.trim()));
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Returns the first line that is not known to be done.
+     *
+     * @return The zero based line number to resume from.
+     */
+    public synchronized long nextLine() {
+        return nextLine;
+    }
+
+    /**
+     * Returns whether a line failed in this or an earlier run and was not completed since.
+     *
+     * @param line The zero based line number.
+     * @return {@code true} if the line has to be crawled again.
+     */
+    public synchronized boolean isFailed(long line) {
+        return failed.contains(line);
+    }
+
+    /**
+     * Returns the lines that failed and were not completed since.
+     *
+     * @return The zero based line numbers, in ascending order.
+     */
+    public synchronized SortedSet<Long> failedLines() {
+        return new TreeSet<>(failed);
+    }
+
+    /**
+     * Marks a line as done, clearing an earlier failure, and persists the checkpoint if it changed.
+     *
+     * @param line The zero based line number.
+     */
+    public synchronized void complete(long line) {
+        boolean changed = failed.remove(line);
+        changed |= advance(line);
+        if (changed) {
+            write();
+        }
+    }
+
+    /**
+     * Marks a line as failed and persists the checkpoint. The mark moves over the line as if it was done,
+     * and the line stays in {@link #failedLines()} until it is completed.
+     *
+     * @param line The zero based line number.
+     */
+    public synchronized void fail(long line) {
+        failed.add(line);
+        advance(line);
+        write();
+    }
+
+    private boolean advance(long line) {
+        if (line < nextLine) {
+            return false;
+        }
+        completedAhead.add(line);
+        long before = nextLine;
+        while (!completedAhead.isEmpty() && completedAhead.first() == nextLine) {
+            completedAhead.pollFirst();
+            nextLine++;
+        }
+        return nextLine != before;
+    }
+
+    private void write() {
+        Properties properties = new Properties();
+        properties.setProperty("source", source);
+        properties.setProperty("nextLine", Long.toString(nextLine));
+        if (!failed.isEmpty()) {
+            properties.setProperty("failed", failed.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+        properties.setProperty("updatedAt", Instant.now().toString());
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "Crawl progress, written by CrawlRunner");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write crawl checkpoint " + file, e);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.deque.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.openqa.selenium.WebDriver;
+
+import com.deque.axe_core.commons.AxeWatcherOptions;
+
+/**
+ * Scans a list of URLs with a pool of Axe Watcher drivers in manual mode.
+ * The list is read line by line, so its size is not limited by memory: a bounded queue sits between
+ * the reader and the drivers and the reader waits whenever the drivers fall behind. Every driver loads a
+ * page, calls {@code analyze()} once and flushes after {@link #setBatchSize(int) a batch} of pages.
+ * Only flushed pages count as done for the {@link CrawlCheckpoint}, so an interrupted crawl resumes from
+ * the last uploaded batch. The pages of a batch that cannot be flushed, or of a driver that dies before
+ * flushing, are failed in the checkpoint and counted as failed; the crawl goes on and the next run over the
+ * list crawls them again.
+ *
+ * <p>Blank lines and lines starting with {@code #} are ignored. URLs pass through {@link TargetUrls},
+ * so a list of live URLs can be crawled against the fixture server. With {@link #setShard(ShardCoordinator)}
+ * only the URLs of one shard are scanned, so several JVMs or machines can crawl one list together.
+ * URLs matching {@link #setExcludeUrls(ExcludeUrlMatcher) exclude-URL patterns} are never loaded.</p>
+ */
+public class CrawlRunner {
+
+    private static final Entry END = new Entry(-1, null);
+
+    private final Path urlFile;
+    private final AxeWatcherOptions options;
+    private final WatcherDriverPool pool;
+    private final Consumer<WebDriver> analyze;
+    private final Consumer<WebDriver> flush;
+    private int concurrency = 4;
+    private int batchSize = 25;
+    private Path checkpointFile;
+    private ShardCoordinator shard = new ShardCoordinator(0, 1, false);
+    private AnalyzeCache analyzeCache;
+    private ExcludeUrlMatcher excludeUrls = ExcludeUrlMatcher.none();
+
+    /**
+     * Creates a runner for a URL list.
+     *
+     * @param urlFile The file with one URL per line.
+     * @param options Watcher options with {@code setAutoAnalyze(false)}, shared by all drivers.
+     * @param pool    The pool the drivers are borrowed from.
+     */
+    public CrawlRunner(Path urlFile, AxeWatcherOptions options, WatcherDriverPool pool) {
+        this(urlFile, options, pool, WatcherTimings::analyze, WatcherTimings::flush);
+    }
+
+    /**
+     * Creates a runner whose {@code analyze()} and {@code flush()} calls are replaced, so that a crawl can be
+     * exercised without Watcher.
+     *
+     * @param urlFile The file with one URL per line.
+     * @param options Watcher options with {@code setAutoAnalyze(false)}, shared by all drivers.
+     * @param pool    The pool the drivers are borrowed from.
+     * @param analyze Analyzes the loaded page, for pages that no {@link #setAnalyzeCache(AnalyzeCache) cache} skips.
+     * @param flush   Uploads the page states of a driver.
+     */
+    public CrawlRunner(Path urlFile, AxeWatcherOptions options, WatcherDriverPool pool, Consumer<WebDriver> analyze,
+            Consumer<WebDriver> flush) {
+        this.urlFile = urlFile;
+        this.options = options;
+        this.pool = pool;
+        this.analyze = analyze;
+        this.flush = flush;
+    }
+
+    /**
+     * Sets the number of drivers crawling in parallel, 4 by default.
+     *
+     * @param concurrency The number of drivers.
+     * @return This runner.
+     */
+    public CrawlRunner setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets how many pages a driver analyzes before it flushes, 25 by default.
+     *
+     * @param batchSize The number of pages per flush.
+     * @return This runner.
+     */
+    public CrawlRunner setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets the checkpoint file, {@code <url file>.checkpoint} by default, or
+     * {@code <url file>.shard-<index>-of-<count>.checkpoint} when sharded.
+     *
+     * @param checkpointFile The checkpoint file.
+     * @return This runner.
+     */
+    public CrawlRunner setCheckpoint(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+        return this;
+    }
+
+    /**
+     * Restricts the crawl to the URLs of one shard, all URLs by default.
+     *
+     * @param shard The shard this runner crawls.
+     * @return This runner.
+     */
+    public CrawlRunner setShard(ShardCoordinator shard) {
+        this.shard = shard;
+        return this;
+    }
+
+    /**
+     * Skips {@code analyze()} for pages whose state was already analyzed in this build, none by default.
+     *
+     * @param analyzeCache The cache, or null to analyze every page.
+     * @return This runner.
+     */
+    public CrawlRunner setAnalyzeCache(AnalyzeCache analyzeCache) {
+        this.analyzeCache = analyzeCache;
+        return this;
+    }
+
+    /**
+     * Leaves out URLs matching exclude-URL patterns without loading them, none by default.
+     *
+     * @param excludeUrls The compiled patterns.
+     * @return This runner.
+     */
+    public CrawlRunner setExcludeUrls(ExcludeUrlMatcher excludeUrls) {
+        this.excludeUrls = excludeUrls;
+        return this;
+    }
+
+    /**
+     * Crawls the list from the last checkpoint to the end.
+     *
+     * @return The counts of the crawl.
+     * @throws IllegalStateException If the list cannot be read or a driver cannot be started.
+     */
+    public Summary run() {
+        Path file = checkpointFile;
+        if (file == null) {
+            String suffix = shard.getCount() == 1 ? "" : ".shard-" + shard.getIndex() + "-of-" + shard.getCount();
+            file = urlFile.resolveSibling(urlFile.getFileName() + suffix + ".checkpoint");
+        }
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(file, urlFile.toAbsolutePath().toString());
+        long resumeFrom = checkpoint.nextLine();
+        if (resumeFrom > 0) {
+            System.out.println("Resuming crawl of " + urlFile + " at line " + (resumeFrom + 1) + ", retrying "
+                    + checkpoint.failedLines().size() + " failed lines before it");
+        }
+
+        BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(concurrency * 2);
+        AtomicInteger scanned = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "crawl-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(workers.submit(() -> {
+                crawl(queue, checkpoint, scanned, failed, skipped);
+                return null;
+            }));
+        }
+
+        try {
+            long lineNumber = 0;
+            try (BufferedReader reader = Files.newBufferedReader(urlFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    long current = lineNumber++;
+                    if (current < resumeFrom && !checkpoint.isFailed(current)) {
+                        continue;
+                    }
+                    String url = line.trim();
+                    if (url.isEmpty() || url.startsWith("#") || !shard.owns(url) || excludeUrls.excludes(url)) {
+                        checkpoint.complete(current);
+                        continue;
+                    }
+                    if (!put(queue, new Entry(current, url), futures)) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read URL list " + urlFile, e);
+            } finally {
+                for (int i = 0; i < concurrency; i++) {
+                    put(queue, END, futures);
+                }
+            }
+            awaitWorkers(futures);
+        } finally {
+            workers.shutdownNow();
+        }
+        return new Summary(resumeFrom, scanned.get(), failed.get(), skipped.get());
+    }
+
+    private void crawl(BlockingQueue<Entry> queue, CrawlCheckpoint checkpoint, AtomicInteger scanned,
+            AtomicInteger failed, AtomicInteger skipped) throws InterruptedException {
+        WebDriver driver = pool.acquire(options);
+        List<Long> batch = new ArrayList<>(batchSize);
+        try {
+            Entry entry;
+            while ((entry = queue.take()) != END) {
+                try {
+                    WatcherTimings.navigate(driver, TargetUrls.of(entry.url));
+                    if (analyzeCache == null) {
+                        analyze.accept(driver);
+                        scanned.incrementAndGet();
+                    } else if (analyzeCache.analyze(driver, pool.keyOf(driver))) {
+                        scanned.incrementAndGet();
+                    } else {
+                        skipped.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    // A broken page must not stop the crawl, it is reported and counted as done
+                    failed.incrementAndGet();
+                    System.out.println("Failed to scan " + entry.url + ": " + e.getMessage());
+                }
+                batch.add(entry.line);
+                if (batch.size() >= batchSize) {
+                    commit(driver, batch, checkpoint, failed);
+                    // Between batches nothing is pending, so a browser grown too large can be swapped
+                    driver = pool.recycleIfNeeded(driver);
+                }
+            }
+            commit(driver, batch, checkpoint, failed);
+        } finally {
+            // A worker that dies mid-batch must not hold back the checkpoint, its pages are crawled next run
+            failAll(batch, checkpoint, failed);
+            if (analyzeCache != null) {
+                analyzeCache.discard(driver);
+            }
+            try {
+                pool.release(driver);
+            } catch (RuntimeException e) {
+                System.out.println("Ignoring failure while releasing crawl driver: " + e.getMessage());
+            }
+        }
+    }
+
+    private void commit(WebDriver driver, List<Long> batch, CrawlCheckpoint checkpoint, AtomicInteger failed) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // Upload first, the pages only count as done once Watcher has received them
+        try {
+            flush.accept(driver);
+        } catch (RuntimeException e) {
+            // The flush already retried, so the batch is given up for this run
+            System.out.println("Failed to upload " + batch.size() + " crawled pages, they are crawled again next run: "
+                    + e.getMessage());
+            failAll(batch, checkpoint, failed);
+            if (analyzeCache != null) {
+                analyzeCache.discard(driver);
+            }
+            return;
+        }
+        if (analyzeCache != null) {
+            analyzeCache.flushed(driver);
+        }
+        for (Long line : batch) {
+            checkpoint.complete(line);
+        }
+        batch.clear();
+    }
+
+    private static void failAll(List<Long> batch, CrawlCheckpoint checkpoint, AtomicInteger failed) {
+        for (Long line : batch) {
+            checkpoint.fail(line);
+        }
+        failed.addAndGet(batch.size());
+        batch.clear();
+    }
+
+    private static boolean put(BlockingQueue<Entry> queue, Entry entry, List<Future<?>> futures) {
+        try {
+            while (!queue.offer(entry, 1, TimeUnit.SECONDS)) {
+                // Stop feeding once every worker has died, otherwise the reader would wait forever
+                if (futures.stream().allMatch(Future::isDone)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void awaitWorkers(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the crawl to finish", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Crawl worker failed", e.getCause());
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final long line;
+        private final String url;
+
+        Entry(long line, String url) {
+            this.line = line;
+            this.url = url;
+        }
+    }
+
+    /**
+     * Counts of a finished crawl.
+     */
+    public static final class Summary {
+        private final long resumedFrom;
+        private final int scanned;
+        private final int failed;
+        private final int skipped;
+
+        Summary(long resumedFrom, int scanned, int failed, int skipped) {
+            this.resumedFrom = resumedFrom;
+            this.scanned = scanned;
+            this.failed = failed;
+            this.skipped = skipped;
+        }
+
+        public long getResumedFrom() {
+            return resumedFrom;
+        }
+
+        public int getScanned() {
+            return scanned;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        @Override
+        public String toString() {
+            return "scanned=" + scanned + ", failed=" + failed + ", skipped=" + skipped + ", resumedFrom=" + resumedFrom;
+        }
+    }
+}
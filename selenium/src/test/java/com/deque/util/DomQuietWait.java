@@ -0,0 +1,82 @@
+package com.deque.util;
+
+import java.time.Duration;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Waits for the DOM to settle instead of sleeping for a fixed time.
+ * A MutationObserver is injected through {@link JavascriptExecutor} and the wait returns as soon as
+ * no mutation has been observed for the quiet window, so fast pages are not held back and slow pages
+ * are not cut short before Watcher sees their final state. Inline style changes are ignored so
+ * that script driven animations do not keep the page from ever settling.
+ */
+public class DomQuietWait {
+
+    /** Default time without DOM mutations after which the page is considered settled. */
+    public static final Duration DEFAULT_QUIET_WINDOW = Duration.ofMillis(300);
+
+    /** Default upper bound for a single wait. */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final String QUIET_SCRIPT =
+            "var quietMs = arguments[0], timeoutMs = arguments[1], done = arguments[arguments.length - 1];"
+            + "var quietTimer = null, observer = null;"
+            + "var deadline = setTimeout(function () { finish(false); }, timeoutMs);"
+            + "function finish(settled) {"
+            + "  if (observer) { observer.disconnect(); }"
+            + "  clearTimeout(quietTimer); clearTimeout(deadline); done(settled);"
+            + "}"
+            + "function arm() {"
+            + "  clearTimeout(quietTimer);"
+            + "  quietTimer = setTimeout(function () {"
+            + "    if (document.readyState === 'complete') { finish(true); } else { arm(); }"
+            + "  }, quietMs);"
+            + "}"
+            + "observer = new MutationObserver(function (records) {"
+            + "  for (var i = 0; i < records.length; i++) {"
+            + "    if (records[i].type !== 'attributes' || records[i].attributeName !== 'style') { arm(); return; }"
+            + "  }"
+            + "});"
+            + "observer.observe(document, { childList: true, subtree: true, attributes: true, characterData: true });"
+            + "arm();";
+
+    /**
+     * Blocks until the DOM has been quiet for {@link #DEFAULT_QUIET_WINDOW}.
+     *
+     * @param driver The driver whose current page is observed.
+     */
+    public static void untilQuiet(WebDriver driver) {
+        untilQuiet(driver, DEFAULT_QUIET_WINDOW, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Blocks until the DOM has not mutated for {@code quietWindow} and the document has finished loading.
+     * The script timeout of the session is raised for the wait and restored afterwards.
+     *
+     * @param driver      The driver whose current page is observed.
+     * @param quietWindow How long the DOM must stay unchanged.
+     * @param timeout     The maximum time to wait.
+     * @throws TimeoutException If the DOM keeps changing for longer than {@code timeout}.
+     */
+    public static void untilQuiet(WebDriver driver, Duration quietWindow, Duration timeout) {
+        WebDriver.Timeouts timeouts = driver.manage().timeouts();
+        Duration previous = timeouts.getScriptTimeout();
+        Object settled;
+        // Give the async script a little more time than its own deadline so the page reports the timeout
+        timeouts.scriptTimeout(timeout.plusSeconds(1));
+        try {
+            settled = ((JavascriptExecutor) driver)
+                    .executeAsyncScript(QUIET_SCRIPT, quietWindow.toMillis(), timeout.toMillis());
+        } finally {
+            // Leave the script timeout of the session as the test configured it
+            timeouts.scriptTimeout(previous);
+        }
+        if (!Boolean.TRUE.equals(settled)) {
+            throw new TimeoutException("DOM did not stay quiet for " + quietWindow.toMillis()
+                    + " ms within " + timeout.toMillis() + " ms on " + driver.getCurrentUrl());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.deque.util;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Thread-confined holder for the WebDriver used by the current test.
+ * Each TestNG worker thread sees only the driver it bound itself, so test classes
+ * can run with {@code parallel="methods"} without sharing a browser between threads.
+ */
+public class DriverHolder {
+
+    private static final ThreadLocal<WebDriver> DRIVER = new ThreadLocal<>();
+
+    /**
+     * Binds a driver to the current thread.
+     *
+     * @param driver The driver the current test should use.
+     */
+    public static void set(WebDriver driver) {
+        DRIVER.set(driver);
+    }
+
+    /**
+     * Returns the driver bound to the current thread.
+     *
+     * @return The driver bound by {@link #set(WebDriver)}.
+     * @throws IllegalStateException If no driver is bound to the current thread.
+     */
+    public static WebDriver get() {
+        WebDriver driver = DRIVER.get();
+        if (driver == null) {
+            throw new IllegalStateException("No WebDriver bound to thread " + Thread.currentThread().getName());
+        }
+        return driver;
+    }
+
+    /**
+     * Unbinds and returns the driver of the current thread.
+     *
+     * @return The previously bound driver, or {@code null} if none was bound.
+     */
+    public static WebDriver remove() {
+        WebDriver driver = DRIVER.get();
+        DRIVER.remove();
+        return driver;
+    }
+}
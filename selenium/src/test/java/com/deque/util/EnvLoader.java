@@ -1,22 +1,14 @@
 package com.deque.util;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.util.Properties;
-
+/**
+ * Kept for existing callers; reads from the shared {@link TestConfig} snapshot.
+ *
+ * @deprecated Use {@link TestConfig#get()} instead.
+ */
+@Deprecated
 public class EnvLoader {
-    private static Properties properties = new Properties();
-
-    static {
-        try (FileInputStream fis = new FileInputStream("src/test/resources/config.properties")) {
-            properties.load(fis);
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Failed to load .env file");
-        }
-    }
 
     public static String get(String key) {
-        return properties.getProperty(key);
+        return TestConfig.get().get(key);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,214 @@
+package com.deque.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Decides locally whether a URL is excluded by Watcher exclude-URL patterns, so a crawl can skip
+ * excluded pages without loading them.
+ * The patterns are the globs passed to {@code AxeWatcherOptions.setExcludeUrlPatterns}: {@code *} and
+ * {@code ?} match within one path segment, {@code **} across segments, and anything else literally.
+ *
+ * <p>Patterns are validated and compiled once. Literal patterns go into a hash set; globs are filed in a
+ * character trie under their literal prefix, up to the first wildcard, with the rest compiled to a regex.
+ * Checking a URL walks the trie along the URL and only tries the globs whose prefix it passes, so the cost
+ * grows with the URL length and the number of globs sharing its prefix, not with the size of the list.
+ * A trailing slash of the URL is ignored, so {@code **}{@code /*.*} excludes the home page as Watcher does.
+ * Blank patterns match nothing and are ignored.</p>
+ */
+public class ExcludeUrlMatcher {
+
+    private static final ExcludeUrlMatcher NONE = new ExcludeUrlMatcher(Collections.<String>emptyList());
+
+    private final List<String> patterns;
+    private final Set<String> literals = new HashSet<>();
+    private final Node root = new Node();
+    private final int globs;
+
+    private ExcludeUrlMatcher(List<String> patterns) {
+        this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+        int globCount = 0;
+        for (String pattern : patterns) {
+            String trimmed = pattern.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int wildcard = firstWildcard(trimmed);
+            if (wildcard < 0) {
+                literals.add(stripTrailingSlash(trimmed));
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < wildcard; i++) {
+                node = node.children.computeIfAbsent(trimmed.charAt(i), c -> new Node());
+            }
+            node.rests.add(Pattern.compile(toRegex(trimmed.substring(wildcard))));
+            globCount++;
+        }
+        this.globs = globCount;
+    }
+
+    /**
+     * Validates and compiles exclude-URL patterns.
+     *
+     * @param patterns The patterns, as passed to {@code setExcludeUrlPatterns}.
+     * @return The matcher.
+     * @throws IllegalStateException If a pattern contains syntax Watcher's globs do not support.
+     */
+    public static ExcludeUrlMatcher compile(String... patterns) {
+        return compile(Arrays.asList(patterns));
+    }
+
+    /**
+     * Validates and compiles exclude-URL patterns.
+     *
+     * @param patterns The patterns.
+     * @return The matcher.
+     * @throws IllegalStateException If a pattern contains syntax Watcher's globs do not support.
+     */
+    public static ExcludeUrlMatcher compile(Collection<String> patterns) {
+        for (String pattern : patterns) {
+            validate(pattern);
+        }
+        return new ExcludeUrlMatcher(new ArrayList<>(patterns));
+    }
+
+    /**
+     * Returns a matcher that excludes nothing.
+     *
+     * @return The empty matcher.
+     */
+    public static ExcludeUrlMatcher none() {
+        return NONE;
+    }
+
+    /**
+     * Returns whether Watcher skips a URL.
+     *
+     * @param url The page URL.
+     * @return {@code true} if a pattern matches the URL.
+     */
+    public boolean excludes(String url) {
+        url = stripTrailingSlash(url);
+        if (literals.contains(url)) {
+            return true;
+        }
+        if (globs == 0) {
+            return false;
+        }
+        Node node = root;
+        for (int i = 0; ; i++) {
+            for (Pattern rest : node.rests) {
+                if (rest.matcher(url).region(i, url.length()).matches()) {
+                    return true;
+                }
+            }
+            if (i == url.length()) {
+                return false;
+            }
+            node = node.children.get(url.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the patterns this matcher was compiled from, to pass the same list to Watcher.
+     *
+     * @return The patterns, in their original order.
+     */
+    public String[] patterns() {
+        return patterns.toArray(new String[0]);
+    }
+
+    /**
+     * Translates a glob to a regular expression: {@code **} matches anything, {@code *} anything but a
+     * slash, {@code ?} one character but a slash, and {@code **}{@code /} also matches nothing at all.
+     *
+     * @param glob The glob.
+     * @return The regular expression.
+     */
+    public static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                literal.append(c);
+                continue;
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                i++;
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                    i++;
+                    regex.append("(?:.*/)?");
+                } else {
+                    regex.append(".*");
+                }
+            } else {
+                regex.append("[^/]*");
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
+    }
+
+    @Override
+    public String toString() {
+        return literals.size() + " literal and " + globs + " glob exclude-URL patterns";
+    }
+
+    private static void validate(String pattern) {
+        if (pattern == null) {
+            throw new IllegalStateException("Exclude-URL pattern must not be null");
+        }
+        for (char c : new char[] { '[', ']', '{', '}' }) {
+            if (pattern.indexOf(c) >= 0) {
+                throw new IllegalStateException("Unsupported character '" + c + "' in exclude-URL pattern: " + pattern
+                        + ", only *, ** and ? are supported");
+            }
+        }
+        if (pattern.contains("***")) {
+            throw new IllegalStateException("Exclude-URL pattern has more than two consecutive '*': " + pattern);
+        }
+    }
+
+    private static int firstWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * A trie node: the globs whose literal prefix ends here, and the next prefix characters.
+     */
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private final List<Pattern> rests = new ArrayList<>(1);
+    }
+}
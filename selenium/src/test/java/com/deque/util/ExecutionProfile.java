@@ -0,0 +1,106 @@
+package com.deque.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.openqa.selenium.chrome.ChromeOptions;
+
+import com.deque.axe_core.selenium.AxeWatcher;
+
+/**
+ * How Chrome is launched for the tests, selected with the {@code EXECUTION_PROFILE} setting.
+ * {@code headed}, the default, opens a maximized browser window. {@code headless} uses Chrome's
+ * {@code --headless=new} mode, the only headless mode Watcher accepts, with a fixed viewport of
+ * {@code EXECUTION_WINDOW_SIZE} and without GPU, background networking and component extensions,
+ * so many more sessions fit on one CI box. {@code --disable-extensions} is never passed, since Watcher
+ * itself runs as an extension. With {@code EXECUTION_IMAGES=false} images are not loaded either,
+ * which speeds up image heavy pages but can change color-contrast results over background images.
+ *
+ * <p>The arguments are added before {@link AxeWatcher#configure(ChromeOptions)}, so Watcher validates
+ * the final set; see {@link #configure(AxeWatcher)}.</p>
+ */
+public enum ExecutionProfile {
+
+    /** A visible, maximized browser window. */
+    HEADED {
+        @Override
+        public List<String> arguments(TestConfig config) {
+            return Arrays.asList("--start-maximized", "--disable-notifications");
+        }
+    },
+
+    /** Chrome's new headless mode, tuned for packing many sessions on one machine. */
+    HEADLESS {
+        @Override
+        public List<String> arguments(TestConfig config) {
+            List<String> arguments = new ArrayList<>(Arrays.asList(
+                    "--headless=new",
+                    "--window-size=" + config.get("EXECUTION_WINDOW_SIZE", "1920,1080"),
+                    "--disable-gpu",
+                    "--disable-background-networking",
+                    "--disable-component-extensions-with-background-pages",
+                    "--disable-notifications",
+                    "--mute-audio"));
+            if (!config.getBoolean("EXECUTION_IMAGES", true)) {
+                arguments.add("--blink-settings=imagesEnabled=false");
+            }
+            return arguments;
+        }
+    };
+
+    /**
+     * Returns the Chrome arguments of this profile.
+     *
+     * @param config The settings to read the viewport and image options from.
+     * @return The arguments, in the order they are passed to Chrome.
+     */
+    public abstract List<String> arguments(TestConfig config);
+
+    /**
+     * Returns the Chrome arguments of this profile for the settings of this run.
+     *
+     * @return The arguments.
+     */
+    public List<String> arguments() {
+        return arguments(TestConfig.get());
+    }
+
+    /**
+     * Adds the arguments of this profile to Chrome options.
+     *
+     * @param options The options to extend.
+     * @return The same options.
+     */
+    public ChromeOptions apply(ChromeOptions options) {
+        options.addArguments(arguments());
+        return options;
+    }
+
+    /**
+     * Builds Chrome options for this profile and lets Watcher add its extension. Watcher rejects
+     * arguments it cannot run with, such as the classic {@code --headless}.
+     *
+     * @param watcher The Watcher the browser is started for.
+     * @return The options to start Chrome with.
+     */
+    public ChromeOptions configure(AxeWatcher watcher) {
+        return watcher.configure(apply(new ChromeOptions()));
+    }
+
+    /**
+     * Returns the profile selected by {@code EXECUTION_PROFILE}.
+     *
+     * @return The profile, {@link #HEADED} if the setting is missing.
+     * @throws IllegalStateException If the setting names no profile.
+     */
+    public static ExecutionProfile current() {
+        String name = TestConfig.get().get("EXECUTION_PROFILE", "headed");
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Unknown EXECUTION_PROFILE " + name + ", expected headed or headless", e);
+        }
+    }
+}
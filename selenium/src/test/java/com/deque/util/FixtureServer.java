@@ -0,0 +1,216 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded static HTTP server that serves the snapshots under {@code src/test/resources/fixtures}.
+ * A live URL such as {@code https://abcdcomputech.dequecloud.com/support.php} is served from
+ * {@code fixtures/abcdcomputech.dequecloud.com/support.php} at
+ * {@code http://127.0.0.1:<port>/abcdcomputech.dequecloud.com/support.php}, so relative links in the
+ * snapshots keep working. Responses always carry a Content-Length, which lets browsers reuse
+ * keep-alive connections, and file bodies are streamed straight from a {@link FileChannel}. An
+ * {@code ETag} and {@code Last-Modified} derived from the file size and modification time let
+ * {@link TargetChangeDetector} notice edited snapshots, and a matching {@code If-None-Match} gets a 304.
+ */
+public class FixtureServer {
+
+    private static final String FIXTURE_ROOT = "fixtures";
+    private static final String INDEX_FILE = "index.html";
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+
+    static {
+        CONTENT_TYPES.put("html", "text/html; charset=utf-8");
+        CONTENT_TYPES.put("php", "text/html; charset=utf-8");
+        CONTENT_TYPES.put("css", "text/css; charset=utf-8");
+        CONTENT_TYPES.put("js", "application/javascript; charset=utf-8");
+        CONTENT_TYPES.put("json", "application/json; charset=utf-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("gif", "image/gif");
+    }
+
+    private static volatile FixtureServer shared;
+
+    private final Path root;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts a server for the given fixture directory on an ephemeral loopback port.
+     *
+     * @param root The directory whose children are named after the live hosts.
+     * @throws IOException If the server socket cannot be opened.
+     */
+    public FixtureServer(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, r -> {
+            Thread thread = new Thread(r, "fixture-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Returns the JVM wide server for the fixtures on the test classpath, starting it on first use.
+     *
+     * @return The shared fixture server.
+     */
+    public static FixtureServer shared() {
+        FixtureServer instance = shared;
+        if (instance == null) {
+            synchronized (FixtureServer.class) {
+                instance = shared;
+                if (instance == null) {
+                    try {
+                        instance = new FixtureServer(classpathRoot());
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed to start fixture server", e);
+                    }
+                    Runtime.getRuntime().addShutdownHook(new Thread(instance::stop, "fixture-server-shutdown"));
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the base URL of the server, for example {@code http://127.0.0.1:54321}.
+     *
+     * @return The base URL without a trailing slash.
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Maps a live URL onto the matching fixture URL of this server.
+     *
+     * @param liveUrl An absolute http or https URL of one of the snapshotted hosts.
+     * @return The URL serving the snapshot of that page.
+     */
+    public String urlFor(String liveUrl) {
+        URI uri = URI.create(liveUrl);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        String query = uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery();
+        return baseUrl() + "/" + uri.getHost() + path + query;
+    }
+
+    /**
+     * Stops the server and its worker threads.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Path file = resolve(exchange.getRequestURI().getPath());
+            if (file == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            long size = Files.size(file);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
+            exchange.getResponseHeaders().set("Content-Type", contentType(file));
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME
+                    .format(Instant.ofEpochMilli(modified).atOffset(ZoneOffset.UTC)));
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            if ("HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Content-Length", Long.toString(size));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, size == 0 ? -1 : size);
+            if (size > 0) {
+                try (FileChannel channel = FileChannel.open(file); OutputStream body = exchange.getResponseBody()) {
+                    WritableByteChannel target = Channels.newChannel(body);
+                    long position = 0;
+                    while (position < size) {
+                        position += channel.transferTo(position, size - position, target);
+                    }
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Path resolve(String requestPath) {
+        Path file = root.resolve(requestPath.replaceFirst("^/+", "")).normalize();
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        if (Files.isDirectory(file)) {
+            file = file.resolve(INDEX_FILE);
+        }
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    private static String contentType(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String type = dot < 0 ? null : CONTENT_TYPES.get(name.substring(dot + 1));
+        return type == null ? "text/html; charset=utf-8" : type;
+    }
+
+    private static Path classpathRoot() throws IOException {
+        URL url = FixtureServer.class.getClassLoader().getResource(FIXTURE_ROOT);
+        if (url == null) {
+            throw new IOException("No '" + FIXTURE_ROOT + "' directory on the test classpath");
+        }
+        try {
+            URI uri = url.toURI();
+            if ("jar".equals(uri.getScheme())) {
+                try {
+                    FileSystems.getFileSystem(uri);
+                } catch (FileSystemNotFoundException e) {
+                    FileSystems.newFileSystem(uri, Collections.<String, Object>emptyMap());
+                }
+            }
+            return Paths.get(uri);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid fixture location " + url, e);
+        }
+    }
+}
@@ -1,33 +1,298 @@
 package com.deque.util;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
 /**
  * Utility class for Git-related operations.
+ * Branches are managed in-process by reading and writing the repository metadata under {@code .git}
+ * directly, the way {@code git} itself does: refs are created through a {@code .lock} file that is moved
+ * into place, so two writers can never both succeed, and the working tree and index are never touched.
+ * Linked worktrees, whose {@code .git} is a file pointing at their metadata, and packed refs are supported.
+ *
+ * <p>Watcher reads the branch of the checkout when a session starts. {@link #onNewBranch(String, Supplier)}
+ * starts a session on a branch of its own by pointing {@code HEAD} at it only for that moment, while
+ * sessions started through {@link #onCurrentBranch(Supplier)}, as {@link WatcherDriverPool} does, wait
+ * for it, so parallel workers each report their own branch.</p>
  */
 public class GitUtils {
 
+    private static final String HEADS = "refs/heads/";
+    private static final String SYMREF = "ref: ";
+    private static final long LOCK_TIMEOUT_MILLIS = 5_000;
+
+    private static final String RUN_TOKEN = runToken();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final ReentrantReadWriteLock HEAD_LOCK = new ReentrantReadWriteLock();
+
     /**
-     * Generates a random branch name based on the current method name and a random number.
+     * Generates a branch name for the current method that no other call, thread or JVM generates: a random
+     * token drawn once per JVM and a sequence number keep the names of parallel workers and shards apart.
      *
      * @param methodName The name of the method for which the branch is being created.
-     * @return The generated branch name.
+     * @return The generated branch name, a valid Git ref name.
      */
     public static String generateBranchName(String methodName) {
-        return "test-branch-" + (int) (Math.random() * 10000) + "-" + methodName;
+        String suffix = methodName.replaceAll("[^A-Za-z0-9_-]+", "-");
+        return "test-branch-" + RUN_TOKEN + "-" + SEQUENCE.incrementAndGet() + (suffix.isEmpty() ? "" : "-" + suffix);
     }
 
     /**
-     * Executes a Git command to create and switch to a new branch.
+     * Creates a branch at the current commit and makes it the current branch, like {@code git checkout -b}.
+     * Because the new branch points at the commit already checked out, only {@code HEAD} is rewritten.
      *
      * @param branchName The name of the branch to create and switch to.
+     * @throws IllegalStateException If the name is invalid, the branch exists or the repository cannot be updated.
      */
     public static void checkoutNewBranch(String branchName) {
+        checkoutNewBranch(findGitDir(Paths.get(System.getProperty("user.dir"))), branchName);
+    }
+
+    /**
+     * Creates a branch at the current commit and makes it the current branch of a repository.
+     *
+     * @param gitDir     The {@code .git} directory, see {@link #findGitDir(Path)}.
+     * @param branchName The name of the branch to create and switch to.
+     * @throws IllegalStateException If the name is invalid, the branch exists or the repository cannot be updated.
+     */
+    public static void checkoutNewBranch(Path gitDir, String branchName) {
+        HEAD_LOCK.writeLock().lock();
+        try {
+            createBranch(gitDir, branchName);
+            write(gitDir, "HEAD", SYMREF + HEADS + branchName, null);
+        } finally {
+            HEAD_LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Creates a branch at the current commit and runs an action, typically starting a Watcher session, while
+     * {@code HEAD} points at it, then points {@code HEAD} back.
+     *
+     * @param branchName The name of the branch to create.
+     * @param action     The action to run on the new branch.
+     * @param <T>        The result type of the action.
+     * @return The result of the action.
+     * @throws IllegalStateException If the name is invalid, the branch exists or the repository cannot be updated.
+     */
+    public static <T> T onNewBranch(String branchName, Supplier<T> action) {
+        return onNewBranch(findGitDir(Paths.get(System.getProperty("user.dir"))), branchName, action);
+    }
+
+    /**
+     * Creates a branch at the current commit of a repository and runs an action while {@code HEAD} points
+     * at it, then restores {@code HEAD}. Actions of {@link #onCurrentBranch(Supplier)} wait meanwhile.
+     *
+     * @param gitDir     The {@code .git} directory.
+     * @param branchName The name of the branch to create.
+     * @param action     The action to run on the new branch.
+     * @param <T>        The result type of the action.
+     * @return The result of the action.
+     * @throws IllegalStateException If the name is invalid, the branch exists or the repository cannot be updated.
+     */
+    public static <T> T onNewBranch(Path gitDir, String branchName, Supplier<T> action) {
+        HEAD_LOCK.writeLock().lock();
+        try {
+            createBranch(gitDir, branchName);
+            String previous = read(gitDir.resolve("HEAD"));
+            write(gitDir, "HEAD", SYMREF + HEADS + branchName, null);
+            try {
+                return action.get();
+            } finally {
+                write(gitDir, "HEAD", previous, null);
+            }
+        } finally {
+            HEAD_LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs an action on the branch that is checked out, waiting while {@link #onNewBranch(Path, String, Supplier)}
+     * has {@code HEAD} pointed elsewhere.
+     *
+     * @param action The action to run.
+     * @param <T>    The result type of the action.
+     * @return The result of the action.
+     */
+    public static <T> T onCurrentBranch(Supplier<T> action) {
+        HEAD_LOCK.readLock().lock();
         try {
-            // Execute the Git checkout command
-            Process process = Runtime.getRuntime().exec(new String[]{"git", "checkout", "-b", branchName});
-            process.waitFor();
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException("Failed to create and switch to branch: " + branchName, e);
+            return action.get();
+        } finally {
+            HEAD_LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates a branch at the current commit without switching to it, so the checkout of other workers is
+     * left alone. Does nothing but validate the name when the repository has no commit yet.
+     *
+     * @param gitDir     The {@code .git} directory.
+     * @param branchName The name of the branch.
+     * @throws IllegalStateException If the name is invalid, the branch exists or the repository cannot be updated.
+     */
+    public static void createBranch(Path gitDir, String branchName) {
+        requireValidName(branchName);
+        String commit = headCommit(gitDir);
+        if (commit == null) {
+            return;
+        }
+        write(commonDir(gitDir), HEADS + branchName, commit, gitDir);
+    }
+
+    /**
+     * Returns the branch {@code HEAD} points at.
+     *
+     * @param gitDir The {@code .git} directory.
+     * @return The branch name, or null if {@code HEAD} is detached.
+     */
+    public static String currentBranch(Path gitDir) {
+        String head = read(gitDir.resolve("HEAD"));
+        return head != null && head.startsWith(SYMREF + HEADS) ? head.substring((SYMREF + HEADS).length()) : null;
+    }
+
+    /**
+     * Returns the commit checked out.
+     *
+     * @param gitDir The {@code .git} directory.
+     * @return The commit id, or null if the current branch has no commit yet.
+     */
+    public static String headCommit(Path gitDir) {
+        String head = read(gitDir.resolve("HEAD"));
+        if (head == null) {
+            throw new IllegalStateException("Not a Git directory: " + gitDir);
+        }
+        return head.startsWith(SYMREF) ? resolve(gitDir, head.substring(SYMREF.length())) : head;
+    }
+
+    /**
+     * Finds the Git metadata of the repository containing a directory.
+     *
+     * @param start The directory to start from, usually the working directory.
+     * @return The {@code .git} directory, or the worktree directory a {@code .git} file points at.
+     * @throws IllegalStateException If no enclosing repository is found.
+     */
+    public static Path findGitDir(Path start) {
+        for (Path dir = start.toAbsolutePath().normalize(); dir != null; dir = dir.getParent()) {
+            Path git = dir.resolve(".git");
+            if (Files.isDirectory(git)) {
+                return git;
+            }
+            String link = Files.isRegularFile(git) ? read(git) : null;
+            if (link != null && link.startsWith("gitdir: ")) {
+                return dir.resolve(link.substring("gitdir: ".length())).normalize();
+            }
+        }
+        throw new IllegalStateException("No Git repository found above " + start.toAbsolutePath());
+    }
+
+    private static String resolve(Path gitDir, String ref) {
+        Path common = commonDir(gitDir);
+        String loose = read(common.resolve(ref));
+        if (loose != null) {
+            return loose.startsWith(SYMREF) ? resolve(gitDir, loose.substring(SYMREF.length())) : loose;
+        }
+        Path packed = common.resolve("packed-refs");
+        if (!Files.exists(packed)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(packed, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                if (line.endsWith(" " + ref) && !line.startsWith("#") && !line.startsWith("^")) {
+                    return line.substring(0, line.indexOf(' '));
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + packed, e);
+        }
+    }
+
+    private static Path commonDir(Path gitDir) {
+        // Linked worktrees keep HEAD to themselves but share the refs of the main repository
+        String common = read(gitDir.resolve("commondir"));
+        return common == null ? gitDir : gitDir.resolve(common).normalize();
+    }
+
+    private static void write(Path dir, String name, String content, Path createIn) {
+        Path target = dir.resolve(name);
+        Path lock = dir.resolve(name + ".lock");
+        long deadline = System.currentTimeMillis() + LOCK_TIMEOUT_MILLIS;
+        try {
+            Files.createDirectories(target.getParent());
+            while (true) {
+                try {
+                    Files.write(lock, (content + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.WRITE);
+                    break;
+                } catch (FileAlreadyExistsException e) {
+                    // Another writer holds the lock, as git would we wait for it to finish
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new IllegalStateException("Timed out waiting for " + lock + ", remove it if no git "
+                                + "process is running", e);
+                    }
+                    Thread.sleep(20);
+                }
+            }
+            if (createIn != null && resolve(createIn, name) != null) {
+                // Checked while holding the lock, so of two workers creating the same ref only one succeeds
+                Files.delete(lock);
+                throw new IllegalStateException("Branch already exists: " + name.substring(HEADS.length()));
+            }
+            Files.move(lock, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write " + target, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + lock, e);
+        }
+    }
+
+    private static String read(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + file, e);
+        }
+    }
+
+    private static void requireValidName(String branchName) {
+        // The rules of git check-ref-format that a generated or hand written name can break
+        boolean valid = !branchName.isEmpty() && !branchName.startsWith("-") && !branchName.startsWith("/")
+                && !branchName.endsWith("/") && !branchName.endsWith(".") && !branchName.endsWith(".lock")
+                && !branchName.contains("..") && !branchName.contains("//") && !branchName.contains("@{")
+                && !branchName.contains("/.") && !branchName.startsWith(".") && !branchName.equals("@");
+        for (int i = 0; valid && i < branchName.length(); i++) {
+            char c = branchName.charAt(i);
+            valid = c > ' ' && c != 0x7f && "~^:?*[\\".indexOf(c) < 0;
+        }
+        if (!valid) {
+            throw new IllegalStateException("Invalid branch name: '" + branchName + "'");
+        }
+    }
+
+    private static String runToken() {
+        byte[] bytes = new byte[6];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder hex = new StringBuilder(12);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
         }
+        return hex.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,444 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriver;
+
+/**
+ * Watches the memory of pooled browsers so long-lived sessions are replaced before they start swapping.
+ * A sample sums the resident set size of the Chrome process tree from {@code /proc}, found through the
+ * {@code --user-data-dir} of the session, and reads the JS heap of the current page with the DevTools
+ * {@code Performance.getMetrics} command. {@link WatcherDriverPool} takes a sample whenever a session is
+ * released or a crawl batch is flushed, and quits the browser instead of reusing it when one of the limits
+ * is crossed: {@code MEMORY_MAX_RSS_MB}, {@code MEMORY_MAX_JS_HEAP_MB} or {@code MEMORY_MAX_PAGE_STATES}
+ * page states since it started. Page states are counted as the navigations in the tab history, read with
+ * {@code Page.getNavigationHistory} so that plain {@code driver.get(...)} calls count; {@code analyze()}
+ * calls are not counted again, since the page they analyze is already in the history. A limit of 0 is not checked;
+ * {@code MEMORY_WATCHDOG=false} turns sampling off.
+ *
+ * <p>Every sample is appended to {@code memory-<pid>.csv} in {@code -Dwatcher.memory.dir},
+ * {@code target/watcher-memory} by default, which gives one memory curve per session for capacity planning.
+ * Each JVM writes its own file, so shards writing to the same directory keep their samples.
+ * Outside Linux the RSS is reported as -1 and only the other limits apply.</p>
+ */
+public class MemoryWatchdog {
+
+    /** Name of the samples file of this JVM inside the output directory. */
+    public static final String CSV_FILE = "memory-" + ProcessHandle.current().pid() + ".csv";
+
+    private static final String CSV_HEADER = "session,key,elapsedMs,pageStates,rssBytes,jsHeapUsedBytes,jsHeapTotalBytes,recycled";
+    private static final String USER_DATA_DIR = "--user-data-dir=";
+    private static final long MB = 1024L * 1024;
+
+    private final boolean enabled;
+    private final long maxRssBytes;
+    private final long maxJsHeapBytes;
+    private final int maxPageStates;
+    private final Path directory;
+    private final Path proc;
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final Object csvLock = new Object();
+
+    /**
+     * Creates a watchdog.
+     *
+     * @param maxRssBytes    The process tree RSS that triggers recycling, or 0.
+     * @param maxJsHeapBytes The used JS heap that triggers recycling, or 0.
+     * @param maxPageStates  The page states after which a session is recycled, or 0.
+     * @param directory      The directory {@link #CSV_FILE} is written to, or null to keep no record.
+     */
+    public MemoryWatchdog(long maxRssBytes, long maxJsHeapBytes, int maxPageStates, Path directory) {
+        this(true, maxRssBytes, maxJsHeapBytes, maxPageStates, directory, Paths.get("/proc"));
+    }
+
+    MemoryWatchdog(boolean enabled, long maxRssBytes, long maxJsHeapBytes, int maxPageStates, Path directory, Path proc) {
+        this.enabled = enabled;
+        this.maxRssBytes = maxRssBytes;
+        this.maxJsHeapBytes = maxJsHeapBytes;
+        this.maxPageStates = maxPageStates;
+        this.directory = directory;
+        this.proc = proc;
+    }
+
+    /**
+     * Creates the watchdog configured by {@link TestConfig}.
+     *
+     * @return The configured watchdog.
+     */
+    public static MemoryWatchdog fromConfig() {
+        TestConfig config = TestConfig.get();
+        return new MemoryWatchdog(config.getBoolean("MEMORY_WATCHDOG", true),
+                config.getInt("MEMORY_MAX_RSS_MB", 2048) * MB, config.getInt("MEMORY_MAX_JS_HEAP_MB", 512) * MB,
+                config.getInt("MEMORY_MAX_PAGE_STATES", 200),
+                Paths.get(System.getProperty("watcher.memory.dir", "target/watcher-memory")), Paths.get("/proc"));
+    }
+
+    /**
+     * Starts watching a browser.
+     *
+     * @param key The pool key of the session, recorded with its samples.
+     * @param raw The unwrapped driver of the browser.
+     * @return The handle the pool samples the browser through.
+     */
+    public Session track(String key, ChromeDriver raw) {
+        return new Session("session-" + sessions.incrementAndGet(), key, raw);
+    }
+
+    /**
+     * Returns why a sample calls for recycling its session.
+     *
+     * @param sample The sample.
+     * @return The limit that was crossed, or null if the session can be reused.
+     */
+    public String limitExceeded(Sample sample) {
+        if (!enabled) {
+            return null;
+        }
+        if (maxPageStates > 0 && sample.getPageStates() >= maxPageStates) {
+            return sample.getPageStates() + " page states";
+        }
+        if (maxRssBytes > 0 && sample.getRssBytes() >= maxRssBytes) {
+            return "RSS of " + sample.getRssBytes() / MB + " MB";
+        }
+        if (maxJsHeapBytes > 0 && sample.getJsHeapUsedBytes() >= maxJsHeapBytes) {
+            return "JS heap of " + sample.getJsHeapUsedBytes() / MB + " MB";
+        }
+        return null;
+    }
+
+    /**
+     * Appends a sample to {@link #CSV_FILE}.
+     *
+     * @param sample The sample.
+     * @param reason The reason the session is recycled, or null.
+     */
+    public void record(Sample sample, String reason) {
+        if (directory == null) {
+            return;
+        }
+        String line = sample.getSession() + ',' + csv(sample.getKey()) + ',' + sample.getElapsedMillis() + ','
+                + sample.getPageStates() + ',' + sample.getRssBytes() + ',' + sample.getJsHeapUsedBytes() + ','
+                + sample.getJsHeapTotalBytes() + ',' + csv(reason == null ? "" : reason) + '\n';
+        synchronized (csvLock) {
+            try {
+                Files.createDirectories(directory);
+                Path file = directory.resolve(CSV_FILE);
+                try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)) {
+                    if (Files.size(file) == 0) {
+                        out.write(CSV_HEADER + '\n');
+                    }
+                    out.write(line);
+                }
+            } catch (IOException e) {
+                System.out.println("Could not record memory sample: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Finds the Chrome browser process that owns a user data directory.
+     *
+     * @param proc        The proc file system, normally {@code /proc}.
+     * @param userDataDir The user data directory of the session.
+     * @return The process id, or -1 if no process was found.
+     */
+    public static long browserPid(Path proc, String userDataDir) {
+        String flag = USER_DATA_DIR + userDataDir;
+        try (DirectoryStream<Path> processes = Files.newDirectoryStream(proc, "[0-9]*")) {
+            for (Path process : processes) {
+                List<String> arguments = arguments(process);
+                // Child processes repeat the flag but carry a --type, the browser process does not
+                if (arguments.contains(flag) && arguments.stream().noneMatch(a -> a.startsWith("--type="))) {
+                    return Long.parseLong(process.getFileName().toString());
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Sums the resident set size of a process and all its descendants.
+     *
+     * @param proc The proc file system, normally {@code /proc}.
+     * @param root The process id at the top of the tree.
+     * @return The RSS in bytes, or -1 if the process does not exist.
+     */
+    public static long treeRss(Path proc, long root) {
+        Map<Long, List<Long>> children = new HashMap<>();
+        try (DirectoryStream<Path> processes = Files.newDirectoryStream(proc, "[0-9]*")) {
+            for (Path process : processes) {
+                long parent = parentPid(process);
+                if (parent >= 0) {
+                    children.computeIfAbsent(parent, p -> new ArrayList<>())
+                            .add(Long.parseLong(process.getFileName().toString()));
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        long rootRss = rss(proc.resolve(Long.toString(root)));
+        if (rootRss < 0) {
+            return -1;
+        }
+        long total = rootRss;
+        Deque<Long> pending = new ArrayDeque<>(children.getOrDefault(root, Collections.emptyList()));
+        while (!pending.isEmpty()) {
+            long pid = pending.pop();
+            total += Math.max(0, rss(proc.resolve(Long.toString(pid))));
+            pending.addAll(children.getOrDefault(pid, Collections.emptyList()));
+        }
+        return total;
+    }
+
+    private static List<String> arguments(Path process) {
+        try {
+            byte[] cmdline = Files.readAllBytes(process.resolve("cmdline"));
+            List<String> arguments = new ArrayList<>();
+            int start = 0;
+            for (int i = 0; i <= cmdline.length; i++) {
+                if (i == cmdline.length || cmdline[i] == 0) {
+                    if (i > start) {
+                        arguments.add(new String(cmdline, start, i - start, StandardCharsets.UTF_8));
+                    }
+                    start = i + 1;
+                }
+            }
+            return arguments;
+        } catch (IOException e) {
+            // Processes may exit while the directory is listed
+            return Collections.emptyList();
+        }
+    }
+
+    private static long parentPid(Path process) {
+        try {
+            String stat = new String(Files.readAllBytes(process.resolve("stat")), StandardCharsets.UTF_8);
+            // The command name may contain spaces and parentheses, the fields after it do not
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Long.parseLong(fields[1]);
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static long rss(Path process) {
+        try {
+            for (String line : Files.readAllLines(process.resolve("status"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).trim().split("\\s+")[0]) * 1024;
+                }
+            }
+            // Zombies have no memory left
+            return 0;
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static String csv(String value) {
+        return value.contains(",") || value.contains("\"") ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    /**
+     * The memory record of one browser, from launch until it is quit.
+     */
+    public final class Session {
+        private final String id;
+        private final String key;
+        private final ChromeDriver raw;
+        private final long startedNanos = System.nanoTime();
+        private final AtomicInteger pageStates = new AtomicInteger();
+        private volatile long browserPid;
+        private volatile boolean metricsEnabled;
+        private volatile long lastHistoryEntry = -1;
+
+        Session(String id, String key, ChromeDriver raw) {
+            this.id = id;
+            this.key = key;
+            this.raw = raw;
+        }
+
+        /**
+         * Returns the id the samples of this browser are recorded under.
+         *
+         * @return The session id.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Samples the browser, records the sample and tells whether the browser should be replaced.
+         *
+         * @return The limit that was crossed, or null if the session can be reused or the watchdog is off.
+         */
+        public String check() {
+            if (!enabled) {
+                return null;
+            }
+            Sample sample = sample();
+            String reason = limitExceeded(sample);
+            record(sample, reason);
+            return reason;
+        }
+
+        /**
+         * Measures the browser.
+         *
+         * @return The sample.
+         */
+        public Sample sample() {
+            pageStates.addAndGet(navigations());
+            long[] heap = jsHeap();
+            return new Sample(id, key, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos),
+                    pageStates.get(), rss(), heap[0], heap[1]);
+        }
+
+        private long rss() {
+            if (browserPid == 0) {
+                browserPid = -1;
+                Object chrome = raw.getCapabilities().getCapability("chrome");
+                if (chrome instanceof Map && ((Map<?, ?>) chrome).get("userDataDir") != null && Files.isDirectory(proc)) {
+                    browserPid = browserPid(proc, String.valueOf(((Map<?, ?>) chrome).get("userDataDir")));
+                }
+            }
+            return browserPid > 0 ? treeRss(proc, browserPid) : -1;
+        }
+
+        private int navigations() {
+            try {
+                Map<String, Object> history = raw.executeCdpCommand("Page.getNavigationHistory",
+                        Collections.<String, Object>emptyMap());
+                int current = ((Number) history.get("currentIndex")).intValue();
+                List<?> entries = (List<?>) history.get("entries");
+                int counted = -1;
+                for (int i = 0; i <= current; i++) {
+                    if (((Number) ((Map<?, ?>) entries.get(i)).get("id")).longValue() == lastHistoryEntry) {
+                        counted = i;
+                    }
+                }
+                int navigations = 0;
+                for (int i = counted + 1; i <= current; i++) {
+                    Object url = ((Map<?, ?>) entries.get(i)).get("url");
+                    // The start page and the page the pool parks on are not page states
+                    if (!"about:blank".equals(url) && !"data:,".equals(url)) {
+                        navigations++;
+                    }
+                }
+                lastHistoryEntry = ((Number) ((Map<?, ?>) entries.get(current)).get("id")).longValue();
+                return navigations;
+            } catch (WebDriverException | ClassCastException | NullPointerException | IndexOutOfBoundsException e) {
+                System.out.println("Could not read navigation history of " + id + ": " + e.getMessage());
+                return 0;
+            }
+        }
+
+        private long[] jsHeap() {
+            long[] heap = { -1, -1 };
+            try {
+                if (!metricsEnabled) {
+                    raw.executeCdpCommand("Performance.enable", Collections.<String, Object>emptyMap());
+                    metricsEnabled = true;
+                }
+                Object metrics = raw.executeCdpCommand("Performance.getMetrics", Collections.<String, Object>emptyMap())
+                        .get("metrics");
+                if (metrics instanceof List) {
+                    for (Object metric : (List<?>) metrics) {
+                        Map<?, ?> entry = (Map<?, ?>) metric;
+                        if ("JSHeapUsedSize".equals(entry.get("name"))) {
+                            heap[0] = ((Number) entry.get("value")).longValue();
+                        } else if ("JSHeapTotalSize".equals(entry.get("name"))) {
+                            heap[1] = ((Number) entry.get("value")).longValue();
+                        }
+                    }
+                }
+            } catch (WebDriverException | ClassCastException | NullPointerException e) {
+                System.out.println("Could not read JS heap of " + id + ": " + e.getMessage());
+            }
+            return heap;
+        }
+    }
+
+    /**
+     * The memory of one browser at one point in time.
+     */
+    public static final class Sample {
+        private final String session;
+        private final String key;
+        private final long elapsedMillis;
+        private final int pageStates;
+        private final long rssBytes;
+        private final long jsHeapUsedBytes;
+        private final long jsHeapTotalBytes;
+
+        /**
+         * Creates a sample.
+         *
+         * @param session          The session id.
+         * @param key              The pool key of the session.
+         * @param elapsedMillis    The time since the browser was launched.
+         * @param pageStates       The page states recorded since the browser was launched.
+         * @param rssBytes         The RSS of the browser process tree, or -1 if unknown.
+         * @param jsHeapUsedBytes  The used JS heap of the current page, or -1 if unknown.
+         * @param jsHeapTotalBytes The allocated JS heap of the current page, or -1 if unknown.
+         */
+        public Sample(String session, String key, long elapsedMillis, int pageStates, long rssBytes,
+                long jsHeapUsedBytes, long jsHeapTotalBytes) {
+            this.session = session;
+            this.key = key;
+            this.elapsedMillis = elapsedMillis;
+            this.pageStates = pageStates;
+            this.rssBytes = rssBytes;
+            this.jsHeapUsedBytes = jsHeapUsedBytes;
+            this.jsHeapTotalBytes = jsHeapTotalBytes;
+        }
+
+        public String getSession() {
+            return session;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public int getPageStates() {
+            return pageStates;
+        }
+
+        public long getRssBytes() {
+            return rssBytes;
+        }
+
+        public long getJsHeapUsedBytes() {
+            return jsHeapUsedBytes;
+        }
+
+        public long getJsHeapTotalBytes() {
+            return jsHeapTotalBytes;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.deque.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for the Watcher results server.
+ * Every request is accepted and recorded, and uploads (requests with a body) can be inspected from the test.
+ * Latency, failures and an upload throughput limit can be injected to exercise the flush path of the tests
+ * without the real backend. When API keys are registered through {@link #setAcceptedApiKeys(String...)},
+ * requests carrying any other key are rejected with 401 and an "Invalid API key" error.
+ * Accepted uploads are also passed to the {@link #addUploadListener(Consumer) upload listeners} as they
+ * arrive, which is how {@link WatcherResults} indexes them.
+ *
+ * <p>Every request is answered with {@code {}}, whatever Watcher expects back, so it records uploads but is
+ * not a replacement for the results server and cannot be selected as a {@link WatcherBackend}. Tests and
+ * benchmarks that point a Watcher session at it, such as {@code MockBackendTest}, start it themselves.</p>
+ */
+public class MockWatcherServer {
+
+    private static volatile MockWatcherServer shared;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<RecordedRequest> requests = new ConcurrentLinkedQueue<>();
+    private final List<Consumer<RecordedRequest>> uploadListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failNext = new AtomicInteger();
+    private final Object throttleLock = new Object();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private volatile long bytesPerSecond;
+    private volatile Set<String> acceptedApiKeys = Collections.emptySet();
+    private long throttledUntilNanos;
+
+    /**
+     * Starts a server on an ephemeral loopback port.
+     *
+     * @throws IOException If the server socket cannot be opened.
+     */
+    public MockWatcherServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "mock-watcher-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Returns the JVM wide stand-in server, starting it on first use.
+     *
+     * @return The shared server.
+     */
+    public static MockWatcherServer shared() {
+        MockWatcherServer instance = shared;
+        if (instance == null) {
+            synchronized (MockWatcherServer.class) {
+                instance = shared;
+                if (instance == null) {
+                    try {
+                        instance = new MockWatcherServer();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed to start mock Watcher server", e);
+                    }
+                    Runtime.getRuntime().addShutdownHook(new Thread(instance::stop, "mock-watcher-server-shutdown"));
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the URL to pass to {@code AxeWatcherOptions.setServerUrl}.
+     *
+     * @return The base URL with a trailing slash.
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Delays every response by the given time.
+     *
+     * @param latency The added latency.
+     * @return This server.
+     */
+    public MockWatcherServer setLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Fails the given fraction of requests with {@link #setErrorStatus(int) the error status}.
+     *
+     * @param errorRate A value between 0 (never) and 1 (always).
+     * @return This server.
+     */
+    public MockWatcherServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Sets the HTTP status used for injected failures, 503 by default.
+     *
+     * @param errorStatus The status code.
+     * @return This server.
+     */
+    public MockWatcherServer setErrorStatus(int errorStatus) {
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    /**
+     * Fails exactly the next {@code count} requests, independent of the error rate.
+     *
+     * @param count The number of requests to fail.
+     * @return This server.
+     */
+    public MockWatcherServer failNext(int count) {
+        failNext.set(count);
+        return this;
+    }
+
+    /**
+     * Limits how fast request bodies are read, across all connections.
+     *
+     * @param bytesPerSecond The limit, or 0 for unlimited.
+     * @return This server.
+     */
+    public MockWatcherServer setThroughputLimit(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Restricts the API keys the server accepts. With no keys registered every key is accepted.
+     *
+     * @param apiKeys The accepted keys.
+     * @return This server.
+     */
+    public MockWatcherServer setAcceptedApiKeys(String... apiKeys) {
+        this.acceptedApiKeys = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(apiKeys)));
+        return this;
+    }
+
+    /**
+     * Registers a listener that is called with every accepted upload, on the server thread that received it.
+     * Listeners are kept across {@link #reset()}.
+     *
+     * @param listener The listener.
+     * @return This server.
+     */
+    public MockWatcherServer addUploadListener(Consumer<RecordedRequest> listener) {
+        uploadListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Removes a listener registered with {@link #addUploadListener(Consumer)}.
+     *
+     * @param listener The listener.
+     * @return This server.
+     */
+    public MockWatcherServer removeUploadListener(Consumer<RecordedRequest> listener) {
+        uploadListeners.remove(listener);
+        return this;
+    }
+
+    /**
+     * Clears recorded requests and all injected faults.
+     *
+     * @return This server.
+     */
+    public MockWatcherServer reset() {
+        requests.clear();
+        failNext.set(0);
+        latency = Duration.ZERO;
+        errorRate = 0;
+        errorStatus = 503;
+        bytesPerSecond = 0;
+        acceptedApiKeys = Collections.emptySet();
+        return this;
+    }
+
+    /**
+     * Returns every request received so far, in arrival order.
+     *
+     * @return A snapshot of the recorded requests.
+     */
+    public List<RecordedRequest> requests() {
+        return new ArrayList<>(requests);
+    }
+
+    /**
+     * Returns the successfully accepted requests that carried a body, i.e. the uploaded page states.
+     *
+     * @return A snapshot of the accepted uploads.
+     */
+    public List<RecordedRequest> uploads() {
+        List<RecordedRequest> uploads = new ArrayList<>();
+        for (RecordedRequest request : requests) {
+            if (request.status < 300 && request.body.length > 0) {
+                uploads.add(request);
+            }
+        }
+        return uploads;
+    }
+
+    /**
+     * Stops the server and its worker threads.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = readBody(exchange.getRequestBody());
+            String apiKey = apiKey(exchange);
+            sleep(latency.toNanos());
+
+            int status;
+            String response;
+            if (!acceptedApiKeys.isEmpty() && (apiKey == null || !acceptedApiKeys.contains(apiKey))) {
+                status = 401;
+                response = "{\"error\":\"Invalid API key\"}";
+            } else if (takeFailure()) {
+                status = errorStatus;
+                response = "{\"error\":\"Injected failure\"}";
+            } else {
+                status = 200;
+                response = "{}";
+            }
+            RecordedRequest request = new RecordedRequest(exchange.getRequestMethod(),
+                    exchange.getRequestURI().toString(), apiKey, body, status);
+            requests.add(request);
+            if (status < 300 && body.length > 0) {
+                for (Consumer<RecordedRequest> listener : uploadListeners) {
+                    listener.accept(request);
+                }
+            }
+
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean takeFailure() {
+        int remaining;
+        while ((remaining = failNext.get()) > 0) {
+            if (failNext.compareAndSet(remaining, remaining - 1)) {
+                return true;
+            }
+        }
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    private byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            throttle(read);
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    private void throttle(int bytes) {
+        long limit = bytesPerSecond;
+        if (limit <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (throttleLock) {
+            long now = System.nanoTime();
+            long start = Math.max(now, throttledUntilNanos);
+            throttledUntilNanos = start + TimeUnit.SECONDS.toNanos(bytes) / limit;
+            waitNanos = throttledUntilNanos - now;
+        }
+        sleep(waitNanos);
+    }
+
+    private static String apiKey(HttpExchange exchange) {
+        String key = exchange.getRequestHeaders().getFirst("X-API-Key");
+        if (key == null) {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization != null) {
+                key = authorization.replaceFirst("(?i)^Bearer\\s+", "");
+            }
+        }
+        return key;
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A request received by the stand-in server.
+     */
+    public static final class RecordedRequest {
+        private final String method;
+        private final String uri;
+        private final String apiKey;
+        private final byte[] body;
+        private final int status;
+
+        RecordedRequest(String method, String uri, String apiKey, byte[] body, int status) {
+            this.method = method;
+            this.uri = uri;
+            this.apiKey = apiKey;
+            this.body = body;
+            this.status = status;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        public String getBody() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+
+        public byte[] getRawBody() {
+            return body.clone();
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.deque.util;
+
+import java.lang.reflect.Method;
+
+import org.testng.IAnnotationTransformer;
+import org.testng.annotations.IDataProviderAnnotation;
+
+/**
+ * Runs the rows of every data provider in parallel. The {@code @DataProvider} annotations stay sequential,
+ * so the default suite runs one row at a time; register this listener in a suite XML, as
+ * {@code testng-parallel.xml} does, to spread the rows over its {@code data-provider-thread-count} threads.
+ */
+public class ParallelDataProviders implements IAnnotationTransformer {
+
+    /**
+     * Marks a data provider as parallel.
+     *
+     * @param annotation The data provider annotation.
+     * @param method     The data provider method.
+     */
+    @Override
+    public void transform(IDataProviderAnnotation annotation, Method method) {
+        annotation.setParallel(true);
+    }
+}
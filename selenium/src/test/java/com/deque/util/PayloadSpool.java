@@ -0,0 +1,409 @@
+package com.deque.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, crash safe store for uploads that could not reach the Watcher server.
+ * Records are appended to memory-mapped segment files {@code spool-<n>.seg} of a fixed size in the spool
+ * directory. Each record is {@code magic, length, CRC32} followed by the serialized request; the magic is
+ * written last and the segment is forced to disk before {@link #append(Entry)} returns, so a record is
+ * either complete and verifiable or, after a crash mid-write, ends the segment as an unreadable tail.
+ *
+ * <p>{@link #replay(int, Predicate)} hands the records to a sender in batches, oldest first. How far a
+ * segment was replayed is kept in {@code spool-<n>.seg.acked} and fully replayed segments are deleted, so an
+ * interrupted replay resumes without sending a record twice. Records that fail their checksum are skipped
+ * and counted in {@link #corrupt()}.</p>
+ *
+ * <p>A spool holds an exclusive lock on {@code spool.lock} in its directory until it is closed, so a second
+ * spool on the same directory, in this JVM or another, such as a {@link SpoolReplayer} started while a
+ * relay is still appending, fails to open instead of deleting a segment that is being written.</p>
+ */
+public class PayloadSpool implements Closeable {
+
+    /** Default size of one segment file. */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int MAGIC = 0x57535031;
+    private static final int HEADER_SIZE = 12;
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String ACKED_SUFFIX = ".acked";
+    private static final String LOCK_FILE = "spool.lock";
+
+    private final Path directory;
+    private final int segmentSize;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long sequence;
+    private int corrupt;
+
+    /**
+     * Opens a spool, continuing after the last complete record of the newest segment.
+     *
+     * @param directory   The spool directory, created if missing.
+     * @param segmentSize The size of a segment file; larger records get a segment of their own.
+     * @throws IllegalStateException If the directory cannot be read or created, or another spool has it open.
+     */
+    public PayloadSpool(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            lock();
+            List<Path> segments = segments();
+            if (!segments.isEmpty()) {
+                Path last = segments.get(segments.size() - 1);
+                sequence = sequenceOf(last);
+                map(last, (int) Files.size(last));
+                buffer.position(endOf(buffer));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open payload spool " + directory, e);
+        }
+    }
+
+    /**
+     * Stores a request durably.
+     *
+     * @param entry The request that could not be delivered.
+     * @throws IllegalStateException If the spool cannot be written.
+     */
+    public synchronized void append(Entry entry) {
+        byte[] payload = entry.toBytes();
+        int recordSize = HEADER_SIZE + payload.length;
+        try {
+            lock();
+            if (buffer == null || buffer.remaining() < recordSize) {
+                roll(Math.max(segmentSize, recordSize));
+            }
+            int start = buffer.position();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            buffer.position(start + HEADER_SIZE);
+            buffer.put(payload);
+            buffer.putInt(start + 4, payload.length);
+            buffer.putInt(start + 8, (int) crc.getValue());
+            // The magic marks the record complete, so it is written after everything it vouches for
+            buffer.putInt(start, MAGIC);
+            buffer.force();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to spool payload to " + directory, e);
+        }
+    }
+
+    /**
+     * Hands the spooled records to a sender in batches, oldest first, and forgets the batches it accepts.
+     * Replay stops at the first batch the sender rejects, which is offered again by the next replay.
+     *
+     * @param batchSize The maximum number of records per batch.
+     * @param sender    Delivers a batch, returning {@code false} if it could not.
+     * @return The number of records delivered.
+     * @throws IllegalStateException If the spool cannot be read.
+     */
+    public synchronized int replay(int batchSize, Predicate<List<Entry>> sender) {
+        int delivered = 0;
+        try {
+            lock();
+            // Appends go to a fresh segment from now on, so every segment replayed here is complete
+            closeSegment();
+            for (Path file : segments()) {
+                MappedByteBuffer records;
+                try (FileChannel read = FileChannel.open(file, StandardOpenOption.READ)) {
+                    records = read.map(FileChannel.MapMode.READ_ONLY, 0, read.size());
+                }
+                records.position(acked(file));
+                List<Entry> batch = new ArrayList<>(batchSize);
+                int end;
+                while (true) {
+                    Entry entry = next(records, true);
+                    end = records.position();
+                    if (entry != null) {
+                        batch.add(entry);
+                    }
+                    if (batch.size() == batchSize || (entry == null && !batch.isEmpty())) {
+                        if (!sender.test(batch)) {
+                            return delivered;
+                        }
+                        delivered += batch.size();
+                        batch.clear();
+                        writeAcked(file, end);
+                    }
+                    if (entry == null) {
+                        break;
+                    }
+                }
+                Files.deleteIfExists(ackedFile(file));
+                Files.delete(file);
+            }
+            return delivered;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to replay payload spool " + directory, e);
+        }
+    }
+
+    /**
+     * Returns the number of spooled records not replayed yet.
+     *
+     * @return The record count.
+     */
+    public synchronized int size() {
+        int count = 0;
+        try {
+            for (Path file : segments()) {
+                MappedByteBuffer records;
+                try (FileChannel read = FileChannel.open(file, StandardOpenOption.READ)) {
+                    records = read.map(FileChannel.MapMode.READ_ONLY, 0, read.size());
+                }
+                records.position(acked(file));
+                while (next(records, false) != null) {
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read payload spool " + directory, e);
+        }
+        return count;
+    }
+
+    /**
+     * Returns how many records were found with a wrong checksum and skipped.
+     *
+     * @return The count.
+     */
+    public synchronized int corrupt() {
+        return corrupt;
+    }
+
+    /**
+     * Returns the spool directory.
+     *
+     * @return The directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Closes the current segment and releases the directory lock; the next append starts a new segment.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closeSegment();
+        if (lockChannel != null) {
+            // Closing the channel releases the lock
+            lockChannel.close();
+            lockChannel = null;
+            lock = null;
+        }
+    }
+
+    private void lock() throws IOException {
+        if (lock != null) {
+            return;
+        }
+        FileChannel file = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = file.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        }
+        if (acquired == null) {
+            file.close();
+            throw new IllegalStateException("Payload spool " + directory + " is in use by another relay or replay");
+        }
+        lockChannel = file;
+        lock = acquired;
+    }
+
+    private void closeSegment() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private Entry next(MappedByteBuffer records, boolean countCorrupt) {
+        while (records.remaining() >= HEADER_SIZE) {
+            int start = records.position();
+            if (records.getInt(start) != MAGIC) {
+                return null;
+            }
+            int length = records.getInt(start + 4);
+            int checksum = records.getInt(start + 8);
+            if (length < 0 || length > records.remaining() - HEADER_SIZE) {
+                corrupt += countCorrupt ? 1 : 0;
+                return null;
+            }
+            byte[] payload = new byte[length];
+            records.position(start + HEADER_SIZE);
+            records.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() == checksum) {
+                return Entry.fromBytes(payload);
+            }
+            corrupt += countCorrupt ? 1 : 0;
+        }
+        return null;
+    }
+
+    private static int endOf(MappedByteBuffer records) {
+        int position = 0;
+        while (position + HEADER_SIZE <= records.limit() && records.getInt(position) == MAGIC) {
+            int length = records.getInt(position + 4);
+            if (length < 0 || position + HEADER_SIZE + length > records.limit()) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private void roll(int size) throws IOException {
+        closeSegment();
+        sequence++;
+        map(directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX)), size);
+    }
+
+    private void map(Path file, int size) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static Path ackedFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ACKED_SUFFIX);
+    }
+
+    private static int acked(Path file) throws IOException {
+        Path acked = ackedFile(file);
+        return Files.exists(acked) ? Integer.parseInt(new String(Files.readAllBytes(acked), StandardCharsets.UTF_8).trim()) : 0;
+    }
+
+    private static void writeAcked(Path file, int position) throws IOException {
+        Path acked = ackedFile(file);
+        Path temp = acked.resolveSibling(acked.getFileName() + ".tmp");
+        Files.write(temp, Integer.toString(position).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, acked, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A spooled request: method, path relative to the server URL, the headers needed to replay it and the body.
+     */
+    public static final class Entry {
+        private final String method;
+        private final String path;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        /**
+         * Creates an entry.
+         *
+         * @param method  The HTTP method.
+         * @param path    The request path and query, relative to the server URL.
+         * @param headers The headers to send again, such as the content type.
+         * @param body    The request body.
+         */
+        public Entry(String method, String path, Map<String, String> headers, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+            this.body = body.clone();
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body.clone();
+        }
+
+        private byte[] toBytes() {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 256);
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeUTF(method);
+                out.writeUTF(path);
+                out.writeInt(headers.size());
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    out.writeUTF(header.getKey());
+                    out.writeUTF(header.getValue());
+                }
+                out.writeInt(body.length);
+                out.write(body);
+                out.flush();
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to serialize spool entry", e);
+            }
+        }
+
+        private static Entry fromBytes(byte[] payload) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+                String method = in.readUTF();
+                String path = in.readUTF();
+                Map<String, String> headers = new LinkedHashMap<>();
+                for (int i = in.readInt(); i > 0; i--) {
+                    headers.put(in.readUTF(), in.readUTF());
+                }
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                return new Entry(method, path, headers, body);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read spool entry", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+
+/**
+ * Splits a run into {@code SHARD_COUNT} shards, of which this JVM runs shard {@code SHARD_INDEX}.
+ * Every test is assigned by a stable hash of its id, so each shard, whether it is a forked JVM of the
+ * {@code shards} Maven profile or a separate CI node, picks its part of the suite without talking to the
+ * others. The id is the test class by default, which keeps {@code @BeforeClass} state such as the Git
+ * branch of {@code NewBranchTest} within one shard; {@code SHARD_BY=method} spreads single methods instead.
+ * Methods in the {@value #ALL_SHARDS} group run on every shard, for tests such as {@code MassCrawlTest}
+ * that split their own work, like {@link CrawlRunner} does with URLs.
+ *
+ * <p>When a suite finishes, the outcome of every test of this shard is written to {@code shard-results.csv}
+ * in {@code -Dwatcher.shard.dir}, {@code target/watcher-shards/shard-<index>} by default, for
+ * {@link ShardResultsMerger}. With a single shard, the default, nothing is filtered and no results
+ * are written unless the directory is set.</p>
+ */
+public class ShardCoordinator implements IMethodInterceptor, ITestListener, ISuiteListener {
+
+    /** Group of test methods that run on every shard and shard their work themselves. */
+    public static final String ALL_SHARDS = "all-shards";
+
+    /** Name of the results file inside the shard directory. */
+    public static final String RESULTS_FILE = "shard-results.csv";
+
+    private static final String RESULTS_HEADER = "test,status,durationMs";
+
+    private final int index;
+    private final int count;
+    private final boolean byMethod;
+    private final Queue<String> results = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates the coordinator for this JVM from {@code SHARD_INDEX}, {@code SHARD_COUNT} and {@code SHARD_BY}.
+     */
+    public ShardCoordinator() {
+        this(TestConfig.get().getInt("SHARD_INDEX", 0), TestConfig.get().getInt("SHARD_COUNT", 1),
+                "method".equalsIgnoreCase(TestConfig.get().get("SHARD_BY", "class")));
+    }
+
+    /**
+     * Creates a coordinator for a given shard.
+     *
+     * @param index    The shard this JVM runs, from 0.
+     * @param count    The number of shards.
+     * @param byMethod Whether single test methods are sharded instead of test classes.
+     * @throws IllegalStateException If the index is not within the shard count.
+     */
+    public ShardCoordinator(int index, int count, boolean byMethod) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalStateException("Invalid shard " + index + " of " + count);
+        }
+        this.index = index;
+        this.count = count;
+        this.byMethod = byMethod;
+    }
+
+    /**
+     * Returns the shard an id belongs to. The assignment only depends on the id and the shard count,
+     * so it is the same in every JVM.
+     *
+     * @param id    The test or URL id.
+     * @param count The number of shards.
+     * @return The shard, from 0 to {@code count - 1}.
+     */
+    public static int shardOf(String id, int count) {
+        CRC32 crc = new CRC32();
+        crc.update(id.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % count);
+    }
+
+    /**
+     * Returns whether an id belongs to this shard.
+     *
+     * @param id The test or URL id.
+     * @return {@code true} if this shard runs it.
+     */
+    public boolean owns(String id) {
+        return count == 1 || shardOf(id, count) == index;
+    }
+
+    /**
+     * Returns the shard this JVM runs.
+     *
+     * @return The shard index, from 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return The shard count.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Keeps the test methods that belong to this shard.
+     *
+     * @param methods The methods of a TestNG test.
+     * @param context The TestNG test.
+     * @return The methods this shard runs.
+     * @throws IllegalStateException If the run is sharded but has no build id shared between shards.
+     */
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        if (count == 1) {
+            return methods;
+        }
+        requireSharedBuildId();
+        List<IMethodInstance> owned = new ArrayList<>();
+        for (IMethodInstance method : methods) {
+            ITestNGMethod testMethod = method.getMethod();
+            if (Arrays.asList(testMethod.getGroups()).contains(ALL_SHARDS) || owns(idOf(testMethod))) {
+                owned.add(method);
+            }
+        }
+        System.out.println("Shard " + index + " of " + count + " runs " + owned.size() + " of "
+                + methods.size() + " methods of " + context.getName());
+        return owned;
+    }
+
+    @Override
+    public void onTestSuccess(ITestResult result) {
+        record(result, "SUCCESS");
+    }
+
+    @Override
+    public void onTestFailure(ITestResult result) {
+        record(result, "FAILURE");
+    }
+
+    @Override
+    public void onTestSkipped(ITestResult result) {
+        record(result, "SKIP");
+    }
+
+    /**
+     * Writes the results of this shard, unless the run is not sharded and no shard directory is set.
+     *
+     * @param suite The suite that finished.
+     */
+    @Override
+    public void onFinish(ISuite suite) {
+        String configured = System.getProperty("watcher.shard.dir");
+        if (count == 1 && configured == null) {
+            return;
+        }
+        Path directory = Paths.get(configured != null ? configured : "target/watcher-shards/shard-" + index);
+        try {
+            Files.createDirectories(directory);
+            try (Writer csv = Files.newBufferedWriter(directory.resolve(RESULTS_FILE), StandardCharsets.UTF_8)) {
+                csv.write(RESULTS_HEADER);
+                csv.write('\n');
+                for (String row : results) {
+                    csv.write(row);
+                    csv.write('\n');
+                }
+            }
+            System.out.println("Shard results written to " + directory.toAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("Could not write shard results to " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void record(ITestResult result, String status) {
+        String test = result.getMethod().getQualifiedName();
+        Object[] parameters = result.getParameters();
+        if (parameters != null && parameters.length > 0) {
+            // Data provider rows share a method name, the first parameter tells them apart
+            test += "[" + String.valueOf(parameters[0]).replace(',', ';') + "]";
+        }
+        results.add(String.format(Locale.ROOT, "%s,%s,%d", test, status,
+                result.getEndMillis() - result.getStartMillis()));
+    }
+
+    private String idOf(ITestNGMethod method) {
+        return byMethod ? method.getQualifiedName() : method.getRealClass().getName();
+    }
+
+    private static void requireSharedBuildId() {
+        TestConfig config = TestConfig.get();
+        if (config.get("WATCHER_BUILD_ID", config.get("GITHUB_RUN_ID", "")).isEmpty()) {
+            throw new IllegalStateException("Sharded runs need WATCHER_BUILD_ID or GITHUB_RUN_ID, "
+                    + "otherwise every shard reports into its own Watcher build");
+        }
+    }
+}
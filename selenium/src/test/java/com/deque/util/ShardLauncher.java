@@ -0,0 +1,104 @@
+package com.deque.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs the shards of a suite at the same time, each in a JVM of its own, and merges their reports with
+ * {@link ShardResultsMerger} once every shard has finished. Each JVM runs TestNG on the same suite XML with
+ * its own {@code SHARD_INDEX} and {@code shard-<index>} directory below the shards directory, which receives
+ * the shard's reports, the TestNG output and the console log of the JVM in {@value #LOG_FILE}.
+ * Settings of this JVM that configure a run, upper-case config keys such as {@code WATCHER_BUILD_ID} and
+ * {@code watcher.*} properties, are passed on to every shard.
+ *
+ * <p>Run as {@code ShardLauncher <suite XML> <shards directory> <shard count> <test classpath>}, which the
+ * {@code shards} Maven profile does.</p>
+ */
+public class ShardLauncher {
+
+    /** Name of the console log of a shard inside its directory. */
+    public static final String LOG_FILE = "output.log";
+
+    private static final Set<String> PER_SHARD = new HashSet<>(Arrays.asList(
+            "SHARD_INDEX", "SHARD_COUNT", "watcher.shard.dir", "watcher.timings.dir"));
+
+    /**
+     * Runs the shards and merges their reports.
+     *
+     * @param args The suite XML, the shards directory, the shard count and the classpath of the shards.
+     * @throws IOException If a shard cannot be started or a report cannot be merged.
+     * @throws InterruptedException If interrupted while waiting for the shards.
+     * @throws IllegalStateException If a shard wrote no results or a test of any shard failed.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 4) {
+            throw new IllegalArgumentException("Usage: ShardLauncher <suite XML> <shards directory> <shard count> <test classpath>");
+        }
+        String suite = args[0];
+        Path root = Paths.get(args[1]);
+        int count = Integer.parseInt(args[2]);
+        String classpath = args[3];
+
+        List<Process> shards = new ArrayList<>();
+        for (int index = 0; index < count; index++) {
+            Path directory = root.resolve("shard-" + index);
+            Files.createDirectories(directory);
+            // A results file left by an earlier run must not pass for this one
+            Files.deleteIfExists(directory.resolve(ShardCoordinator.RESULTS_FILE));
+            ProcessBuilder builder = new ProcessBuilder(command(suite, directory, index, count, classpath))
+                    .redirectErrorStream(true)
+                    .redirectOutput(directory.resolve(LOG_FILE).toFile());
+            shards.add(builder.start());
+        }
+        System.out.println("Started " + count + " shards of " + suite + ", logs in " + root.toAbsolutePath());
+
+        for (int index = 0; index < count; index++) {
+            int exit = shards.get(index).waitFor();
+            Path directory = root.resolve("shard-" + index);
+            System.out.println("Shard " + index + " finished with exit code " + exit);
+            if (!Files.exists(directory.resolve(ShardCoordinator.RESULTS_FILE))) {
+                throw new IllegalStateException("Shard " + index + " wrote no results, see " + directory.resolve(LOG_FILE));
+            }
+        }
+        ShardResultsMerger.main(new String[] {root.toString()});
+    }
+
+    /**
+     * Returns the command line of one shard.
+     *
+     * @param suite     The suite XML.
+     * @param directory The directory of the shard.
+     * @param index     The shard index, from 0.
+     * @param count     The number of shards.
+     * @param classpath The classpath of the shard.
+     * @return The command.
+     */
+    public static List<String> command(String suite, Path directory, int index, int count, String classpath) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(classpath);
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (!PER_SHARD.contains(name) && (name.startsWith("watcher.") || name.matches("[A-Z][A-Z0-9_]*"))) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-DSHARD_INDEX=" + index);
+        command.add("-DSHARD_COUNT=" + count);
+        command.add("-Dwatcher.shard.dir=" + directory.toAbsolutePath());
+        command.add("-Dwatcher.timings.dir=" + directory.toAbsolutePath());
+        command.add("org.testng.TestNG");
+        command.add("-d");
+        command.add(directory.resolve("testng-output").toAbsolutePath().toString());
+        command.add(new File(suite).getAbsolutePath());
+        return command;
+    }
+}
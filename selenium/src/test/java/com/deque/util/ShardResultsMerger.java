@@ -0,0 +1,164 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.HdrHistogram.Histogram;
+
+import com.deque.util.WatcherTimings.Phase;
+
+/**
+ * Combines the reports of the shards of a run. Every {@code shard-*} directory below the shards directory
+ * holds the {@code timings.csv} of {@link WatcherTimingReport} and the {@code shard-results.csv} of
+ * {@link ShardCoordinator}. The histograms of the same test class and phase are added up, so the merged
+ * percentiles are those of the whole run, and the results are concatenated with their shard.
+ * Everything is written to the {@code merged} directory next to the shards.
+ *
+ * <p>Run as {@code ShardResultsMerger <shards directory>}, which {@link ShardLauncher} does after the last
+ * shard.</p>
+ */
+public class ShardResultsMerger {
+
+    /** Name of the merged results file. */
+    public static final String RESULTS_FILE = "results.csv";
+
+    private static final String MERGED_DIR = "merged";
+
+    /**
+     * Merges the shards below a directory.
+     *
+     * @param args The shards directory, {@code target/watcher-shards} if omitted.
+     * @throws IOException If a report cannot be read or written.
+     * @throws IllegalStateException If a test of any shard failed.
+     */
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args.length > 0 ? args[0] : "target/watcher-shards");
+        Summary summary = merge(root);
+        System.out.println("Merged " + summary.getShards() + " shards into " + root.resolve(MERGED_DIR).toAbsolutePath()
+                + ": " + summary);
+        if (summary.getFailed() > 0) {
+            throw new IllegalStateException(summary.getFailed() + " tests failed across shards, see "
+                    + root.resolve(MERGED_DIR).resolve(RESULTS_FILE));
+        }
+    }
+
+    /**
+     * Merges the reports of every {@code shard-*} directory below a directory.
+     *
+     * @param root The shards directory.
+     * @return The counts of the merged run.
+     * @throws IOException If a report cannot be read or written.
+     */
+    public static Summary merge(Path root) throws IOException {
+        List<Path> shards = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(root, "shard-*")) {
+            for (Path child : children) {
+                if (Files.isDirectory(child)) {
+                    shards.add(child);
+                }
+            }
+        }
+        shards.sort(null);
+
+        Map<String, Map<Phase, Histogram>> histograms = new TreeMap<>();
+        List<String> results = new ArrayList<>();
+        int failed = 0;
+        for (Path shard : shards) {
+            String name = shard.getFileName().toString();
+            Path timings = shard.resolve(WatcherTimingReport.CSV_FILE);
+            if (Files.exists(timings)) {
+                addTimings(timings, histograms);
+            }
+            Path shardResults = shard.resolve(ShardCoordinator.RESULTS_FILE);
+            if (Files.exists(shardResults)) {
+                List<String> lines = Files.readAllLines(shardResults, StandardCharsets.UTF_8);
+                for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    results.add(name + "," + line);
+                    // test,status,durationMs
+                    String[] columns = line.split(",");
+                    if (columns.length >= 2 && "FAILURE".equals(columns[columns.length - 2])) {
+                        failed++;
+                    }
+                }
+            }
+        }
+
+        Path merged = root.resolve(MERGED_DIR);
+        WatcherTimingReport.write(merged, histograms);
+        try (Writer csv = Files.newBufferedWriter(merged.resolve(RESULTS_FILE), StandardCharsets.UTF_8)) {
+            csv.write("shard,test,status,durationMs\n");
+            for (String row : results) {
+                csv.write(row);
+                csv.write('\n');
+            }
+        }
+        return new Summary(shards.size(), results.size(), failed);
+    }
+
+    private static void addTimings(Path csv, Map<String, Map<Phase, Histogram>> histograms) throws IOException {
+        List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            // testClass,phase,count,p50Ms,p95Ms,p99Ms,maxMs,histogram
+            String[] columns = line.split(",");
+            if (columns.length != 8) {
+                throw new IllegalStateException("Malformed timing row in " + csv + ": " + line);
+            }
+            Histogram histogram = WatcherTimings.decode(columns[7]);
+            Map<Phase, Histogram> phases = histograms.computeIfAbsent(columns[0], owner -> new EnumMap<>(Phase.class));
+            Histogram total = phases.get(Phase.valueOf(columns[1]));
+            if (total == null) {
+                phases.put(Phase.valueOf(columns[1]), histogram);
+            } else {
+                total.add(histogram);
+            }
+        }
+    }
+
+    /**
+     * Counts of a merged run.
+     */
+    public static final class Summary {
+        private final int shards;
+        private final int tests;
+        private final int failed;
+
+        Summary(int shards, int tests, int failed) {
+            this.shards = shards;
+            this.tests = tests;
+            this.failed = failed;
+        }
+
+        public int getShards() {
+            return shards;
+        }
+
+        public int getTests() {
+            return tests;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        @Override
+        public String toString() {
+            return "tests=" + tests + ", failed=" + failed;
+        }
+    }
+}
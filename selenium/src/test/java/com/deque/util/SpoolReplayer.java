@@ -0,0 +1,113 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Uploads the payloads a {@link SpoolingRelay} spooled while the Watcher server was unreachable.
+ * Records are sent one at a time over a single connection, oldest first, so the page states of a session
+ * arrive in the order Watcher uploaded them. They are read in batches of {@code batchSize}, and a batch is
+ * removed from the spool once every request in it was answered. A request the server rejects with a 4xx, for
+ * example because its API key was revoked meanwhile, is reported and moved to the spool in the
+ * {@value #REJECTED_DIR} subdirectory, where it can be replayed again with another key; any other failure
+ * stops the replay, and the batch is sent again next time, so delivery is at least once.
+ * The spool holds no credentials, so every request is sent with the API key given to the replay.
+ *
+ * <p>Run as {@code SpoolReplayer [spool directory] [server URL] [batch size]}, defaulting to {@code SPOOL_DIR},
+ * {@code SERVER_URL} and 100, once the server is back; the key is {@code API_KEY} of the config. A spool that
+ * a running relay still writes to is locked, and the replay refuses to start until that run ended.</p>
+ */
+public class SpoolReplayer {
+
+    /** Subdirectory of the spool directory that keeps the records the server rejected. */
+    public static final String REJECTED_DIR = "rejected";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * Replays a spool.
+     *
+     * @param args The spool directory, the server URL and the batch size, each optional.
+     * @throws IllegalStateException If records are left in the spool, or the spool is in use.
+     */
+    public static void main(String[] args) {
+        TestConfig config = TestConfig.get();
+        Path directory = Paths.get(args.length > 0 ? args[0] : config.get("SPOOL_DIR", "target/watcher-spool"));
+        String serverUrl = args.length > 1 ? args[1] : config.require("SERVER_URL");
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCH_SIZE;
+        try (PayloadSpool spool = new PayloadSpool(directory, PayloadSpool.DEFAULT_SEGMENT_SIZE)) {
+            int delivered = replay(spool, serverUrl, config.require("API_KEY"), batchSize);
+            int left = spool.size();
+            System.out.println("Replayed " + delivered + " payloads from " + directory.toAbsolutePath() + " to "
+                    + serverUrl + ", " + left + " left, " + spool.corrupt() + " corrupt");
+            if (left > 0) {
+                throw new IllegalStateException(left + " payloads could not be replayed, run again later");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to close payload spool " + directory, e);
+        }
+    }
+
+    /**
+     * Uploads the records of a spool in order until it is empty or the server fails.
+     *
+     * @param spool     The spool.
+     * @param serverUrl The Watcher server URL.
+     * @param apiKey    The API key sent with every record.
+     * @param batchSize The number of records per batch.
+     * @return The number of records the server answered, rejected ones included.
+     * @throws IllegalStateException If a rejected record cannot be kept.
+     */
+    public static int replay(PayloadSpool spool, String serverUrl, String apiKey, int batchSize) {
+        String base = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+        Path rejectedDirectory = spool.getDirectory().resolve(REJECTED_DIR);
+        PayloadSpool[] rejected = new PayloadSpool[1];
+        try {
+            return spool.replay(batchSize, batch -> send(base, apiKey, batch, () -> {
+                if (rejected[0] == null) {
+                    rejected[0] = new PayloadSpool(rejectedDirectory, PayloadSpool.DEFAULT_SEGMENT_SIZE);
+                }
+                return rejected[0];
+            }));
+        } finally {
+            if (rejected[0] != null) {
+                System.out.println(rejected[0].size() + " spooled payloads the server rejected are kept in "
+                        + rejectedDirectory.toAbsolutePath());
+                try {
+                    rejected[0].close();
+                } catch (IOException e) {
+                    System.out.println("Could not close payload spool " + rejectedDirectory + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static boolean send(String base, String apiKey, List<PayloadSpool.Entry> batch,
+            Supplier<PayloadSpool> rejected) {
+        for (PayloadSpool.Entry entry : batch) {
+            Map<String, String> headers = new LinkedHashMap<>(entry.getHeaders());
+            headers.put("X-API-Key", apiKey);
+            PayloadSpool.Entry signed = new PayloadSpool.Entry(entry.getMethod(), entry.getPath(), headers, entry.getBody());
+            int status;
+            try {
+                status = SpoolingRelay.send(base, signed).status;
+            } catch (IOException e) {
+                System.out.println("Could not replay " + entry.getPath() + ": " + e.getMessage());
+                return false;
+            }
+            if (status >= 500) {
+                return false;
+            }
+            if (status >= 400) {
+                System.out.println("Server rejected spooled " + entry.getMethod() + " " + entry.getPath() + " with " + status);
+                rejected.get().append(entry);
+            }
+        }
+        return true;
+    }
+}
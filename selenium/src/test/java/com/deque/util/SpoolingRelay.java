@@ -0,0 +1,421 @@
+package com.deque.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process relay between Watcher and {@code SERVER_URL} that keeps uploads the server cannot take.
+ * Every request is forwarded as it is. Only result uploads, {@code POST} requests with a body to one of the
+ * spooled paths, are kept: when the server cannot be reached or answers with a 5xx, such an upload is
+ * written to a {@link PayloadSpool} and Watcher gets a 202, so {@code flush()} succeeds and the browser work
+ * of the test is not lost. Every other request, and every 4xx answer such as an invalid API key, is passed
+ * back unchanged, and a server that cannot be reached is answered with a 502, which {@link WatcherResilience}
+ * retries.
+ *
+ * <p>The spooled paths are not guessed. They are captured from traffic: every path a {@code POST} with a
+ * body was accepted on, by the relay or by the {@link MockWatcherServer} in {@code MockBackendTest}, is
+ * added to {@value #CAPTURED_PATHS_FILE} in the spool directory, with segments that look like ids replaced by
+ * {@code *}. {@code SPOOL_PATHS}, comma separated, adds paths before any were captured. An upload that fails
+ * on a path not captured yet is passed back and logged, since it is not known to be safe to send twice.</p>
+ *
+ * <p>Credentials ({@code X-API-Key}, {@code Authorization}, {@code Cookie}) are not written to disk;
+ * {@link SpoolReplayer} sends the configured key with the spooled uploads.</p>
+ *
+ * <p>After a failed attempt the server is not contacted for {@code -Dwatcher.spool.retryAfterSeconds}
+ * (30 by default), so an outage does not cost every upload a connect timeout.</p>
+ */
+public class SpoolingRelay {
+
+    private static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList(
+            "host", "content-length", "connection", "transfer-encoding", "keep-alive", "expect", "upgrade"));
+    private static final Set<String> CREDENTIALS = new HashSet<>(Arrays.asList("x-api-key", "authorization", "cookie"));
+    private static final int TIMEOUT_MILLIS = 30_000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final String DEFAULT_SPOOL_DIR = "target/watcher-spool";
+
+    /** File in the spool directory holding the captured upload paths, one per line. */
+    public static final String CAPTURED_PATHS_FILE = "upload-paths.txt";
+
+    private static volatile SpoolingRelay shared;
+
+    private final String upstream;
+    private final PayloadSpool spool;
+    private final CopyOnWriteArrayList<String> spooledPaths;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger forwarded = new AtomicInteger();
+    private final AtomicInteger spooled = new AtomicInteger();
+    private final long retryAfterNanos = TimeUnit.SECONDS.toNanos(Long.getLong("watcher.spool.retryAfterSeconds", 30));
+    private volatile long upstreamDownUntil = System.nanoTime();
+
+    /**
+     * Starts a relay on an ephemeral loopback port.
+     *
+     * @param upstream     The Watcher server URL requests are forwarded to.
+     * @param spool        The spool for uploads that cannot be delivered.
+     * @param spooledPaths The paths of the uploads that may be spooled and sent again later, in addition to the
+     *                     ones captured in the spool directory.
+     * @throws IOException If the server socket cannot be opened.
+     */
+    public SpoolingRelay(String upstream, PayloadSpool spool, List<String> spooledPaths) throws IOException {
+        this.upstream = upstream.endsWith("/") ? upstream.substring(0, upstream.length() - 1) : upstream;
+        this.spool = spool;
+        this.spooledPaths = new CopyOnWriteArrayList<>(spooledPaths);
+        this.spooledPaths.addAllAbsent(readLines(spool.getDirectory().resolve(CAPTURED_PATHS_FILE)));
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "spooling-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Returns the JVM wide relay to {@code SERVER_URL}, spooling the uploads to the captured paths and
+     * {@code SPOOL_PATHS} to {@code SPOOL_DIR}, starting it on first use.
+     *
+     * @return The shared relay.
+     */
+    public static SpoolingRelay shared() {
+        SpoolingRelay instance = shared;
+        if (instance == null) {
+            synchronized (SpoolingRelay.class) {
+                instance = shared;
+                if (instance == null) {
+                    TestConfig config = TestConfig.get();
+                    PayloadSpool spool = new PayloadSpool(Paths.get(config.get("SPOOL_DIR", DEFAULT_SPOOL_DIR)),
+                            PayloadSpool.DEFAULT_SEGMENT_SIZE);
+                    try {
+                        instance = new SpoolingRelay(config.require("SERVER_URL"), spool,
+                                pathList(config.get("SPOOL_PATHS", "")));
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed to start spooling relay", e);
+                    }
+                    Runtime.getRuntime().addShutdownHook(new Thread(instance::stop, "spooling-relay-shutdown"));
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Adds the paths of accepted uploads to the captured paths of a spool directory.
+     *
+     * @param directory The spool directory.
+     * @param uris      The request URIs of the uploads.
+     * @throws IllegalStateException If the file cannot be written.
+     */
+    public static synchronized void capture(Path directory, Collection<String> uris) {
+        Path file = directory.resolve(CAPTURED_PATHS_FILE);
+        Set<String> paths = new LinkedHashSet<>(readLines(file));
+        for (String uri : uris) {
+            paths.add(uploadPath(uri));
+        }
+        try {
+            Files.createDirectories(directory);
+            Files.write(file, paths, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write captured upload paths " + file, e);
+        }
+    }
+
+    /**
+     * Returns the path an upload is captured as: the request path without its query, with every segment that
+     * contains a digit and is at least eight characters long, such as a session id, replaced by {@code *}.
+     *
+     * @param uri The request URI.
+     * @return The captured path.
+     */
+    public static String uploadPath(String uri) {
+        int query = uri.indexOf('?');
+        String bare = query < 0 ? uri : uri.substring(0, query);
+        StringBuilder path = new StringBuilder();
+        for (String segment : bare.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            path.append('/').append(segment.length() >= 8 && segment.matches(".*[0-9].*") ? "*" : segment);
+        }
+        return path.length() == 0 ? "/" : path.toString();
+    }
+
+    /**
+     * Returns the URL to pass to {@code AxeWatcherOptions.setServerUrl}.
+     *
+     * @return The base URL with a trailing slash.
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Returns the number of requests the server answered.
+     *
+     * @return The count.
+     */
+    public int forwarded() {
+        return forwarded.get();
+    }
+
+    /**
+     * Returns the number of uploads written to the spool.
+     *
+     * @return The count.
+     */
+    public int spooled() {
+        return spooled.get();
+    }
+
+    /**
+     * Returns the spool of this relay.
+     *
+     * @return The spool.
+     */
+    public PayloadSpool getSpool() {
+        return spool;
+    }
+
+    /**
+     * Stops the relay and closes the spool.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            spool.close();
+        } catch (IOException e) {
+            System.out.println("Could not close payload spool: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a request to a Watcher server.
+     *
+     * @param serverUrl The server URL, without a trailing slash.
+     * @param entry     The request.
+     * @return The response.
+     * @throws IOException If the server cannot be reached.
+     */
+    static Response send(String serverUrl, PayloadSpool.Entry entry) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(serverUrl + entry.getPath()).openConnection();
+        try {
+            connection.setRequestMethod(entry.getMethod());
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            for (Map.Entry<String, String> header : entry.getHeaders().entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            byte[] body = entry.getBody();
+            if (body.length > 0) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            return new Response(status, connection.getContentType(), connection.getContentEncoding(), readAll(in));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            PayloadSpool.Entry entry = new PayloadSpool.Entry(exchange.getRequestMethod(),
+                    exchange.getRequestURI().toString(), headers(exchange), readAll(exchange.getRequestBody()));
+            boolean upload = isSpooled(entry);
+            Response response = null;
+            if (!upload || System.nanoTime() - upstreamDownUntil >= 0) {
+                try {
+                    response = send(upstream, entry);
+                } catch (IOException e) {
+                    System.out.println("Watcher server " + upstream + " unreachable: " + e.getMessage());
+                }
+                if (response == null || response.status >= 500) {
+                    upstreamDownUntil = System.nanoTime() + retryAfterNanos;
+                }
+            }
+            boolean failed = response == null || response.status >= 500;
+            if (!upload && isUpload(entry)) {
+                if (failed) {
+                    System.out.println("Not spooling " + entry.getPath() + ", " + uploadPath(entry.getPath())
+                            + " was not captured as an upload path yet");
+                } else if (response.status < 300 && spooledPaths.addIfAbsent(uploadPath(entry.getPath()))) {
+                    capture(spool.getDirectory(), Collections.singletonList(entry.getPath()));
+                }
+            }
+            if (upload && failed) {
+                spool.append(withoutCredentials(entry));
+                spooled.incrementAndGet();
+                response = new Response(202, "application/json", null, "{}".getBytes(StandardCharsets.UTF_8));
+            } else if (response == null) {
+                response = new Response(502, "application/json", null,
+                        "{\"error\":\"Watcher server unreachable\"}".getBytes(StandardCharsets.UTF_8));
+            } else {
+                forwarded.incrementAndGet();
+            }
+            if (response.contentType != null) {
+                exchange.getResponseHeaders().set("Content-Type", response.contentType);
+            }
+            if (response.contentEncoding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", response.contentEncoding);
+            }
+            exchange.sendResponseHeaders(response.status, response.body.length == 0 ? -1 : response.body.length);
+            if (response.body.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response.body);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Returns whether a request is a result upload that may be spooled and sent again later.
+     *
+     * @param entry The request.
+     * @return {@code true} for a {@code POST} with a body to a spooled path.
+     */
+    boolean isSpooled(PayloadSpool.Entry entry) {
+        if (!isUpload(entry)) {
+            return false;
+        }
+        String[] segments = uploadPath(entry.getPath()).split("/");
+        for (String spooled : spooledPaths) {
+            if (matches(spooled.split("/"), segments)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUpload(PayloadSpool.Entry entry) {
+        return "POST".equalsIgnoreCase(entry.getMethod()) && entry.getBody().length > 0;
+    }
+
+    private static boolean matches(String[] pattern, String[] segments) {
+        if (pattern.length != segments.length) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (!pattern[i].equals("*") && !pattern[i].equals(segments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> readLines(Path file) {
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+        try {
+            List<String> lines = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line.trim());
+                }
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read captured upload paths " + file, e);
+        }
+    }
+
+    private static List<String> pathList(String paths) {
+        List<String> list = new ArrayList<>();
+        for (String path : paths.split(",")) {
+            if (!path.trim().isEmpty()) {
+                list.add(uploadPath(path.trim()));
+            }
+        }
+        return list;
+    }
+
+    private static PayloadSpool.Entry withoutCredentials(PayloadSpool.Entry entry) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, String> header : entry.getHeaders().entrySet()) {
+            if (!CREDENTIALS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        return new PayloadSpool.Entry(entry.getMethod(), entry.getPath(), headers, entry.getBody());
+    }
+
+    private static Map<String, String> headers(HttpExchange exchange) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+            if (!HOP_BY_HOP.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                headers.put(header.getKey(), String.join(", ", header.getValue()));
+            }
+        }
+        return headers;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        if (in == null) {
+            return new byte[0];
+        }
+        try (InputStream body = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * A response of the Watcher server, or the one the relay answers in its place.
+     */
+    static final class Response {
+        final int status;
+        final String contentType;
+        final String contentEncoding;
+        final byte[] body;
+
+        Response(int status, String contentType, String contentEncoding, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.body = body;
+        }
+    }
+}
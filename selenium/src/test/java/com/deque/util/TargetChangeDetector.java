@@ -0,0 +1,257 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+/**
+ * Tells which target pages changed since the last run by comparing a fingerprint of each page with the
+ * one recorded in a manifest. The fingerprint is the {@code ETag} of a {@code HEAD} response, else its
+ * {@code Last-Modified}, else a SHA-256 of the body of a {@code GET}. A page that cannot be fetched counts
+ * as changed, so an unreachable host never hides a scenario.
+ *
+ * <p>The manifest is a tab separated {@code url, fingerprint} file, {@code TARGET_MANIFEST} or
+ * {@code target/watcher-impact/target-manifest.tsv} by default; CI has to keep it between builds. Only pages
+ * whose tests passed are written back, see {@link #markVerified(String)}, so a failing scenario keeps
+ * running until it passes.</p>
+ */
+public class TargetChangeDetector {
+
+    private static final String DEFAULT_MANIFEST = "target/watcher-impact/target-manifest.tsv";
+    private static final int TIMEOUT_MILLIS = 10_000;
+    private static final String UNREACHABLE = "";
+
+    private final Path manifest;
+    private final UnaryOperator<String> resolver;
+    private final Map<String, String> previous;
+    private final Map<String, String> current = new ConcurrentHashMap<>();
+    private final Map<String, String> verified = new ConcurrentHashMap<>();
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a detector.
+     *
+     * @param manifest The manifest of the previous run, which need not exist yet.
+     * @param resolver Maps a live URL onto the URL to fetch, like {@link TargetUrls#of(String)}.
+     * @throws IllegalStateException If the manifest exists but cannot be read.
+     */
+    public TargetChangeDetector(Path manifest, UnaryOperator<String> resolver) {
+        this.manifest = manifest;
+        this.resolver = resolver;
+        this.previous = read(manifest);
+    }
+
+    /**
+     * Creates a detector for the manifest in {@code TARGET_MANIFEST} that fetches pages from the configured
+     * {@link TargetUrls target mode}.
+     *
+     * @return The detector.
+     */
+    public static TargetChangeDetector fromConfig() {
+        return new TargetChangeDetector(Paths.get(TestConfig.get().get("TARGET_MANIFEST", DEFAULT_MANIFEST)),
+                TargetUrls::of);
+    }
+
+    /**
+     * Returns the pages whose fingerprint differs from the manifest, fetching them in parallel.
+     *
+     * @param urls The live URLs.
+     * @return The changed URLs, sorted.
+     */
+    public Set<String> changed(Collection<String> urls) {
+        List<String> unique = new ArrayList<>(new TreeSet<>(urls));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(8, unique.size())), r -> {
+            Thread thread = new Thread(r, "target-change-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<String>> fingerprints = new ArrayList<>();
+            for (String url : unique) {
+                fingerprints.add(executor.submit(() -> fingerprint(url)));
+            }
+            Set<String> changed = new TreeSet<>();
+            for (int i = 0; i < unique.size(); i++) {
+                if (isChanged(unique.get(i), fingerprints.get(i).get())) {
+                    changed.add(unique.get(i));
+                }
+            }
+            return changed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking target pages", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to check target pages", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns whether a page differs from the manifest.
+     *
+     * @param url The live URL.
+     * @return {@code true} if the page changed, is new or cannot be fetched.
+     */
+    public boolean changed(String url) {
+        return isChanged(url, fingerprint(url));
+    }
+
+    /**
+     * Returns the current fingerprint of a page, fetched once per detector.
+     *
+     * @param url The live URL.
+     * @return The fingerprint, or null if the page cannot be fetched.
+     */
+    public String fingerprint(String url) {
+        String fingerprint = current.computeIfAbsent(url, this::fetch);
+        return UNREACHABLE.equals(fingerprint) ? null : fingerprint;
+    }
+
+    /**
+     * Records that the tests of a page passed, so its current fingerprint is saved unless one of them fails.
+     *
+     * @param url The live URL.
+     */
+    public void markVerified(String url) {
+        String fingerprint = fingerprint(url);
+        if (fingerprint != null) {
+            verified.put(url, fingerprint);
+        }
+    }
+
+    /**
+     * Records that a test of a page failed, so the page is removed from the manifest and selected again.
+     *
+     * @param url The live URL.
+     */
+    public void markFailed(String url) {
+        failed.add(url);
+    }
+
+    /**
+     * Writes the manifest: the previous entries, updated with the verified pages and without the failed ones.
+     *
+     * @throws IllegalStateException If the manifest cannot be written.
+     */
+    public void save() {
+        Map<String, String> entries = new TreeMap<>(previous);
+        entries.putAll(verified);
+        entries.keySet().removeAll(failed);
+        try {
+            Path parent = manifest.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            try (Writer tsv = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    tsv.write(entry.getKey() + '\t' + entry.getValue() + '\n');
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write target manifest " + manifest, e);
+        }
+    }
+
+    private boolean isChanged(String url, String fingerprint) {
+        return fingerprint == null || !fingerprint.equals(previous.get(url));
+    }
+
+    private String fetch(String url) {
+        try {
+            HttpURLConnection head = open(url, "HEAD");
+            try {
+                if (head.getResponseCode() >= 400) {
+                    return UNREACHABLE;
+                }
+                String etag = head.getHeaderField("ETag");
+                if (etag != null && !etag.isEmpty()) {
+                    return "etag " + etag;
+                }
+                String modified = head.getHeaderField("Last-Modified");
+                if (modified != null && !modified.isEmpty()) {
+                    return "modified " + modified;
+                }
+            } finally {
+                head.disconnect();
+            }
+            return hash(url);
+        } catch (IOException e) {
+            System.out.println("Could not fetch target page " + url + ", treating it as changed: " + e.getMessage());
+            return UNREACHABLE;
+        }
+    }
+
+    private String hash(String url) throws IOException {
+        HttpURLConnection get = open(url, "GET");
+        try {
+            if (get.getResponseCode() >= 400) {
+                return UNREACHABLE;
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream body = get.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            StringBuilder hex = new StringBuilder("sha256 ");
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        } finally {
+            get.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(String url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(resolver.apply(url)).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setInstanceFollowRedirects(true);
+        return connection;
+    }
+
+    private static Map<String, String> read(Path manifest) {
+        if (!Files.exists(manifest)) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> entries = new TreeMap<>();
+        try {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    entries.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read target manifest " + manifest, e);
+        }
+        return entries;
+    }
+}
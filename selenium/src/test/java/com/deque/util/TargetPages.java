@@ -0,0 +1,23 @@
+package com.deque.util;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names the live target pages a test scans, so {@link ChangedTargetsInterceptor} can skip it while none
+ * of them changed since the last passing run. On a class it applies to every test method without its own
+ * annotation. Tests without it always run, which is right for pages whose content changes on every load.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface TargetPages {
+
+    /**
+     * The live URLs of the pages, as passed to {@link TargetUrls#of(String)}.
+     *
+     * @return The URLs.
+     */
+    String[] value();
+}
@@ -0,0 +1,35 @@
+package com.deque.util;
+
+/**
+ * Chooses between the live target hosts and the local {@link FixtureServer}.
+ * The {@code TARGETS} setting, read through {@link TestConfig},
+ * selects the mode: {@code live} (the default) visits the real hosts, {@code fixture} rewrites every
+ * http(s) URL onto the embedded fixture server so runs are fast, reproducible and work without network.
+ */
+public class TargetUrls {
+
+    private static final String FIXTURE_MODE = "fixture";
+
+    /**
+     * Resolves a live URL, or an exclude pattern that starts with one, for the configured target mode.
+     * Values that are not http(s) URLs are returned unchanged.
+     *
+     * @param liveUrl The URL as it appears on the live host.
+     * @return The URL to navigate to in the current mode.
+     */
+    public static String of(String liveUrl) {
+        if (!isFixtureMode() || !(liveUrl.startsWith("http://") || liveUrl.startsWith("https://"))) {
+            return liveUrl;
+        }
+        return FixtureServer.shared().urlFor(liveUrl);
+    }
+
+    /**
+     * Tells whether pages are served by the local fixture server.
+     *
+     * @return {@code true} when {@code TARGETS=fixture}.
+     */
+    public static boolean isFixtureMode() {
+        return FIXTURE_MODE.equalsIgnoreCase(TestConfig.get().get("TARGETS"));
+    }
+}
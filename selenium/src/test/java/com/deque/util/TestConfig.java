@@ -0,0 +1,176 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable snapshot of the test settings, built once per JVM.
+ * Each key is looked up in the system properties first, then the environment variables, then
+ * {@code config.properties} on the test classpath, so {@code -DTARGETS=fixture} on the command line
+ * or an {@code API_KEY} secret in CI overrides the checked in file. The snapshot is published through
+ * a class holder, so parallel test threads read it without any locking.
+ *
+ * <p>{@link #buildId()} is fixed for the whole run: {@code WATCHER_BUILD_ID} if set, otherwise
+ * {@code GITHUB_RUN_ID}, otherwise a {@code RUN-xxxxx} id drawn once, so that every test of the run
+ * reports into the same Watcher build.</p>
+ */
+public final class TestConfig {
+
+    private static final String CONFIG_RESOURCE = "config.properties";
+
+    private final Map<String, String> values;
+    private final String buildId;
+
+    private TestConfig(Map<String, String> values) {
+        this.values = Collections.unmodifiableMap(values);
+        String id = values.get("WATCHER_BUILD_ID");
+        if (isBlank(id)) {
+            id = values.get("GITHUB_RUN_ID");
+        }
+        if (isBlank(id)) {
+            id = "RUN-" + ThreadLocalRandom.current().nextInt(100000);
+        }
+        this.buildId = id;
+    }
+
+    /**
+     * Returns the settings of this run.
+     *
+     * @return The shared snapshot.
+     */
+    public static TestConfig get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Builds a snapshot from explicit layers, later layers overriding earlier ones.
+     *
+     * @param layers The layers from lowest to highest precedence.
+     * @return The snapshot.
+     */
+    @SafeVarargs
+    public static TestConfig of(Map<String, String>... layers) {
+        Map<String, String> merged = new HashMap<>();
+        for (Map<String, String> layer : layers) {
+            merged.putAll(layer);
+        }
+        return new TestConfig(merged);
+    }
+
+    /**
+     * Returns a setting.
+     *
+     * @param key The setting name, for example {@code API_KEY}.
+     * @return The value, or null if it is not set anywhere.
+     */
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * Returns a setting, falling back to a default when it is missing or empty.
+     *
+     * @param key          The setting name.
+     * @param defaultValue The value to use when the setting is missing or empty.
+     * @return The value.
+     */
+    public String get(String key, String defaultValue) {
+        String value = values.get(key);
+        return isBlank(value) ? defaultValue : value;
+    }
+
+    /**
+     * Returns an integer setting.
+     *
+     * @param key          The setting name.
+     * @param defaultValue The value to use when the setting is missing or empty.
+     * @return The parsed value.
+     * @throws IllegalStateException If the value is not an integer.
+     */
+    public int getInt(String key, int defaultValue) {
+        String value = values.get(key);
+        if (isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Setting " + key + " is not an integer: " + value, e);
+        }
+    }
+
+    /**
+     * Returns a boolean setting.
+     *
+     * @param key          The setting name.
+     * @param defaultValue The value to use when the setting is missing or empty.
+     * @return {@code true} if the value is "true", ignoring case.
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.get(key);
+        return isBlank(value) ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Returns a setting that has to be present.
+     *
+     * @param key The setting name.
+     * @return The value.
+     * @throws IllegalStateException If the setting is missing or empty.
+     */
+    public String require(String key) {
+        String value = values.get(key);
+        if (isBlank(value)) {
+            throw new IllegalStateException("Setting " + key + " is required but not set");
+        }
+        return value;
+    }
+
+    /**
+     * Returns the Watcher build id shared by every test of this run.
+     *
+     * @return The build id.
+     */
+    public String buildId() {
+        return buildId;
+    }
+
+    private static TestConfig load() {
+        Map<String, String> file = new HashMap<>();
+        try (InputStream in = TestConfig.class.getClassLoader().getResourceAsStream(CONFIG_RESOURCE)) {
+            if (in == null) {
+                System.out.println("No " + CONFIG_RESOURCE + " on the classpath, using environment and system properties only");
+            } else {
+                Properties properties = new Properties();
+                properties.load(in);
+                for (String name : properties.stringPropertyNames()) {
+                    file.put(name, properties.getProperty(name));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load " + CONFIG_RESOURCE, e);
+        }
+        Map<String, String> system = new HashMap<>();
+        Properties systemProperties = System.getProperties();
+        for (String name : systemProperties.stringPropertyNames()) {
+            system.put(name, systemProperties.getProperty(name));
+        }
+        return of(file, System.getenv(), system);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * Loads the snapshot on first use; class initialisation makes it safely visible to every thread.
+     */
+    private static final class Holder {
+        private static final TestConfig INSTANCE = load();
+    }
+}
@@ -0,0 +1,32 @@
+package com.deque.util;
+
+/**
+ * Chooses the results server the tests report to.
+ * The {@code WATCHER_BACKEND} setting, read through {@link TestConfig},
+ * selects the backend: {@code live} (the default) uses {@code SERVER_URL}, and {@code spool} reaches
+ * {@code SERVER_URL} through a {@link SpoolingRelay} that keeps uploads made while it is down. The
+ * {@link MockWatcherServer} is not a backend choice, since it is not known to answer a Watcher session the
+ * way the real server does; tests that record uploads start one themselves.
+ */
+public class WatcherBackend {
+
+    private static final String SPOOL_BACKEND = "spool";
+
+    /**
+     * Returns the server URL to pass to {@code AxeWatcherOptions.setServerUrl}.
+     *
+     * @return The configured {@code SERVER_URL}, or the relay URL in spool mode.
+     */
+    public static String serverUrl() {
+        return isSpool() ? SpoolingRelay.shared().baseUrl() : TestConfig.get().get("SERVER_URL");
+    }
+
+    /**
+     * Tells whether uploads go through the spooling relay.
+     *
+     * @return {@code true} when {@code WATCHER_BACKEND=spool}.
+     */
+    public static boolean isSpool() {
+        return SPOOL_BACKEND.equalsIgnoreCase(TestConfig.get().get("WATCHER_BACKEND"));
+    }
+}
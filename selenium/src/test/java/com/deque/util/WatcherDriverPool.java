@@ -0,0 +1,427 @@
+package com.deque.util;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.json.Json;
+
+import com.deque.axe_core.commons.AxeWatcherOptions;
+import com.deque.axe_core.selenium.AxeWatcher;
+import com.deque.axe_core.selenium.AxeWatcherDriver;
+import com.deque.util.WatcherTimings.Phase;
+
+/**
+ * Pool of already configured, already wrapped Axe Watcher drivers.
+ * Sessions are keyed by the fingerprint of the {@link AxeWatcherOptions} they were created with,
+ * so a test only gets back a browser whose Watcher configuration matches its own.
+ * Released sessions have their cookies cleared and are parked on about:blank instead of quitting Chrome,
+ * which saves the browser cold start for the next test; uploading their results is left to the caller,
+ * normally {@link AsyncFlusher}. An {@code acquire} that finds no idle browser waits up to
+ * {@code -Dwatcher.pool.returnWaitMillis} for a session of the same configuration that was announced as
+ * {@link #returning(WebDriver) returning} before it starts a new one.
+ * Browsers are launched with the {@link ExecutionProfile#current() execution profile} of the run.
+ * A {@link MemoryWatchdog} samples each browser when it is released, and a browser that crossed one of its
+ * limits is quit instead of being parked, so the next test gets a fresh one.
+ * With {@code PROFILE_TEMPLATE=true} new browsers start from a clone of a {@link ChromeProfileTemplate}.
+ */
+public class WatcherDriverPool {
+
+    private static final String BLANK_PAGE = "about:blank";
+    private static final int DEFAULT_MAX_IDLE_PER_KEY = 2;
+    private static final long RETURN_WAIT_MILLIS = Long.getLong("watcher.pool.returnWaitMillis", 10_000L);
+
+    private static final WatcherDriverPool SHARED = new WatcherDriverPool(
+            Integer.getInteger("watcher.pool.maxIdlePerKey", DEFAULT_MAX_IDLE_PER_KEY), MemoryWatchdog.fromConfig());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(SHARED::shutdown, "watcher-driver-pool-shutdown"));
+    }
+
+    private final int maxIdlePerKey;
+    private final MemoryWatchdog watchdog;
+    private final Map<String, Deque<PooledSession>> idle = new ConcurrentHashMap<>();
+    private final Map<WebDriver, PooledSession> leased = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger reused = new AtomicInteger();
+    private final Object returned = new Object();
+
+    /**
+     * Creates a pool that keeps at most {@code maxIdlePerKey} idle browsers per options fingerprint.
+     *
+     * @param maxIdlePerKey The number of idle sessions retained per fingerprint.
+     */
+    public WatcherDriverPool(int maxIdlePerKey) {
+        this(maxIdlePerKey, MemoryWatchdog.fromConfig());
+    }
+
+    /**
+     * Creates a pool that keeps at most {@code maxIdlePerKey} idle browsers per options fingerprint and
+     * recycles browsers the watchdog reports.
+     *
+     * @param maxIdlePerKey The number of idle sessions retained per fingerprint.
+     * @param watchdog      The watchdog sampling the memory of the browsers.
+     */
+    public WatcherDriverPool(int maxIdlePerKey, MemoryWatchdog watchdog) {
+        this.maxIdlePerKey = maxIdlePerKey;
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * Returns the JVM wide pool shared by all test classes.
+     * Its idle limit can be raised with {@code -Dwatcher.pool.maxIdlePerKey} to match the suite thread count.
+     *
+     * @return The shared pool.
+     */
+    public static WatcherDriverPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Hands out a wrapped driver configured with the given options, reusing an idle browser when one
+     * with the same fingerprint is available.
+     *
+     * @param options The Watcher options the session must be configured with.
+     * @return A driver wrapped by Axe Watcher, castable to {@link AxeWatcherDriver}.
+     */
+    public WebDriver acquire(AxeWatcherOptions options) {
+        return acquire(fingerprint(options), () -> options);
+    }
+
+    /**
+     * Hands out a wrapped driver configured with a preset of the {@link WatcherOptionsFactory#shared() shared factory}.
+     * Sessions are keyed by the preset itself, so the options are only built when a new browser is started.
+     *
+     * @param preset The preset the session must be configured with.
+     * @return A driver wrapped by Axe Watcher, castable to {@link AxeWatcherDriver}.
+     */
+    public WebDriver acquire(WatcherPreset preset) {
+        WatcherOptionsFactory factory = WatcherOptionsFactory.shared();
+        return acquire("preset:" + factory.key(preset), () -> factory.create(preset));
+    }
+
+    private WebDriver acquire(String key, Supplier<AxeWatcherOptions> options) {
+        PooledSession session = pollIdle(key);
+        if (session == null) {
+            session = awaitReturning(key);
+        }
+        if (session == null) {
+            session = create(key, options);
+            started.incrementAndGet();
+        } else {
+            reused.incrementAndGet();
+        }
+        leased.put(session.wrapped, session);
+        return session.wrapped;
+    }
+
+    private PooledSession pollIdle(String key) {
+        Deque<PooledSession> sessions = idle.get(key);
+        PooledSession session;
+        while (sessions != null && (session = sessions.pollFirst()) != null) {
+            if (session.isAlive()) {
+                return session;
+            }
+            session.quitQuietly();
+        }
+        return null;
+    }
+
+    private PooledSession awaitReturning(String key) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETURN_WAIT_MILLIS);
+        synchronized (returned) {
+            while (true) {
+                PooledSession session = pollIdle(key);
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (session != null || remaining <= 0 || !isReturning(key)) {
+                    return session;
+                }
+                try {
+                    returned.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+    }
+
+    private boolean isReturning(String key) {
+        synchronized (leased) {
+            for (PooledSession session : leased.values()) {
+                if (session.returning && session.key.equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Announces that a leased driver will be released soon, after its results are uploaded, so that an
+     * {@code acquire} of the same configuration waits for it rather than starting another browser.
+     *
+     * @param driver A driver obtained from this pool; other drivers are ignored.
+     */
+    public void returning(WebDriver driver) {
+        PooledSession session = leased.get(driver);
+        if (session != null) {
+            session.returning = true;
+        }
+    }
+
+    /**
+     * Returns a driver to the pool. Its cookies are cleared and the tab parked on about:blank; the caller
+     * must have flushed it first. Drivers the pool did not create, sessions that fail to reset, sessions
+     * beyond the idle limit and sessions over a {@link MemoryWatchdog} limit are quit instead.
+     *
+     * @param driver The driver obtained from {@link #acquire(AxeWatcherOptions)}.
+     */
+    public void release(WebDriver driver) {
+        if (driver == null) {
+            return;
+        }
+        PooledSession session = leased.get(driver);
+        if (session == null) {
+            driver.quit();
+            return;
+        }
+        boolean keep = false;
+        try {
+            // Sample before parking, while the JS heap of the last page is still there
+            String recycle = session.check();
+            session.reset();
+            if (recycle != null) {
+                System.out.println("Recycling " + session.memory.getId() + " after " + recycle);
+            }
+            keep = recycle == null;
+        } finally {
+            park(driver, session, keep);
+        }
+    }
+
+    private void park(WebDriver driver, PooledSession session, boolean keep) {
+        Deque<PooledSession> sessions = idle.computeIfAbsent(session.key, k -> new ConcurrentLinkedDeque<>());
+        synchronized (returned) {
+            // Leaving the leased map and entering the idle one is a single step for a waiting acquire
+            leased.remove(driver);
+            session.returning = false;
+            keep = keep && sessions.size() < maxIdlePerKey;
+            if (keep) {
+                sessions.offerFirst(session);
+            }
+            returned.notifyAll();
+        }
+        if (!keep) {
+            session.quitQuietly();
+        }
+    }
+
+    /**
+     * Replaces a leased browser with a fresh one with the same configuration if it crossed a
+     * {@link MemoryWatchdog} limit, for callers such as {@link CrawlRunner} that hold a driver for many pages.
+     * The old session is flushed before it is quit.
+     *
+     * @param driver A driver obtained from this pool.
+     * @return The same driver, or the replacement to use from now on.
+     */
+    public WebDriver recycleIfNeeded(WebDriver driver) {
+        PooledSession session = leased.get(driver);
+        if (session == null) {
+            return driver;
+        }
+        String recycle = session.check();
+        if (recycle == null) {
+            return driver;
+        }
+        System.out.println("Recycling " + session.memory.getId() + " after " + recycle);
+        leased.remove(driver);
+        try {
+            WatcherTimings.flush(driver);
+        } finally {
+            session.quitQuietly();
+        }
+        return acquire(session.key, session.options);
+    }
+
+    /**
+     * Returns the key a leased driver was pooled under, which identifies its Watcher configuration
+     * including the credentials and build id.
+     *
+     * @param driver A driver obtained from this pool.
+     * @return The key, or null if the driver is not currently leased from this pool.
+     */
+    public String keyOf(WebDriver driver) {
+        PooledSession session = leased.get(driver);
+        return session == null ? null : session.key;
+    }
+
+    /**
+     * Returns how many browsers the pool started.
+     *
+     * @return The number of sessions created by {@code acquire}.
+     */
+    public int started() {
+        return started.get();
+    }
+
+    /**
+     * Returns how many times an idle browser was handed out again.
+     *
+     * @return The number of sessions reused by {@code acquire}.
+     */
+    public int reused() {
+        return reused.get();
+    }
+
+    /**
+     * Quits every browser held by the pool, idle or leased.
+     */
+    public void shutdown() {
+        List<PooledSession> all = new ArrayList<>();
+        for (Deque<PooledSession> sessions : idle.values()) {
+            PooledSession session;
+            while ((session = sessions.pollFirst()) != null) {
+                all.add(session);
+            }
+        }
+        synchronized (leased) {
+            all.addAll(leased.values());
+            leased.clear();
+        }
+        for (PooledSession session : all) {
+            session.quitQuietly();
+        }
+    }
+
+    /**
+     * Computes a stable fingerprint for a set of Watcher options from their JSON form.
+     * Options that cannot be serialized get an identity based key and are never shared.
+     *
+     * @param options The options to fingerprint.
+     * @return A hex encoded SHA-256 digest of the options.
+     */
+    public static String fingerprint(AxeWatcherOptions options) {
+        String json;
+        try {
+            json = new Json().toJson(options);
+        } catch (RuntimeException e) {
+            json = options.getClass().getName() + "@" + System.identityHashCode(options);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private PooledSession create(String key, Supplier<AxeWatcherOptions> options) {
+        // A key or server that cannot work fails here, before Chrome is started for nothing
+        WatcherPreflight.requireConfigured();
+        AxeWatcher watcher = new AxeWatcher(options.get()).enableDebugLogger();
+
+        ChromeDriverBootstrap.ensureResolved();
+        ChromeOptions chromeOptions = WatcherTimings.measure(Phase.CONFIGURE, () -> ExecutionProfile.current().configure(watcher));
+
+        ChromeProfileTemplate templates = TestConfig.get().getBoolean("PROFILE_TEMPLATE", false)
+                ? ChromeProfileTemplate.shared() : null;
+        Path profile = templates == null ? null : templates.apply(chromeOptions);
+        ChromeDriver raw = null;
+        try {
+            raw = WatcherTimings.measure(Phase.DRIVER_STARTUP, () -> new ChromeDriver(chromeOptions));
+            ChromeDriver started = raw;
+            // Wrapping starts the Watcher session on the backend, which may be briefly unavailable, and reads the
+            // branch of the checkout, which a branch test may be borrowing at this moment
+            WebDriver wrapped = GitUtils.onCurrentBranch(
+                    () -> WatcherResilience.shared().call("session", () -> watcher.wrapDriver(started)));
+            return new PooledSession(key, options, raw, wrapped, watchdog.track(key, raw), profile);
+        } catch (RuntimeException e) {
+            if (raw != null) {
+                raw.quit();
+            }
+            if (templates != null) {
+                templates.release(profile);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A browser owned by the pool, holding both the raw driver and its Watcher wrapper.
+     * Resetting goes through the raw driver so that parking on about:blank does not record a page state.
+     */
+    private static final class PooledSession {
+        private final String key;
+        private final Supplier<AxeWatcherOptions> options;
+        private final ChromeDriver raw;
+        private final WebDriver wrapped;
+        private final MemoryWatchdog.Session memory;
+        private final Path profile;
+        private volatile boolean returning;
+
+        PooledSession(String key, Supplier<AxeWatcherOptions> options, ChromeDriver raw, WebDriver wrapped,
+                MemoryWatchdog.Session memory, Path profile) {
+            this.key = key;
+            this.options = options;
+            this.raw = raw;
+            this.wrapped = wrapped;
+            this.memory = memory;
+            this.profile = profile;
+        }
+
+        String check() {
+            try {
+                return memory.check();
+            } catch (WebDriverException e) {
+                // A browser that cannot be measured is not trusted with the next test
+                return "failed memory sample: " + e.getMessage();
+            }
+        }
+
+        void reset() {
+            raw.executeCdpCommand("Network.clearBrowserCookies", Collections.<String, Object>emptyMap());
+            raw.get(BLANK_PAGE);
+        }
+
+        boolean isAlive() {
+            try {
+                raw.getWindowHandle();
+                return true;
+            } catch (WebDriverException e) {
+                return false;
+            }
+        }
+
+        void quitQuietly() {
+            try {
+                raw.quit();
+            } catch (WebDriverException e) {
+                System.out.println("Ignoring failure while quitting pooled driver: " + e.getMessage());
+            }
+            if (profile != null) {
+                ChromeProfileTemplate.shared().release(profile);
+            }
+        }
+    }
+}
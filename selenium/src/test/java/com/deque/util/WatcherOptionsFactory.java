@@ -0,0 +1,88 @@
+package com.deque.util;
+
+import com.deque.axe_core.commons.AxeWatcherOptions;
+
+/**
+ * Creates {@link AxeWatcherOptions} from {@link WatcherPreset}s with the credentials of this run.
+ * The common presets are constants, and test classes derive their own from them, for example
+ * {@code WatcherOptionsFactory.AUTO.as("no-label").disableRules("label")}. Each call to
+ * {@link #create(WatcherPreset)} returns fresh options, since Watcher options are mutable and
+ * must not be shared between drivers.
+ */
+public class WatcherOptionsFactory {
+
+    /** Auto analyze mode, every page state is analyzed. */
+    public static final WatcherPreset AUTO = WatcherPreset.named("auto");
+
+    /** Manual mode, pages are only analyzed on {@code analyze()} or between {@code start()} and {@code stop()}. */
+    public static final WatcherPreset MANUAL = AUTO.as("manual").manual();
+
+    /** Auto analyze mode with every URL excluded, so no page state is recorded. */
+    public static final WatcherPreset EXCLUDE_ALL_URLS = AUTO.as("exclude-all-urls").excludeUrls("**/*.*");
+
+    /** Auto analyze mode with the color-contrast rule disabled. */
+    public static final WatcherPreset COLOR_CONTRAST_DISABLED = AUTO.as("color-contrast-disabled")
+            .disableRules("color-contrast");
+
+    /** Auto analyze mode running only the WCAG 2 A and AA rules. */
+    public static final WatcherPreset RUN_ONLY_WCAG2AA = AUTO.as("run-only-wcag2aa").runOnlyTags("wcag2a", "wcag2aa");
+
+    private final String apiKey;
+    private final String serverUrl;
+    private final String buildId;
+
+    /**
+     * Creates a factory for the given credentials.
+     *
+     * @param apiKey    The Watcher API key.
+     * @param serverUrl The Watcher server URL.
+     * @param buildId   The build id all results are grouped under.
+     */
+    public WatcherOptionsFactory(String apiKey, String serverUrl, String buildId) {
+        this.apiKey = apiKey;
+        this.serverUrl = serverUrl;
+        this.buildId = buildId;
+    }
+
+    /**
+     * Returns the factory for this run, using {@code API_KEY}, {@link WatcherBackend#serverUrl()}
+     * and {@link TestConfig#buildId()}.
+     *
+     * @return The shared factory.
+     */
+    public static WatcherOptionsFactory shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Creates new options for a preset.
+     *
+     * @param preset The preset to apply.
+     * @return Options carrying the credentials of this factory and the settings of the preset.
+     */
+    public AxeWatcherOptions create(WatcherPreset preset) {
+        AxeWatcherOptions options = new AxeWatcherOptions()
+                .setApiKey(apiKey)
+                .setServerUrl(serverUrl)
+                .setBuildId(buildId);
+        return preset.applyTo(options);
+    }
+
+    /**
+     * Returns a key that identifies the options {@link #create(WatcherPreset)} produces for a preset.
+     *
+     * @param preset The preset.
+     * @return A key suitable for pooling drivers.
+     */
+    public String key(WatcherPreset preset) {
+        return serverUrl + "|" + buildId + "|" + Integer.toHexString(String.valueOf(apiKey).hashCode()) + "|" + preset.key();
+    }
+
+    /**
+     * Builds the shared factory on first use.
+     */
+    private static final class Holder {
+        private static final WatcherOptionsFactory INSTANCE = new WatcherOptionsFactory(
+                TestConfig.get().get("API_KEY"), WatcherBackend.serverUrl(), TestConfig.get().buildId());
+    }
+}
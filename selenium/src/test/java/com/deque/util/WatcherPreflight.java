@@ -0,0 +1,223 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks the configuration of the Watcher backend with one cheap request before a browser is launched, so
+ * a missing key or an unreachable server fails each browser test in a moment instead of after Chrome has
+ * started with the Watcher extension. {@link WatcherDriverPool} runs {@link #requireConfigured()} before it
+ * starts a browser, so tests that never start one, such as the utility tests, do not depend on the backend.
+ *
+ * <p>A missing key, a server URL that is not absolute, an unknown host or a server that cannot be reached
+ * fail without further requests. Otherwise a {@code GET} of {@code PREFLIGHT_PATH} below the server URL,
+ * {@value #DEFAULT_PATH} by default, is sent with the key, and a 401 or 403 fails with "Invalid API key".
+ * Any other answer passes; a 5xx is only reported, since a briefly unhealthy server is left to
+ * {@link WatcherResilience} and, with {@code WATCHER_BACKEND=spool}, to the {@link SpoolingRelay}.</p>
+ *
+ * <p>A key that passes is checked against the endpoint once more with a key no server issues. If that one
+ * passes too, the endpoint does not check keys and the verdict says so, see {@link Verdict#isKeyChecked()}:
+ * point {@code PREFLIGHT_PATH} at an endpoint of your server that requires the key.</p>
+ *
+ * <p>Verdicts are cached per key and URL for the JVM, so every browser start, and every caller of
+ * {@link #check(String, String)}, shares the first request. {@code PREFLIGHT=false} skips the check.</p>
+ */
+public class WatcherPreflight {
+
+    /** Path requested when {@code PREFLIGHT_PATH} is not set, an endpoint that requires the API key. */
+    public static final String DEFAULT_PATH = "api/sessions";
+
+    private static final String UNISSUED_KEY = "00000000-0000-0000-0000-000000000000";
+    private static final int TIMEOUT_MILLIS = 10_000;
+    private static final Map<String, Verdict> VERDICTS = new ConcurrentHashMap<>();
+
+    /**
+     * Checks the configured key and the server of the {@link WatcherBackend}, unless {@code PREFLIGHT=false}.
+     *
+     * @throws IllegalStateException If the key or server URL cannot be used.
+     */
+    public static void requireConfigured() {
+        TestConfig config = TestConfig.get();
+        if (!config.getBoolean("PREFLIGHT", true)) {
+            return;
+        }
+        Verdict verdict = require(config.get("API_KEY"), WatcherBackend.serverUrl(), config.get("PREFLIGHT_PATH", DEFAULT_PATH));
+        if (!verdict.isKeyChecked()) {
+            System.out.println("Watcher preflight: " + verdict.getMessage());
+        }
+    }
+
+    /**
+     * Checks a key and server, failing if they cannot be used.
+     *
+     * @param apiKey    The Watcher API key.
+     * @param serverUrl The Watcher server URL.
+     * @param path      The path requested below the server URL.
+     * @return The passing verdict.
+     * @throws IllegalStateException If the key or server URL is invalid.
+     */
+    public static Verdict require(String apiKey, String serverUrl, String path) {
+        Verdict verdict = check(apiKey, serverUrl, path);
+        if (!verdict.isValid()) {
+            throw new IllegalStateException("Watcher preflight failed for " + serverUrl + ": " + verdict.getMessage());
+        }
+        return verdict;
+    }
+
+    /**
+     * Checks a key against the {@link #DEFAULT_PATH default path} of a server, or returns the cached verdict.
+     *
+     * @param apiKey    The Watcher API key.
+     * @param serverUrl The Watcher server URL.
+     * @return The verdict.
+     */
+    public static Verdict check(String apiKey, String serverUrl) {
+        return check(apiKey, serverUrl, DEFAULT_PATH);
+    }
+
+    /**
+     * Checks a key against a path of a server, or returns the cached verdict.
+     *
+     * @param apiKey    The Watcher API key.
+     * @param serverUrl The Watcher server URL.
+     * @param path      The path requested below the server URL.
+     * @return The verdict.
+     */
+    public static Verdict check(String apiKey, String serverUrl, String path) {
+        return VERDICTS.computeIfAbsent(apiKey + '\n' + serverUrl + '\n' + path, k -> probe(apiKey, serverUrl, path));
+    }
+
+    private static Verdict probe(String apiKey, String serverUrl, String path) {
+        if (isUnset(apiKey)) {
+            return new Verdict(false, 0, "No API key configured, set API_KEY", false);
+        }
+        if (isUnset(serverUrl)) {
+            return new Verdict(false, 0, "No server URL configured, set SERVER_URL (URI is not absolute)", false);
+        }
+        URI uri;
+        try {
+            uri = new URI(serverUrl.trim());
+        } catch (URISyntaxException e) {
+            return new Verdict(false, 0, "Malformed server URL: " + e.getMessage(), false);
+        }
+        if (!uri.isAbsolute() || uri.getHost() == null
+                || !("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme()))) {
+            return new Verdict(false, 0, "URI is not absolute: " + serverUrl, false);
+        }
+
+        String base = serverUrl.trim().endsWith("/") ? serverUrl.trim() : serverUrl.trim() + "/";
+        String relative = path.startsWith("/") ? path.substring(1) : path;
+        try {
+            int status = get(base + relative, apiKey);
+            if (status == HttpURLConnection.HTTP_UNAUTHORIZED || status == HttpURLConnection.HTTP_FORBIDDEN) {
+                return new Verdict(false, status, "Invalid API key, the server answered " + status, true);
+            }
+            if (status >= 500) {
+                System.out.println("Watcher preflight: " + base + " answered " + status + ", continuing");
+                return new Verdict(true, status, "Server answered " + status, false);
+            }
+            int unissued = get(base + relative, UNISSUED_KEY);
+            if (unissued != HttpURLConnection.HTTP_UNAUTHORIZED && unissued != HttpURLConnection.HTTP_FORBIDDEN) {
+                return new Verdict(true, status, base + relative + " accepts any key, so API_KEY was not validated;"
+                        + " set PREFLIGHT_PATH to an endpoint that requires it", false);
+            }
+            return new Verdict(true, status, "Server answered " + status, true);
+        } catch (UnknownHostException e) {
+            return new Verdict(false, 0, "Unknown host " + e.getMessage(), false);
+        } catch (IOException e) {
+            return new Verdict(false, 0, "Server unreachable: " + e, false);
+        }
+    }
+
+    private static int get(String url, String apiKey) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setInstanceFollowRedirects(false);
+            connection.setRequestProperty("X-API-Key", apiKey);
+            int status = connection.getResponseCode();
+            drain(status >= 400 ? connection.getErrorStream() : connection.getInputStream());
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static boolean isUnset(String value) {
+        return value == null || value.trim().isEmpty() || "null".equals(value.trim());
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try (InputStream body = in) {
+            byte[] buffer = new byte[8192];
+            while (body.read(buffer) != -1) {
+                // Read to the end so the connection can be reused
+            }
+        }
+    }
+
+    /**
+     * The outcome of a preflight check.
+     */
+    public static final class Verdict {
+        private final boolean valid;
+        private final int status;
+        private final String message;
+        private final boolean keyChecked;
+
+        Verdict(boolean valid, int status, String message, boolean keyChecked) {
+            this.valid = valid;
+            this.status = status;
+            this.message = message;
+            this.keyChecked = keyChecked;
+        }
+
+        /**
+         * Returns whether the key and server can be used.
+         *
+         * @return {@code true} if the run may start.
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * Returns the HTTP status of the check.
+         *
+         * @return The status, or 0 if no answer was received.
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns a description of the outcome.
+         *
+         * @return The message.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Returns whether the server was seen to tell the key apart from one it never issued.
+         *
+         * @return {@code true} if a passing verdict means the key is valid, not only that it is set.
+         */
+        public boolean isKeyChecked() {
+            return keyChecked;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.deque.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import com.deque.axe_core.commons.AxeRuleOptions;
+import com.deque.axe_core.commons.AxeRunContext;
+import com.deque.axe_core.commons.AxeRunOnly;
+import com.deque.axe_core.commons.AxeRunOptions;
+import com.deque.axe_core.commons.AxeWatcherOptions;
+import com.deque.axe_core.commons.ConfigurationOverrides;
+
+/**
+ * Immutable description of an Axe Watcher configuration, without the credentials.
+ * Every modifier returns a new preset, so presets can be kept in constants and shared between threads.
+ * The axe rule map is built once per preset; {@link #applyTo(AxeWatcherOptions)} only copies it into
+ * a fresh {@link HashMap} for each set of options. {@link #key()} is a canonical description of the
+ * preset that can be used to key pooled drivers without serializing the options.
+ */
+public final class WatcherPreset {
+
+    private final String name;
+    private final boolean autoAnalyze;
+    private final Map<String, Boolean> rules;
+    private final String runOnlyType;
+    private final List<String> runOnlyValues;
+    private final List<String> include;
+    private final List<String> exclude;
+    private final List<String> excludeUrlPatterns;
+    private final String axeCoreVersion;
+    private final ConfigurationOverrides.AccessibilityStandard accessibilityStandard;
+    private final Boolean enableExperimental;
+    private final Boolean enableBestPractices;
+
+    private final HashMap<String, AxeRuleOptions> ruleOptions;
+    private final String key;
+
+    private WatcherPreset(String name, boolean autoAnalyze, Map<String, Boolean> rules, String runOnlyType,
+            List<String> runOnlyValues, List<String> include, List<String> exclude, List<String> excludeUrlPatterns,
+            String axeCoreVersion, ConfigurationOverrides.AccessibilityStandard accessibilityStandard,
+            Boolean enableExperimental, Boolean enableBestPractices) {
+        this.name = name;
+        this.autoAnalyze = autoAnalyze;
+        this.rules = rules;
+        this.runOnlyType = runOnlyType;
+        this.runOnlyValues = runOnlyValues;
+        this.include = include;
+        this.exclude = exclude;
+        this.excludeUrlPatterns = excludeUrlPatterns;
+        this.axeCoreVersion = axeCoreVersion;
+        this.accessibilityStandard = accessibilityStandard;
+        this.enableExperimental = enableExperimental;
+        this.enableBestPractices = enableBestPractices;
+
+        if (rules == null) {
+            this.ruleOptions = null;
+        } else {
+            this.ruleOptions = new HashMap<>();
+            for (Map.Entry<String, Boolean> rule : rules.entrySet()) {
+                ruleOptions.put(rule.getKey(), new AxeRuleOptions().setEnabled(rule.getValue()));
+            }
+        }
+        this.key = "autoAnalyze=" + autoAnalyze + ";rules=" + (rules == null ? null : new TreeMap<>(rules))
+                + ";runOnly=" + runOnlyType + runOnlyValues
+                + ";include=" + include + ";exclude=" + exclude + ";excludeUrls=" + excludeUrlPatterns
+                + ";axeCore=" + axeCoreVersion + ";standard=" + accessibilityStandard
+                + ";experimental=" + enableExperimental + ";bestPractices=" + enableBestPractices;
+    }
+
+    /**
+     * Starts a preset in auto analyze mode with no further options.
+     *
+     * @param name The name shown in reports.
+     * @return The preset.
+     */
+    public static WatcherPreset named(String name) {
+        return new WatcherPreset(name, true, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    /**
+     * Returns this preset under another name.
+     *
+     * @param newName The name shown in reports.
+     * @return The renamed preset.
+     */
+    public WatcherPreset as(String newName) {
+        return new WatcherPreset(newName, autoAnalyze, rules, runOnlyType, runOnlyValues, include, exclude,
+                excludeUrlPatterns, axeCoreVersion, accessibilityStandard, enableExperimental, enableBestPractices);
+    }
+
+    /**
+     * Switches to manual mode, where pages are only analyzed on {@code analyze()} or between {@code start()} and {@code stop()}.
+     *
+     * @return The modified preset.
+     */
+    public WatcherPreset manual() {
+        return new WatcherPreset(name, false, rules, runOnlyType, runOnlyValues, include, exclude,
+                excludeUrlPatterns, axeCoreVersion, accessibilityStandard, enableExperimental, enableBestPractices);
+    }
+
+    /**
+     * Disables axe rules.
+     *
+     * @param ruleIds The rule ids, for example {@code color-contrast}.
+     * @return The modified preset.
+     */
+    public WatcherPreset disableRules(String... ruleIds) {
+        return withRules(ruleIds, false);
+    }
+
+    /**
+     * Runs only the given axe rules.
+     *
+     * @param ruleIds The rule ids.
+     * @return The modified preset.
+     */
+    public WatcherPreset runOnlyRules(String... ruleIds) {
+        return withRules(ruleIds, true).withRunOnly("rule", ruleIds);
+    }
+
+    /**
+     * Runs only the rules tagged with one of the given tags.
+     *
+     * @param tags The tags, for example {@code wcag2aa}.
+     * @return The modified preset.
+     */
+    public WatcherPreset runOnlyTags(String... tags) {
+        return withRules(new String[0], true).withRunOnly("tag", tags);
+    }
+
+    /**
+     * Restricts analysis to the elements matching the selectors.
+     *
+     * @param selectors The CSS selectors to include.
+     * @return The modified preset.
+     */
+    public WatcherPreset include(String... selectors) {
+        return new WatcherPreset(name, autoAnalyze, rules, runOnlyType, runOnlyValues, list(selectors), exclude,
+                excludeUrlPatterns, axeCoreVersion, accessibilityStandard, enableExperimental, enableBestPractices);
+    }
+
+    /**
+     * Leaves the elements matching the selectors out of the analysis.
+     *
+     * @param selectors The CSS selectors to exclude.
+     * @return The modified preset.
+     */
+    public WatcherPreset exclude(String... selectors) {
+        return new WatcherPreset(name, autoAnalyze, rules, runOnlyType, runOnlyValues, include, list(selectors),
+                excludeUrlPatterns, axeCoreVersion, accessibilityStandard, enableExperimental, enableBestPractices);
+    }
+
+    /**
+     * Skips pages whose URL matches one of the patterns.
+     *
+     * @param patterns The URL patterns.
+     * @return The modified preset.
+     * @throws IllegalStateException If a pattern is not a valid exclude-URL glob, see {@link ExcludeUrlMatcher}.
+     */
+    public WatcherPreset excludeUrls(String... patterns) {
+        ExcludeUrlMatcher.compile(patterns);
+        return new WatcherPreset(name, autoAnalyze, rules, runOnlyType, runOnlyValues, include, exclude,
+                list(patterns), axeCoreVersion, accessibilityStandard, enableExperimental, enableBestPractices);
+    }
+
+    /**
+     * Overrides the axe-core version used by Watcher.
+     *
+     * @param version The axe-core version, for example {@code 4.8.0}.
+     * @return The modified preset.
+     */
+    public WatcherPreset axeCoreVersion(String version) {
+        return new WatcherPreset(name, autoAnalyze, rules, runOnlyType, runOnlyValues, include, exclude,
+                excludeUrlPatterns, version, accessibilityStandard, enableExperimental, enableBestPractices);
+    }
+
+    /**
+     * Overrides the accessibility standard.
+     *
+     * @param standard The standard to test against.
+     * @return The modified preset.
+     */
+    public WatcherPreset accessibilityStandard(ConfigurationOverrides.AccessibilityStandard standard) {
+        return new WatcherPreset(name, autoAnalyze, rules, runOnlyType, runOnlyValues, include, exclude,
+                excludeUrlPatterns, axeCoreVersion, standard, enableExperimental, enableBestPractices);
+    }
+
+    /**
+     * Enables or disables the experimental axe rules.
+     *
+     * @param enabled Whether experimental rules run.
+     * @return The modified preset.
+     */
+    public WatcherPreset experimentalRules(boolean enabled) {
+        return new WatcherPreset(name, autoAnalyze, rules, runOnlyType, runOnlyValues, include, exclude,
+                excludeUrlPatterns, axeCoreVersion, accessibilityStandard, enabled, enableBestPractices);
+    }
+
+    /**
+     * Enables or disables the best practice axe rules.
+     *
+     * @param enabled Whether best practice rules run.
+     * @return The modified preset.
+     */
+    public WatcherPreset bestPractices(boolean enabled) {
+        return new WatcherPreset(name, autoAnalyze, rules, runOnlyType, runOnlyValues, include, exclude,
+                excludeUrlPatterns, axeCoreVersion, accessibilityStandard, enableExperimental, enabled);
+    }
+
+    /**
+     * Applies the preset to options that already carry the API key, server URL and build id.
+     *
+     * @param options The options to configure.
+     * @return The same options.
+     */
+    public AxeWatcherOptions applyTo(AxeWatcherOptions options) {
+        if (!autoAnalyze) {
+            options.setAutoAnalyze(false);
+        }
+        if (ruleOptions != null || runOnlyType != null) {
+            AxeRunOptions runOptions = new AxeRunOptions();
+            if (ruleOptions != null) {
+                runOptions.setRules(new HashMap<>(ruleOptions));
+            }
+            if (runOnlyType != null) {
+                runOptions.setRunOnly(new AxeRunOnly().setType(runOnlyType).setValues(runOnlyValues));
+            }
+            options.setRunOptions(runOptions);
+        }
+        if (include != null || exclude != null) {
+            AxeRunContext context = new AxeRunContext();
+            if (include != null) {
+                context.setInclude(include);
+            }
+            if (exclude != null) {
+                context.setExclude(exclude);
+            }
+            options.setRunContext(context);
+        }
+        if (excludeUrlPatterns != null) {
+            options.setExcludeUrlPatterns(excludeUrlPatterns.toArray(new String[0]));
+        }
+        if (axeCoreVersion != null || accessibilityStandard != null || enableExperimental != null
+                || enableBestPractices != null) {
+            ConfigurationOverrides overrides = new ConfigurationOverrides();
+            if (axeCoreVersion != null) {
+                overrides.setAxeCoreVersion(axeCoreVersion);
+            }
+            if (accessibilityStandard != null) {
+                overrides.setAccessibilityStandard(accessibilityStandard);
+            }
+            if (enableExperimental != null) {
+                overrides.setEnableExperimental(enableExperimental);
+            }
+            if (enableBestPractices != null) {
+                overrides.setEnableBestPractices(enableBestPractices);
+            }
+            options.setConfigurationOverrides(overrides);
+        }
+        return options;
+    }
+
+    /**
+     * Returns the name shown in reports.
+     *
+     * @return The preset name.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns a canonical description of the options this preset produces, independent of its name.
+     *
+     * @return The key.
+     */
+    public String key() {
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof WatcherPreset && key.equals(((WatcherPreset) other).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private WatcherPreset withRules(String[] ruleIds, boolean enabled) {
+        Map<String, Boolean> merged = rules == null ? new LinkedHashMap<>() : new LinkedHashMap<>(rules);
+        for (String ruleId : ruleIds) {
+            merged.put(ruleId, enabled);
+        }
+        return new WatcherPreset(name, autoAnalyze, Collections.unmodifiableMap(merged), runOnlyType, runOnlyValues,
+                include, exclude, excludeUrlPatterns, axeCoreVersion, accessibilityStandard, enableExperimental,
+                enableBestPractices);
+    }
+
+    private WatcherPreset withRunOnly(String type, String[] values) {
+        return new WatcherPreset(name, autoAnalyze, rules, Objects.requireNonNull(type), list(values), include,
+                exclude, excludeUrlPatterns, axeCoreVersion, accessibilityStandard, enableExperimental,
+                enableBestPractices);
+    }
+
+    private static List<String> list(String[] values) {
+        return Collections.unmodifiableList(Arrays.asList(values.clone()));
+    }
+}
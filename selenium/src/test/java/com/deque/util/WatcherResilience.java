@@ -0,0 +1,232 @@
+package com.deque.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Retries calls to the Watcher backend that fail for transient reasons, such as {@code flush()} and
+ * {@code wrapDriver(...)}, so a short backend hiccup does not throw away the browser work of a test.
+ *
+ * <p>A failed call is retried up to {@code RETRY_MAX_ATTEMPTS} attempts in total, sleeping a random time
+ * between zero and an exponentially growing bound ({@code RETRY_BASE_DELAY_MS}, doubled per attempt, capped at
+ * {@code RETRY_MAX_DELAY_MS}) so parallel workers do not retry in lockstep. Every retry takes one from a budget
+ * of {@code RETRY_BUDGET} shared by the whole run; once it is spent, calls fail on their first error, so an
+ * outage costs each test one attempt instead of a full backoff.</p>
+ *
+ * <p>Each endpoint, such as {@code flush} or {@code session}, has a circuit breaker: after
+ * {@code CIRCUIT_FAILURE_THRESHOLD} consecutive failed calls it opens and calls fail immediately for
+ * {@code CIRCUIT_OPEN_SECONDS}; then one trial call is let through and its outcome closes or reopens it.</p>
+ *
+ * <p>Permanent errors are never retried and do not count against the circuit: configuration mistakes such as
+ * an invalid API key or a server URL that is not absolute fail the same way on every attempt.</p>
+ */
+public class WatcherResilience {
+
+    /** Messages of errors that no retry can fix, as reported by Watcher for bad credentials or server URLs. */
+    public static final List<String> PERMANENT_MESSAGES = Arrays.asList(
+            "Invalid API key", "URI is not absolute", "No API key", "Unauthorized", "Forbidden");
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final AtomicInteger budget;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a wrapper.
+     *
+     * @param maxAttempts      The attempts per call, including the first.
+     * @param baseDelayMillis  The backoff bound before the first retry.
+     * @param maxDelayMillis   The largest backoff bound.
+     * @param retryBudget      The retries allowed across all calls of this wrapper.
+     * @param failureThreshold The consecutive failed calls that open an endpoint's circuit.
+     * @param openMillis       How long an open circuit rejects calls.
+     */
+    public WatcherResilience(int maxAttempts, long baseDelayMillis, long maxDelayMillis, int retryBudget,
+            int failureThreshold, long openMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.budget = new AtomicInteger(retryBudget);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Returns the wrapper for this run, configured from {@link TestConfig}.
+     *
+     * @return The shared wrapper.
+     */
+    public static WatcherResilience shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Runs a call with retries.
+     *
+     * @param endpoint The endpoint, which selects the circuit breaker.
+     * @param action   The call.
+     * @throws RuntimeException The last failure of the call, or an {@link IllegalStateException} if the circuit is open.
+     */
+    public void run(String endpoint, Runnable action) {
+        call(endpoint, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Calls with retries and returns the result.
+     *
+     * @param <T>      The result type.
+     * @param endpoint The endpoint, which selects the circuit breaker.
+     * @param action   The call.
+     * @return The result of the first successful attempt.
+     * @throws RuntimeException The last failure of the call, or an {@link IllegalStateException} if the circuit is open.
+     */
+    public <T> T call(String endpoint, Supplier<T> action) {
+        Circuit circuit = circuits.computeIfAbsent(endpoint, e -> new Circuit());
+        circuit.admit(endpoint);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = action.get();
+                circuit.succeeded();
+                return result;
+            } catch (RuntimeException e) {
+                if (isPermanent(e)) {
+                    circuit.released();
+                    throw e;
+                }
+                if (attempt >= maxAttempts || budget.getAndDecrement() <= 0) {
+                    circuit.failed(failureThreshold, openNanos);
+                    throw e;
+                }
+                long delay = backoff(attempt);
+                System.out.println("Retrying " + endpoint + " in " + delay + " ms after attempt " + attempt + " failed: "
+                        + e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    circuit.released();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether an error is permanent: one of {@link #PERMANENT_MESSAGES} appears in it or one of its
+     * causes. Other errors, including any {@code IllegalArgumentException} without such a message, are retried.
+     *
+     * @param error The error.
+     * @return {@code true} if retrying cannot help.
+     */
+    public static boolean isPermanent(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null) {
+                for (String permanent : PERMANENT_MESSAGES) {
+                    if (message.contains(permanent)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the retries left in the budget.
+     *
+     * @return The remaining retries, 0 when spent.
+     */
+    public int remainingBudget() {
+        return Math.max(0, budget.get());
+    }
+
+    /**
+     * Returns whether an endpoint currently rejects calls.
+     *
+     * @param endpoint The endpoint.
+     * @return {@code true} if its circuit is open.
+     */
+    public boolean isOpen(String endpoint) {
+        Circuit circuit = circuits.get(endpoint);
+        return circuit != null && circuit.isOpen();
+    }
+
+    private long backoff(int attempt) {
+        long bound = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /**
+     * The circuit breaker of one endpoint.
+     */
+    private static final class Circuit {
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean open;
+        private boolean trialRunning;
+
+        synchronized void admit(String endpoint) {
+            if (!open) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (now - openUntil < 0 || trialRunning) {
+                throw new IllegalStateException("Circuit for " + endpoint + " is open after " + consecutiveFailures
+                        + " consecutive failures, retry in "
+                        + Math.max(0, TimeUnit.NANOSECONDS.toSeconds(openUntil - now)) + " s");
+            }
+            // Half open: this call is the trial that decides whether the endpoint is back
+            trialRunning = true;
+        }
+
+        synchronized void succeeded() {
+            consecutiveFailures = 0;
+            open = false;
+            trialRunning = false;
+        }
+
+        synchronized void failed(int threshold, long openNanos) {
+            consecutiveFailures++;
+            trialRunning = false;
+            if (open || consecutiveFailures >= threshold) {
+                open = true;
+                openUntil = System.nanoTime() + openNanos;
+            }
+        }
+
+        synchronized void released() {
+            trialRunning = false;
+        }
+
+        synchronized boolean isOpen() {
+            return open && System.nanoTime() - openUntil < 0;
+        }
+    }
+
+    /**
+     * Builds the shared wrapper on first use.
+     */
+    private static final class Holder {
+        private static final WatcherResilience INSTANCE = create();
+
+        private static WatcherResilience create() {
+            TestConfig config = TestConfig.get();
+            return new WatcherResilience(config.getInt("RETRY_MAX_ATTEMPTS", 4), config.getInt("RETRY_BASE_DELAY_MS", 500),
+                    config.getInt("RETRY_MAX_DELAY_MS", 8000), config.getInt("RETRY_BUDGET", 50),
+                    config.getInt("CIRCUIT_FAILURE_THRESHOLD", 5), TimeUnit.SECONDS.toMillis(config.getInt("CIRCUIT_OPEN_SECONDS", 30)));
+        }
+    }
+}
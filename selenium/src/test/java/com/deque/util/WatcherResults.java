@@ -0,0 +1,295 @@
+package com.deque.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import org.openqa.selenium.json.Json;
+import org.openqa.selenium.json.JsonException;
+
+/**
+ * Local index of the page states Watcher uploads, for asserting results in the test instead of in DevHub.
+ * Listens to the uploads accepted by a {@link MockWatcherServer} the test points Watcher at, and counts
+ * page states per URL and issues per URL and axe rule as they arrive during {@code flush()}.
+ * An issue is one element failing one rule, which is what DevHub counts against the a11y threshold.
+ *
+ * <p>Payloads are read as JSON, gzip compressed or not. Every object with a {@code violations} list is a
+ * page state of the nearest enclosing {@code url}; each violation contributes its {@code nodes} to the
+ * count of its {@code id}. Uploads without page states, such as session metadata, are ignored and
+ * payloads that are not JSON are counted in {@link #unreadable()}. Watcher does not document its upload
+ * format, so this shape is checked against real uploads by {@code MockBackendTest}, which runs a browser
+ * against the mock server and reads what it flushes.</p>
+ *
+ * <p>An index sees every upload of its server, so it should be captured from a server used by one test
+ * at a time and {@link #reset()} between tests.</p>
+ */
+public class WatcherResults {
+
+    private final Map<String, AtomicInteger> pageStates = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, AtomicInteger>> issues = new ConcurrentHashMap<>();
+    private final AtomicInteger unreadable = new AtomicInteger();
+    private final Consumer<MockWatcherServer.RecordedRequest> listener = request -> record(request.getRawBody());
+
+    /**
+     * Starts indexing the uploads a server accepts from now on.
+     *
+     * @param server The stand-in results server.
+     * @return The new index.
+     */
+    public static WatcherResults capture(MockWatcherServer server) {
+        WatcherResults results = new WatcherResults();
+        server.addUploadListener(results.listener);
+        return results;
+    }
+
+    /**
+     * Stops indexing the uploads of a server; the index keeps what it has recorded.
+     *
+     * @param server The server passed to {@link #capture(MockWatcherServer)}.
+     */
+    public void detach(MockWatcherServer server) {
+        server.removeUploadListener(listener);
+    }
+
+    /**
+     * Indexes one upload.
+     *
+     * @param payload The request body, plain or gzip compressed JSON.
+     */
+    public void record(byte[] payload) {
+        Object json;
+        try {
+            json = new Json().toType(new String(decompress(payload), StandardCharsets.UTF_8), Json.OBJECT_TYPE);
+        } catch (IOException | JsonException e) {
+            unreadable.incrementAndGet();
+            return;
+        }
+        walk(json, null);
+    }
+
+    /**
+     * Returns the number of page states recorded across all URLs.
+     *
+     * @return The page state count.
+     */
+    public int pageStates() {
+        return sum(pageStates.values());
+    }
+
+    /**
+     * Returns the number of page states recorded for a URL.
+     *
+     * @param url The page URL, as reported by Watcher.
+     * @return The page state count.
+     */
+    public int pageStates(String url) {
+        AtomicInteger count = pageStates.get(url);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Returns the number of issues recorded across all URLs and rules.
+     *
+     * @return The issue count.
+     */
+    public int issues() {
+        int total = 0;
+        for (Map<String, AtomicInteger> rules : issues.values()) {
+            total += sum(rules.values());
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of issues recorded for a URL.
+     *
+     * @param url The page URL.
+     * @return The issue count.
+     */
+    public int issues(String url) {
+        Map<String, AtomicInteger> rules = issues.get(url);
+        return rules == null ? 0 : sum(rules.values());
+    }
+
+    /**
+     * Returns the number of issues of one rule, across all URLs.
+     *
+     * @param ruleId The axe rule id, for example {@code color-contrast}.
+     * @return The issue count.
+     */
+    public int issuesForRule(String ruleId) {
+        int total = 0;
+        for (Map<String, AtomicInteger> rules : issues.values()) {
+            AtomicInteger count = rules.get(ruleId);
+            total += count == null ? 0 : count.get();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the issue count per rule for a URL.
+     *
+     * @param url The page URL.
+     * @return The counts by rule id, sorted by rule id.
+     */
+    public Map<String, Integer> rules(String url) {
+        Map<String, Integer> counts = new TreeMap<>();
+        Map<String, AtomicInteger> rules = issues.get(url);
+        if (rules != null) {
+            for (Map.Entry<String, AtomicInteger> rule : rules.entrySet()) {
+                counts.put(rule.getKey(), rule.getValue().get());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the URLs that have page states.
+     *
+     * @return The URLs, sorted.
+     */
+    public Collection<String> urls() {
+        return Collections.unmodifiableSet(new TreeSet<>(pageStates.keySet()));
+    }
+
+    /**
+     * Returns the number of uploads that could not be read as JSON.
+     *
+     * @return The count.
+     */
+    public int unreadable() {
+        return unreadable.get();
+    }
+
+    /**
+     * Asserts the number of page states across all URLs.
+     *
+     * @param expected The expected count.
+     * @throws AssertionError If the count differs.
+     */
+    public void assertPageStates(int expected) {
+        check(pageStates(), expected, "page states");
+    }
+
+    /**
+     * Asserts the number of issues across all URLs, the a11y threshold shown in DevHub.
+     *
+     * @param expected The expected count.
+     * @throws AssertionError If the count differs.
+     */
+    public void assertIssues(int expected) {
+        check(issues(), expected, "issues");
+    }
+
+    /**
+     * Asserts the number of issues of a URL.
+     *
+     * @param url      The page URL.
+     * @param expected The expected count.
+     * @throws AssertionError If the count differs.
+     */
+    public void assertIssues(String url, int expected) {
+        check(issues(url), expected, "issues on " + url);
+    }
+
+    /**
+     * Asserts the number of issues of a rule across all URLs.
+     *
+     * @param ruleId   The axe rule id.
+     * @param expected The expected count, 0 to assert the rule found nothing.
+     * @throws AssertionError If the count differs.
+     */
+    public void assertRule(String ruleId, int expected) {
+        check(issuesForRule(ruleId), expected, ruleId + " issues");
+    }
+
+    /**
+     * Clears the index.
+     */
+    public void reset() {
+        pageStates.clear();
+        issues.clear();
+        unreadable.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "pageStates=" + pageStates() + ", issues=" + issues() + ", urls=" + urls();
+    }
+
+    private void walk(Object node, String url) {
+        if (node instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) node;
+            String current = map.get("url") instanceof String ? (String) map.get("url") : url;
+            Object violations = map.get("violations");
+            if (violations instanceof List && current != null) {
+                recordPageState(current, (List<?>) violations);
+                return;
+            }
+            for (Object value : map.values()) {
+                walk(value, current);
+            }
+        } else if (node instanceof List) {
+            for (Object item : (List<?>) node) {
+                walk(item, url);
+            }
+        }
+    }
+
+    private void recordPageState(String url, List<?> violations) {
+        pageStates.computeIfAbsent(url, u -> new AtomicInteger()).incrementAndGet();
+        Map<String, AtomicInteger> rules = issues.computeIfAbsent(url, u -> new ConcurrentHashMap<>());
+        for (Object violation : violations) {
+            if (!(violation instanceof Map)) {
+                continue;
+            }
+            Object id = ((Map<?, ?>) violation).get("id");
+            Object nodes = ((Map<?, ?>) violation).get("nodes");
+            if (id instanceof String) {
+                int count = nodes instanceof List ? ((List<?>) nodes).size() : 1;
+                rules.computeIfAbsent((String) id, r -> new AtomicInteger()).addAndGet(count);
+            }
+        }
+    }
+
+    private static byte[] decompress(byte[] payload) throws IOException {
+        if (payload.length < 2 || (payload[0] & 0xff) != 0x1f || (payload[1] & 0xff) != 0x8b) {
+            return payload;
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static int sum(Collection<AtomicInteger> counts) {
+        int total = 0;
+        for (AtomicInteger count : counts) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    private static void check(int actual, int expected, String what) {
+        if (actual != expected) {
+            throw new AssertionError("Expected " + expected + " " + what + ", but Watcher uploaded " + actual);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+import com.deque.util.WatcherTimings.Phase;
+
+import io.qameta.allure.Allure;
+
+/**
+ * Collects {@link WatcherTimings} per test class and publishes them.
+ * Every TestNG method, configuration methods included, has its class bound as the timing owner while it runs.
+ * After each test method the phases it spent time in, together with its setup, are attached to the
+ * Allure report. When a suite finishes the per-class p50/p95/p99 report is written to the directory
+ * given by {@code -Dwatcher.timings.dir}, {@code target/watcher-timings} by default.
+ */
+public class WatcherTimingListener implements IInvokedMethodListener, ITestListener, ISuiteListener {
+
+    private static final String DEFAULT_REPORT_DIR = "target/watcher-timings";
+
+    /**
+     * Binds the class of the method about to run as the timing owner of this thread.
+     *
+     * @param method The method about to run.
+     * @param result Its result.
+     */
+    @Override
+    public void beforeInvocation(IInvokedMethod method, ITestResult result) {
+        WatcherTimings.bind(method.getTestMethod().getTestClass().getName());
+    }
+
+    /**
+     * Attaches the timing breakdown of a finished test method to Allure and unbinds the owner.
+     *
+     * @param method The method that ran.
+     * @param result Its result.
+     */
+    @Override
+    public void afterInvocation(IInvokedMethod method, ITestResult result) {
+        if (method.isTestMethod()) {
+            Map<Phase, long[]> totals = WatcherTimings.drainCurrentTest();
+            if (!totals.isEmpty()) {
+                Allure.addAttachment("Watcher timings", "text/csv", breakdown(totals), ".csv");
+            }
+        }
+        WatcherTimings.bind(null);
+    }
+
+    /**
+     * Waits for background flushes of the finished test, so that their timings are part of the report.
+     *
+     * @param context The TestNG test that finished.
+     */
+    @Override
+    public void onFinish(ITestContext context) {
+        AsyncFlusher.shared().awaitIdle();
+    }
+
+    /**
+     * Writes the per-class timing report, and the driver pool report if the suite started a browser.
+     *
+     * @param suite The suite that finished.
+     */
+    @Override
+    public void onFinish(ISuite suite) {
+        Path directory = Paths.get(System.getProperty("watcher.timings.dir", DEFAULT_REPORT_DIR));
+        try {
+            WatcherTimingReport.write(directory, WatcherTimings.snapshot());
+            WatcherDriverPool pool = WatcherDriverPool.shared();
+            if (pool.started() > 0) {
+                WatcherTimingReport.writePool(directory, pool.started(), pool.reused());
+                System.out.println("Watcher driver pool started " + pool.started() + " browsers, "
+                        + pool.reused() + " acquires reused an idle one");
+            }
+            System.out.println("Watcher timing report written to " + directory.toAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("Could not write Watcher timing report to " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private static String breakdown(Map<Phase, long[]> totals) {
+        StringBuilder csv = new StringBuilder("phase,count,totalMs\n");
+        for (Map.Entry<Phase, long[]> entry : totals.entrySet()) {
+            csv.append(String.format(Locale.ROOT, "%s,%d,%.3f%n",
+                    entry.getKey(), entry.getValue()[0], entry.getValue()[1] / 1000.0));
+        }
+        return csv.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package com.deque.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+import org.openqa.selenium.json.Json;
+
+import com.deque.util.WatcherTimings.Phase;
+
+/**
+ * Writes the phase histograms collected by {@link WatcherTimings} as {@code timings.csv} and
+ * {@code timings.json}. Each row holds the sample count, p50, p95, p99 and max in milliseconds for one
+ * test class and phase, plus the compressed histogram so that reports can be merged afterwards.
+ * How often {@link WatcherDriverPool} started and reused browsers goes to {@code pool.csv} next to them.
+ */
+public class WatcherTimingReport {
+
+    /** Name of the CSV report inside the report directory. */
+    public static final String CSV_FILE = "timings.csv";
+
+    /** Name of the JSON report inside the report directory. */
+    public static final String JSON_FILE = "timings.json";
+
+    /** Name of the driver pool report inside the report directory. */
+    public static final String POOL_FILE = "pool.csv";
+
+    private static final String CSV_HEADER = "testClass,phase,count,p50Ms,p95Ms,p99Ms,maxMs,histogram";
+
+    /**
+     * Writes both reports for the given histograms.
+     *
+     * @param directory  The directory to write into, created if missing.
+     * @param histograms The histograms by test class and phase.
+     * @throws IOException If a report cannot be written.
+     */
+    public static void write(Path directory, Map<String, Map<Phase, Histogram>> histograms) throws IOException {
+        List<Map<String, Object>> rows = rows(histograms);
+        Files.createDirectories(directory);
+
+        try (Writer csv = Files.newBufferedWriter(directory.resolve(CSV_FILE), StandardCharsets.UTF_8)) {
+            csv.write(CSV_HEADER);
+            csv.write('\n');
+            for (Map<String, Object> row : rows) {
+                csv.write(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%.3f,%.3f,%s%n",
+                        row.get("testClass"), row.get("phase"), row.get("count"), row.get("p50Ms"),
+                        row.get("p95Ms"), row.get("p99Ms"), row.get("maxMs"), row.get("histogram")));
+            }
+        }
+        Files.write(directory.resolve(JSON_FILE), new Json().toJson(rows).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes how many browsers a driver pool started and how many acquires reused an idle one.
+     *
+     * @param directory The directory to write into, created if missing.
+     * @param started   The number of browsers started.
+     * @param reused    The number of acquires that reused an idle browser.
+     * @throws IOException If the report cannot be written.
+     */
+    public static void writePool(Path directory, int started, int reused) throws IOException {
+        Files.createDirectories(directory);
+        Files.write(directory.resolve(POOL_FILE),
+                ("started,reused\n" + started + "," + reused + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Summarises the histograms into report rows.
+     *
+     * @param histograms The histograms by test class and phase.
+     * @return One row per test class and phase, in the iteration order of the map.
+     */
+    public static List<Map<String, Object>> rows(Map<String, Map<Phase, Histogram>> histograms) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<String, Map<Phase, Histogram>> owner : histograms.entrySet()) {
+            for (Map.Entry<Phase, Histogram> phase : owner.getValue().entrySet()) {
+                Histogram histogram = phase.getValue();
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("testClass", owner.getKey());
+                row.put("phase", phase.getKey().name());
+                row.put("count", histogram.getTotalCount());
+                row.put("p50Ms", millis(histogram.getValueAtPercentile(50)));
+                row.put("p95Ms", millis(histogram.getValueAtPercentile(95)));
+                row.put("p99Ms", millis(histogram.getValueAtPercentile(99)));
+                row.put("maxMs", millis(histogram.getMaxValue()));
+                row.put("histogram", WatcherTimings.encode(histogram));
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
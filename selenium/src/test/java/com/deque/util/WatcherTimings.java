@@ -0,0 +1,247 @@
+package com.deque.util;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.openqa.selenium.WebDriver;
+
+import com.deque.axe_core.selenium.AxeWatcherDriver;
+
+/**
+ * Records how long the Watcher related phases of a test take, in HdrHistograms keyed by test class.
+ * The static helpers wrap the usual {@link AxeWatcherDriver} calls, so a test writes
+ * {@code WatcherTimings.analyze(driver)} instead of {@code ((AxeWatcherDriver) driver).axeWatcher().analyze()}
+ * and gets the call timed for free. Timings are attributed to the test class bound to the current thread,
+ * which {@link WatcherTimingListener} does for every TestNG method; work handed to another thread can
+ * carry the owner over with {@link #currentOwner()} and {@link #bind(String)}.
+ *
+ * <p>Values are recorded in microseconds.</p>
+ */
+public class WatcherTimings {
+
+    /** The phases a Watcher test spends its time in. */
+    public enum Phase {
+        DRIVER_STARTUP,
+        CONFIGURE,
+        NAVIGATION,
+        ANALYZE,
+        START_STOP,
+        FLUSH
+    }
+
+    /** Owner used for timings recorded outside any TestNG method. */
+    public static final String UNATTRIBUTED = "unattributed";
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final Map<String, Map<Phase, ConcurrentHistogram>> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<String> OWNER = new ThreadLocal<>();
+    private static final ThreadLocal<EnumMap<Phase, long[]>> CURRENT_TEST = ThreadLocal.withInitial(() -> new EnumMap<>(Phase.class));
+
+    /**
+     * Attributes timings recorded on this thread to the given test class.
+     *
+     * @param owner The fully qualified test class name, or null to unbind.
+     */
+    public static void bind(String owner) {
+        if (owner == null) {
+            OWNER.remove();
+        } else {
+            OWNER.set(owner);
+        }
+    }
+
+    /**
+     * Removes the test class and the per-test totals of this thread, so a pooled thread that runs work of
+     * several tests keeps neither between tasks.
+     */
+    public static void unbind() {
+        OWNER.remove();
+        CURRENT_TEST.remove();
+    }
+
+    /**
+     * Returns the test class timings on this thread are attributed to.
+     *
+     * @return The bound owner, or {@link #UNATTRIBUTED}.
+     */
+    public static String currentOwner() {
+        String owner = OWNER.get();
+        return owner == null ? UNATTRIBUTED : owner;
+    }
+
+    /**
+     * Records one measurement for the owner bound to the current thread.
+     *
+     * @param phase The phase that was measured.
+     * @param nanos The elapsed time in nanoseconds.
+     */
+    public static void record(Phase phase, long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        HISTOGRAMS.computeIfAbsent(currentOwner(), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(phase, k -> new ConcurrentHistogram(SIGNIFICANT_DIGITS))
+                .recordValue(micros);
+        long[] totals = CURRENT_TEST.get().computeIfAbsent(phase, k -> new long[2]);
+        totals[0]++;
+        totals[1] += micros;
+    }
+
+    /**
+     * Runs and times an action.
+     *
+     * @param phase  The phase the action belongs to.
+     * @param action The action to run.
+     */
+    public static void time(Phase phase, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs and times an action that produces a value.
+     *
+     * @param phase  The phase the action belongs to.
+     * @param action The action to run.
+     * @param <T>    The type of the produced value.
+     * @return The value produced by the action.
+     */
+    public static <T> T measure(Phase phase, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Navigates to a URL, timed as {@link Phase#NAVIGATION}.
+     *
+     * @param driver The driver to navigate.
+     * @param url    The URL to load.
+     */
+    public static void navigate(WebDriver driver, String url) {
+        time(Phase.NAVIGATION, () -> driver.get(url));
+    }
+
+    /**
+     * Calls {@code axeWatcher().analyze()}, timed as {@link Phase#ANALYZE}.
+     *
+     * @param driver A driver wrapped by Axe Watcher.
+     */
+    public static void analyze(WebDriver driver) {
+        time(Phase.ANALYZE, () -> ((AxeWatcherDriver) driver).axeWatcher().analyze());
+    }
+
+    /**
+     * Calls {@code axeWatcher().start()}, timed as {@link Phase#START_STOP}.
+     *
+     * @param driver A driver wrapped by Axe Watcher.
+     */
+    public static void start(WebDriver driver) {
+        time(Phase.START_STOP, () -> ((AxeWatcherDriver) driver).axeWatcher().start());
+    }
+
+    /**
+     * Calls {@code axeWatcher().stop()}, timed as {@link Phase#START_STOP}.
+     *
+     * @param driver A driver wrapped by Axe Watcher.
+     */
+    public static void stop(WebDriver driver) {
+        time(Phase.START_STOP, () -> ((AxeWatcherDriver) driver).axeWatcher().stop());
+    }
+
+    /**
+     * Calls {@code axeWatcher().flush()}, timed as {@link Phase#FLUSH}, retrying transient failures through
+     * {@link WatcherResilience#shared()}.
+     *
+     * @param driver A driver wrapped by Axe Watcher.
+     */
+    public static void flush(WebDriver driver) {
+        time(Phase.FLUSH, () -> WatcherResilience.shared().run("flush", () -> ((AxeWatcherDriver) driver).axeWatcher().flush()));
+    }
+
+    /**
+     * Returns and clears the per-phase totals recorded on this thread since the last call.
+     * The listener uses this to attach a breakdown to each test.
+     *
+     * @return Count and total microseconds per phase, in that order.
+     */
+    public static Map<Phase, long[]> drainCurrentTest() {
+        EnumMap<Phase, long[]> totals = CURRENT_TEST.get();
+        EnumMap<Phase, long[]> copy = new EnumMap<>(Phase.class);
+        copy.putAll(totals);
+        totals.clear();
+        return copy;
+    }
+
+    /**
+     * Returns a copy of every histogram recorded so far, sorted by owner and phase.
+     *
+     * @return The histograms by test class and phase.
+     */
+    public static Map<String, Map<Phase, Histogram>> snapshot() {
+        Map<String, Map<Phase, Histogram>> snapshot = new TreeMap<>();
+        for (Map.Entry<String, Map<Phase, ConcurrentHistogram>> owner : HISTOGRAMS.entrySet()) {
+            Map<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+            for (Map.Entry<Phase, ConcurrentHistogram> phase : owner.getValue().entrySet()) {
+                phases.put(phase.getKey(), phase.getValue().copy());
+            }
+            snapshot.put(owner.getKey(), Collections.unmodifiableMap(phases));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Encodes a histogram in HdrHistogram's compressed form, base64 encoded, so reports from
+     * several JVMs can be merged later without losing precision.
+     *
+     * @param histogram The histogram to encode.
+     * @return The base64 encoded compressed histogram.
+     */
+    public static String encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        byte[] bytes = new byte[length];
+        buffer.flip();
+        buffer.get(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * Decodes a histogram written by {@link #encode(Histogram)}.
+     *
+     * @param encoded The base64 encoded compressed histogram.
+     * @return The histogram.
+     * @throws IllegalStateException If the value is not an encoded histogram.
+     */
+    public static Histogram decode(String encoded) {
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(encoded)), 0);
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new IllegalStateException("Not an encoded histogram: " + encoded, e);
+        }
+    }
+
+    /**
+     * Clears every recorded histogram.
+     */
+    public static void reset() {
+        HISTOGRAMS.clear();
+        CURRENT_TEST.get().clear();
+    }
+}
@@ -0,0 +1,27 @@
+<!DOCTYPE html>
+<html>
+<head>
+<meta charset="utf-8">
+<title>Cart - ABCD Computech</title>
+<style>
+  body { font-family: Arial, sans-serif; }
+  .promo { color: #999; background: #fff; }
+  #topnav ul { list-style: none; display: flex; gap: 1em; }
+</style>
+</head>
+<body>
+<div id="topnav">
+  <ul>
+    <li><a href="index.html">Home</a></li>
+    <li><a href="laptopsandnotebooks.php">Laptops &amp; Notebooks</a></li>
+    <li><a href="desktops.php">Desktops</a></li>
+    <li><a href="cart.php">Cart</a></li>
+    <li><a href="support.php">Support</a></li>
+  </ul>
+</div>
+<h1>Your Cart</h1>
+<form><input type="number" value="1"><button></button></form>
+<p class="promo">Free shipping on orders over $50. <a href="#">Learn more</a></p>
+<a href="index.html"><img src="data:image/gif;base64,R0lGODlhAQABAAAAACw=" width="1" height="1"></a>
+</body>
+</html>